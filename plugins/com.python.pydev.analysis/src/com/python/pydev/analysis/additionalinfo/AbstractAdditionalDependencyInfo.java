@@ -9,13 +9,20 @@
  */
 package com.python.pydev.analysis.additionalinfo;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipFile;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -24,7 +31,6 @@ import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.ModulesKeyForZip;
 import org.python.pydev.core.REF;
 import org.python.pydev.core.Tuple;
-import org.python.pydev.core.Tuple3;
 import org.python.pydev.core.cache.CompleteIndexKey;
 import org.python.pydev.core.cache.CompleteIndexValue;
 import org.python.pydev.core.cache.DiskCache;
@@ -37,6 +43,12 @@ import org.python.pydev.editor.codecompletion.revisited.ModulesKeyTreeMap;
 import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
 import org.python.pydev.logging.DebugSettings;
 import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+
+import com.python.pydev.analysis.additionalinfo.dependencies.ImportsGraph;
+import com.python.pydev.analysis.additionalinfo.dependencies.PyStructuralChange;
 
 
 /**
@@ -61,14 +73,43 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
 
 
     /**
-     * indexes all the names that are available
-     * 
-     * Note that the key in the disk cache is the module name and each
-     * module points to a Set<Strings>
+     * Keeps the modules indexed (the key in the disk cache is the module name and the modification time of the 
+     * module file when it was added).
      * 
-     * So the key is the module name and the value is a Set of the strings it contains.
+     * Note that the tokens of each module are no longer kept as the values in this cache (they're in the 
+     * tokensIndex).
      */
     public DiskCache completeIndex; 
+    
+    /**
+     * Inverted index from the tokens found in the contents of the modules in the completeIndex to the modules
+     * that contain them. Persisted along with the info (but in its own file). 
+     * 
+     * The contents of a module are read when it's added (or when it's replaced with the same definitions but its
+     * file changed), so, the queries don't need to read (or check) the files. If the contents can't be read only 
+     * the names in its ast are indexed (with the modification time of the file negated, as the contents may still 
+     * have other tokens -- i.e.: in comments or strings or in the bodies not available when only the definitions 
+     * are added).
+     */
+    protected final TokensIndex tokensIndex = new TokensIndex();
+    
+    /**
+     * Which modules import which modules and the top-level tokens of each module (to know which modules must be
+     * analyzed again when the tokens of some module change). Persisted along with the info (in its own file).
+     */
+    protected final ImportsGraph importsGraph = new ImportsGraph();
+    
+    /**
+     * The modules being replaced in replaceAstInfoGettingChange (only for those the changes in the top-level tokens
+     * are kept in structuralChanges). Guarded by 'lock'.
+     */
+    private final Set<String> recordingChanges = new HashSet<String>();
+    
+    /**
+     * The changes in the top-level tokens detected in addAstInfo for the modules in recordingChanges.
+     * Guarded by 'lock'.
+     */
+    private final Map<String, PyStructuralChange> structuralChanges = new HashMap<String, PyStructuralChange>();
 
     /**
      * default constructor
@@ -126,9 +167,17 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
      * @throws MisconfigurationException 
      */
     protected void init() throws MisconfigurationException {
-        File persistingFolder = getCompleteIndexPersistingFolder();
+        completeIndex = createCompleteIndex();
+    }
 
-        completeIndex = new DiskCache(
+    /**
+     * @return a new (empty) index persisted in the complete index folder.
+     * @throws MisconfigurationException 
+     */
+    private DiskCache createCompleteIndex() throws MisconfigurationException {
+        File persistingFolder = getCompleteIndexPersistingFolder();
+        
+        return new DiskCache(
                 persistingFolder, 
                 ".v1_indexcache",
                 readFromFileMethod,
@@ -155,6 +204,40 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
         return persistingFolder;
     }
     
+    /**
+     * @return the file where the tokens index should be persisted.
+     */
+    protected File getTokensIndexFile() {
+        return new File(getPersistingFolder(), "v1_tokensindex.index");
+    }
+    
+    /**
+     * @return the file where the imports graph should be persisted.
+     */
+    protected File getImportsGraphFile() {
+        return new File(getPersistingFolder(), "v1_importsgraph.index");
+    }
+    
+    /**
+     * Saves the tokens index and the imports graph along with the info.
+     */
+    @Override
+    public void save() {
+        synchronized(lock){
+            super.save();
+            try {
+                tokensIndex.save(getTokensIndexFile());
+            } catch (Exception e) {
+                Log.log(e);
+            }
+            try {
+                importsGraph.save(getImportsGraphFile());
+            } catch (Exception e) {
+                Log.log(e);
+            }
+        }
+    }
+    
     @Override
     public void clearAllInfo() {
         synchronized(lock){
@@ -164,6 +247,9 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
             } catch (NullPointerException e) {
                 //that's ok... because it might be called before actually having any values
             }
+            tokensIndex.clear();
+            importsGraph.clear();
+            structuralChanges.clear();
         }
     }
 
@@ -244,7 +330,6 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
     
     @Override
     public List<ModulesKey> getModulesWithToken(String token, IProgressMonitor monitor){
-        FastStringBuffer temp = new FastStringBuffer();
         ArrayList<ModulesKey> ret = new ArrayList<ModulesKey>();
         if(monitor == null){
             monitor = new NullProgressMonitor();
@@ -258,243 +343,435 @@ public abstract class AbstractAdditionalDependencyInfo extends AbstractAdditiona
                 throw new RuntimeException(StringUtils.format("Token: %s is not a valid token to search for.", token));
             }
         }
-        synchronized(lock){
-            FastStringBuffer bufProgress = new FastStringBuffer();
-            //Note that this operation is not as fast as the others, as it relies on a cache that is optimized
-            //for space and not for speed (but still, should be faster than having to do a text-search to know the 
-            //tokens when the cache is available).
-            
-            Tuple<List<Tuple<CompleteIndexKey, CompleteIndexValue>>, Collection<CompleteIndexKey>> memoryInfo = 
-                completeIndex.getInMemoryInfo();
-            
-            long last = System.currentTimeMillis();
-            int worked = 0;
-            try {
-                monitor.beginTask("Get modules with token", memoryInfo.o1.size()+memoryInfo.o2.size());
-                for(Tuple<CompleteIndexKey, CompleteIndexValue> tup: memoryInfo.o1){ 
-                    CompleteIndexKey indexKey = tup.o1;
-                    CompleteIndexValue obj = tup.o2;
-                    
-                    worked++;
-                    if(monitor.isCanceled()){
-                        return ret;
-                    }
-                    long current = System.currentTimeMillis();
-                    if(last + 200 < current){
-                        last = current;
-                        monitor.setTaskName(bufProgress.clear().append("Searching: ").append(indexKey.key.name).toString());
-                        monitor.worked(worked);
-                    }
-                    check(indexKey, obj, temp, token, ret);
-                }
-                
-                
-                for(CompleteIndexKey indexKey : memoryInfo.o2){ 
-                    worked++;
-                    if(monitor.isCanceled()){
-                        return ret;
-                    }
-                    long current = System.currentTimeMillis();
-                    if(last + 200 < current){
-                        last = current;
-                        monitor.setTaskName(bufProgress.clear().append("Searching: ").append(indexKey.key.name).toString());
-                        monitor.worked(worked);
+        
+        //Files are not checked here: the builder adds the modules again when they change (and the contents are
+        //indexed at that time).
+        try {
+            monitor.beginTask("Get modules with token", 1);
+            synchronized(lock){
+                Map<CompleteIndexKey, CompleteIndexKey> keys = completeIndex.keys();
+                CompleteIndexKey tempKey = new CompleteIndexKey((ModulesKey)null);
+                for(String moduleName:tokensIndex.getModulesWithToken(token)){
+                    tempKey.key = new ModulesKey(moduleName, null);
+                    CompleteIndexKey indexKey = keys.get(tempKey);
+                    if(indexKey != null){
+                        ret.add(indexKey.key);
                     }
-                    check(indexKey, null, temp, token, ret);
                 }
-            } finally {
-                monitor.done();
             }
+        } finally {
+            monitor.done();
         }
         return ret;
     }
     
     
-    
-    private void check(CompleteIndexKey indexKey, CompleteIndexValue obj, FastStringBuffer temp, String token, ArrayList<ModulesKey> ret) {
-        if(obj == null){
-            obj = completeIndex.getObj(indexKey);
-        }
-        boolean canAddAstInfoFor = PythonPathHelper.canAddAstInfoFor(indexKey.key);
-        if(obj == null){
-            if(canAddAstInfoFor){
-                try {
-                    //Should be there (recreate the entry in the index and in the actual AST)
-                    this.addAstInfo(indexKey.key, true);
-                } catch (Exception e) {
-                    Log.log(e);
+    /**
+     * Reads the contents of a module (must not be called holding the lock).
+     * 
+     * @param zipFile the zip file which contains the module if it was already opened or null to open it if needed.
+     * 
+     * @return the tokens in the contents of the module or null if they couldn't be read.
+     */
+    private static Set<String> getContentsTokens(ModulesKey key, ZipFile zipFile) {
+        FastStringBuffer buf;
+        try {
+            if(key instanceof ModulesKeyForZip){
+                ModulesKeyForZip modulesKeyForZip = (ModulesKeyForZip) key;
+                if(zipFile != null){
+                    buf = (FastStringBuffer) REF.getCustomReturnFromZip(
+                            zipFile, modulesKeyForZip.zipModulePath, FastStringBuffer.class);
+                }else{
+                    buf = (FastStringBuffer) REF.getCustomReturnFromZip(
+                            modulesKeyForZip.file, modulesKeyForZip.zipModulePath, FastStringBuffer.class);
                 }
-
-                obj = new CompleteIndexValue();
             }else{
-                if(DEBUG){
-                    System.out.println("Removing (file does not exist or is not a valid source module): "+indexKey.key.name);
-                }
-                this.removeInfoFromModule(indexKey.key.name, true);
-                return; 
+                buf = (FastStringBuffer) REF.getFileContentsCustom(key.file, FastStringBuffer.class);
             }
+        } catch (Exception e) {
+            Log.log(e);
+            return null;
         }
-        
-        long lastModified = indexKey.key.file.lastModified();
-        if(lastModified == 0 || !canAddAstInfoFor){
-            //File no longer exists or is not a valid source module.
-            if(DEBUG){
-                System.out.println("Removing (file no longer exists or is not a valid source module): "+indexKey.key.name+" indexKey.key.file: "+indexKey.key.file+" exists: "+indexKey.key.file.exists());
+        return getTokens(buf);
+    }
+    
+    
+    /**
+     * @return the names (that are not keywords) found in the given ast (always a subset of the tokens found in the
+     * contents of the module).
+     */
+    private static Set<String> getAstTokens(SimpleNode node) throws Exception {
+        final HashSet<String> set = new HashSet<String>();
+        node.accept(new VisitorBase(){
+            
+            @Override
+            protected Object unhandled_node(SimpleNode node) throws Exception {
+                return null;
             }
-            this.removeInfoFromModule(indexKey.key.name, true);
-            return;
-        }
-        
-        //if it got here, it must be a valid source module!
-        
-        if(obj.entries != null){
-            if(lastModified != indexKey.lastModified){
-                obj = new CompleteIndexValue();
-                try {
-                    //Recreate the entry on the new time (recreate the entry in the index and in the actual AST)
-                    this.addAstInfo(indexKey.key, true);
-                } catch (Exception e) {
-                    Log.log(e);
-                }
+            
+            @Override
+            public void traverse(SimpleNode node) throws Exception {
+                node.traverse(this);
             }
-        }
-        
-        //The actual values are always recreated lazily (in the case that it's really needed).
-        if(obj.entries == null){
-            FastStringBuffer buf;
-            ModulesKey key = indexKey.key;
-            try {
-                if(key instanceof ModulesKeyForZip){
-                    ModulesKeyForZip modulesKeyForZip = (ModulesKeyForZip) key;
-                    buf = (FastStringBuffer) REF.getCustomReturnFromZip(
-                            modulesKeyForZip.file, modulesKeyForZip.zipModulePath, FastStringBuffer.class);
-                }else{
-                    buf = (FastStringBuffer) REF.getFileContentsCustom(key.file, FastStringBuffer.class);
-                }
-            } catch (Exception e) {
-                Log.log(e);
-                return;
+            
+            @Override
+            public Object visitName(Name node) throws Exception {
+                add(node.id);
+                return null;
             }
             
-            HashSet<String> set = new HashSet<String>();
-            temp = temp.clear();
-            int length = buf.length();
-            for(int i=0;i<length;i++){
-                char c = buf.charAt(i);
-                if(Character.isJavaIdentifierStart(c)){
-                    temp.clear();
-                    temp.append(c);
-                    i++;
-                    for(;i < length;i++){
-                        c = buf.charAt(i);
-                        if(c == ' ' || c == '\t'){
-                            break; //Fast forward through the most common case...
-                        }
-                        if(Character.isJavaIdentifierPart(c)){
-                            temp.append(c);
-                        }else{
-                            break;
-                        }
+            @Override
+            public Object visitNameTok(NameTok node) throws Exception {
+                add(node.id);
+                return null;
+            }
+            
+            private void add(String token) {
+                if(token == null || token.length() == 0){
+                    return;
+                }
+                if(token.indexOf('.') != -1){
+                    //dotted names in imports
+                    for(String part:StringUtils.dotSplit(token)){
+                        add(part);
                     }
-                    String str = temp.toString();
-                    if(PySelection.ALL_KEYWORD_TOKENS.contains(str)){
-                        continue;
+                    
+                }else if(Character.isJavaIdentifierStart(token.charAt(0)) && 
+                        !PySelection.ALL_KEYWORD_TOKENS.contains(token)){
+                    set.add(token);
+                }
+            }
+        });
+        return set;
+    }
+    
+    
+    /**
+     * @return the identifiers (that are not keywords) found in the given contents.
+     */
+    private static Set<String> getTokens(FastStringBuffer buf) {
+        HashSet<String> set = new HashSet<String>();
+        FastStringBuffer temp = new FastStringBuffer();
+        int length = buf.length();
+        for(int i=0;i<length;i++){
+            char c = buf.charAt(i);
+            if(Character.isJavaIdentifierStart(c)){
+                temp.clear();
+                temp.append(c);
+                i++;
+                for(;i < length;i++){
+                    c = buf.charAt(i);
+                    if(c == ' ' || c == '\t'){
+                        break; //Fast forward through the most common case...
+                    }
+                    if(Character.isJavaIdentifierPart(c)){
+                        temp.append(c);
+                    }else{
+                        break;
                     }
-                    set.add(str);
                 }
+                String str = temp.toString();
+                if(PySelection.ALL_KEYWORD_TOKENS.contains(str)){
+                    continue;
+                }
+                set.add(str);
             }
-            
-            obj.entries = set;
-            indexKey.lastModified = lastModified;
-            completeIndex.add(indexKey, obj); //Serialize the new contents
         }
+        return set;
+    }
+
+    /**
+     * Also keeps the tokens in the contents (or in the ast) and the top-level tokens of the module (created without 
+     * holding any lock).
+     */
+    private static final class DependencyModuleInfos extends ModuleInfos {
+        
+        /**
+         * The tokens in the contents of the module (null if the module has no file or if they couldn't be read).
+         */
+        private Set<String> tokens;
+        
+        /**
+         * The tokens in the ast (only gotten if the contents couldn't be read).
+         */
+        private Set<String> astTokens;
         
-        if(obj.entries != null && obj.entries.contains(token)){
-            ret.add(indexKey.key);
+        /**
+         * The modification time of the module file (gotten before reading it).
+         */
+        private long lastModified;
+        private final List<String> topLevelTokens = new ArrayList<String>();
+        
+        private DependencyModuleInfos(ModuleInfos moduleInfos) {
+            super(moduleInfos.node, moduleInfos.key, moduleInfos.infos);
         }
-
     }
-
+    
     @Override
-    public List<IInfo> addAstInfo(SimpleNode node, ModulesKey key, boolean generateDelta) {
-    	List<IInfo> addAstInfo = new ArrayList<IInfo>();
-        if(node == null || key == null || key.name == null){
-            return addAstInfo;
+    public ModuleInfos createModuleInfos(SimpleNode node, ModulesKey key, ZipFile zipFile) {
+        ModuleInfos moduleInfos = super.createModuleInfos(node, key, zipFile);
+        if(moduleInfos == null){
+            return null;
         }
-        try{
-            synchronized (lock) {
-                addAstInfo = super.addAstInfo(node, key, generateDelta);
-                
-                if(key.file != null){
-                    completeIndex.add(new CompleteIndexKey(key), new CompleteIndexValue());
+        DependencyModuleInfos ret = new DependencyModuleInfos(moduleInfos);
+        if(key.file != null){
+            ret.lastModified = key.file.lastModified();
+            ret.tokens = getContentsTokens(key, zipFile);
+            if(ret.tokens == null){
+                try{
+                    ret.astTokens = getAstTokens(node);
+                } catch (Exception e) {
+                    Log.log(e);
                 }
+            }
+        }
+        for(IInfo info:ret.infos){
+            if(info.getPath() == null){
+                ret.topLevelTokens.add(info.getName());
+            }
+        }
+        return ret;
+    }
+    
+    @Override
+    protected void onModuleAdded(ModuleInfos moduleInfos, boolean generateDelta) {
+        super.onModuleAdded(moduleInfos, generateDelta);
+        //not a DependencyModuleInfos if the infos couldn't be created
+        DependencyModuleInfos infos = moduleInfos instanceof DependencyModuleInfos ? 
+                (DependencyModuleInfos) moduleInfos : new DependencyModuleInfos(moduleInfos);
+        ModulesKey key = infos.key;
+        try{
+            if(key.file != null){
+                CompleteIndexKey indexKey = new CompleteIndexKey(key);
+                indexKey.lastModified = infos.lastModified;
+                completeIndex.add(indexKey, null);
+                if(infos.tokens != null){
+                    tokensIndex.addModule(key.name, infos.lastModified, infos.tokens);
                     
+                }else if(infos.astTokens != null){
+                    //the contents couldn't be read: the names in the ast are the only tokens known
+                    tokensIndex.addModule(key.name, -infos.lastModified, infos.astTokens);
+                }
+            }
+            
+            PyStructuralChange change = importsGraph.setTopLevelTokens(key.name, infos.topLevelTokens);
+            if(change != null && recordingChanges.contains(key.name)){
+                structuralChanges.put(key.name, change);
             }
         } catch (Exception e) {
             Log.log(e);
         }
-        return addAstInfo;
     }
     
     
+    /**
+     * The contents may still have changed (i.e.: only the body of some function changed), so, they're indexed again 
+     * if the file changed since they were indexed.
+     */
     @Override
-    public void removeInfoFromModule(String moduleName, boolean generateDelta) {
-        synchronized (lock) {
-            if(moduleName == null){
-                throw new AssertionError("The module name may not be null.");
+    protected void onDefinitionsUnchanged(ModulesKey key) {
+        if(key.file == null){
+            return;
+        }
+        long lastModified = key.file.lastModified();
+        synchronized(lock){
+            if(tokensIndex.isIndexed(key.name, lastModified)){
+                return;
+            }
+        }
+        Set<String> tokens = getContentsTokens(key, null);
+        if(tokens == null){
+            return;
+        }
+        synchronized(lock){
+            if(tokensIndex.hasModule(key.name)){ //not removed meanwhile
+                CompleteIndexKey indexKey = new CompleteIndexKey(key);
+                indexKey.lastModified = lastModified;
+                completeIndex.add(indexKey, null);
+                tokensIndex.addModule(key.name, lastModified, tokens);
             }
-            completeIndex.remove(new CompleteIndexKey(moduleName));
-            super.removeInfoFromModule(moduleName, generateDelta);
         }
     }
     
+    
+    @Override
+    protected void onModuleRemoved(String moduleName, boolean generateDelta) {
+        if(moduleName == null){
+            throw new AssertionError("The module name may not be null.");
+        }
+        completeIndex.remove(new CompleteIndexKey(moduleName));
+        tokensIndex.removeModule(moduleName);
+        importsGraph.removeModule(moduleName);
+        super.onModuleRemoved(moduleName, generateDelta);
+    }
+    
 
+    /**
+     * Writes the modules in the completeIndex to the extra section as:
+     * 
+     * int number of modules and then for each module: int name, int file, int path in the zip (-1 if it's not in a zip), 
+     * byte flags (1 = in zip, 2 = is file in zip), long modification time.
+     */
     @Override
-    protected Object getInfoToSave() {
+    protected void writeInfoToSave(InfoBinaryFile.Writer writer) throws IOException {
         synchronized (lock) {
-            return new Tuple<Object, Object>(super.getInfoToSave(), completeIndex);
+            super.writeInfoToSave(writer);
+            
+            Collection<CompleteIndexKey> keys = completeIndex.keys().values();
+            DataOutputStream extra = writer.getExtra();
+            extra.writeInt(keys.size());
+            for(CompleteIndexKey indexKey:keys){
+                ModulesKey key = indexKey.key;
+                extra.writeInt(writer.addString(key.name));
+                extra.writeInt(writer.addString(key.file != null ? key.file.toString() : null));
+                if(key instanceof ModulesKeyForZip){
+                    ModulesKeyForZip modulesKeyForZip = (ModulesKeyForZip) key;
+                    extra.writeInt(writer.addString(modulesKeyForZip.zipModulePath));
+                    extra.writeByte(modulesKeyForZip.isFile ? 3 : 1);
+                }else{
+                    extra.writeInt(-1);
+                    extra.writeByte(0);
+                }
+                extra.writeLong(indexKey.lastModified);
+            }
         }
     }
     
     
     @Override
-    protected void restoreSavedInfo(Object o) throws MisconfigurationException{
+    protected void restoreSavedInfo(InfoBinaryFile.Reader reader) throws MisconfigurationException, IOException{
         synchronized (lock) {
-            Tuple readFromFile = (Tuple) o;
-            if(!(readFromFile.o1 instanceof Tuple3)){
-                throw new RuntimeException("Type Error: the info must be regenerated (changed across versions).");
+            DiskCache restored = createCompleteIndex();
+            try {
+                ByteBuffer extra = reader.getExtra();
+                int size = extra.getInt();
+                for(int i=0;i<size;i++){
+                    String name = reader.getString(extra.getInt());
+                    String file = reader.getString(extra.getInt());
+                    String zipModulePath = reader.getString(extra.getInt());
+                    byte flags = extra.get();
+                    long lastModified = extra.getLong();
+                    
+                    File f = file != null ? new File(file) : null;
+                    ModulesKey key;
+                    if((flags & 1) != 0){
+                        key = new ModulesKeyForZip(name, f, zipModulePath, (flags & 2) != 0);
+                    }else{
+                        key = new ModulesKey(name, f);
+                    }
+                    CompleteIndexKey indexKey = new CompleteIndexKey(key);
+                    indexKey.lastModified = lastModified;
+                    restored.add(indexKey, null);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Type Error (index not available): the info must be regenerated (changed across versions).");
             }
+            completeIndex = restored;
             
-            completeIndex = (DiskCache) readFromFile.o2;
-            if(completeIndex == null){
-                throw new RuntimeException("Type Error (index == null): the info must be regenerated (changed across versions).");
+            try {
+                //modules not found in it (or with a different modification time) are indexed on demand
+                tokensIndex.load(getTokensIndexFile());
+            } catch (Exception e) {
+                Log.log("Unable to read the tokens index (it'll be recreated).", e);
             }
-            completeIndex.readFromFileMethod = readFromFileMethod;
-            completeIndex.toFileMethod = toFileMethod;
-            
-            String shouldBeOn = REF.getFileAbsolutePath(getCompleteIndexPersistingFolder());
-            if(!completeIndex.getFolderToPersist().equals(shouldBeOn)){
-                //this can happen if the user moves its .metadata folder (so, we have to validate it).
-                completeIndex.setFolderToPersist(shouldBeOn);
+            try {
+                //if not available, modules are added to it as they're analyzed again
+                importsGraph.load(getImportsGraphFile());
+            } catch (Exception e) {
+                Log.log("Unable to read the imports graph (it'll be recreated).", e);
             }
             
-            super.restoreSavedInfo(readFromFile.o1);
+            super.restoreSavedInfo(reader);
         }
     }
 
+    /**
+     * Updates the modules imported by the given module.
+     * 
+     * @param ast the full ast of the module (the definitions gotten from the FastDefinitionsParser don't have the
+     * imports, so, they should never be passed here).
+     */
+    public void setImports(ModulesKey key, SimpleNode ast) {
+        if(ast == null || key == null || key.name == null){
+            return;
+        }
+        boolean isPackage = key.file != null && key.file.getName().startsWith("__init__.");
+        Set<String> imports = ImportsGraph.getImportedModules(ast, key.name, isPackage);
+        synchronized (lock) {
+            importsGraph.setImports(key.name, imports);
+        }
+    }
+    
+    
+    /**
+     * Should be called when the module is actually removed (and not only having its info recreated), so that if
+     * it's added back it's considered a structural change.
+     */
+    public void forgetTopLevelTokens(String moduleName) {
+        synchronized (lock) {
+            importsGraph.forgetRemoved(moduleName);
+        }
+    }
+    
+    
+    /**
+     * Replaces the info of a module (see replaceAstInfo) getting the change in its top-level tokens (the changes are
+     * only kept for the modules replaced through this method, as the builder is the only one interested in them).
+     * 
+     * @return the change in the top-level tokens of the module or null if they didn't change.
+     */
+    public PyStructuralChange replaceAstInfoGettingChange(SimpleNode node, ModulesKey key, boolean generateDelta) {
+        if(key == null || key.name == null){
+            replaceAstInfo(node, key, generateDelta);
+            return null;
+        }
+        String moduleName = key.name;
+        synchronized (lock) {
+            recordingChanges.add(moduleName);
+        }
+        try{
+            replaceAstInfo(node, key, generateDelta);
+        }finally{
+            synchronized (lock) {
+                recordingChanges.remove(moduleName);
+            }
+        }
+        synchronized (lock) {
+            return structuralChanges.remove(moduleName);
+        }
+    }
+    
+    
+    /**
+     * @param transitive if true, the modules that import the importers are also returned (and so on).
+     * @return the modules indexed that import the given module.
+     */
+    public List<ModulesKey> getImporters(String moduleName, boolean transitive) {
+        ArrayList<ModulesKey> ret = new ArrayList<ModulesKey>();
+        synchronized (lock) {
+            Set<String> importers = importsGraph.getImporters(moduleName, transitive);
+            if(importers.size() == 0){
+                return ret;
+            }
+            Map<CompleteIndexKey, CompleteIndexKey> keys = completeIndex.keys();
+            CompleteIndexKey tempKey = new CompleteIndexKey((ModulesKey)null);
+            for(String importer:importers){
+                tempKey.key = new ModulesKey(importer, null);
+                CompleteIndexKey indexKey = keys.get(tempKey);
+                if(indexKey != null){
+                    ret.add(indexKey.key);
+                }
+            }
+        }
+        return ret;
+    }
+    
+
     protected void addInfoToModuleOnRestoreInsertCommand(Tuple<ModulesKey, List<IInfo>> data) {
         completeIndex.add(new CompleteIndexKey(data.o1), null);
         
         //current way (saves a list of iinfo)
-        for(Iterator<IInfo> it = data.o2.iterator();it.hasNext();){
-            IInfo info = it.next();
-            if(info.getPath() == null || info.getPath().length() == 0){
-                this.add(info, TOP_LEVEL);
-                
-            }else{
-                this.add(info, INNER);
-            }
-        }
+        this.addAll(data.o2);
     }
 
 
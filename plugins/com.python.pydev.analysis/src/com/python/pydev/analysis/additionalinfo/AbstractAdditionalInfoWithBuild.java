@@ -7,6 +7,7 @@
 package com.python.pydev.analysis.additionalinfo;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.python.pydev.core.DeltaSaver;
@@ -16,7 +17,6 @@ import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.Tuple;
 import org.python.pydev.core.callbacks.ICallback;
 import org.python.pydev.core.structure.FastStringBuffer;
-import org.python.pydev.parser.jython.SimpleNode;
 
 /**
  * @author fabioz
@@ -63,31 +63,28 @@ public abstract class AbstractAdditionalInfoWithBuild extends AbstractAdditional
     
     
     @Override
-    public void removeInfoFromModule(String moduleName, boolean generateDelta) {
-        synchronized (lock) {
-            super.removeInfoFromModule(moduleName, generateDelta);
-            if(generateDelta){
-                this.deltaSaver.addDeleteCommand(moduleName);
-                checkDeltaSize();
-            }
+    protected void onModuleRemoved(String moduleName, boolean generateDelta) {
+        super.onModuleRemoved(moduleName, generateDelta);
+        if(generateDelta){
+            this.deltaSaver.addDeleteCommand(moduleName);
+            checkDeltaSize();
         }
     }
     
 
     @Override
-    public List<IInfo> addAstInfo(SimpleNode node, ModulesKey key, boolean generateDelta) {
-        List<IInfo> addAstInfo = super.addAstInfo(node, key, generateDelta);
-        if(generateDelta && addAstInfo.size() > 0){
-            deltaSaver.addInsertCommand(new Tuple<ModulesKey, List<IInfo>>(key, addAstInfo));
+    protected void onModuleAdded(ModuleInfos moduleInfos, boolean generateDelta) {
+        super.onModuleAdded(moduleInfos, generateDelta);
+        if(generateDelta && moduleInfos.infos.size() > 0){
+            deltaSaver.addInsertCommand(new Tuple<ModulesKey, List<IInfo>>(moduleInfos.key, moduleInfos.infos));
             checkDeltaSize();
         }
-        return addAstInfo;
     }
 
     @Override
-    protected void restoreSavedInfo(Object o) throws MisconfigurationException {
+    protected void restoreSavedInfo(InfoBinaryFile.Reader reader) throws MisconfigurationException, IOException {
         synchronized (lock) {
-            super.restoreSavedInfo(o);
+            super.restoreSavedInfo(reader);
             //when we do a load, we have to process the deltas that may exist
             if(deltaSaver.availableDeltas() > 0){
                 deltaSaver.processDeltas(this);
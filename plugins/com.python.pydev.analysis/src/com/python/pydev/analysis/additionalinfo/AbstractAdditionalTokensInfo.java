@@ -10,18 +10,18 @@
 package com.python.pydev.analysis.additionalinfo;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.ZipFile;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -34,12 +34,12 @@ import org.python.pydev.core.ModulesKeyForZip;
 import org.python.pydev.core.ObjectsPool;
 import org.python.pydev.core.REF;
 import org.python.pydev.core.Tuple;
-import org.python.pydev.core.Tuple3;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.core.structure.FastStack;
 import org.python.pydev.core.structure.FastStringBuffer;
 import org.python.pydev.logging.DebugSettings;
+import org.python.pydev.parser.fastparser.DefinitionsSnapshot;
 import org.python.pydev.parser.fastparser.FastDefinitionsParser;
 import org.python.pydev.parser.jython.SimpleNode;
 import org.python.pydev.parser.jython.ast.ClassDef;
@@ -104,19 +104,25 @@ public abstract class AbstractAdditionalTokensInfo {
     
 
     /**
-     * indexes used so that we can access the information faster - it is ordered through a tree map, and should be
+     * Whether the infos should be kept in packed primitive arrays (PackedInfoStorage) instead of sets of IInfo 
+     * (InitialsInfoStorage). Only used when the info is created or cleared.
+     */
+    public static boolean USE_PACKED_STORAGE = true;
+
+    /**
+     * indexes used so that we can access the information faster - it is indexed by the initials, and should be
      * very fast to access given its initials.
      * 
      * It contains only top/level information for a module
      * 
-     * This map is persisted.
+     * This storage is persisted.
      */
-    protected TreeMap<String, Set<IInfo>> topLevelInitialsToInfo = new TreeMap<String, Set<IInfo>>();
+    protected IInfoStorage topLevelInfos;
     
     /**
      * indexes so that we can get 'inner information' from classes, such as methods or inner classes from a class 
      */
-    protected TreeMap<String, Set<IInfo>> innerInitialsToInfo = new TreeMap<String, Set<IInfo>>();
+    protected IInfoStorage innerInfos;
     
 
     /**
@@ -124,17 +130,60 @@ public abstract class AbstractAdditionalTokensInfo {
      */
     public void clearAllInfo() {
         synchronized (lock) {
-            if(topLevelInitialsToInfo != null){
-                topLevelInitialsToInfo.clear();
-            }
-            if(innerInitialsToInfo != null){
-                innerInitialsToInfo.clear();
-            }
+            setStorages(createStorages());
+            definitionsFingerprints.clear();
+        }
+    }
+    
+    /**
+     * @return new (empty) storages for the top level and inner infos.
+     */
+    private static IInfoStorage[] createStorages() {
+        if(USE_PACKED_STORAGE){
+            //the top level and inner infos share the strings (i.e.: module names)
+            PackedInfoStorage.StringPool pool = new PackedInfoStorage.StringPool();
+            return new IInfoStorage[]{new PackedInfoStorage(pool), new PackedInfoStorage(pool)};
+        }
+        return new IInfoStorage[]{new InitialsInfoStorage(), new InitialsInfoStorage()};
+    }
+    
+    /**
+     * Makes the given storages (top level and inner) the current ones.
+     */
+    private void setStorages(IInfoStorage[] storages) {
+        storagesLock.writeLock().lock();
+        try {
+            topLevelInfos = storages[0];
+            innerInfos = storages[1];
+        } finally {
+            storagesLock.writeLock().unlock();
         }
     }
         
     
+    /**
+     * Lock used by the writers (which change the info). The queries only get the read lock of the storagesLock, so, 
+     * they don't wait for a module to be parsed or for the info to be saved.
+     */
     protected Object lock = new Object();
+    
+    /**
+     * Guards the access to the topLevelInfos and innerInfos: the queries get the read lock (and may run concurrently)
+     * and the writers get the write lock (while holding 'lock') only to change the storages, so, the infos of a
+     * module are added or removed at once for the queries.
+     */
+    private final ReentrantReadWriteLock storagesLock = new ReentrantReadWriteLock();
+    
+    /**
+     * The fingerprint of the definitions indexed for a module (only kept for the modules whose info was set in
+     * replaceAstInfo: any other change to the info of the module removes it). Guarded by 'lock'.
+     */
+    private final Map<String, Long> definitionsFingerprints = new HashMap<String, Long>();
+    
+    /**
+     * The number of times replaceAstInfo didn't need to change anything.
+     */
+    private final AtomicLong skippedUpdates = new AtomicLong();
 
 
     /**
@@ -171,13 +220,10 @@ public abstract class AbstractAdditionalTokensInfo {
         
     };
 
-    /**
-     * 2: because we've removed some info (the hash is no longer saved)
-     * 3: Changed from string-> list to string->set
-     */
-    private static final int version = 3;
-
     public AbstractAdditionalTokensInfo(){
+        IInfoStorage[] storages = createStorages();
+        topLevelInfos = storages[0];
+        innerInfos = storages[1];
     }
     
     /**
@@ -187,29 +233,67 @@ public abstract class AbstractAdditionalTokensInfo {
      */
     protected void add(IInfo info, int doOn) {
         synchronized (lock) {
-            String name = info.getName();
-            String initials = getInitials(name);
-            TreeMap<String, Set<IInfo>> initialsToInfo;
-            
-            if(doOn == TOP_LEVEL){
-                if(info.getPath() != null && info.getPath().length() > 0){
-                    throw new RuntimeException("Error: the info being added is added as an 'top level' info, but has path. Info:"+info);
-                }
-                initialsToInfo = topLevelInitialsToInfo;
-                
-            }else if (doOn == INNER){
-                if(info.getPath() == null || info.getPath().length() == 0){
-                    throw new RuntimeException("Error: the info being added is added as an 'inner' info, but does not have a path. Info: "+info);
+            storagesLock.writeLock().lock();
+            try {
+                addToStorage(info, doOn);
+            } finally {
+                storagesLock.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * Adds the infos at once for the queries (the infos without a path are added as TOP_LEVEL and the others 
+     * as INNER).
+     */
+    protected void addAll(List<IInfo> infos) {
+        synchronized (lock) {
+            storagesLock.writeLock().lock();
+            try {
+                for(IInfo info:infos){
+                    addToStorage(info);
                 }
-                initialsToInfo = innerInitialsToInfo;
-                
-            }else{
-                throw new RuntimeException("List to add is invalid: "+doOn);
+            } finally {
+                storagesLock.writeLock().unlock();
             }
-            Set<IInfo> listForInitials = getAndCreateListForInitials(initials, initialsToInfo);
-            listForInitials.add(info);
         }
     }
+    
+    /**
+     * Adds the info as TOP_LEVEL if it has no path or as INNER otherwise.
+     * 
+     * Must be called with the write lock of the storagesLock held.
+     */
+    private void addToStorage(IInfo info) {
+        String path = info.getPath();
+        addToStorage(info, path == null || path.length() == 0 ? TOP_LEVEL : INNER);
+    }
+    
+    /**
+     * Must be called with the write lock of the storagesLock held.
+     */
+    private void addToStorage(IInfo info, int doOn) {
+        String name = info.getName();
+        String initials = getInitials(name);
+        IInfoStorage storage;
+        
+        if(doOn == TOP_LEVEL){
+            if(info.getPath() != null && info.getPath().length() > 0){
+                throw new RuntimeException("Error: the info being added is added as an 'top level' info, but has path. Info:"+info);
+            }
+            storage = topLevelInfos;
+            
+        }else if (doOn == INNER){
+            if(info.getPath() == null || info.getPath().length() == 0){
+                throw new RuntimeException("Error: the info being added is added as an 'inner' info, but does not have a path. Info: "+info);
+            }
+            storage = innerInfos;
+            
+        }else{
+            throw new RuntimeException("List to add is invalid: "+doOn);
+        }
+        storage.add(info, initials);
+    }
 
     /**
      * @param name the name from where we want to get the initials
@@ -222,21 +306,7 @@ public abstract class AbstractAdditionalTokensInfo {
         return name.substring(0, NUMBER_OF_INITIALS_TO_INDEX).toLowerCase();
     }
     
-    /**
-     * @param initials the initials we are looking for
-     * @param initialsToInfo this is the list we should use (top level or inner)
-     * @return the list of tokens with the specified initials (must be exact match)
-     */
-    protected Set<IInfo> getAndCreateListForInitials(String initials, TreeMap<String, Set<IInfo>> initialsToInfo) {
-        Set<IInfo> lInfo = initialsToInfo.get(initials);
-        if(lInfo == null){
-            lInfo = new HashSet<IInfo>();
-            initialsToInfo.put(initials, lInfo);
-        }
-        return lInfo;
-    }
-
-    private IInfo addAssignTargets(ASTEntry entry, String moduleName, int doOn, String path, boolean lastIsMethod ) {
+    private IInfo createAssignTargetInfo(ASTEntry entry, String moduleName, String path, boolean lastIsMethod ) {
         String rep = NodeUtils.getFullRepresentationString(entry.node);
         if(lastIsMethod){
             List<String> parts = StringUtils.dotSplit(rep);
@@ -244,26 +314,24 @@ public abstract class AbstractAdditionalTokensInfo {
                 //at least 2 parts are required
                 if(parts.get(0).equals("self")){
                     rep = parts.get(1);
-                    //no intern construct (locked in the loop that calls this method)
+                    //no intern construct (the strings are interned here)
                     AttrInfo info = new AttrInfo(
-                            ObjectsPool.internUnsynched(rep), 
+                            ObjectsPool.intern(rep), 
                             moduleName, 
-                            ObjectsPool.internUnsynched(path),
+                            ObjectsPool.intern(path),
                             false
                     );
-                    add(info, doOn);
                     return info;
                 }
             }
         }else{
-            //no intern construct (locked in the loop that calls this method)
+            //no intern construct (the strings are interned here)
             AttrInfo info = new AttrInfo(
-                    ObjectsPool.internUnsynched(FullRepIterable.getFirstPart(rep)), 
+                    ObjectsPool.intern(FullRepIterable.getFirstPart(rep)), 
                     moduleName, 
-                    ObjectsPool.internUnsynched(path), 
+                    ObjectsPool.intern(path), 
                     false
             );
-            add(info, doOn);
             return info;
         }
         return null;
@@ -271,15 +339,50 @@ public abstract class AbstractAdditionalTokensInfo {
     
     
     public List<IInfo> addAstInfo(ModulesKey key, boolean generateDelta) throws Exception {
+        SimpleNode node = getDefinitions(key, null);
+        if(node == null){
+            return null;
+        }
+        return addAstInfo(node, key, generateDelta);
+    }
+    
+    /**
+     * Gets the definitions for a module (without adding them to this info). May be called from any thread.
+     * 
+     * @param key the module for which we want the definitions
+     * @param zipFile the zip file which contains the module if it was already opened (i.e.: when getting the 
+     * definitions for many modules in the same zip) or null to open it if needed.
+     * 
+     * @return the definitions found (as returned by the FastDefinitionsParser) or null if unable to get them.
+     */
+    public SimpleNode getDefinitions(ModulesKey key, ZipFile zipFile) throws Exception {
         boolean isZipModule = key instanceof ModulesKeyForZip;
         ModulesKeyForZip modulesKeyForZip = null;
         if(isZipModule){
             modulesKeyForZip = (ModulesKeyForZip) key;
         }
 
+        //the snapshot is checked against the file before it's read (so, a change while reading it invalidates it)
+        DefinitionsSnapshot snapshot = getDefinitionsSnapshot();
+        String zipPath = isZipModule ? modulesKeyForZip.zipModulePath : null;
+        long lastModified = 0;
+        long size = 0;
+        if(snapshot != null){
+            lastModified = key.file.lastModified();
+            size = key.file.length();
+            SimpleNode node = snapshot.get(key.file, zipPath, lastModified, size);
+            if(node != null){
+                return node;
+            }
+        }
+
         Object doc;
         if(isZipModule){
-            doc = REF.getCustomReturnFromZip(modulesKeyForZip.file, modulesKeyForZip.zipModulePath, null);
+            if(zipFile != null){
+                doc = REF.getCustomReturnFromZip(zipFile, modulesKeyForZip.zipModulePath, null);
+            }else{
+                doc = REF.getCustomReturnFromZip(modulesKeyForZip.file, modulesKeyForZip.zipModulePath, null);
+            }
             
         }else{
             doc = REF.getCustomReturnFromFile(key.file, true, null);
@@ -306,130 +409,361 @@ public abstract class AbstractAdditionalTokensInfo {
         }
         
         SimpleNode node = FastDefinitionsParser.parse(charArray, key.file.getName());
+        if(node != null && snapshot != null){
+            snapshot.put(key.file, zipPath, lastModified, size, node);
+        }
+        return node;
+    }
+    
+    /**
+     * Adds what was created for many modules at once (the lock is acquired only once for all of them, but the 
+     * queries may still run between the modules).
+     * 
+     * @param created what was created for each module (see createModuleInfos).
+     */
+    public void addModuleInfos(List<ModuleInfos> created, boolean generateDelta) {
+        synchronized (this.lock) {
+            for(ModuleInfos moduleInfos:created){
+                addModuleInfos(moduleInfos, generateDelta);
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot with the definitions of the modules (so that addAstInfo(ModulesKey, boolean) does not need
+     * to parse the modules that didn't change) or null if this info does not keep one.
+     */
+    protected DefinitionsSnapshot getDefinitionsSnapshot() {
+        return null;
+    }
+
+    /**
+     * Replaces the info of a module (as removeInfoFromModule followed by addAstInfo) unless the definitions that 
+     * would be indexed from the given ast are the same ones already indexed for it (i.e.: only the body of some
+     * function changed), in which case the infos are kept (so, no delta is generated) and only onDefinitionsUnchanged
+     * is called.
+     * 
+     * The new infos are created before getting any lock and the previous ones are replaced by them holding the
+     * write lock of the storages only for the change in the storages (so, the queries see the previous infos of the
+     * module or the new ones, but never the module without any info). The other information kept for the module
+     * is updated after that (see onModuleRemoved and onModuleAdded).
+     * 
+     * @return false if the info of the module was kept as it was.
+     */
+    public boolean replaceAstInfo(SimpleNode node, ModulesKey key, boolean generateDelta) {
+        if(key == null || key.name == null){
+            return false;
+        }
         if(node == null){
-            return null;
+            removeInfoFromModule(key.name, generateDelta);
+            return true;
+        }
+        Long fingerprint;
+        try {
+            fingerprint = getDefinitionsFingerprint(node);
+        } catch (Exception e) {
+            Log.log(e);
+            fingerprint = null; //just replace it
+        }
+        if(fingerprint != null){
+            boolean unchanged;
+            synchronized (lock) {
+                unchanged = isDefinitionsFingerprint(key.name, fingerprint);
+            }
+            if(unchanged){
+                onDefinitionsUnchanged(key);
+                return false;
+            }
         }
         
-        return addAstInfo(node, key, generateDelta);
+        ModuleInfos moduleInfos = createModuleInfos(node, key, null);
+        if(moduleInfos == null){
+            moduleInfos = new ModuleInfos(node, key, new ArrayList<IInfo>());
+        }
+        
+        synchronized (lock) {
+            //check again: it could've been replaced while the infos were created (in which case the other information
+            //kept for the module is also up to date)
+            if(fingerprint != null && isDefinitionsFingerprint(key.name, fingerprint)){
+                return false;
+            }
+            if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
+                Log.toLogFile(this, "Replacing ast info of: "+key.name);
+            }
+            storagesLock.writeLock().lock();
+            try {
+                topLevelInfos.removeModule(key.name);
+                innerInfos.removeModule(key.name);
+                for(IInfo info:moduleInfos.infos){
+                    addToStorage(info);
+                }
+            } finally {
+                storagesLock.writeLock().unlock();
+            }
+            onModuleRemoved(key.name, generateDelta);
+            onModuleAdded(moduleInfos, generateDelta);
+            if(fingerprint != null){
+                definitionsFingerprints.put(key.name, fingerprint);
+            }else{
+                definitionsFingerprints.remove(key.name);
+            }
+        }
+        return true;
     }
-
+    
+    /**
+     * Must be called holding 'lock'.
+     * 
+     * @return true if the given fingerprint is the one of the definitions indexed for the module (in which case
+     * the update is counted as skipped).
+     */
+    private boolean isDefinitionsFingerprint(String moduleName, long fingerprint) {
+        Long current = definitionsFingerprints.get(moduleName);
+        if(current != null && current.longValue() == fingerprint){
+            skippedUpdates.incrementAndGet();
+            if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
+                Log.toLogFile(this, "Definitions unchanged (ast info kept): "+moduleName);
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @return the number of times replaceAstInfo found that the definitions of a module didn't change.
+     */
+    public long getSkippedUpdates() {
+        return skippedUpdates.get();
+    }
+    
+    /**
+     * @return a hash of what's indexed from the definitions of the given ast: the kind, name and the path to the
+     * root of each entry (the same entries used in addAstInfo are visited, but no info is created).
+     */
+    public static long getDefinitionsFingerprint(SimpleNode node) throws Exception {
+        long fingerprint = 0xcbf29ce484222325L;
+        Iterator<ASTEntry> entries = getInnerEntriesForAST(node).o2;
+        while(entries.hasNext()){
+            ASTEntry entry = entries.next();
+            fingerprint = addToFingerprint(fingerprint, entry, true);
+            for(ASTEntry parent = entry.parent; parent != null; parent = parent.parent){
+                fingerprint = addToFingerprint(fingerprint, parent, false);
+            }
+            fingerprint = addToFingerprint(fingerprint, ";");
+        }
+        return fingerprint;
+    }
+    
+    private static long addToFingerprint(long fingerprint, ASTEntry entry, boolean fullRep) {
+        SimpleNode node = entry.node;
+        fingerprint = addToFingerprint(fingerprint, node.getClass().getName());
+        if(fullRep && !(node instanceof ClassDef) && !(node instanceof FunctionDef)){
+            //assign targets are indexed with their full representation (i.e.: self.a)
+            fingerprint = addToFingerprint(fingerprint, NodeUtils.getFullRepresentationString(node));
+        }else{
+            fingerprint = addToFingerprint(fingerprint, entry.getName());
+        }
+        return fingerprint;
+    }
+    
+    /**
+     * FNV-1a over the chars of the string (and a separator).
+     */
+    private static long addToFingerprint(long fingerprint, String s) {
+        if(s != null){
+            int len = s.length();
+            for(int i=0;i<len;i++){
+                fingerprint ^= s.charAt(i);
+                fingerprint *= 0x100000001b3L;
+            }
+        }
+        fingerprint ^= 0xFFFF;
+        fingerprint *= 0x100000001b3L;
+        return fingerprint;
+    }
+    
     /**
      * Adds ast info information for a module.
      * 
+     * The infos are created without holding any lock and are added at once (so, the queries see all the infos of
+     * the module or none of them).
+     * 
      * @param m the module we want to add to the info
      */
     public List<IInfo> addAstInfo(SimpleNode node, ModulesKey key, boolean generateDelta) {
-    	List <IInfo> createdInfos = new ArrayList<IInfo>();
-    	if(node == null || key.name == null){
-    		return createdInfos;
-    	}
-    	try {
-			Tuple<DefinitionsASTIteratorVisitor, Iterator<ASTEntry>> tup = getInnerEntriesForAST(node);
-			if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
-			    Log.toLogFile(this, "Adding ast info to: "+key.name);
-			}
-			
-			try {
-			    Iterator<ASTEntry> entries = tup.o2;
-			
-			    FastStack<SimpleNode> tempStack = new FastStack<SimpleNode>();
-			    
-			    synchronized (this.lock) {
-			        synchronized (ObjectsPool.lock) {
-                        key.name = ObjectsPool.internUnsynched(key.name);
-                        
-    			        while (entries.hasNext()) {
-    			            ASTEntry entry = entries.next();
-    			            IInfo infoCreated = null;
-    			            
-    			            if(entry.parent == null){ //we only want those that are in the global scope
-    			                if(entry.node instanceof ClassDef){
-    			                    //no intern construct (locked in this loop)
-    			                    ClassInfo info = new ClassInfo(
-    			                            ObjectsPool.internUnsynched(((NameTok)((ClassDef)entry.node).name).id), 
-    			                            key.name, 
-    			                            null, 
-    			                            false
-    			                    );
-                                    add(info, TOP_LEVEL);
-                                    infoCreated = info;
-    			                    
-    			                }else if(entry.node instanceof FunctionDef){
-    			                    //no intern construct (locked in this loop)
-    			                    FuncInfo info2 = new FuncInfo(
-    			                            ObjectsPool.internUnsynched(((NameTok)((FunctionDef) entry.node).name).id), 
-    			                            key.name, 
-    			                            null,
-    			                            false
-    			                    );
-                                    add(info2, TOP_LEVEL);
-                                    infoCreated = info2;
-    			                    
-    			                }else{
-    			                    //it is an assign
-    			                	infoCreated = this.addAssignTargets(entry, key.name, TOP_LEVEL, null, false);
-    			                	
-    			                	
-    			                	
-    			                }
-    			            }else{
-    			                if(entry.node instanceof ClassDef || entry.node instanceof FunctionDef){
-    			                    //ok, it has a parent, so, let's check to see if the path we got only has class definitions
-    			                    //as the parent (and get that path)
-    			                    Tuple<String,Boolean> pathToRoot = this.getPathToRoot(entry, false, false, tempStack);
-    			                    if(pathToRoot != null && pathToRoot.o1 != null && pathToRoot.o1.length() > 0){
-    			                        //if the root is not valid, it is not only classes in the path (could be a method inside
-    			                        //a method, or something similar).
-    			                        
-    			                        if(entry.node instanceof ClassDef){
-    		                                ClassInfo info = new ClassInfo(
-    		                                        ObjectsPool.internUnsynched(((NameTok)((ClassDef)entry.node).name).id), 
-    		                                        key.name, 
-    		                                        ObjectsPool.internUnsynched(pathToRoot.o1),
-    		                                        false
-    		                                );
-                                            add(info, INNER);
-                                            infoCreated = info;
-    		                                
-    		                            }else{
-    		                                //FunctionDef
-    		                                FuncInfo info2 = new FuncInfo(
-    		                                        ObjectsPool.internUnsynched(((NameTok)((FunctionDef) entry.node).name).id), 
-    		                                        key.name, 
-    		                                        ObjectsPool.internUnsynched(pathToRoot.o1),
-    		                                        false
-    		                                );
-                                            add(info2, INNER);
-                                            infoCreated = info2;
-    		                                
-    		                            }
-    			                    }
-    			                }else{
-    			                    //it is an assign
-    			                    Tuple<String,Boolean> pathToRoot = this.getPathToRoot(entry, true, false, tempStack);
-    			                    if(pathToRoot != null && pathToRoot.o1 != null && pathToRoot.o1.length() > 0){
-    			                    	infoCreated = this.addAssignTargets(entry, key.name, INNER, pathToRoot.o1, pathToRoot.o2);
-    			                    }
-    			                }
-    			            }
-    			            
-    			            if(infoCreated != null){
-    			            	createdInfos.add(infoCreated);
-    			            }
-    			            
-    			        } //end while
-    			        
-			        }//end lock ObjectsPool.lock
-			        
-			    }//end this.lock        
-			    
-			} catch (Exception e) {
-			    Log.log(e);
-			}
-		} catch (Exception e) {
-			Log.log(e);
-		}
-		return createdInfos;
+        if(node == null || key == null || key.name == null){
+            return new ArrayList<IInfo>();
+        }
+        ModuleInfos moduleInfos = createModuleInfos(node, key, null);
+        if(moduleInfos == null){
+            return new ArrayList<IInfo>();
+        }
+        addModuleInfos(moduleInfos, generateDelta);
+        return moduleInfos.infos;
+    }
+    
+    /**
+     * Adds the infos created for a module.
+     */
+    private void addModuleInfos(ModuleInfos moduleInfos, boolean generateDelta) {
+        if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
+            Log.toLogFile(this, "Adding ast info to: "+moduleInfos.key.name);
+        }
+        synchronized (lock) {
+            definitionsFingerprints.remove(moduleInfos.key.name);
+            addAll(moduleInfos.infos);
+            onModuleAdded(moduleInfos, generateDelta);
+        }
+    }
+    
+    /**
+     * What's created for a module (without holding any lock) to be added to this info.
+     * 
+     * Subclasses that keep other information for the modules may subclass it to keep what they need to create
+     * from the ast (see createModuleInfos).
+     */
+    public static class ModuleInfos {
+        
+        public final SimpleNode node;
+        public final ModulesKey key;
+        public final List<IInfo> infos;
+        
+        public ModuleInfos(SimpleNode node, ModulesKey key, List<IInfo> infos) {
+            this.node = node;
+            this.key = key;
+            this.infos = infos;
+        }
+    }
+    
+    /**
+     * Creates what should be added for a module. May be called from any thread (but not holding the lock).
+     * 
+     * @param zipFile the zip file which contains the module if it was already opened or null to open it if needed.
+     * 
+     * @return the infos created for the module or null if some error happened.
+     */
+    public ModuleInfos createModuleInfos(SimpleNode node, ModulesKey key, ZipFile zipFile) {
+        List<IInfo> infos = createInfos(node, key);
+        if(infos == null){
+            return null;
+        }
+        return new ModuleInfos(node, key, infos);
+    }
+    
+    /**
+     * Called holding 'lock' (but not the write lock of the storages) after the infos of a module are added (so, 
+     * subclasses may update the other information they keep for the module).
+     */
+    protected void onModuleAdded(ModuleInfos moduleInfos, boolean generateDelta) {
+    }
+    
+    /**
+     * Called holding 'lock' (but not the write lock of the storages) after the infos of a module are removed.
+     */
+    protected void onModuleRemoved(String moduleName, boolean generateDelta) {
+    }
+    
+    /**
+     * Called without holding any lock when replaceAstInfo keeps the infos of a module because its definitions didn't 
+     * change (so, subclasses may still update the other information they keep for the module).
+     */
+    protected void onDefinitionsUnchanged(ModulesKey key) {
+    }
+    
+    /**
+     * Creates the infos for the definitions in the given ast (without adding them). May be called from any thread.
+     * 
+     * @return the infos created for the module or null if some error happened.
+     */
+    protected List<IInfo> createInfos(SimpleNode node, ModulesKey key) {
+        List <IInfo> createdInfos = new ArrayList<IInfo>();
+        try {
+            Tuple<DefinitionsASTIteratorVisitor, Iterator<ASTEntry>> tup = getInnerEntriesForAST(node);
+            
+            try {
+                Iterator<ASTEntry> entries = tup.o2;
+            
+                FastStack<SimpleNode> tempStack = new FastStack<SimpleNode>();
+                key.name = ObjectsPool.intern(key.name);
+                
+                while (entries.hasNext()) {
+                    ASTEntry entry = entries.next();
+                    IInfo infoCreated = null;
+                    
+                    if(entry.parent == null){ //we only want those that are in the global scope
+                        if(entry.node instanceof ClassDef){
+                            //no intern construct (the strings are interned here)
+                            infoCreated = new ClassInfo(
+                                    ObjectsPool.intern(((NameTok)((ClassDef)entry.node).name).id), 
+                                    key.name, 
+                                    null, 
+                                    false
+                            );
+                            
+                        }else if(entry.node instanceof FunctionDef){
+                            //no intern construct (the strings are interned here)
+                            infoCreated = new FuncInfo(
+                                    ObjectsPool.intern(((NameTok)((FunctionDef) entry.node).name).id), 
+                                    key.name, 
+                                    null,
+                                    false
+                            );
+                            
+                        }else{
+                            //it is an assign
+                            infoCreated = this.createAssignTargetInfo(entry, key.name, null, false);
+                        }
+                    }else{
+                        if(entry.node instanceof ClassDef || entry.node instanceof FunctionDef){
+                            //ok, it has a parent, so, let's check to see if the path we got only has class definitions
+                            //as the parent (and get that path)
+                            Tuple<String,Boolean> pathToRoot = this.getPathToRoot(entry, false, false, tempStack);
+                            if(pathToRoot != null && pathToRoot.o1 != null && pathToRoot.o1.length() > 0){
+                                //if the root is not valid, it is not only classes in the path (could be a method inside
+                                //a method, or something similar).
+                                
+                                if(entry.node instanceof ClassDef){
+                                    infoCreated = new ClassInfo(
+                                            ObjectsPool.intern(((NameTok)((ClassDef)entry.node).name).id), 
+                                            key.name, 
+                                            ObjectsPool.intern(pathToRoot.o1),
+                                            false
+                                    );
+                                    
+                                }else{
+                                    //FunctionDef
+                                    infoCreated = new FuncInfo(
+                                            ObjectsPool.intern(((NameTok)((FunctionDef) entry.node).name).id), 
+                                            key.name, 
+                                            ObjectsPool.intern(pathToRoot.o1),
+                                            false
+                                    );
+                                }
+                            }
+                        }else{
+                            //it is an assign
+                            Tuple<String,Boolean> pathToRoot = this.getPathToRoot(entry, true, false, tempStack);
+                            if(pathToRoot != null && pathToRoot.o1 != null && pathToRoot.o1.length() > 0){
+                                infoCreated = this.createAssignTargetInfo(entry, key.name, pathToRoot.o1, pathToRoot.o2);
+                            }
+                        }
+                    }
+                    
+                    if(infoCreated != null){
+                        createdInfos.add(infoCreated);
+                    }
+                    
+                } //end while
+                
+            } catch (Exception e) {
+                Log.log(e);
+                return null;
+            }
+        } catch (Exception e) {
+            Log.log(e);
+            return null;
+        }
+        return createdInfos;
     }
     
     /**
@@ -449,22 +783,12 @@ public abstract class AbstractAdditionalTokensInfo {
      */
     public Set<String> getAllModulesWithTokens() {
         HashSet<String> ret = new HashSet<String>();
-        synchronized (lock) {
-            Set<Entry<String, Set<IInfo>>> entrySet = this.topLevelInitialsToInfo.entrySet();
-            for (Entry<String, Set<IInfo>> entry : entrySet) {
-                Set<IInfo> value = entry.getValue();
-                for (IInfo info : value) {
-                    ret.add(info.getDeclaringModuleName());
-                }
-            }
-            
-            entrySet = this.innerInitialsToInfo.entrySet();
-            for (Entry<String, Set<IInfo>> entry : entrySet) {
-                Set<IInfo> value = entry.getValue();
-                for (IInfo info : value) {
-                    ret.add(info.getDeclaringModuleName());
-                }
-            }
+        storagesLock.readLock().lock();
+        try {
+            this.topLevelInfos.getModules(ret);
+            this.innerInfos.getModules(ret);
+        } finally {
+            storagesLock.readLock().unlock();
         }
         return ret;
 
@@ -546,35 +870,20 @@ public abstract class AbstractAdditionalTokensInfo {
             Log.toLogFile(this, "Removing ast info from: "+moduleName);
         }
         synchronized (lock) {
-            removeInfoFromMap(moduleName, topLevelInitialsToInfo);
-            removeInfoFromMap(moduleName, innerInitialsToInfo);
-        }
-        
-    }
-
-    /**
-     * @param moduleName
-     * @param initialsToInfo
-     */
-    private void removeInfoFromMap(String moduleName, TreeMap<String, Set<IInfo>> initialsToInfo) {
-        Iterator<Set<IInfo>> itListOfInfo = initialsToInfo.values().iterator();
-        while (itListOfInfo.hasNext()) {
-
-            Iterator<IInfo> it = itListOfInfo.next().iterator();
-            while (it.hasNext()) {
-
-                IInfo info = it.next();
-                if(info != null && info.getDeclaringModuleName() != null){
-                    if(info.getDeclaringModuleName().equals(moduleName)){
-                        it.remove();
-                    }
-                }
+            definitionsFingerprints.remove(moduleName);
+            storagesLock.writeLock().lock();
+            try {
+                topLevelInfos.removeModule(moduleName);
+                innerInfos.removeModule(moduleName);
+            } finally {
+                storagesLock.writeLock().unlock();
             }
+            onModuleRemoved(moduleName, generateDelta);
         }
+        
     }
     
 
-
     /**
      * This is the function for which we are most optimized!
      * 
@@ -582,58 +891,48 @@ public abstract class AbstractAdditionalTokensInfo {
      * @return a list of info, all starting with the given qualifier
      */
     public Collection<IInfo> getTokensStartingWith(String qualifier, int getWhat) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, startingWithFilter, true);
-        }
+        return getWithFilter(qualifier, getWhat, startingWithFilter, true);
     }
 
 
     public Collection<IInfo> getTokensEqualTo(String qualifier, int getWhat) {
-        synchronized (lock) {
-            return getWithFilter(qualifier, getWhat, equalsFilter, false);
-        }
+        return getWithFilter(qualifier, getWhat, equalsFilter, false);
     }
     
+    /**
+     * Only gets the read lock (so, it does not wait while a module is being indexed, only while its infos are added).
+     */
     protected Collection<IInfo> getWithFilter(String qualifier, int getWhat, Filter filter, boolean useLowerCaseQual) {
-        synchronized (lock) {
-            List<IInfo> toks = new ArrayList<IInfo>();
-            
+        List<IInfo> toks = new ArrayList<IInfo>();
+        storagesLock.readLock().lock();
+        try {
             if((getWhat & TOP_LEVEL) != 0){
-                getWithFilter(qualifier, topLevelInitialsToInfo, toks, filter, useLowerCaseQual);
+                getWithFilter(qualifier, topLevelInfos, toks, filter, useLowerCaseQual);
             }
             if((getWhat & INNER) != 0){
-                getWithFilter(qualifier, innerInitialsToInfo, toks, filter, useLowerCaseQual);
+                getWithFilter(qualifier, innerInfos, toks, filter, useLowerCaseQual);
             }
-            return toks;
+        } finally {
+            storagesLock.readLock().unlock();
         }
+        return toks;
     }
         
     
 
     /**
      * @param qualifier
-     * @param initialsToInfo this is where we are going to get the info from (currently: inner or top level list)
+     * @param storage this is where we are going to get the info from (currently: inner or top level)
      * @param toks (out) the tokens will be added to this list
      * @return
      */
-    protected void getWithFilter(String qualifier, TreeMap<String, Set<IInfo>> initialsToInfo, Collection<IInfo> toks, Filter filter, boolean useLowerCaseQual) {
+    protected void getWithFilter(String qualifier, IInfoStorage storage, Collection<IInfo> toks, Filter filter, boolean useLowerCaseQual) {
         String initials = getInitials(qualifier);
         String qualToCompare = qualifier;
         if(useLowerCaseQual){
             qualToCompare = qualifier.toLowerCase();
         }
-        
-        //get until the end of the alphabet
-        SortedMap<String, Set<IInfo>> subMap = initialsToInfo.subMap(initials, initials+"z");
-        
-        for (Set<IInfo> listForInitials : subMap.values()) {
-            
-            for (IInfo info : listForInitials) {
-                if(filter.doCompare(qualToCompare, info)){
-                    toks.add(info);
-                }
-            }
-        }
+        storage.getWithFilter(initials, qualToCompare, filter, toks);
     }
     
 
@@ -641,24 +940,15 @@ public abstract class AbstractAdditionalTokensInfo {
      * @return all the tokens that are in this info (top level or inner)
      */
     public Collection<IInfo> getAllTokens(){
-        synchronized (lock) {
-            Collection<Set<IInfo>> lInfo = this.topLevelInitialsToInfo.values();
-            
-            ArrayList<IInfo> toks = new ArrayList<IInfo>();
-            for (Set<IInfo> list : lInfo) {
-                for (IInfo info : list) {
-                    toks.add(info);
-                }
-            }
-
-            lInfo = this.innerInitialsToInfo.values();
-            for (Set<IInfo> list : lInfo) {
-                for (IInfo info : list) {
-                    toks.add(info);
-                }
-            }
-            return toks;
+        ArrayList<IInfo> toks = new ArrayList<IInfo>();
+        storagesLock.readLock().lock();
+        try {
+            this.topLevelInfos.getAll(toks);
+            this.innerInfos.getAll(toks);
+        } finally {
+            storagesLock.readLock().unlock();
         }
+        return toks;
     }
     
     /**
@@ -711,21 +1001,35 @@ public abstract class AbstractAdditionalTokensInfo {
             if(DEBUG_ADDITIONAL_INFO){
                 System.out.println("Saving info "+this.getClass().getName()+" to file (size = "+getAllTokens().size()+") "+pathToSave);
             }
-            REF.writeToFile(getInfoToSave(), pathToSave);
+            try {
+                InfoBinaryFile.Writer writer = new InfoBinaryFile.Writer();
+                writeInfoToSave(writer);
+                writer.write(pathToSave);
+            } catch (IOException e) {
+                Log.log("Unable to save the additional info to: "+pathToSave, e);
+            }
         }
     }
 
     /**
-     * @return the information to be saved (if overridden, restoreSavedInfo should be overridden too)
+     * Adds the information to be saved to the writer (if overridden, restoreSavedInfo should be overridden too)
      */
-    @SuppressWarnings("unchecked")
-    protected Object getInfoToSave(){
+    protected void writeInfoToSave(InfoBinaryFile.Writer writer) throws IOException{
         synchronized (lock) {
-            return new Tuple3(
-                this.topLevelInitialsToInfo, 
-                this.innerInitialsToInfo, 
-                AbstractAdditionalTokensInfo.version);
+            writer.addInfos(getAllInfos(this.topLevelInfos));
+            writer.addInfos(getAllInfos(this.innerInfos));
+        }
+    }
+    
+    private List<IInfo> getAllInfos(IInfoStorage storage) {
+        ArrayList<IInfo> ret = new ArrayList<IInfo>();
+        storagesLock.readLock().lock();
+        try {
+            storage.getAll(ret);
+        } finally {
+            storagesLock.readLock().unlock();
         }
+        return ret;
     }
     
     /**
@@ -743,7 +1047,7 @@ public abstract class AbstractAdditionalTokensInfo {
 			}
             if(file.exists() && file.isFile()){
                 try {
-                    restoreSavedInfo(IOUtils.readFromFile(file));
+                    restoreSavedInfo(InfoBinaryFile.read(file));
                     setAsDefaultInfo();
                     return true;
                 } catch (Throwable e) {
@@ -758,22 +1062,23 @@ public abstract class AbstractAdditionalTokensInfo {
     }
 
     /**
-     * Restores the saved info in the object (if overridden, getInfoToSave should be overridden too)
-     * @param o the read object from the file
+     * Restores the saved info in the object (if overridden, writeInfoToSave should be overridden too)
+     * @param reader the file read (it was written in the current version) 
      * @throws MisconfigurationException 
      */
-    @SuppressWarnings("unchecked")
-    protected void restoreSavedInfo(Object o) throws MisconfigurationException{
+    protected void restoreSavedInfo(InfoBinaryFile.Reader reader) throws MisconfigurationException, IOException{
         synchronized (lock) {
-            Tuple3 readFromFile = (Tuple3) o;
-            TreeMap o1 = (TreeMap) readFromFile.o1;
-            TreeMap o2 = (TreeMap) readFromFile.o2;
-            
-            this.topLevelInitialsToInfo = (TreeMap<String, Set<IInfo>>) o1;
-            this.innerInitialsToInfo = (TreeMap<String, Set<IInfo>>) o2;
-            if(AbstractAdditionalTokensInfo.version != (Integer)readFromFile.o3){
-                throw new RuntimeException("I/O version doesn't match. Rebuilding internal info.");
+            if(reader.getInfoListsCount() != 2){
+                throw new IOException("Expected the top level and inner infos. Rebuilding internal info.");
             }
+            //the queries use the current info until the restored one is ready
+            IInfoStorage[] storages = createStorages();
+            for(int i=0;i<2;i++){
+                for (IInfo info : reader.getInfos(i)) {
+                    storages[i].add(info, getInitials(info.getName()));
+                }
+            }
+            setStorages(storages);
         }
     }
 
@@ -786,35 +1091,28 @@ public abstract class AbstractAdditionalTokensInfo {
 
     @Override
     public String toString() {
-        synchronized (lock) {
-            FastStringBuffer buffer = new FastStringBuffer();
-            buffer.append("AdditionalInfo{");
-    
-            buffer.append("topLevel=[");
-            entrySetToString(buffer, this.topLevelInitialsToInfo.entrySet());
-            buffer.append("]\n");
-            buffer.append("inner=[");
-            entrySetToString(buffer, this.innerInitialsToInfo.entrySet());
-            buffer.append("]");
-    
-            buffer.append("}");
-            return buffer.toString();
-        }
+        FastStringBuffer buffer = new FastStringBuffer();
+        buffer.append("AdditionalInfo{");
+
+        buffer.append("topLevel=[");
+        infosToString(buffer, this.topLevelInfos);
+        buffer.append("]\n");
+        buffer.append("inner=[");
+        infosToString(buffer, this.innerInfos);
+        buffer.append("]");
+
+        buffer.append("}");
+        return buffer.toString();
     }
 
     /**
      * @param buffer
-     * @param name
+     * @param storage
      */
-    private void entrySetToString(FastStringBuffer buffer, Set<Entry<String, Set<IInfo>>> name) {
-        synchronized (lock) {
-            for (Entry<String, Set<IInfo>> entry : name) {
-                Set<IInfo> value = entry.getValue();
-                for (IInfo info : value) {
-                    buffer.append(info.toString());
-                    buffer.append("\n");
-                }
-            }
+    private void infosToString(FastStringBuffer buffer, IInfoStorage storage) {
+        for (IInfo info : getAllInfos(storage)) {
+            buffer.append(info.toString());
+            buffer.append("\n");
         }
     }
 
@@ -832,24 +1130,3 @@ public abstract class AbstractAdditionalTokensInfo {
 
 
 }
-
-class IOUtils {
-
-    /**
-     * @param astOutputFile
-     * @return
-     */
-    public static Object readFromFile(File astOutputFile) {
-        try {
-            InputStream input = new FileInputStream(astOutputFile);
-            ObjectInputStream in = new ObjectInputStream(input);
-            Object o = in.readObject();
-            in.close();
-            input.close();
-            return o;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-}
\ No newline at end of file
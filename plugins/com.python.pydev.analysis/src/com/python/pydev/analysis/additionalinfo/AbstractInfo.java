@@ -37,11 +37,9 @@ public abstract class AbstractInfo implements IInfo, Serializable{
 
 
     public AbstractInfo(String name, String moduleDeclared, String path) {
-        synchronized (ObjectsPool.lock) {
-            this.name = ObjectsPool.internUnsynched(name);
-            this.moduleDeclared = ObjectsPool.internUnsynched(moduleDeclared);
-            this.path = ObjectsPool.internUnsynched(path);
-        }
+        this.name = ObjectsPool.intern(name);
+        this.moduleDeclared = ObjectsPool.intern(moduleDeclared);
+        this.path = ObjectsPool.intern(path);
     }
     
     /**
@@ -21,6 +21,7 @@ import org.python.pydev.core.MisconfigurationException;
 import org.python.pydev.core.Tuple;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
+import org.python.pydev.parser.fastparser.DefinitionsSnapshot;
 
 import com.python.pydev.analysis.AnalysisPlugin;
 
@@ -97,6 +98,26 @@ public class AdditionalSystemInterpreterInfo extends AbstractAdditionalInfoWithB
     }
     
     
+    private DefinitionsSnapshot definitionsSnapshot;
+    
+    /**
+     * The definitions of the interpreter modules are kept in the disk so that recreating the index only has
+     * to parse the modules that changed.
+     */
+    @Override
+    protected synchronized DefinitionsSnapshot getDefinitionsSnapshot() {
+        if(definitionsSnapshot == null){
+            definitionsSnapshot = new DefinitionsSnapshot(
+                    new File(getPersistingFolder(), manager.getManagerRelatedName() + ".pydevdefinitions"));
+        }
+        return definitionsSnapshot;
+    }
+    
+    @Override
+    public void save() {
+        super.save();
+        getDefinitionsSnapshot().save();
+    }
 
     @Override
     protected void setAsDefaultInfo() {
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.Filter;
+
+/**
+ * Keeps the infos of one level (top level or inner) of an AbstractAdditionalTokensInfo, indexed by the initials of
+ * their names.
+ *
+ * Implementations are not synchronized (the info that holds them must guard the access with its lock). Many
+ * queries may run at the same time (as long as no info is being added or removed).
+ *
+ * @author Fabio
+ */
+public interface IInfoStorage {
+
+    /**
+     * Adds an info (nothing is done if an equal info is already there).
+     *
+     * @param initials the initials of the info name (as gotten from AbstractAdditionalTokensInfo.getInitials)
+     */
+    void add(IInfo info, String initials);
+
+    /**
+     * Removes all the infos declared in the given module.
+     */
+    void removeModule(String moduleName);
+
+    /**
+     * Adds to toks the infos whose initials start with the given initials and whose name is accepted by the filter.
+     */
+    void getWithFilter(String initials, String qualToCompare, Filter filter, Collection<IInfo> toks);
+
+    /**
+     * Adds all the infos in this storage to toks.
+     */
+    void getAll(Collection<IInfo> toks);
+
+    /**
+     * Adds the names of the modules that declare some info in this storage to modules.
+     */
+    void getModules(Set<String> modules);
+
+}
@@ -0,0 +1,407 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.pydev.core.ObjectsPool;
+
+/**
+ * Binary format used to persist the additional info (instead of java serialization).
+ *
+ * All the strings are written only once in a string table and the infos are written as columns of indexes into
+ * that table. The file is memory-mapped when read and each string is only decoded when it's first requested.
+ *
+ * Subclasses of the info may write additional data to the 'extra' section (which may reference strings in the
+ * string table).
+ *
+ * File format (version 1):
+ *
+ * int magic, int version, int number of strings, int number of info lists, int length of the extra section;
+ * int[number of strings + 1] offsets of the strings, UTF-8 bytes of the strings;
+ * for each info list: int number of infos, int[] names, int[] declaring modules, int[] paths, byte[] types;
+ * extra section.
+ *
+ * Strings are referenced by their index in the table (-1 means null).
+ *
+ * @author Fabio
+ */
+public final class InfoBinaryFile {
+
+    private static final int MAGIC = 0x50594149; //PYAI
+
+    /**
+     * Should be raised whenever the format changes (the previous file is discarded when the version doesn't match).
+     */
+    public static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_SIZE = 20;
+
+
+    /**
+     * The infos of a list in columns.
+     */
+    private static final class InfoColumns{
+
+        private int size;
+        private int[] names;
+        private int[] modules;
+        private int[] paths;
+        private byte[] types;
+
+        private InfoColumns(int capacity) {
+            names = new int[capacity];
+            modules = new int[capacity];
+            paths = new int[capacity];
+            types = new byte[capacity];
+        }
+    }
+
+
+    /**
+     * Collects what should be written (must be used from a single thread).
+     */
+    public static final class Writer{
+
+        private final Map<String, Integer> stringToIndex = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final List<InfoColumns> infoLists = new ArrayList<InfoColumns>();
+        private final ByteArrayOutputStream extraBytes = new ByteArrayOutputStream();
+        private final DataOutputStream extra = new DataOutputStream(extraBytes);
+
+        /**
+         * @return the index of the string in the string table (-1 for null).
+         */
+        public int addString(String s) {
+            if(s == null){
+                return -1;
+            }
+            Integer i = stringToIndex.get(s);
+            if(i == null){
+                i = strings.size();
+                strings.add(s);
+                stringToIndex.put(s, i);
+            }
+            return i;
+        }
+
+        /**
+         * Adds a list of infos (lists are read back in the same order they're added).
+         */
+        public void addInfos(Collection<IInfo> infos) {
+            InfoColumns columns = new InfoColumns(infos.size());
+            for(IInfo info:infos){
+                int i = columns.size++;
+                columns.names[i] = addString(info.getName());
+                columns.modules[i] = addString(info.getDeclaringModuleName());
+                columns.paths[i] = addString(info.getPath());
+                columns.types[i] = (byte) info.getType();
+            }
+            infoLists.add(columns);
+        }
+
+        /**
+         * @return a stream to write additional data (strings should be added with addString and written as ints).
+         */
+        public DataOutputStream getExtra() {
+            return extra;
+        }
+
+        public void write(File file) throws IOException {
+            extra.flush();
+            File tempFile = new File(file.getPath()+".tmp");
+            FileOutputStream stream = new FileOutputStream(tempFile);
+            try{
+                ChannelWriter out = new ChannelWriter(stream.getChannel());
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putInt(strings.size());
+                out.putInt(infoLists.size());
+                out.putInt(extraBytes.size());
+
+                byte[][] encoded = new byte[strings.size()][];
+                int offset = 0;
+                out.putInt(offset);
+                for(int i=0;i<encoded.length;i++){
+                    encoded[i] = strings.get(i).getBytes(UTF8);
+                    offset += encoded[i].length;
+                    out.putInt(offset);
+                }
+                for(byte[] b:encoded){
+                    out.put(b);
+                }
+
+                for(InfoColumns columns:infoLists){
+                    out.putInt(columns.size);
+                    out.putInts(columns.names, columns.size);
+                    out.putInts(columns.modules, columns.size);
+                    out.putInts(columns.paths, columns.size);
+                    out.put(columns.types, columns.size);
+                }
+                out.put(extraBytes.toByteArray());
+                out.flush();
+            }finally{
+                stream.close();
+            }
+            if(!tempFile.renameTo(file)){
+                file.delete();
+                if(!tempFile.renameTo(file)){
+                    tempFile.delete();
+                    throw new IOException("Unable to write: "+file);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Writes to a channel through a fixed buffer.
+     */
+    private static final class ChannelWriter{
+
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+
+        private ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if(buf.remaining() < bytes){
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while(buf.hasRemaining()){
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        private void putInt(int i) throws IOException {
+            ensure(4);
+            buf.putInt(i);
+        }
+
+        private void putInts(int[] ints, int len) throws IOException {
+            for(int i=0;i<len;i++){
+                ensure(4);
+                buf.putInt(ints[i]);
+            }
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            put(bytes, bytes.length);
+        }
+
+        private void put(byte[] bytes, int len) throws IOException {
+            if(len > buf.capacity()){
+                flush();
+                ByteBuffer wrap = ByteBuffer.wrap(bytes, 0, len);
+                while(wrap.hasRemaining()){
+                    channel.write(wrap);
+                }
+                return;
+            }
+            ensure(len);
+            buf.put(bytes, 0, len);
+        }
+    }
+
+
+    /**
+     * Reads a file written by the Writer (must be used from a single thread).
+     */
+    public static final class Reader{
+
+        private final ByteBuffer buf;
+        private final int stringsOffsetsStart;
+        private final int stringsDataStart;
+        private final String[] strings;
+        private final int[] infoListsStart;
+        private final ByteBuffer extra;
+        private byte[] temp = new byte[256];
+
+        private Reader(ByteBuffer buf) throws IOException {
+            this.buf = buf;
+            if(buf.remaining() < HEADER_SIZE || buf.getInt(0) != MAGIC){
+                throw new IOException("Not a binary info file.");
+            }
+            if(buf.getInt(4) != VERSION){
+                throw new IOException("I/O version doesn't match.");
+            }
+            int stringsCount = buf.getInt(8);
+            int infoListsCount = buf.getInt(12);
+            int extraLength = buf.getInt(16);
+
+            strings = new String[stringsCount];
+            stringsOffsetsStart = HEADER_SIZE;
+            stringsDataStart = stringsOffsetsStart + (stringsCount + 1) * 4;
+            int pos = stringsDataStart + buf.getInt(stringsOffsetsStart + stringsCount * 4);
+
+            infoListsStart = new int[infoListsCount];
+            for(int i=0;i<infoListsCount;i++){
+                infoListsStart[i] = pos;
+                int size = buf.getInt(pos);
+                pos += 4 + size * 13;
+            }
+            if(pos + extraLength != buf.limit()){
+                throw new IOException("Corrupted binary info file.");
+            }
+            ByteBuffer slice = buf.duplicate();
+            slice.position(pos);
+            extra = slice.slice();
+        }
+
+        /**
+         * @return the string with the given index (decoded and interned on the first request).
+         */
+        public String getString(int index) {
+            if(index == -1){
+                return null;
+            }
+            String s = strings[index];
+            if(s == null){
+                s = ObjectsPool.intern(decodeString(index));
+                strings[index] = s;
+            }
+            return s;
+        }
+
+        private String decodeString(int index) {
+            int start = buf.getInt(stringsOffsetsStart + index * 4);
+            int len = buf.getInt(stringsOffsetsStart + index * 4 + 4) - start;
+            if(temp.length < len){
+                temp = new byte[len];
+            }
+            ByteBuffer data = buf.duplicate();
+            data.position(stringsDataStart + start);
+            data.get(temp, 0, len);
+            return new String(temp, 0, len, UTF8);
+        }
+
+        /**
+         * Decodes the strings referenced from the given position (which were still not decoded) and interns them
+         * all at once.
+         * 
+         * @param indexesStart the position of the first string index.
+         * @param count the number of string indexes.
+         */
+        private void internStrings(int indexesStart, int count) {
+            int[] indexes = new int[count];
+            String[] decoded = new String[count];
+            int found = 0;
+            for(int i=0;i<count;i++){
+                int index = buf.getInt(indexesStart + i * 4);
+                if(index != -1 && strings[index] == null){
+                    String s = decodeString(index);
+                    strings[index] = s; //set to the interned one below (so that it's not decoded twice)
+                    indexes[found] = index;
+                    decoded[found] = s;
+                    found++;
+                }
+            }
+            ObjectsPool.intern(decoded); //null entries are skipped
+            for(int i=0;i<found;i++){
+                strings[indexes[i]] = decoded[i];
+            }
+        }
+
+        public int getInfoListsCount() {
+            return infoListsStart.length;
+        }
+
+        /**
+         * @return the infos in the list with the given index (in the same order they were added).
+         */
+        public List<IInfo> getInfos(int list) {
+            int pos = infoListsStart[list];
+            int size = buf.getInt(pos);
+            int namesStart = pos + 4;
+            int modulesStart = namesStart + size * 4;
+            int pathsStart = modulesStart + size * 4;
+            int typesStart = pathsStart + size * 4;
+            internStrings(namesStart, size * 3); //names, modules and paths
+
+            ArrayList<IInfo> ret = new ArrayList<IInfo>(size);
+            for(int i=0;i<size;i++){
+                String name = getString(buf.getInt(namesStart + i * 4));
+                String module = getString(buf.getInt(modulesStart + i * 4));
+                String path = getString(buf.getInt(pathsStart + i * 4));
+                IInfo info = createInfo(buf.get(typesStart + i), name, module, path);
+                if(info != null){
+                    ret.add(info);
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * @return the extra section (strings are referenced by their index, to be gotten with getString).
+         */
+        public ByteBuffer getExtra() {
+            return extra.duplicate();
+        }
+    }
+
+
+    /**
+     * Creates an info without interning its strings (they should already be interned).
+     */
+    static IInfo createInfo(int type, String name, String module, String path) {
+        switch(type){
+            case IInfo.CLASS_WITH_IMPORT_TYPE:
+                return new ClassInfo(name, module, path, true);
+
+            case IInfo.METHOD_WITH_IMPORT_TYPE:
+                return new FuncInfo(name, module, path, true);
+
+            case IInfo.ATTRIBUTE_WITH_IMPORT_TYPE:
+                return new AttrInfo(name, module, path, true);
+
+            case IInfo.NAME_WITH_IMPORT_TYPE:
+                return new NameInfo(name, module, path, true);
+
+            case IInfo.MOD_IMPORT_TYPE:
+                return new ModInfo(module);
+        }
+        return null;
+    }
+
+
+    /**
+     * Maps the given file for reading.
+     */
+    public static Reader read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try{
+            //the mapping stays valid after the channel is closed
+            FileChannel channel = raf.getChannel();
+            return new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }finally{
+            raf.close();
+        }
+    }
+
+}
@@ -104,19 +104,25 @@ public class InfoStrFactory {
         }
         String firstLine = linesIt.next().trim(); //line with the infos (we must read the other parts to actually 'get' it).
         
+        ArrayList<String> tokens = new ArrayList<String>();
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        while(linesIt.hasNext()){
+            String line = linesIt.next().trim();
+            int i = StringUtils.rFind(line, '=');
+            if(i > 0){
+                tokens.add(line.substring(0, i));
+                values.add(Integer.parseInt(line.substring(i+1)));
+            }
+        }
+        
+        //intern all the tokens at once
+        String[] interned = tokens.toArray(new String[tokens.size()]);
+        ObjectsPool.intern(interned);
+        
         HashMap<Integer, String> map = new HashMap<Integer, String>();
         map.put(0, null);
-        synchronized (ObjectsPool.lock) {
-            while(linesIt.hasNext()){
-                String line = linesIt.next().trim();
-                int i = StringUtils.rFind(line, '=');
-                if(i > 0){
-                    String token = line.substring(0, i);
-                    String value = line.substring(i+1);
-                    
-                    map.put(Integer.parseInt(value), ObjectsPool.internUnsynched(token));
-                }
-            }
+        for(int i=0;i<interned.length;i++){
+            map.put(values.get(i), interned[i]);
         }
         
         ArrayList<IInfo> ret = new ArrayList<IInfo>();
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.Filter;
+
+/**
+ * Keeps the infos in sets of IInfo, indexed through a tree map by their initials.
+ *
+ * @author Fabio
+ */
+public final class InitialsInfoStorage implements IInfoStorage {
+
+    private final TreeMap<String, Set<IInfo>> initialsToInfo = new TreeMap<String, Set<IInfo>>();
+
+    public void add(IInfo info, String initials) {
+        Set<IInfo> lInfo = initialsToInfo.get(initials);
+        if(lInfo == null){
+            lInfo = new HashSet<IInfo>();
+            initialsToInfo.put(initials, lInfo);
+        }
+        lInfo.add(info);
+    }
+
+    public void removeModule(String moduleName) {
+        Iterator<Set<IInfo>> itListOfInfo = initialsToInfo.values().iterator();
+        while (itListOfInfo.hasNext()) {
+
+            Iterator<IInfo> it = itListOfInfo.next().iterator();
+            while (it.hasNext()) {
+
+                IInfo info = it.next();
+                if(info != null && info.getDeclaringModuleName() != null){
+                    if(info.getDeclaringModuleName().equals(moduleName)){
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void getWithFilter(String initials, String qualToCompare, Filter filter, Collection<IInfo> toks) {
+        //get until the end of the alphabet
+        SortedMap<String, Set<IInfo>> subMap = initialsToInfo.subMap(initials, initials+"z");
+
+        for (Set<IInfo> listForInitials : subMap.values()) {
+
+            for (IInfo info : listForInitials) {
+                if(filter.doCompare(qualToCompare, info)){
+                    toks.add(info);
+                }
+            }
+        }
+    }
+
+    public void getAll(Collection<IInfo> toks) {
+        for (Set<IInfo> list : initialsToInfo.values()) {
+            toks.addAll(list);
+        }
+    }
+
+    public void getModules(Set<String> modules) {
+        for (Set<IInfo> list : initialsToInfo.values()) {
+            for (IInfo info : list) {
+                modules.add(info.getDeclaringModuleName());
+            }
+        }
+    }
+
+}
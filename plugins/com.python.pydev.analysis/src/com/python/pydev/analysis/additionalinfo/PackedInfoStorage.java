@@ -0,0 +1,312 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.Filter;
+
+/**
+ * Keeps the infos in parallel primitive arrays (the name, declaring module and path of each info are ids in a
+ * string pool, which may be shared among storages, and the type is a byte).
+ *
+ * The IInfo objects are only created for the infos returned in the queries (so, they're not kept in memory).
+ *
+ * Removing a module only marks its entries as removed and the arrays are compacted when the number of removed
+ * entries becomes large enough.
+ *
+ * @author Fabio
+ */
+public final class PackedInfoStorage implements IInfoStorage {
+
+    /**
+     * Gives an id for each string.
+     */
+    public static final class StringPool{
+
+        private final Map<String, Integer> stringToId = new HashMap<String, Integer>();
+        private final ArrayList<String> idToString = new ArrayList<String>();
+
+        /**
+         * @return the id for the string (-1 for null).
+         */
+        public int add(String s) {
+            if(s == null){
+                return -1;
+            }
+            Integer id = stringToId.get(s);
+            if(id == null){
+                id = idToString.size();
+                idToString.add(s);
+                stringToId.put(s, id);
+            }
+            return id;
+        }
+
+        /**
+         * @return the id for the string or -1 if it's not in the pool.
+         */
+        public int getId(String s) {
+            Integer id = stringToId.get(s);
+            return id == null ? -1 : id;
+        }
+
+        public String get(int id) {
+            return id == -1 ? null : idToString.get(id);
+        }
+
+        public int size() {
+            return idToString.size();
+        }
+    }
+
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList{
+
+        private int[] data;
+        private int size;
+
+        private IntList(int capacity) {
+            data = new int[capacity];
+        }
+
+        private void add(int i) {
+            if(size == data.length){
+                int[] newData = new int[Math.max(4, size + (size >> 1))];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            data[size++] = i;
+        }
+    }
+
+
+    /**
+     * Marks a removed entry in the types array.
+     */
+    private static final byte REMOVED = 0;
+
+    /**
+     * Compact only after this number of removed entries (and if they're at least half of the entries).
+     */
+    private static final int MIN_REMOVED_TO_COMPACT = 1024;
+
+    private final StringPool pool;
+
+    private int size;
+    private int[] names = new int[16];
+    private int[] modules = new int[16];
+    private int[] paths = new int[16];
+    private byte[] types = new byte[16];
+    private int removed;
+
+    /**
+     * The entries for each initials (may have removed entries until the arrays are compacted).
+     */
+    private final TreeMap<String, IntList> initialsToEntries = new TreeMap<String, IntList>();
+
+    /**
+     * The (live) entries declared in each module (the key is the module id).
+     */
+    private final Map<Integer, IntList> moduleToEntries = new HashMap<Integer, IntList>();
+
+    /**
+     * The module that was last added and the keys of its entries (used so that no duplicates are added).
+     */
+    private int currentModule = -1;
+    private Set<Long> currentModuleKeys;
+
+
+    public PackedInfoStorage(StringPool pool) {
+        this.pool = pool;
+    }
+
+
+    private static long entryKey(int name, int path, byte type) {
+        return ((long) name << 32) | ((long) (path + 1) << 3) | type;
+    }
+
+    public void add(IInfo info, String initials) {
+        int name = pool.add(info.getName());
+        int module = pool.add(info.getDeclaringModuleName());
+        int path = pool.add(info.getPath());
+        byte type = (byte) info.getType();
+
+        if(module != currentModule){
+            currentModule = module;
+            currentModuleKeys = new HashSet<Long>();
+            IntList entries = moduleToEntries.get(module);
+            if(entries != null){
+                for(int j=0;j<entries.size;j++){
+                    int i = entries.data[j];
+                    currentModuleKeys.add(entryKey(names[i], paths[i], types[i]));
+                }
+            }
+        }
+        if(!currentModuleKeys.add(entryKey(name, path, type))){
+            return; //already there
+        }
+
+        if(size == names.length){
+            int newLength = size + (size >> 1);
+            names = grow(names, newLength);
+            modules = grow(modules, newLength);
+            paths = grow(paths, newLength);
+            byte[] newTypes = new byte[newLength];
+            System.arraycopy(types, 0, newTypes, 0, size);
+            types = newTypes;
+        }
+        int i = size++;
+        names[i] = name;
+        modules[i] = module;
+        paths[i] = path;
+        types[i] = type;
+
+        addToIndexes(i, initials);
+    }
+
+    private void addToIndexes(int i, String initials) {
+        IntList entries = initialsToEntries.get(initials);
+        if(entries == null){
+            entries = new IntList(4);
+            initialsToEntries.put(initials, entries);
+        }
+        entries.add(i);
+
+        entries = moduleToEntries.get(modules[i]);
+        if(entries == null){
+            entries = new IntList(8);
+            moduleToEntries.put(modules[i], entries);
+        }
+        entries.add(i);
+    }
+
+    private static int[] grow(int[] array, int newLength) {
+        int[] ret = new int[newLength];
+        System.arraycopy(array, 0, ret, 0, array.length);
+        return ret;
+    }
+
+    public void removeModule(String moduleName) {
+        int module = pool.getId(moduleName);
+        if(module == -1){
+            return;
+        }
+        if(module == currentModule){
+            currentModule = -1;
+            currentModuleKeys = null;
+        }
+        IntList entries = moduleToEntries.remove(module);
+        if(entries == null){
+            return;
+        }
+        for(int j=0;j<entries.size;j++){
+            types[entries.data[j]] = REMOVED;
+        }
+        removed += entries.size;
+        if(removed >= MIN_REMOVED_TO_COMPACT && removed * 2 >= size){
+            compact();
+        }
+    }
+
+    /**
+     * Moves the live entries to the start of the arrays (and recreates the indexes).
+     */
+    private void compact() {
+        int[] oldToNew = new int[size];
+        int newSize = 0;
+        for(int i=0;i<size;i++){
+            if(types[i] == REMOVED){
+                oldToNew[i] = -1;
+            }else{
+                names[newSize] = names[i];
+                modules[newSize] = modules[i];
+                paths[newSize] = paths[i];
+                types[newSize] = types[i];
+                oldToNew[i] = newSize;
+                newSize++;
+            }
+        }
+        size = newSize;
+        removed = 0;
+
+        for(IntList entries:initialsToEntries.values()){
+            remap(entries, oldToNew);
+        }
+        for(IntList entries:moduleToEntries.values()){
+            remap(entries, oldToNew);
+        }
+        //remove the initials without any entry
+        Iterator<IntList> it = initialsToEntries.values().iterator();
+        while(it.hasNext()){
+            if(it.next().size == 0){
+                it.remove();
+            }
+        }
+    }
+
+    private static void remap(IntList entries, int[] oldToNew) {
+        int newSize = 0;
+        for(int j=0;j<entries.size;j++){
+            int i = oldToNew[entries.data[j]];
+            if(i != -1){
+                entries.data[newSize++] = i;
+            }
+        }
+        entries.size = newSize;
+    }
+
+    /**
+     * @return a new info for the entry.
+     */
+    private IInfo createInfo(int i) {
+        return InfoBinaryFile.createInfo(types[i], pool.get(names[i]), pool.get(modules[i]), pool.get(paths[i]));
+    }
+
+    public void getWithFilter(String initials, String qualToCompare, Filter filter, Collection<IInfo> toks) {
+        //get until the end of the alphabet
+        for(IntList entries:initialsToEntries.subMap(initials, initials+"z").values()){
+            for(int j=0;j<entries.size;j++){
+                int i = entries.data[j];
+                if(types[i] != REMOVED && filter.doCompare(qualToCompare, pool.get(names[i]))){
+                    toks.add(createInfo(i));
+                }
+            }
+        }
+    }
+
+    public void getAll(Collection<IInfo> toks) {
+        for(int i=0;i<size;i++){
+            if(types[i] != REMOVED){
+                toks.add(createInfo(i));
+            }
+        }
+    }
+
+    public void getModules(Set<String> modules) {
+        for(Integer module:moduleToEntries.keySet()){
+            modules.add(pool.get(module));
+        }
+    }
+
+    /**
+     * @return the number of entries (not removed) in this storage.
+     */
+    public int size() {
+        return size - removed;
+    }
+}
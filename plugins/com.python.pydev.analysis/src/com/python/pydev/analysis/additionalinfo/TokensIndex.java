@@ -0,0 +1,394 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index from the identifiers found in the contents of a module to the modules that contain them (used
+ * to know which modules may have references to some token without having to read their contents).
+ *
+ * Each module indexed receives an int id and each token keeps a posting list with the ids of the modules that
+ * contain it. Ids are always given in increasing order, so, the posting lists are kept as the deltas between
+ * the ids encoded as varints (and adding a module only appends to the end of the lists of its tokens).
+ *
+ * Removing a module only marks its id as removed (it's skipped in the lookups) and the lists are compacted when
+ * the number of removed ids becomes large enough.
+ *
+ * This class is not synchronized (the additional info that holds it must guard the access with its lock).
+ *
+ * File format (version 1):
+ *
+ * int magic, int version, int number of modules and then for each module: string name, long modification time;
+ * int number of tokens and then for each token: string token, int number of ids, int last id, int length of the
+ * data, data (the ids of the modules encoded as described above).
+ *
+ * @author Fabio
+ */
+public final class TokensIndex {
+
+    private static final int MAGIC = 0x50595449; //PYTI
+
+    /**
+     * Should be raised whenever the format changes (the previous file is discarded when the version doesn't match).
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Compact only after this number of removed ids (and if they're at least half of the ids given).
+     */
+    private static final int MIN_REMOVED_TO_COMPACT = 512;
+
+
+    /**
+     * The ids of a module in a token.
+     */
+    private static final class PostingList{
+
+        private byte[] data;
+        private int length;
+        private int count;
+        private int lastId = -1;
+
+        private PostingList(int initialCapacity) {
+            this.data = new byte[initialCapacity];
+        }
+
+        private void append(int id) {
+            int delta = id - lastId;
+            if(length + 5 > data.length){
+                byte[] newData = new byte[Math.max(data.length * 2, length + 5)];
+                System.arraycopy(data, 0, newData, 0, length);
+                data = newData;
+            }
+            while((delta & ~0x7F) != 0){
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            lastId = id;
+            count++;
+        }
+
+        /**
+         * @return the ids in this list (in increasing order).
+         */
+        private int[] decode() {
+            int[] ret = new int[count];
+            int id = -1;
+            int pos = 0;
+            for(int i=0;i<count;i++){
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do{
+                    b = data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                }while((b & 0x80) != 0);
+                id += delta;
+                ret[i] = id;
+            }
+            return ret;
+        }
+
+        private void trim() {
+            if(data.length != length){
+                byte[] newData = new byte[length];
+                System.arraycopy(data, 0, newData, 0, length);
+                data = newData;
+            }
+        }
+    }
+
+
+    /**
+     * The name of the module for each id (null for removed ids).
+     */
+    private final ArrayList<String> idToModule = new ArrayList<String>();
+
+    /**
+     * The modification time of the contents indexed for each id.
+     */
+    private long[] idToLastModified = new long[64];
+
+    private final Map<String, Integer> moduleToId = new HashMap<String, Integer>();
+
+    private final Map<String, PostingList> tokenToIds = new HashMap<String, PostingList>();
+
+    private int removed;
+
+
+    /**
+     * Indexes the tokens of a module (any previous information on the module is removed).
+     *
+     * @param moduleName the module that contains the tokens.
+     * @param lastModified the modification time of the contents from where the tokens were gotten (it's only
+     * compared in isIndexed, so, clients may also use it to tag partial information).
+     * @param tokens the (unique) tokens found in the module.
+     */
+    public void addModule(String moduleName, long lastModified, Collection<String> tokens) {
+        removeModule(moduleName);
+
+        int id = idToModule.size();
+        idToModule.add(moduleName);
+        if(id >= idToLastModified.length){
+            long[] newArray = new long[idToLastModified.length * 2];
+            System.arraycopy(idToLastModified, 0, newArray, 0, idToLastModified.length);
+            idToLastModified = newArray;
+        }
+        idToLastModified[id] = lastModified;
+        moduleToId.put(moduleName, id);
+
+        for(String token:tokens){
+            PostingList list = tokenToIds.get(token);
+            if(list == null){
+                list = new PostingList(4);
+                tokenToIds.put(token, list);
+            }
+            list.append(id);
+        }
+    }
+
+
+    /**
+     * Removes the information on a module (does nothing if the module is not indexed).
+     */
+    public void removeModule(String moduleName) {
+        Integer id = moduleToId.remove(moduleName);
+        if(id == null){
+            return;
+        }
+        idToModule.set(id, null);
+        removed++;
+        if(removed >= MIN_REMOVED_TO_COMPACT && removed * 2 >= idToModule.size()){
+            compact();
+        }
+    }
+
+
+    /**
+     * @return whether the module is indexed (with any modification time).
+     */
+    public boolean hasModule(String moduleName) {
+        return moduleToId.containsKey(moduleName);
+    }
+
+
+    /**
+     * @return whether the module is indexed with the contents of the given modification time.
+     */
+    public boolean isIndexed(String moduleName, long lastModified) {
+        Integer id = moduleToId.get(moduleName);
+        return id != null && idToLastModified[id] == lastModified;
+    }
+
+
+    /**
+     * @return the names of the modules which contain the given token.
+     */
+    public List<String> getModulesWithToken(String token) {
+        PostingList list = tokenToIds.get(token);
+        if(list == null){
+            return new ArrayList<String>(0);
+        }
+        int[] ids = list.decode();
+        ArrayList<String> ret = new ArrayList<String>(ids.length);
+        for(int id:ids){
+            String moduleName = idToModule.get(id);
+            if(moduleName != null){
+                ret.add(moduleName);
+            }
+        }
+        return ret;
+    }
+
+
+    /**
+     * @return the number of modules indexed.
+     */
+    public int getModulesCount() {
+        return moduleToId.size();
+    }
+
+
+    /**
+     * @return the number of different tokens indexed (which may include tokens only found in removed modules until
+     * the index is compacted).
+     */
+    public int getTokensCount() {
+        return tokenToIds.size();
+    }
+
+
+    public void clear() {
+        idToModule.clear();
+        moduleToId.clear();
+        tokenToIds.clear();
+        idToLastModified = new long[64];
+        removed = 0;
+    }
+
+
+    /**
+     * Gives new (sequential) ids to the modules still indexed and rewrites the posting lists without the removed ids.
+     */
+    public void compact() {
+        if(removed == 0){
+            return;
+        }
+        int[] oldToNew = new int[idToModule.size()];
+        ArrayList<String> newIdToModule = new ArrayList<String>(moduleToId.size());
+        long[] newIdToLastModified = new long[Math.max(64, moduleToId.size())];
+        for(int i=0;i<oldToNew.length;i++){
+            String moduleName = idToModule.get(i);
+            if(moduleName == null){
+                oldToNew[i] = -1;
+            }else{
+                int newId = newIdToModule.size();
+                oldToNew[i] = newId;
+                newIdToModule.add(moduleName);
+                newIdToLastModified[newId] = idToLastModified[i];
+                moduleToId.put(moduleName, newId);
+            }
+        }
+
+        Map<String, PostingList> newTokenToIds = new HashMap<String, PostingList>(tokenToIds.size());
+        for(Map.Entry<String, PostingList> entry:tokenToIds.entrySet()){
+            PostingList list = remap(entry.getValue(), oldToNew);
+            if(list != null){
+                newTokenToIds.put(entry.getKey(), list);
+            }
+        }
+        tokenToIds.clear();
+        tokenToIds.putAll(newTokenToIds);
+
+        idToModule.clear();
+        idToModule.addAll(newIdToModule);
+        idToLastModified = newIdToLastModified;
+        removed = 0;
+    }
+
+
+    /**
+     * @return a new list with the ids mapped (removed ids are skipped) or null if no id was kept.
+     */
+    private static PostingList remap(PostingList list, int[] oldToNew) {
+        int[] ids = list.decode();
+        PostingList newList = null;
+        for(int id:ids){
+            int newId = oldToNew[id];
+            if(newId != -1){
+                if(newList == null){
+                    newList = new PostingList(list.length);
+                }
+                newList.append(newId);
+            }
+        }
+        if(newList != null){
+            newList.trim();
+        }
+        return newList;
+    }
+
+
+    // ------------------------------------------------------------------------------------------------- persistence
+
+    /**
+     * Writes the index to the given file (it's compacted before being written).
+     */
+    public void save(File file) throws IOException {
+        compact();
+        File tempFile = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try{
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            int size = idToModule.size();
+            out.writeInt(size);
+            for(int i=0;i<size;i++){
+                out.writeUTF(idToModule.get(i));
+                out.writeLong(idToLastModified[i]);
+            }
+            out.writeInt(tokenToIds.size());
+            for(Map.Entry<String, PostingList> entry:tokenToIds.entrySet()){
+                PostingList list = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(list.count);
+                out.writeInt(list.lastId);
+                out.writeInt(list.length);
+                out.write(list.data, 0, list.length);
+            }
+        }finally{
+            out.close();
+        }
+        if(!tempFile.renameTo(file)){
+            file.delete();
+            if(!tempFile.renameTo(file)){
+                tempFile.delete();
+                throw new IOException("Unable to write: "+file);
+            }
+        }
+    }
+
+
+    /**
+     * Replaces the contents of this index with the contents of the given file.
+     *
+     * @return false if the file does not exist or was written in another version (in which case the index is
+     * left empty).
+     */
+    public boolean load(File file) throws IOException {
+        clear();
+        if(!file.isFile()){
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try{
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                return false;
+            }
+            int size = in.readInt();
+            idToLastModified = new long[Math.max(64, size)];
+            for(int i=0;i<size;i++){
+                String moduleName = in.readUTF();
+                idToLastModified[i] = in.readLong();
+                idToModule.add(moduleName);
+                moduleToId.put(moduleName, i);
+            }
+            int tokens = in.readInt();
+            for(int i=0;i<tokens;i++){
+                String token = in.readUTF();
+                PostingList list = new PostingList(0);
+                list.count = in.readInt();
+                list.lastId = in.readInt();
+                list.length = in.readInt();
+                list.data = new byte[list.length];
+                in.readFully(list.data);
+                tokenToIds.put(token, list);
+            }
+        }catch(IOException e){
+            clear();
+            throw e;
+        }finally{
+            in.close();
+        }
+        return true;
+    }
+}
@@ -14,13 +14,7 @@ import org.python.pydev.core.IInterpreterManager;
 import org.python.pydev.core.IModulesManager;
 import org.python.pydev.core.ISystemModulesManager;
 import org.python.pydev.core.MisconfigurationException;
-import org.python.pydev.core.ModulesKey;
-import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
-import org.python.pydev.core.structure.FastStringBuffer;
-import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
-import org.python.pydev.parser.ErrorDescription;
-import org.python.pydev.parser.PyParser;
 import org.python.pydev.plugin.nature.PythonNature;
 import org.python.pydev.ui.interpreters.IInterpreterObserver;
 import org.python.pydev.ui.pythonpathconf.InterpreterInfo;
@@ -127,51 +121,11 @@ public class InterpreterObserver implements IInterpreterObserver {
         if(monitor == null){
             monitor = new NullProgressMonitor();
         }
-        //TODO: Check if keeping a zip file open makes things faster...
-        //Timer timer = new Timer();
-        ModulesKey[] allModules = m.getOnlyDirectModules();
-        int i = 0;
-        
-        FastStringBuffer msgBuffer = new FastStringBuffer();
-
-        for (ModulesKey key : allModules) {
-            if(monitor.isCanceled()){
-                return null;
-            }
-            i++;
-
-            if (PythonPathHelper.canAddAstInfoFor(key)) { //otherwise it should be treated as a compiled module (no ast generation)
-
-                if(i % 17 == 0){
-                    msgBuffer.clear();
-                    msgBuffer.append("Creating ");
-                    msgBuffer.append(additionalFeedback);
-                    msgBuffer.append(" additional info (" );
-                    msgBuffer.append(i );
-                    msgBuffer.append(" of " );
-                    msgBuffer.append(allModules.length );
-                    msgBuffer.append(") for " );
-                    msgBuffer.append(key.file.getName());
-                    monitor.setTaskName(msgBuffer.toString());
-                    monitor.worked(1);
-                }
-
-                try {
-                    if (info.addAstInfo(key, false) == null) {
-                        String str = "Unable to generate ast -- using %s.\nError:%s";
-                        ErrorDescription errorDesc = null;
-                        throw new RuntimeException(StringUtils.format(str, 
-                                PyParser.getGrammarVersionStr(grammarVersion),
-                                (errorDesc!=null && errorDesc.message!=null)?
-                                        errorDesc.message:"unable to determine"));
-                    }
-
-                } catch (Throwable e) {
-                    Log.log(IStatus.ERROR, "Problem parsing the file :" + key.file + ".", e);
-                }
-            }
+        //modules are read and parsed in many threads (and each zip is opened only once per task)
+        ParallelIndexBuilder builder = new ParallelIndexBuilder(info, m.getOnlyDirectModules(), grammarVersion);
+        if(!builder.build(monitor, additionalFeedback)){
+            return null;
         }
-        //timer.printDiff("Time to restore additional info");
         return info;
     }
 
@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.builders;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.ModulesKeyForZip;
+import org.python.pydev.core.ObjectsPool;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.docutils.StringUtils;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.jython.SimpleNode;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.ModuleInfos;
+
+/**
+ * Creates the additional info for a set of modules (i.e.: all the modules of an interpreter), reading and parsing
+ * the modules (and creating what's added for them) in many threads.
+ *
+ * Modules in the same zip are handled by the same task (so, the zip is opened only once for each task) and what's
+ * created is added to the info in the thread that called build(), as they're gotten (the order in which
+ * the modules are added doesn't change the info) and in batches (so, the info lock is not acquired for each module).
+ *
+ * The number of definitions gotten and still not added is bounded (the tasks wait while the info is being updated),
+ * so, only a few definitions are kept in memory at any time.
+ *
+ * @author Fabio
+ */
+public final class ParallelIndexBuilder {
+
+    /**
+     * Number of threads used to read and parse the modules.
+     */
+    public static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of modules (not in zips) handled in each task.
+     */
+    private static final int FILES_PER_TASK = 16;
+
+    /**
+     * Maximum number of modules in the same zip handled in each task.
+     */
+    private static final int ZIP_ENTRIES_PER_TASK = 256;
+
+    /**
+     * Maximum number of modules added to the info at once.
+     */
+    private static final int MAX_BATCH = 128;
+
+    /**
+     * Maximum number of results waiting to be added to the info (the tasks wait when it's reached).
+     */
+    private static final int MAX_PENDING_RESULTS = 4 * MAX_BATCH;
+
+    private static final Object SKIPPED = new Object();
+    private static final Object NO_DEFINITIONS = new Object();
+
+    private final AbstractAdditionalTokensInfo info;
+    private final ModulesKey[] keys;
+    private final int grammarVersion;
+
+    /**
+     * The index of a key and the result of getting its definitions: the ModuleInfos created, a Throwable or one of
+     * the markers above.
+     */
+    private final ArrayBlockingQueue<Tuple<Integer, Object>> results = 
+        new ArrayBlockingQueue<Tuple<Integer, Object>>(MAX_PENDING_RESULTS);
+    private volatile boolean cancelled;
+
+
+    public ParallelIndexBuilder(AbstractAdditionalTokensInfo info, ModulesKey[] keys, int grammarVersion) {
+        this.info = info;
+        this.keys = keys;
+        this.grammarVersion = grammarVersion;
+    }
+
+
+    /**
+     * Gets the definitions for some modules.
+     */
+    private final class BuildTask implements Runnable{
+
+        /**
+         * The zip with all the modules (null if they're not in a zip).
+         */
+        private final File zip;
+        private final int[] indexes;
+
+        private BuildTask(File zip, List<Integer> indexes) {
+            this.zip = zip;
+            this.indexes = new int[indexes.size()];
+            for(int i=0;i<this.indexes.length;i++){
+                this.indexes[i] = indexes.get(i);
+            }
+        }
+
+        public void run() {
+            //intern the names of all the modules at once
+            String[] names = new String[indexes.length];
+            for(int j=0;j<names.length;j++){
+                names[j] = keys[indexes[j]].name;
+            }
+            ObjectsPool.intern(names);
+            for(int j=0;j<names.length;j++){
+                keys[indexes[j]].name = names[j];
+            }
+            
+            ZipFile zipFile = null;
+            try{
+                for(int i:indexes){
+                    if(cancelled){
+                        return;
+                    }
+                    ModulesKey key = keys[i];
+                    Object result;
+                    try {
+                        if(!PythonPathHelper.canAddAstInfoFor(key)){
+                            result = SKIPPED;
+                        }else{
+                            if(zip != null && zipFile == null){
+                                zipFile = new ZipFile(zip, ZipFile.OPEN_READ);
+                            }
+                            SimpleNode node = info.getDefinitions(key, zipFile);
+                            if(node == null){
+                                result = NO_DEFINITIONS;
+                            }else{
+                                ModuleInfos moduleInfos = info.createModuleInfos(node, key, zipFile);
+                                result = moduleInfos != null ? moduleInfos : SKIPPED; //errors already logged
+                            }
+                        }
+                    } catch (Throwable e) {
+                        result = e;
+                    }
+                    try {
+                        results.put(new Tuple<Integer, Object>(i, result));
+                    } catch (InterruptedException e) {
+                        return; //cancelled
+                    }
+                }
+            }finally{
+                if(zipFile != null){
+                    try {
+                        zipFile.close();
+                    } catch (Exception e) {
+                        Log.log(e);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static final class IndexThreadFactory implements ThreadFactory{
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ParallelIndexBuilder-"+count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    }
+
+
+    /**
+     * @return the tasks to get the definitions of all the keys (modules in the same zip are grouped together), in 
+     * the order of the first key of each task.
+     */
+    private List<BuildTask> createTasks() {
+        List<BuildTask> tasks = new ArrayList<BuildTask>();
+        Map<File, List<Integer>> zipToIndexes = new LinkedHashMap<File, List<Integer>>();
+        List<Integer> files = new ArrayList<Integer>(FILES_PER_TASK);
+
+        for(int i=0;i<keys.length;i++){
+            ModulesKey key = keys[i];
+            if(key instanceof ModulesKeyForZip && key.file != null){
+                List<Integer> indexes = zipToIndexes.get(key.file);
+                if(indexes == null){
+                    indexes = new ArrayList<Integer>();
+                    zipToIndexes.put(key.file, indexes);
+                }
+                indexes.add(i);
+                if(indexes.size() == ZIP_ENTRIES_PER_TASK){
+                    tasks.add(new BuildTask(key.file, indexes));
+                    zipToIndexes.remove(key.file);
+                }
+            }else{
+                files.add(i);
+                if(files.size() == FILES_PER_TASK){
+                    tasks.add(new BuildTask(null, files));
+                    files = new ArrayList<Integer>(FILES_PER_TASK);
+                }
+            }
+        }
+        if(files.size() > 0){
+            tasks.add(new BuildTask(null, files));
+        }
+        for(Map.Entry<File, List<Integer>> entry:zipToIndexes.entrySet()){
+            tasks.add(new BuildTask(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(tasks, new Comparator<BuildTask>(){
+            public int compare(BuildTask o1, BuildTask o2) {
+                return o1.indexes[0] - o2.indexes[0];
+            }
+        });
+        return tasks;
+    }
+
+
+    /**
+     * Adds the definitions of all the modules to the info.
+     *
+     * @param monitor used to report progress and to check for cancellation.
+     * @param additionalFeedback shown in the progress.
+     *
+     * @return false if it was cancelled and true otherwise.
+     */
+    public boolean build(IProgressMonitor monitor, String additionalFeedback) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new IndexThreadFactory());
+        try{
+            for(BuildTask task:createTasks()){
+                executor.execute(task);
+            }
+
+            FastStringBuffer msgBuffer = new FastStringBuffer();
+            List<ModuleInfos> batch = new ArrayList<ModuleInfos>(MAX_BATCH);
+
+            for(int consumed=0;consumed<keys.length;){
+                Tuple<Integer, Object> tup;
+                try {
+                    tup = results.poll(200, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    return false;
+                }
+                if(monitor.isCanceled()){
+                    cancelled = true;
+                    return false;
+                }
+                if(tup == null){
+                    //add what we have so far while waiting for the next one
+                    addBatch(batch);
+                    continue;
+                }
+                consumed++;
+                int i = tup.o1;
+                Object result = tup.o2;
+                if(result == SKIPPED){
+                    continue;
+                }
+
+                ModulesKey key = keys[i];
+                if(consumed % 17 == 0){
+                    msgBuffer.clear();
+                    msgBuffer.append("Creating ");
+                    msgBuffer.append(additionalFeedback);
+                    msgBuffer.append(" additional info (" );
+                    msgBuffer.append(consumed);
+                    msgBuffer.append(" of " );
+                    msgBuffer.append(keys.length);
+                    msgBuffer.append(") for " );
+                    msgBuffer.append(key.file.getName());
+                    monitor.setTaskName(msgBuffer.toString());
+                    monitor.worked(1);
+                }
+
+                if(result instanceof ModuleInfos){
+                    batch.add((ModuleInfos) result);
+                    if(batch.size() >= MAX_BATCH){
+                        addBatch(batch);
+                    }
+
+                }else if(result == NO_DEFINITIONS){
+                    String str = "Unable to generate ast -- using %s.\nError:%s";
+                    Log.log(IStatus.ERROR, "Problem parsing the file :" + key.file + ".", new RuntimeException(
+                            StringUtils.format(str, PyParser.getGrammarVersionStr(grammarVersion), "unable to determine")));
+
+                }else{
+                    Log.log(IStatus.ERROR, "Problem parsing the file :" + key.file + ".", (Throwable) result);
+                }
+            }
+            addBatch(batch);
+            return true;
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void addBatch(List<ModuleInfos> batch) {
+        if(batch.size() > 0){
+            info.addModuleInfos(batch, false);
+            batch.clear();
+        }
+    }
+
+}
@@ -0,0 +1,432 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.python.pydev.core.FullRepIterable;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Import;
+import org.python.pydev.parser.jython.ast.ImportFrom;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.aliasType;
+import org.python.pydev.parser.visitors.scope.ASTEntry;
+import org.python.pydev.parser.visitors.scope.EasyASTIteratorVisitor;
+
+/**
+ * Keeps which modules import which modules (and the reverse) along with the top-level tokens of each module, so that
+ * when the top-level tokens of a module change, only the modules that import it have to be analyzed again.
+ *
+ * The imports are the names that may refer to a module (i.e.: for 'from a import b' both 'a' and 'a.b' are added, as
+ * well as the name relative to the package of the module for the imports that may be relative ones). Names that don't
+ * map to any module don't do any harm (nothing is ever changed for them).
+ *
+ * When a module is removed its information is kept aside (but not persisted) until it's added again, so that the
+ * usual remove/add done when a module is analyzed again can still detect whether its tokens changed.
+ *
+ * This class is not synchronized (the additional info that holds it must guard the access with its lock).
+ *
+ * File format (version 1):
+ *
+ * int magic, int version, int number of modules and then for each module: string name, int number of top-level
+ * tokens (-1 if unknown), the tokens, int number of imports, the imports.
+ *
+ * @author Fabio
+ */
+public final class ImportsGraph {
+
+    private static final int MAGIC = 0x50594947; //PYIG
+
+    /**
+     * Should be raised whenever the format changes (the previous file is discarded when the version doesn't match).
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The maximum number of removed modules whose information is kept (if the module is added again after that,
+     * it's treated as a new module -- and its importers are analyzed again).
+     */
+    private static final int MAX_REMOVED = 500;
+
+    private static final String[] EMPTY = new String[0];
+
+
+    private static final class ModuleEntry{
+
+        /**
+         * Sorted (null if still unknown).
+         */
+        private String[] topLevelTokens;
+
+        private String[] imports = EMPTY;
+    }
+
+
+    private final Map<String, ModuleEntry> modules = new HashMap<String, ModuleEntry>();
+
+    /**
+     * The modules removed (in the order they were removed).
+     */
+    private final LinkedHashMap<String, ModuleEntry> removed = new LinkedHashMap<String, ModuleEntry>();
+
+    /**
+     * Name imported -> modules that import it.
+     */
+    private final Map<String, Set<String>> importedToModules = new HashMap<String, Set<String>>();
+
+
+    /**
+     * @return the entry for the module (restored from the removed ones or created if it's still not there).
+     */
+    private ModuleEntry getOrCreate(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if(entry == null){
+            entry = removed.remove(moduleName);
+            if(entry == null){
+                entry = new ModuleEntry();
+            }
+            modules.put(moduleName, entry);
+            addEdges(moduleName, entry.imports);
+        }
+        return entry;
+    }
+
+
+    /**
+     * Sets the top-level tokens of a module.
+     *
+     * @return the change in the tokens of the module or null if the tokens are the same ones it had before. If
+     * the module was not known, the module name is the token added.
+     */
+    public PyStructuralChange setTopLevelTokens(String moduleName, Collection<String> tokens) {
+        ModuleEntry entry = getOrCreate(moduleName);
+        String[] newTokens = new TreeSet<String>(tokens).toArray(EMPTY);
+        String[] oldTokens = entry.topLevelTokens;
+        entry.topLevelTokens = newTokens;
+
+        if(oldTokens == null){
+            PyStructuralChange change = new PyStructuralChange();
+            change.setModule(moduleName);
+            change.addToken(moduleName);
+            return change;
+        }
+        if(Arrays.equals(oldTokens, newTokens)){
+            return null;
+        }
+
+        PyStructuralChange change = new PyStructuralChange();
+        change.setModule(moduleName);
+        int i = 0;
+        int j = 0;
+        while(i < oldTokens.length || j < newTokens.length){
+            int cmp;
+            if(i == oldTokens.length){
+                cmp = 1;
+            }else if(j == newTokens.length){
+                cmp = -1;
+            }else{
+                cmp = oldTokens[i].compareTo(newTokens[j]);
+            }
+            if(cmp == 0){
+                i++;
+                j++;
+            }else if(cmp < 0){
+                change.addRemovedToken(oldTokens[i++]);
+            }else{
+                change.addToken(newTokens[j++]);
+            }
+        }
+        return change;
+    }
+
+
+    /**
+     * Sets the names imported by a module (replacing the ones it had).
+     */
+    public void setImports(String moduleName, Collection<String> imports) {
+        ModuleEntry entry = getOrCreate(moduleName);
+        removeEdges(moduleName, entry.imports);
+        entry.imports = new TreeSet<String>(imports).toArray(EMPTY);
+        addEdges(moduleName, entry.imports);
+    }
+
+
+    /**
+     * Removes a module (the modules that import it still keep the import).
+     */
+    public void removeModule(String moduleName) {
+        ModuleEntry entry = modules.remove(moduleName);
+        if(entry == null){
+            return;
+        }
+        removeEdges(moduleName, entry.imports);
+        removed.put(moduleName, entry);
+        if(removed.size() > MAX_REMOVED){
+            Iterator<String> it = removed.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+
+
+    /**
+     * Forgets the information kept for a module that was removed (so, if it's added again it's treated as a new module).
+     */
+    public void forgetRemoved(String moduleName) {
+        removed.remove(moduleName);
+    }
+
+
+    private void addEdges(String moduleName, String[] imports) {
+        for(String imported:imports){
+            Set<String> set = importedToModules.get(imported);
+            if(set == null){
+                set = new HashSet<String>(4);
+                importedToModules.put(imported, set);
+            }
+            set.add(moduleName);
+        }
+    }
+
+
+    private void removeEdges(String moduleName, String[] imports) {
+        for(String imported:imports){
+            Set<String> set = importedToModules.get(imported);
+            if(set != null){
+                set.remove(moduleName);
+                if(set.isEmpty()){
+                    importedToModules.remove(imported);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @param transitive if true, the modules that import the importers are also returned (and so on).
+     * @return the modules that import the given module (the module itself is never returned).
+     */
+    public Set<String> getImporters(String moduleName, boolean transitive) {
+        Set<String> ret = new HashSet<String>();
+        Set<String> direct = importedToModules.get(moduleName);
+        if(direct == null){
+            return ret;
+        }
+        if(!transitive){
+            ret.addAll(direct);
+            ret.remove(moduleName);
+            return ret;
+        }
+        ret.add(moduleName);
+        LinkedList<String> toVisit = new LinkedList<String>(direct);
+        while(!toVisit.isEmpty()){
+            String next = toVisit.removeFirst();
+            if(ret.add(next)){
+                Set<String> importers = importedToModules.get(next);
+                if(importers != null){
+                    toVisit.addAll(importers);
+                }
+            }
+        }
+        ret.remove(moduleName);
+        return ret;
+    }
+
+
+    /**
+     * @return the names imported by the given module (empty if unknown).
+     */
+    public List<String> getImports(String moduleName) {
+        ModuleEntry entry = modules.get(moduleName);
+        if(entry == null){
+            return Arrays.asList(EMPTY);
+        }
+        return Arrays.asList(entry.imports);
+    }
+
+
+    /**
+     * @return the number of modules in the graph.
+     */
+    public int getModulesCount() {
+        return modules.size();
+    }
+
+
+    public void clear() {
+        modules.clear();
+        removed.clear();
+        importedToModules.clear();
+    }
+
+
+    /**
+     * @param moduleName the name of the module that has the imports.
+     * @param isPackage whether the module is the __init__ of a package.
+     * @return the names of the modules that may be referenced by the imports found in the given ast.
+     */
+    public static Set<String> getImportedModules(SimpleNode ast, String moduleName, boolean isPackage) {
+        Set<String> ret = new HashSet<String>();
+        if(ast == null){
+            return ret;
+        }
+        String currPackage = isPackage ? moduleName : FullRepIterable.getWithoutLastPart(moduleName);
+
+        for(ASTEntry entry:EasyASTIteratorVisitor.create(ast).getAsList(new Class[]{Import.class, ImportFrom.class})){
+            if(entry.node instanceof Import){
+                for(aliasType alias:((Import) entry.node).names){
+                    addImport(ret, currPackage, ((NameTok) alias.name).id, true);
+                }
+
+            }else{
+                ImportFrom importFrom = (ImportFrom) entry.node;
+                String module = ((NameTok) importFrom.module).id;
+                String base;
+                boolean mayBeRelative;
+                if(importFrom.level > 0){
+                    base = currPackage;
+                    for(int i=1;i<importFrom.level && base.length() > 0;i++){
+                        base = FullRepIterable.getWithoutLastPart(base);
+                    }
+                    if(module.length() > 0){
+                        base = base.length() > 0 ? base + "." + module : module;
+                    }
+                    if(base.length() == 0){
+                        continue;
+                    }
+                    mayBeRelative = false;
+                }else{
+                    base = module;
+                    mayBeRelative = true;
+                }
+                addImport(ret, currPackage, base, mayBeRelative);
+                for(aliasType alias:importFrom.names){
+                    String name = ((NameTok) alias.name).id;
+                    if(!name.equals("*")){
+                        addImport(ret, currPackage, base + "." + name, mayBeRelative);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+
+    /**
+     * Adds the name (and the name relative to the current package if it may be a relative import).
+     */
+    private static void addImport(Set<String> imports, String currPackage, String name, boolean mayBeRelative) {
+        imports.add(name);
+        if(mayBeRelative && currPackage.length() > 0){
+            imports.add(currPackage + "." + name);
+        }
+    }
+
+
+    // ------------------------------------------------------------------------------------------------- persistence
+
+    /**
+     * Writes the graph to the given file (the removed modules are not written).
+     */
+    public void save(File file) throws IOException {
+        File tempFile = new File(file.getPath()+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try{
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(modules.size());
+            for(Map.Entry<String, ModuleEntry> entry:modules.entrySet()){
+                ModuleEntry moduleEntry = entry.getValue();
+                out.writeUTF(entry.getKey());
+                if(moduleEntry.topLevelTokens == null){
+                    out.writeInt(-1);
+                }else{
+                    out.writeInt(moduleEntry.topLevelTokens.length);
+                    for(String token:moduleEntry.topLevelTokens){
+                        out.writeUTF(token);
+                    }
+                }
+                out.writeInt(moduleEntry.imports.length);
+                for(String imported:moduleEntry.imports){
+                    out.writeUTF(imported);
+                }
+            }
+        }finally{
+            out.close();
+        }
+        if(!tempFile.renameTo(file)){
+            file.delete();
+            if(!tempFile.renameTo(file)){
+                tempFile.delete();
+                throw new IOException("Unable to write: "+file);
+            }
+        }
+    }
+
+
+    /**
+     * Replaces the contents of this graph with the contents of the given file.
+     *
+     * @return false if the file does not exist or was written in another version (in which case the graph is
+     * left empty).
+     */
+    public boolean load(File file) throws IOException {
+        clear();
+        if(!file.isFile()){
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try{
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                return false;
+            }
+            int size = in.readInt();
+            for(int i=0;i<size;i++){
+                String moduleName = in.readUTF();
+                ModuleEntry entry = new ModuleEntry();
+                int tokens = in.readInt();
+                if(tokens >= 0){
+                    entry.topLevelTokens = new String[tokens];
+                    for(int j=0;j<tokens;j++){
+                        entry.topLevelTokens[j] = in.readUTF();
+                    }
+                }
+                int imports = in.readInt();
+                entry.imports = new String[imports];
+                for(int j=0;j<imports;j++){
+                    entry.imports[j] = in.readUTF();
+                }
+                modules.put(moduleName, entry);
+                addEdges(moduleName, entry.imports);
+            }
+        }catch(IOException e){
+            clear();
+            throw e;
+        }finally{
+            in.close();
+        }
+        return true;
+    }
+}
@@ -11,6 +11,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.log.Log;
+import org.python.pydev.editor.codecompletion.shell.ShellPool;
 import org.python.pydev.logging.DebugSettings;
 
 /**
@@ -153,7 +154,13 @@ public abstract class AbstractAnalysisBuilderRunnable implements IAnalysisBuilde
                 this.oldAnalysisBuilderThread = null;
                 
                 if(!internalCancelMonitor.isCanceled()){
-                    doAnalysis();
+                    //the requests to the shells from the analysis must not make the user wait for a completion
+                    boolean previousBackground = ShellPool.setBackgroundThread(true);
+                    try{
+                        doAnalysis();
+                    }finally{
+                        ShellPool.setBackgroundThread(previousBackground);
+                    }
                 }else{
                     logOperationCancelled();
                 }
@@ -30,8 +30,9 @@ import org.python.pydev.logging.DebugSettings;
 import com.python.pydev.analysis.AnalysisPreferences;
 import com.python.pydev.analysis.IAnalysisPreferences;
 import com.python.pydev.analysis.OccurrencesAnalyzer;
-import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo;
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo;
 import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
+import com.python.pydev.analysis.additionalinfo.dependencies.PyStructuralChange;
 import com.python.pydev.analysis.messages.IMessage;
 
 /**
@@ -154,7 +155,7 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable{
                 Log.log("Finished analysis: null nature -- "+moduleName);
                 return;
             }
-            AbstractAdditionalTokensInfo info = AdditionalProjectInterpreterInfo.
+            AbstractAdditionalDependencyInfo info = AdditionalProjectInterpreterInfo.
                 getAdditionalInfoForProject(nature);
             
             if(info == null){
@@ -162,15 +163,6 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable{
                 return;
             }
             
-            checkStop();
-            //remove dependency information (and anything else that was already generated), but first, gather 
-            //the modules dependent on this one.
-            if(!isFullBuild){
-                //if it is a full build, that info is already removed
-                AnalysisBuilderRunnableForRemove.removeInfoForModule(moduleName, nature, isFullBuild);
-            }
-
-            
             boolean onlyRecreateCtxInsensitiveInfo = !forceAnalysis && 
                 analysisCause == ANALYSIS_CAUSE_BUILDER && 
                 PyDevBuilderPrefPage.getAnalyzeOnlyActiveEditor();
@@ -198,7 +190,15 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable{
 			
 			checkStop();
 			//recreate the ctx insensitive info
-            recreateCtxInsensitiveInfo(info, module, nature, r);
+            PyStructuralChange change = recreateCtxInsensitiveInfo(info, module, nature, r);
+            if(moduleRequest == FULL_MODULE){
+                //the definitions module doesn't have the imports
+                info.setImports(module.getModulesKey(), module.getAst());
+            }
+            if(change != null){
+                //on a full build all the modules are analyzed anyways
+                AnalysisBuilderVisitor.analyzeImporters(nature, moduleName);
+            }
             
             if(onlyRecreateCtxInsensitiveInfo){
                 if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
@@ -298,21 +298,19 @@ public class AnalysisBuilderRunnable extends AbstractAnalysisBuilderRunnable{
     
     
     /**
-     * @return false if there's no modification among the current version of the file and the last version analyzed.
+     * Recreates the info for the module (on a full build, the info was already removed, otherwise, the previous
+     * info is only replaced if the definitions of the module changed).
+     * 
+     * @return the change in the top-level tokens of the module (always null on a full build).
      */
-    private void recreateCtxInsensitiveInfo(AbstractAdditionalTokensInfo info, SourceModule sourceModule, 
-            IPythonNature nature, IResource r) {
+    private PyStructuralChange recreateCtxInsensitiveInfo(AbstractAdditionalDependencyInfo info, 
+            SourceModule sourceModule, IPythonNature nature, IResource r) {
         
-        //info.removeInfoFromModule(sourceModule.getName()); -- does not remove info from the module because this
-        //should be already done once it gets here (the AnalysisBuilder, that also makes dependency info 
-        //should take care of this).
-        boolean generateDelta;
         if(isFullBuild){
-            generateDelta = false;
-        }else{
-            generateDelta = true;
+            info.addAstInfo(sourceModule.getAst(), sourceModule.getModulesKey(), false);
+            return null;
         }
-        info.addAstInfo(sourceModule.getAst(), sourceModule.getModulesKey(), generateDelta);
+        return info.replaceAstInfoGettingChange(sourceModule.getAst(), sourceModule.getModulesKey(), true);
     }
 
 
@@ -41,6 +41,15 @@ public class AnalysisBuilderRunnableForRemove extends AbstractAnalysisBuilderRun
             Log.toLogFile(this, "Removing additional info from: "+moduleName);
         }
         removeInfoForModule(moduleName, nature, isFullBuild);
+        if(!isFullBuild && moduleName != null && nature != null){
+            try {
+                AdditionalProjectInterpreterInfo.getAdditionalInfoForProject(nature).forgetTopLevelTokens(moduleName);
+            } catch (MisconfigurationException e) {
+                Log.log(e);
+            }
+            //the modules that import it may now have unresolved imports
+            AnalysisBuilderVisitor.analyzeImporters(nature, moduleName);
+        }
     }
 
 
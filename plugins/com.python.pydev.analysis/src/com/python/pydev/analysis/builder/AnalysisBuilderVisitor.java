@@ -10,20 +10,31 @@
 package com.python.pydev.analysis.builder;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.text.IDocument;
+import org.python.pydev.builder.PyDevBuilderPrefPage;
 import org.python.pydev.builder.PyDevBuilderVisitor;
 import org.python.pydev.core.IModule;
 import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.MisconfigurationException;
+import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.ModulesKeyForZip;
+import org.python.pydev.core.REF;
 import org.python.pydev.core.callbacks.ICallback;
 import org.python.pydev.core.concurrency.RunnableAsJobsPoolThread;
 import org.python.pydev.core.log.Log;
+import org.python.pydev.editor.PyEdit;
 import org.python.pydev.editor.codecompletion.revisited.PyCodeCompletionVisitor;
 import org.python.pydev.editor.codecompletion.revisited.modules.SourceModule;
+import org.python.pydev.editorinput.PySourceLocatorBase;
 import org.python.pydev.logging.DebugSettings;
 import org.python.pydev.parser.fastparser.FastDefinitionsParser;
 import org.python.pydev.plugin.nature.PythonNature;
@@ -32,6 +43,12 @@ import com.python.pydev.analysis.additionalinfo.AbstractAdditionalDependencyInfo
 import com.python.pydev.analysis.additionalinfo.AdditionalProjectInterpreterInfo;
 
 public class AnalysisBuilderVisitor extends PyDevBuilderVisitor{
+    
+    /**
+     * If true, when the top-level tokens of a module change, the modules that import its importers (and so on) are
+     * also analyzed again (otherwise only the modules that import it directly are).
+     */
+    public static boolean ANALYZE_TRANSITIVE_IMPORTERS = false;
 
     @Override
     protected int getPriority() {
@@ -247,4 +264,75 @@ public class AnalysisBuilderVisitor extends PyDevBuilderVisitor{
     
 
 
+    /**
+     * Schedules the analysis of the modules that import the given module (called when its top-level tokens changed
+     * or it was removed, as the importers may reference tokens that are no longer there -- or that are now there).
+     * 
+     * Modules whose errors wouldn't be shown (when only the active editor is analyzed and the module is not opened 
+     * in an editor) are skipped.
+     */
+    public static void analyzeImporters(IPythonNature nature, String moduleName) {
+        List<AbstractAdditionalDependencyInfo> infos;
+        try {
+            infos = AdditionalProjectInterpreterInfo.getAdditionalInfoForProjectAndReferencing(nature);
+        } catch (MisconfigurationException e) {
+            Log.log(e);
+            return;
+        }
+        boolean analyzeOnlyActiveEditor = PyDevBuilderPrefPage.getAnalyzeOnlyActiveEditor();
+        PySourceLocatorBase locator = null;
+        AnalysisBuilderVisitor visitor = null;
+        Set<ModulesKey> scheduled = new HashSet<ModulesKey>();
+        
+        for(AbstractAdditionalDependencyInfo info:infos){
+            for(ModulesKey key:info.getImporters(moduleName, ANALYZE_TRANSITIVE_IMPORTERS)){
+                if(key.file == null || key instanceof ModulesKeyForZip || !scheduled.add(key)){
+                    continue;
+                }
+                if(locator == null){
+                    locator = new PySourceLocatorBase();
+                    visitor = new AnalysisBuilderVisitor();
+                }
+                final IFile f = locator.getWorkspaceFile(key.file);
+                if(f == null){
+                    continue;
+                }
+                if(analyzeOnlyActiveEditor && !PyEdit.isEditorOpenForResource(f)){
+                    continue;
+                }
+                PythonNature importerNature = PythonNature.getPythonNature(f);
+                final IDocument doc = REF.getDocFromResource(f);
+                if(importerNature == null || doc == null){
+                    continue;
+                }
+                if(DebugSettings.DEBUG_ANALYSIS_REQUESTS){
+                    Log.toLogFile(visitor, "Analyzing importer: "+key.name+" (changed: "+moduleName+")");
+                }
+                
+                final String importerName = key.name;
+                long documentTime = f.getModificationStamp();
+                visitor.memo = new HashMap<String, Object>();
+                visitor.memo.put(PyDevBuilderVisitor.IS_FULL_BUILD, false);
+                visitor.memo.put(PyDevBuilderVisitor.DOCUMENT_TIME, documentTime);
+                setModuleNameInCache(visitor.memo, f, importerName);
+                
+                ICallback<IModule, Integer> moduleCallback = new ICallback<IModule, Integer>(){
+                    
+                    public IModule call(Integer arg) {
+                        try{
+                            return createSourceModule(f, doc, importerName);
+                        }catch(MisconfigurationException e){
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                //analyzed as if it was requested by the parser (the builder would only recreate the ctx insensitive
+                //info for it when only the active editor is analyzed).
+                visitor.doVisitChangedResource(importerNature, f, doc, moduleCallback, null, new NullProgressMonitor(), 
+                        false, AnalysisBuilderRunnable.ANALYSIS_CAUSE_PARSER, documentTime);
+            }
+        }
+    }
+
+
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pep8;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import org.python.core.Py;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.pydev.core.NullOutputStream;
+import org.python.pydev.jython.IPythonInterpreter;
+import org.python.pydev.jython.JythonPlugin;
+
+/**
+ * Keeps warm jython interpreters to run pep8 (creating a new interpreter for each analyzed file was the slowest
+ * part of the pep8 analysis).
+ *
+ * An interpreter is only used by the thread that borrowed it until it's given back (so, no synchronization is
+ * needed to use it) and the variables set for a run are cleared before it goes back to the pool. Each interpreter
+ * has its own sys (so, the output of the interpreters is not shared).
+ *
+ * The script that runs pep8 is compiled only once and shared by all the interpreters.
+ *
+ * @author Fabio
+ */
+public final class Pep8InterpreterPool {
+
+    /**
+     * The maximum number of idle interpreters kept (if 0, a new interpreter is created for each file).
+     */
+    public static int MAX_IDLE_INTERPRETERS = 3;
+
+    /**
+     * Runs pep8 for a file. Expects the variables: argv, add_to_pythonpath, filename, lines, visitor and pep8
+     * (pep8 may be None, in which case it's imported and kept in the interpreter for the next runs).
+     */
+    private static final String RUN_PEP8 =
+                        "import sys\n" +
+                        "sys.argv=argv\n" + //It always accesses sys.argv[0] in process_options, so, it must be set.
+                        "\n" +
+                        "if pep8 == None:\n" + //Optimization: if possible don't import pep8 (the import was the slowest thing in this code).
+                        "    if add_to_pythonpath not in sys.path:\n" +
+                        "        sys.path.append(add_to_pythonpath)\n" +
+                        "    import pep8\n" +
+                        "\n" +
+                        "options, args = pep8.process_options(argv[1:])\n" + //don't use sys.argv (it seems it doesn't get updated as it should).
+                        "pep8.options = options\n" +
+                        //"print options\n" + uncomment for debugging options
+                        "checker = pep8.Checker(filename, lines)\n" +
+                        "\n" +
+                        "def report_error(line_number, offset, text, check):\n" +
+                        "    code = text[:4]\n" +
+                        "    if pep8.ignore_code(code) or code in checker.expected:\n" +
+                        "        return\n" +
+                        "    visitor.reportError(line_number, offset, text, check)\n" +
+                        "    return original(line_number, offset, text, check)\n" +
+                        "\n" +
+                        "\n" +
+                        "original = checker.report_error\n" +
+                        "checker.report_error = report_error\n" +
+                        "\n" +
+                        "checker.check_all()\n" +
+                        "\n" +
+                        "";
+
+    /**
+     * The variables that refer to the analyzed file (cleared after each run).
+     */
+    private static final String[] RUN_VARIABLES = new String[]{
+        "argv", "filename", "lines", "visitor", "checker", "original", "report_error", "options", "args"};
+
+    /**
+     * The pep8 module imported (shared among the interpreters so that it's only imported once).
+     */
+    private volatile static PyObject pep8;
+
+    /**
+     * RUN_PEP8 compiled.
+     */
+    private volatile static PyObject runPep8Code;
+
+    private static final Object lock = new Object();
+
+    /**
+     * Interpreters not currently used (synchronize on it to access it).
+     */
+    private static final LinkedList<Pep8Interpreter> idle = new LinkedList<Pep8Interpreter>();
+
+    /**
+     * An interpreter that may be used to run pep8.
+     */
+    public static final class Pep8Interpreter {
+
+        private final IPythonInterpreter interpreter;
+        private final boolean useConsole;
+        private final String pep8Dir;
+
+        private Pep8Interpreter(boolean useConsole, String pep8Dir) {
+            this.useConsole = useConsole;
+            this.pep8Dir = pep8Dir;
+            this.interpreter = JythonPlugin.newPythonInterpreter(useConsole, false);
+            if(!useConsole){
+                interpreter.setErr(NullOutputStream.singleton);
+                interpreter.setOut(NullOutputStream.singleton);
+            }
+            interpreter.set("add_to_pythonpath", pep8Dir);
+            PyObject tempPep8 = pep8;
+            if(tempPep8 != null){
+                interpreter.set("pep8", tempPep8);
+            }else{
+                interpreter.set("pep8", Py.None);
+            }
+        }
+
+        /**
+         * Runs pep8 for the given file (errors are reported to visitor.reportError).
+         *
+         * @param argv the arguments to pep8 (the first one is the name of the script).
+         * @param file the file being analyzed.
+         * @param lines the lines of the document (with the new line chars).
+         * @param visitor the visitor that'll receive the errors.
+         */
+        public void run(String[] argv, String file, Object lines, Pep8Visitor visitor) {
+            try {
+                PyList pyArgv = new PyList();
+                for (String arg : argv) {
+                    pyArgv.append(new PyString(arg));
+                }
+                interpreter.set("argv", pyArgv);
+                interpreter.set("filename", file);
+                interpreter.set("lines", lines);
+                interpreter.set("visitor", visitor);
+                interpreter.exec(getRunPep8Code());
+                if(pep8 == null){
+                    synchronized (lock) {
+                        if(pep8 == null){
+                            pep8 = interpreter.get("pep8");
+                        }
+                    }
+                }
+            } finally {
+                //don't keep references to the analyzed file
+                for (String var : RUN_VARIABLES) {
+                    interpreter.set(var, null);
+                }
+            }
+        }
+    }
+
+    private Pep8InterpreterPool() {
+    }
+
+    private static PyObject getRunPep8Code() {
+        if(runPep8Code == null){
+            synchronized (lock) {
+                if(runPep8Code == null){
+                    runPep8Code = Py.compile_flags(RUN_PEP8, "<pep8>", "exec", null);
+                }
+            }
+        }
+        return runPep8Code;
+    }
+
+    /**
+     * Gets an interpreter to be used by the current thread (it must be given back with giveBack when the
+     * run finishes -- or not given back if it failed).
+     *
+     * @param useConsole whether the output of pep8 should go to the console.
+     * @param pep8Dir the dir that contains pep8.py (added to the pythonpath).
+     */
+    public static Pep8Interpreter borrow(boolean useConsole, String pep8Dir) {
+        synchronized (idle) {
+            for (Iterator<Pep8Interpreter> it = idle.iterator(); it.hasNext();) {
+                Pep8Interpreter interpreter = it.next();
+                it.remove();
+                if(interpreter.useConsole == useConsole && interpreter.pep8Dir.equals(pep8Dir)){
+                    return interpreter;
+                }
+                //the preferences changed: it's not useful anymore (just let it be garbage-collected).
+            }
+        }
+        return new Pep8Interpreter(useConsole, pep8Dir);
+    }
+
+    /**
+     * Makes an interpreter available to be used again.
+     */
+    public static void giveBack(Pep8Interpreter interpreter) {
+        synchronized (idle) {
+            if(idle.size() < MAX_IDLE_INTERPRETERS){
+                idle.addFirst(interpreter);
+            }
+        }
+    }
+
+    /**
+     * Discards the interpreters that are not being used.
+     */
+    public static void clear() {
+        synchronized (idle) {
+            idle.clear();
+        }
+    }
+}
@@ -14,16 +14,11 @@ import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
-import org.python.core.Py;
-import org.python.core.PyObject;
-import org.python.pydev.core.NullOutputStream;
+import org.python.pydev.builder.pep8.Pep8InterpreterPool.Pep8Interpreter;
 import org.python.pydev.core.docutils.PySelection;
 import org.python.pydev.core.docutils.StringUtils;
 import org.python.pydev.core.log.Log;
-import org.python.pydev.core.structure.FastStringBuffer;
 import org.python.pydev.editor.codecompletion.revisited.modules.SourceModule;
-import org.python.pydev.jython.IPythonInterpreter;
-import org.python.pydev.jython.JythonPlugin;
 
 import com.python.pydev.analysis.IAnalysisPreferences;
 import com.python.pydev.analysis.messages.IMessage;
@@ -37,43 +32,9 @@ import com.python.pydev.analysis.ui.AnalysisPreferencesPage;
 public class Pep8Visitor {
 
     
-    private static final String EXECUTE_PEP8 = 
-                        "import sys\n" +
-                		"argv = ['pep8.py', r'%s'%s]\n" +
-                		"sys.argv=argv\n" + //It always accesses sys.argv[0] in process_options, so, it must be set.
-                		"\n" +
-                		"if pep8 == None:\n" + //Optimization: if possible don't import pep8 (the import was the slowest thing in this code).
-                		"    add_to_pythonpath = '%s'\n" +
-                		"    if add_to_pythonpath not in sys.path:\n" +
-                		"        sys.path.append(add_to_pythonpath)\n" +
-                		"    import pep8\n" +
-                		"\n" +
-                		"options, args = pep8.process_options(argv[1:])\n" + //don't use sys.argv (it seems it doesn't get updated as it should).
-                		"pep8.options = options\n" +
-                		//"print options\n" + uncomment for debugging options
-                		"checker = pep8.Checker('%s', lines)\n" +
-                		"\n" +
-                		"def report_error(line_number, offset, text, check):\n" +
-                		"    code = text[:4]\n" +
-                		"    if pep8.ignore_code(code) or code in checker.expected:\n" +
-                		"        return\n" +
-                        "    visitor.reportError(line_number, offset, text, check)\n" +
-                		"    return original(line_number, offset, text, check)\n" +
-                		"\n" +
-                		"\n" +
-                		"original = checker.report_error\n" +
-                		"checker.report_error = report_error\n" +
-                		"\n" +
-                		"checker.check_all()\n" +
-                		"\n" +
-                		"";
-    
-    
     private final List<IMessage> messages = new ArrayList<IMessage>();
     private IAnalysisPreferences prefs;
     private IDocument document;
-    private volatile static PyObject pep8;
-    private static final Object lock = new Object();
     private String messageToIgnore;
     
     public List<IMessage> getMessages (SourceModule module, IDocument document, IProgressMonitor monitor, IAnalysisPreferences prefs) {
@@ -82,16 +43,6 @@ public class Pep8Visitor {
             if(prefs.getSeverityForType(IAnalysisPreferences.TYPE_PEP8) < IMarker.SEVERITY_WARNING){
                 return messages;
             }
-            messageToIgnore = prefs.getRequiredMessageToIgnore(IAnalysisPreferences.TYPE_PEP8);
-            
-            String[] pep8CommandLine = AnalysisPreferencesPage.getPep8CommandLine();
-            
-            FastStringBuffer args = new FastStringBuffer(pep8CommandLine.length*20);
-            for (String string : pep8CommandLine) {
-                args.append(',').append("r'").append(string).append('\'');
-            }
-            
-            
             
             String pep8Location = AnalysisPreferencesPage.getPep8Location();
             
@@ -102,46 +53,8 @@ public class Pep8Visitor {
                 return messages;
             }
             
-            this.prefs = prefs;
-            this.document = document;
-            
-            //It's important that the interpreter is created in the Thread and not outside the thread (otherwise
-            //it may be that the output ends up being shared, which is not what we want.)
-            boolean useConsole = AnalysisPreferencesPage.useConsole();
-            IPythonInterpreter interpreter = JythonPlugin.newPythonInterpreter(useConsole, false);
-            if(!useConsole){
-                interpreter.setErr(NullOutputStream.singleton);
-                interpreter.setOut(NullOutputStream.singleton);
-            }
-            String file = StringUtils.replaceAllSlashes(module.getFile().getAbsolutePath());
-            interpreter.set("visitor", this);
-            
-            
-            List<String> splitInLines = StringUtils.splitInLines(document.get());
-            interpreter.set("lines", splitInLines);
-            PyObject tempPep8 = pep8;
-            if(tempPep8 != null){
-                interpreter.set("pep8", tempPep8);
-            }else{
-                interpreter.set("pep8", Py.None);
-            }
-            
-            String formatted = StringUtils.format(
-            		EXECUTE_PEP8, 
-            		file,
-            		args.toString(),
-            		StringUtils.replaceAllSlashes(pep8Loc.getParentFile().getAbsolutePath()), //put the parent dir of pep8.py in the pythonpath.
-            		file
-            );
-            interpreter.exec(formatted);
-            if(pep8 == null){
-                synchronized (lock) {
-                    if(pep8 == null){
-                        pep8 = interpreter.get("pep8");
-                    }
-                }
-            }
-            
+            getMessages(module.getFile(), document, prefs, AnalysisPreferencesPage.getPep8CommandLine(), pep8Loc, 
+                    AnalysisPreferencesPage.useConsole());
 
         } catch (Exception e) {
             Log.log(e);
@@ -150,6 +63,39 @@ public class Pep8Visitor {
         return messages;
     }
     
+    /**
+     * Runs pep8 for the given file with the given options (without getting anything from the preferences).
+     * 
+     * @param file the file being analyzed.
+     * @param document the contents of the file.
+     * @param pep8CommandLine the arguments passed to pep8.
+     * @param pep8Loc the location of pep8.py
+     * @param useConsole whether the output of pep8 should go to the console.
+     */
+    public List<IMessage> getMessages (File file, IDocument document, IAnalysisPreferences prefs, 
+            String[] pep8CommandLine, File pep8Loc, boolean useConsole) {
+        messageToIgnore = prefs.getRequiredMessageToIgnore(IAnalysisPreferences.TYPE_PEP8);
+        this.prefs = prefs;
+        this.document = document;
+        
+        String fileStr = StringUtils.replaceAllSlashes(file.getAbsolutePath());
+        String[] argv = new String[pep8CommandLine.length + 2];
+        argv[0] = "pep8.py";
+        argv[1] = fileStr;
+        System.arraycopy(pep8CommandLine, 0, argv, 2, pep8CommandLine.length);
+        
+        List<String> splitInLines = StringUtils.splitInLines(document.get());
+        
+        //put the parent dir of pep8.py in the pythonpath.
+        String pep8Dir = StringUtils.replaceAllSlashes(pep8Loc.getParentFile().getAbsolutePath());
+        Pep8Interpreter interpreter = Pep8InterpreterPool.borrow(useConsole, pep8Dir);
+        
+        //if it fails, it's not given back (it may be in a bad state).
+        interpreter.run(argv, fileStr, splitInLines, this);
+        Pep8InterpreterPool.giveBack(interpreter);
+        return messages;
+    }
+    
     
     /**
      * 
@@ -29,6 +29,7 @@ public final class AnalysisPreferencesStub extends AbstractAnalysisPreferences {
     public int severityForIndentationProblem;
     public int severityForInvalidModuleName;
     public int severityForAssignmentToBuiltInSymbol;
+    public int severityForPep8;
 
     public AnalysisPreferencesStub(){
         severityForUnusedImport = IMarker.SEVERITY_WARNING;
@@ -45,6 +46,7 @@ public final class AnalysisPreferencesStub extends AbstractAnalysisPreferences {
         severityForIndentationProblem = IMarker.SEVERITY_WARNING;
         severityForInvalidModuleName = IMarker.SEVERITY_WARNING;
         severityForAssignmentToBuiltInSymbol = IMarker.SEVERITY_WARNING;
+        severityForPep8 = IMarker.SEVERITY_INFO; //pep8 is not run by default.
     }
     
     public int getSeverityForType(int type) {
@@ -83,7 +85,7 @@ public final class AnalysisPreferencesStub extends AbstractAnalysisPreferences {
                 return severityForNoEffectStmt;
             
             case TYPE_PEP8:
-                throw new RuntimeException("Pep8 not handled.");
+                return severityForPep8;
                 
             case TYPE_INDENTATION_PROBLEM:
                 return severityForIndentationProblem;
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.fastparser.FastDefinitionsParser;
+import org.python.pydev.parser.jython.SimpleNode;
+
+/**
+ * Checks that the queries in the additional info see all the infos of a module or none of them while the
+ * modules are being removed and added again.
+ *
+ * @author Fabio
+ */
+public class AdditionalInfoConcurrencyTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AdditionalInfoConcurrencyTest.class);
+    }
+
+    private static final int MODULES = 20;
+    private static final int DEFINITIONS = 50;
+
+    private static AbstractAdditionalTokensInfo createInfo() {
+        return new AbstractAdditionalTokensInfo(){
+
+            @Override
+            protected File getPersistingLocation() {
+                return null;
+            }
+
+            @Override
+            protected File getPersistingFolder() {
+                return null;
+            }
+
+            @Override
+            protected void setAsDefaultInfo() {
+            }
+
+            @Override
+            public List<ModulesKey> getModulesWithToken(String token, IProgressMonitor monitor) {
+                return null;
+            }
+        };
+    }
+
+    private static SimpleNode createDefinitions() {
+        FastStringBuffer buf = new FastStringBuffer();
+        for(int i=0;i<DEFINITIONS;i++){
+            buf.append("def stress_").append(i).append("():\n    pass\n");
+            buf.append("class Stress").append(i).append(":\n    def stress_method(self):\n        pass\n");
+        }
+        return FastDefinitionsParser.parse(buf.toCharArray(), "stress.py");
+    }
+
+    public void testReadersSeeWholeModules() throws Throwable {
+        final AbstractAdditionalTokensInfo info = createInfo();
+        final SimpleNode node = createDefinitions();
+        for(int i=0;i<MODULES;i++){
+            info.addAstInfo(node, new ModulesKey("mod"+i, null), false);
+        }
+
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        final boolean[] finished = new boolean[1];
+
+        Thread writer = new Thread(){
+            @Override
+            public void run() {
+                try {
+                    for(int j=0;j<50;j++){
+                        for(int i=0;i<MODULES;i++){
+                            info.removeInfoFromModule("mod"+i, false);
+                            info.addAstInfo(node, new ModulesKey("mod"+i, null), false);
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                } finally {
+                    synchronized (finished) {
+                        finished[0] = true;
+                    }
+                }
+            }
+        };
+
+        List<Thread> readers = new ArrayList<Thread>();
+        for(int r=0;r<4;r++){
+            readers.add(new Thread(){
+                @Override
+                public void run() {
+                    try {
+                        while(true){
+                            synchronized (finished) {
+                                if(finished[0]){
+                                    break;
+                                }
+                            }
+                            checkCounts(info.getTokensStartingWith("stress_", AbstractAdditionalTokensInfo.TOP_LEVEL),
+                                    DEFINITIONS);
+                            checkCounts(info.getTokensEqualTo("stress_method", AbstractAdditionalTokensInfo.INNER),
+                                    DEFINITIONS);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+        }
+
+        for(Thread t:readers){
+            t.start();
+        }
+        writer.start();
+        writer.join();
+        for(Thread t:readers){
+            t.join();
+        }
+        if(errors.size() > 0){
+            throw errors.get(0);
+        }
+        assertEquals(MODULES * DEFINITIONS * 3, info.getAllTokens().size());
+    }
+
+    /**
+     * Checks that each module in the infos has all the expected tokens.
+     */
+    private static void checkCounts(Iterable<IInfo> infos, int expected) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for(IInfo info:infos){
+            Integer count = counts.get(info.getDeclaringModuleName());
+            counts.put(info.getDeclaringModuleName(), count == null ? 1 : count + 1);
+        }
+        for(Map.Entry<String, Integer> entry:counts.entrySet()){
+            assertEquals("Partial module seen: "+entry.getKey(), expected, entry.getValue().intValue());
+        }
+    }
+}
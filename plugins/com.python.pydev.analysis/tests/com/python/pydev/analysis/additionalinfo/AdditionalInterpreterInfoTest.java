@@ -254,12 +254,54 @@ public class AdditionalInterpreterInfoTest extends AdditionalInfoTestsBase {
     }
     
 
+    public void testReplaceOnlyIfDefinitionsChanged() throws MisconfigurationException {
+        String doc =
+            "class Test:\n" +
+            "    def mmm(self):\n" +
+            "        self.attr1 = 10\n" +
+            "GLOBAL = 1\n";
+        SourceModule module = (SourceModule) AbstractModule.createModuleFromDoc("test", null, new Document(doc), nature, true);
+        assertTrue(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+        assertEquals(0, info.getSkippedUpdates());
+
+        //only the body changed
+        doc =
+            "class Test:\n" +
+            "    def mmm(self):\n" +
+            "        a = 20\n" +
+            "        self.attr1 = a\n" +
+            "GLOBAL = 2\n";
+        module = (SourceModule) AbstractModule.createModuleFromDoc("test", null, new Document(doc), nature, true);
+        assertFalse(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+        assertEquals(1, info.getSkippedUpdates());
+        Collection<IInfo> tokens = info.getTokensStartingWith("", AbstractAdditionalTokensInfo.TOP_LEVEL | AbstractAdditionalTokensInfo.INNER);
+        assertEquals(4, tokens.size());
+
+        //the attribute changed
+        doc =
+            "class Test:\n" +
+            "    def mmm(self):\n" +
+            "        self.attr2 = 10\n" +
+            "GLOBAL = 1\n";
+        module = (SourceModule) AbstractModule.createModuleFromDoc("test", null, new Document(doc), nature, true);
+        assertTrue(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+        assertEquals(1, info.getSkippedUpdates());
+        tokens = info.getTokensStartingWith("", AbstractAdditionalTokensInfo.TOP_LEVEL | AbstractAdditionalTokensInfo.INNER);
+        assertEquals(4, tokens.size());
+        assertIsIn("attr2", tokens);
+
+        //the info was changed in some other way: it must be replaced even if the definitions are the same
+        info.removeInfoFromModule("test", false);
+        assertTrue(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+        assertEquals(4, info.getTokensStartingWith("", AbstractAdditionalTokensInfo.TOP_LEVEL | AbstractAdditionalTokensInfo.INNER).size());
+    }
+
     public void testCompleteIndex() throws MisconfigurationException, InterruptedException {
         String doc = 
             "class Test:\n" +
             "    class Test2:\n" +
             "        def mmm(self):\n" +
-            "            a = mmm1\n" +
+            "            a = mmm1 #only in comment: zzz\n" +
             "            print mmm1";
         File tempFileAt = REF.getTempFileAt(baseDir, "data_temporary_file_on_additional_interpreter_info_test", ".py");
         REF.writeStrToFile(doc, tempFileAt);
@@ -275,15 +317,33 @@ public class AdditionalInterpreterInfoTest extends AdditionalInfoTestsBase {
             modulesWithTokensStartingWith = info.getModulesWithToken("mmm1", null);
             assertEquals(1, modulesWithTokensStartingWith.size()); 
             
+            //not in the ast (only in the contents)
+            modulesWithTokensStartingWith = info.getModulesWithToken("zzz", null);
+            assertEquals(1, modulesWithTokensStartingWith.size()); 
+            
             modulesWithTokensStartingWith = info.getModulesWithToken("mmm4", null);
             assertEquals(0, modulesWithTokensStartingWith.size()); 
             
+            //keeps the fingerprint of the definitions
+            assertTrue(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+            
             synchronized (this) {
                 wait(1000);
             }
             
+            //only the body changed: the definitions are kept but the contents are indexed again
+            doc = doc.replace("print mmm1", "print yyy");
+            REF.writeStrToFile(doc, tempFileAt);
+            module = (SourceModule) AbstractModule.createModuleFromDoc("test", tempFileAt, new Document(doc), nature, true);
+            assertFalse(info.replaceAstInfo(module.getAst(), module.getModulesKey(), false));
+            assertEquals(1, info.getModulesWithToken("yyy", null).size()); 
+            
             doc = "new contents";
             REF.writeStrToFile(doc, tempFileAt);
+            //the files are not checked in the queries (the builder adds the module again when it changes)
+            assertEquals(1, info.getModulesWithToken("mmm", null).size()); 
+            info.removeInfoFromModule("test", false);
+            info.addAstInfo(new ModulesKey("test", tempFileAt), false);
             modulesWithTokensStartingWith = info.getModulesWithToken("mmm", null);
             assertEquals(0, modulesWithTokensStartingWith.size()); 
             
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the size, load time and heap used by the additional info when persisted with java serialization (the
+ * previous format: a Tuple3 with the initials maps) and with the InfoBinaryFile.
+ *
+ * Run main() to see the numbers (the test only uses a small number of infos).
+ */
+public class InfoBinaryFileBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            InfoBinaryFileBenchmark test = new InfoBinaryFileBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.modules = 20000;
+            test.testLoad();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int modules = 200;
+
+    /**
+     * Creates the infos as the indexing of the given number of modules would (each with some classes, functions,
+     * methods and attributes).
+     */
+    private List<List<IInfo>> createInfos() {
+        List<IInfo> topLevel = new ArrayList<IInfo>();
+        List<IInfo> inner = new ArrayList<IInfo>();
+        for(int i=0;i<modules;i++){
+            String module = new String("package"+(i % 50)+".subpackage.module"+i);
+            for(int j=0;j<5;j++){
+                String className = "Class"+j+"_"+(i % 300);
+                topLevel.add(new ClassInfo(className, module, null));
+                topLevel.add(new FuncInfo("function"+j, module, null));
+                topLevel.add(new AttrInfo("CONSTANT_"+j, module, null));
+                for(int k=0;k<4;k++){
+                    inner.add(new FuncInfo("method"+k, module, className));
+                    inner.add(new AttrInfo("attr"+k, module, className+".method"+k));
+                }
+            }
+        }
+        List<List<IInfo>> ret = new ArrayList<List<IInfo>>();
+        ret.add(topLevel);
+        ret.add(inner);
+        return ret;
+    }
+
+    private static TreeMap<String, Set<IInfo>> toInitialsMap(List<IInfo> infos) {
+        TreeMap<String, Set<IInfo>> ret = new TreeMap<String, Set<IInfo>>();
+        for(IInfo info:infos){
+            String name = info.getName();
+            String initials = name.length() < 3 ? name : name.substring(0, 3).toLowerCase();
+            Set<IInfo> set = ret.get(initials);
+            if(set == null){
+                set = new HashSet<IInfo>();
+                ret.put(initials, set);
+            }
+            set.add(info);
+        }
+        return ret;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i=0;i<3;i++){
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void testLoad() throws Exception {
+        List<List<IInfo>> infos = createInfos();
+
+        File serializedFile = File.createTempFile("info_benchmark", ".ser");
+        File binaryFile = File.createTempFile("info_benchmark", ".bin");
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serializedFile)));
+            out.writeObject(new Object[]{toInitialsMap(infos.get(0)), toInitialsMap(infos.get(1)), 3});
+            out.close();
+
+            InfoBinaryFile.Writer writer = new InfoBinaryFile.Writer();
+            writer.addInfos(infos.get(0));
+            writer.addInfos(infos.get(1));
+            writer.write(binaryFile);
+            int total = infos.get(0).size() + infos.get(1).size();
+            infos = null;
+
+            //warm up
+            loadSerialized(serializedFile);
+            loadBinary(binaryFile);
+
+            long memBefore = usedMemory();
+            long initial = System.nanoTime();
+            Object serialized = loadSerialized(serializedFile);
+            long serializedTime = (System.nanoTime() - initial) / 1000000;
+            long serializedMem = usedMemory() - memBefore;
+            assertNotNull(serialized);
+            serialized = null;
+
+            memBefore = usedMemory();
+            initial = System.nanoTime();
+            List<TreeMap<String, Set<IInfo>>> binary = loadBinary(binaryFile);
+            long binaryTime = (System.nanoTime() - initial) / 1000000;
+            long binaryMem = usedMemory() - memBefore;
+            assertEquals(2, binary.size());
+
+            if(printTimes){
+                System.out.println("Infos: "+total);
+                System.out.println("Serialized: size (KB): "+serializedFile.length()/1024+" load (ms): "+serializedTime+
+                        " heap (KB): "+serializedMem/1024);
+                System.out.println("Binary: size (KB): "+binaryFile.length()/1024+" load (ms): "+binaryTime+
+                        " heap (KB): "+binaryMem/1024);
+            }
+            assertTrue(binaryFile.length() < serializedFile.length());
+        } finally {
+            serializedFile.delete();
+            binaryFile.delete();
+        }
+    }
+
+    private Object loadSerialized(File file) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<TreeMap<String, Set<IInfo>>> loadBinary(File file) throws Exception {
+        InfoBinaryFile.Reader reader = InfoBinaryFile.read(file);
+        List<TreeMap<String, Set<IInfo>>> ret = new ArrayList<TreeMap<String, Set<IInfo>>>();
+        for(int i=0;i<reader.getInfoListsCount();i++){
+            ret.add(toInitialsMap(reader.getInfos(i)));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Fabio
+ */
+public class InfoBinaryFileTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(InfoBinaryFileTest.class);
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("info_binary_file_test", ".pydevinfo");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testWriteRead() throws Exception {
+        List<IInfo> topLevel = new ArrayList<IInfo>();
+        topLevel.add(new ClassInfo("Class", "mod1", null));
+        topLevel.add(new FuncInfo("func", "mod1", null));
+        topLevel.add(new AttrInfo("attr", "mod2", null));
+        topLevel.add(new NameInfo("name\u00e7\u00e3o", "mod2", null));
+
+        List<IInfo> inner = new ArrayList<IInfo>();
+        inner.add(new FuncInfo("method", "mod1", "Class"));
+        inner.add(new AttrInfo("attr", "mod1", "Class.method"));
+
+        InfoBinaryFile.Writer writer = new InfoBinaryFile.Writer();
+        writer.addInfos(topLevel);
+        writer.addInfos(inner);
+        writer.getExtra().writeInt(writer.addString("mod1"));
+        writer.getExtra().writeInt(writer.addString("extra"));
+        writer.getExtra().writeLong(10);
+        writer.write(file);
+
+        InfoBinaryFile.Reader reader = InfoBinaryFile.read(file);
+        assertEquals(2, reader.getInfoListsCount());
+        assertEquals(topLevel, reader.getInfos(0));
+        assertEquals(inner, reader.getInfos(1));
+
+        List<IInfo> infos = reader.getInfos(0);
+        //strings are shared
+        assertSame(infos.get(0).getDeclaringModuleName(), infos.get(1).getDeclaringModuleName());
+        assertNull(infos.get(0).getPath());
+
+        ByteBuffer extra = reader.getExtra();
+        assertEquals("mod1", reader.getString(extra.getInt()));
+        assertEquals("extra", reader.getString(extra.getInt()));
+        assertEquals(10, extra.getLong());
+        assertFalse(extra.hasRemaining());
+    }
+
+    public void testInvalidFile() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{(byte)0xAC, (byte)0xED, 0, 5, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        out.close();
+        try {
+            InfoBinaryFile.read(file);
+            fail("Expected the file not to be read (java serialization).");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+}
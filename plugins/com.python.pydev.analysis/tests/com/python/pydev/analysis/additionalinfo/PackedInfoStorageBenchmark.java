@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.Filter;
+
+/**
+ * Loads the same (saved) interpreter info in the InitialsInfoStorage and in the PackedInfoStorage and compares the
+ * heap used and the time of the queries.
+ *
+ * Run main() to see the numbers (the test only uses a small number of infos).
+ */
+public class PackedInfoStorageBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            PackedInfoStorageBenchmark test = new PackedInfoStorageBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.modules = 20000;
+            test.testHeap();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int modules = 200;
+
+    private static final Filter startingWith = new Filter(){
+        public boolean doCompare(String lowerCaseQual, IInfo info) {
+            return doCompare(lowerCaseQual, info.getName());
+        }
+        public boolean doCompare(String qualifier, String infoName) {
+            return infoName.toLowerCase().startsWith(qualifier);
+        }
+    };
+
+    private static String initials(String name) {
+        return name.length() < 3 ? name : name.substring(0, 3).toLowerCase();
+    }
+
+    /**
+     * Writes the infos as the indexing of the given number of modules would create them.
+     */
+    private void writeInfos(File file) throws Exception {
+        List<IInfo> topLevel = new ArrayList<IInfo>();
+        List<IInfo> inner = new ArrayList<IInfo>();
+        for(int i=0;i<modules;i++){
+            String module = "package"+(i % 50)+".subpackage.module"+i;
+            for(int j=0;j<5;j++){
+                String className = "Class"+j+"_"+(i % 300);
+                topLevel.add(new ClassInfo(className, module, null));
+                topLevel.add(new FuncInfo("function"+j, module, null));
+                topLevel.add(new AttrInfo("CONSTANT_"+j, module, null));
+                for(int k=0;k<4;k++){
+                    inner.add(new FuncInfo("method"+k, module, className));
+                    inner.add(new AttrInfo("attr"+k, module, className+".method"+k));
+                }
+            }
+        }
+        InfoBinaryFile.Writer writer = new InfoBinaryFile.Writer();
+        writer.addInfos(topLevel);
+        writer.addInfos(inner);
+        writer.write(file);
+    }
+
+    private static IInfoStorage[] load(File file, boolean packed) throws Exception {
+        IInfoStorage[] ret;
+        if(packed){
+            PackedInfoStorage.StringPool pool = new PackedInfoStorage.StringPool();
+            ret = new IInfoStorage[]{new PackedInfoStorage(pool), new PackedInfoStorage(pool)};
+        }else{
+            ret = new IInfoStorage[]{new InitialsInfoStorage(), new InitialsInfoStorage()};
+        }
+        InfoBinaryFile.Reader reader = InfoBinaryFile.read(file);
+        for(int i=0;i<2;i++){
+            for(IInfo info:reader.getInfos(i)){
+                ret[i].add(info, initials(info.getName()));
+            }
+        }
+        return ret;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i=0;i<3;i++){
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return the time (in millis) to do some completion-like queries.
+     */
+    private static long query(IInfoStorage[] storages, int[] found) {
+        long initial = System.nanoTime();
+        String[] qualifiers = new String[]{"c", "cla", "class1_", "fun", "function3", "met", "attr1", "const"};
+        for(int i=0;i<10;i++){
+            for(String qualifier:qualifiers){
+                List<IInfo> toks = new ArrayList<IInfo>();
+                for(IInfoStorage storage:storages){
+                    storage.getWithFilter(initials(qualifier), qualifier, startingWith, toks);
+                }
+                found[0] += toks.size();
+            }
+        }
+        return (System.nanoTime() - initial) / 1000000;
+    }
+
+    public void testHeap() throws Exception {
+        File file = File.createTempFile("packed_info_benchmark", ".bin");
+        try {
+            writeInfos(file);
+            //warm up
+            load(file, false);
+            load(file, true);
+
+            long memBefore = usedMemory();
+            IInfoStorage[] sets = load(file, false);
+            long setsMem = usedMemory() - memBefore;
+            int[] setsFound = new int[1];
+            long setsQuery = query(sets, setsFound);
+            sets = null;
+
+            memBefore = usedMemory();
+            IInfoStorage[] packed = load(file, true);
+            long packedMem = usedMemory() - memBefore;
+            int[] packedFound = new int[1];
+            long packedQuery = query(packed, packedFound);
+
+            assertEquals(setsFound[0], packedFound[0]);
+            if(printTimes){
+                System.out.println("Modules: "+modules);
+                System.out.println("Sets of IInfo: heap (KB): "+setsMem/1024+" queries (ms): "+setsQuery);
+                System.out.println("Packed: heap (KB): "+packedMem/1024+" queries (ms): "+packedQuery);
+            }
+            assertNotNull(packed);
+        } finally {
+            file.delete();
+        }
+    }
+}
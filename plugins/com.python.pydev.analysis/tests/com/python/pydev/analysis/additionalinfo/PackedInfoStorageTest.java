@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo.Filter;
+
+/**
+ * Checks that the PackedInfoStorage gives the same results as the InitialsInfoStorage.
+ *
+ * @author Fabio
+ */
+public class PackedInfoStorageTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PackedInfoStorageTest.class);
+    }
+
+    private static final Filter startingWith = new Filter(){
+        public boolean doCompare(String lowerCaseQual, IInfo info) {
+            return doCompare(lowerCaseQual, info.getName());
+        }
+        public boolean doCompare(String qualifier, String infoName) {
+            return infoName.toLowerCase().startsWith(qualifier);
+        }
+    };
+
+    private static final Filter equalTo = new Filter(){
+        public boolean doCompare(String qualifier, IInfo info) {
+            return doCompare(qualifier, info.getName());
+        }
+        public boolean doCompare(String qualifier, String infoName) {
+            return infoName.equals(qualifier);
+        }
+    };
+
+    private static String initials(String name) {
+        return name.length() < 3 ? name : name.substring(0, 3).toLowerCase();
+    }
+
+    private IInfoStorage packed;
+    private IInfoStorage initials;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        packed = new PackedInfoStorage(new PackedInfoStorage.StringPool());
+        initials = new InitialsInfoStorage();
+    }
+
+    private void add(IInfo info) {
+        packed.add(info, initials(info.getName()));
+        initials.add(info, initials(info.getName()));
+    }
+
+    private void removeModule(String module) {
+        packed.removeModule(module);
+        initials.removeModule(module);
+    }
+
+    private Set<IInfo> query(IInfoStorage storage, String qualifier, boolean startsWith) {
+        List<IInfo> toks = new ArrayList<IInfo>();
+        if(startsWith){
+            storage.getWithFilter(initials(qualifier), qualifier.toLowerCase(), startingWith, toks);
+        }else{
+            storage.getWithFilter(initials(qualifier), qualifier, equalTo, toks);
+        }
+        Set<IInfo> ret = new HashSet<IInfo>(toks);
+        assertEquals("Duplicated infos returned", toks.size(), ret.size());
+        return ret;
+    }
+
+    private void checkSame(String qualifier) {
+        assertEquals(query(initials, qualifier, true), query(packed, qualifier, true));
+        assertEquals(query(initials, qualifier, false), query(packed, qualifier, false));
+    }
+
+    private void checkAllSame() {
+        List<IInfo> all1 = new ArrayList<IInfo>();
+        List<IInfo> all2 = new ArrayList<IInfo>();
+        initials.getAll(all1);
+        packed.getAll(all2);
+        assertEquals(new HashSet<IInfo>(all1), new HashSet<IInfo>(all2));
+        assertEquals(all1.size(), all2.size());
+
+        Set<String> modules1 = new HashSet<String>();
+        Set<String> modules2 = new HashSet<String>();
+        initials.getModules(modules1);
+        packed.getModules(modules2);
+        assertEquals(modules1, modules2);
+    }
+
+    public void testSameResults() throws Exception {
+        add(new ClassInfo("MyClass", "mod1", null));
+        add(new FuncInfo("my_func", "mod1", null));
+        add(new AttrInfo("my_attr", "mod1", "MyClass"));
+        add(new AttrInfo("my_attr", "mod1", "MyClass")); //duplicate
+        add(new FuncInfo("my_attr", "mod1", "MyClass")); //same name, other type
+        add(new NameInfo("my", "mod2", null));
+        add(new ClassInfo("MyClass", "mod2", null));
+
+        for(String qualifier:Arrays.asList("m", "my", "MyC", "myclass", "MyClass", "my_attr", "x", "")){
+            checkSame(qualifier);
+        }
+        checkAllSame();
+
+        removeModule("mod1");
+        checkSame("my");
+        checkAllSame();
+
+        //add it again after the removal
+        add(new ClassInfo("MyClass", "mod1", null));
+        add(new ClassInfo("MyClass", "mod1", null));
+        checkSame("MyClass");
+        checkAllSame();
+
+        removeModule("not_there");
+        checkAllSame();
+    }
+
+    public void testCompaction() throws Exception {
+        for(int i=0;i<500;i++){
+            String module = "mod"+i;
+            for(int j=0;j<10;j++){
+                add(new FuncInfo("func"+j, module, null));
+                add(new AttrInfo("attr"+j, module, "Class"+(i%7)));
+            }
+        }
+        //adds to a module which was added before (must not duplicate)
+        add(new FuncInfo("func1", "mod10", null));
+        add(new FuncInfo("func_new", "mod10", null));
+
+        for(int i=0;i<500;i+=3){
+            removeModule("mod"+i);
+        }
+        checkSame("func1");
+        checkSame("attr");
+        for(int i=1;i<500;i+=3){
+            removeModule("mod"+i);
+        }
+        //at this point it has been compacted
+        checkSame("func1");
+        checkSame("func_new");
+        checkSame("attr");
+        checkAllSame();
+        assertEquals(20 * 166, ((PackedInfoStorage) packed).size());
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Fabio
+ */
+public class TokensIndexTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(TokensIndexTest.class);
+    }
+
+    private static List<String> sorted(List<String> l) {
+        ArrayList<String> ret = new ArrayList<String>(l);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    public void testAddRemove() throws Exception {
+        TokensIndex index = new TokensIndex();
+        index.addModule("mod1", 10, Arrays.asList("a", "b", "c"));
+        index.addModule("mod2", 20, Arrays.asList("b", "c", "d"));
+
+        assertEquals(Arrays.asList("mod1"), index.getModulesWithToken("a"));
+        assertEquals(Arrays.asList("mod1", "mod2"), sorted(index.getModulesWithToken("b")));
+        assertEquals(0, index.getModulesWithToken("e").size());
+        assertTrue(index.isIndexed("mod1", 10));
+        assertFalse(index.isIndexed("mod1", 11));
+        assertFalse(index.isIndexed("mod3", 10));
+
+        //re-adding replaces the previous tokens
+        index.addModule("mod1", 11, Arrays.asList("e"));
+        assertEquals(0, index.getModulesWithToken("a").size());
+        assertEquals(Arrays.asList("mod2"), index.getModulesWithToken("b"));
+        assertEquals(Arrays.asList("mod1"), index.getModulesWithToken("e"));
+        assertTrue(index.isIndexed("mod1", 11));
+
+        assertTrue(index.hasModule("mod2"));
+        index.removeModule("mod2");
+        assertFalse(index.hasModule("mod2"));
+        assertEquals(0, index.getModulesWithToken("b").size());
+        assertEquals(1, index.getModulesCount());
+
+        index.compact();
+        assertEquals(Arrays.asList("mod1"), index.getModulesWithToken("e"));
+        assertEquals(1, index.getTokensCount());
+        assertTrue(index.isIndexed("mod1", 11));
+    }
+
+    public void testManyModules() throws Exception {
+        TokensIndex index = new TokensIndex();
+        int modules = 5000;
+        for(int i=0;i<modules;i++){
+            HashSet<String> tokens = new HashSet<String>();
+            tokens.add("all");
+            tokens.add("tok"+(i % 10));
+            index.addModule("mod"+i, i, tokens);
+        }
+        //removing most of the modules compacts it automatically
+        for(int i=0;i<modules;i+=2){
+            index.removeModule("mod"+i);
+        }
+        assertEquals(modules/2, index.getModulesWithToken("all").size());
+        assertEquals(0, index.getModulesWithToken("tok0").size());
+        assertEquals(modules/10, index.getModulesWithToken("tok1").size());
+        assertTrue(index.getModulesWithToken("tok1").contains("mod4991"));
+
+        index.addModule("mod0", 1, Arrays.asList("tok0"));
+        assertEquals(Arrays.asList("mod0"), index.getModulesWithToken("tok0"));
+    }
+
+    public void testSaveLoad() throws Exception {
+        TokensIndex index = new TokensIndex();
+        index.addModule("mod1", 10, Arrays.asList("a", "b"));
+        index.addModule("mod2", 20, Arrays.asList("b"));
+        index.addModule("mod3", 30, Arrays.asList("a"));
+        index.removeModule("mod2");
+
+        File file = File.createTempFile("tokens_index_test", ".index");
+        try {
+            index.save(file);
+            TokensIndex loaded = new TokensIndex();
+            assertTrue(loaded.load(file));
+            assertEquals(Arrays.asList("mod1", "mod3"), sorted(loaded.getModulesWithToken("a")));
+            assertEquals(Arrays.asList("mod1"), loaded.getModulesWithToken("b"));
+            assertTrue(loaded.isIndexed("mod3", 30));
+            assertFalse(loaded.isIndexed("mod2", 20));
+
+            //it must still be possible to add to the loaded lists
+            loaded.addModule("mod4", 40, Arrays.asList("a"));
+            assertEquals(Arrays.asList("mod1", "mod3", "mod4"), sorted(loaded.getModulesWithToken("a")));
+        } finally {
+            file.delete();
+        }
+        assertFalse(new TokensIndex().load(file));
+    }
+}
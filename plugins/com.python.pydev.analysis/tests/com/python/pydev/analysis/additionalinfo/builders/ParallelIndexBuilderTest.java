@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.builders;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.ModulesKey;
+import org.python.pydev.core.ModulesKeyForZip;
+import org.python.pydev.core.REF;
+
+import com.python.pydev.analysis.additionalinfo.AbstractAdditionalTokensInfo;
+import com.python.pydev.analysis.additionalinfo.IInfo;
+
+public class ParallelIndexBuilderTest extends TestCase {
+
+    private File baseDir;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ParallelIndexBuilderTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = REF.getTempFileAt(new File("."), "data_temp_parallel_index_builder_test");
+        if(baseDir.exists()){
+            REF.deleteDirectoryTree(baseDir);
+        }
+        baseDir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if(baseDir.exists()){
+            REF.deleteDirectoryTree(baseDir);
+        }
+        super.tearDown();
+    }
+
+    private static AbstractAdditionalTokensInfo createInfo() {
+        return new AbstractAdditionalTokensInfo(){
+
+            @Override
+            protected File getPersistingLocation() {
+                return null;
+            }
+
+            @Override
+            protected File getPersistingFolder() {
+                return null;
+            }
+
+            @Override
+            protected void setAsDefaultInfo() {
+            }
+
+            @Override
+            public List<ModulesKey> getModulesWithToken(String token, IProgressMonitor monitor) {
+                return null;
+            }
+        };
+    }
+
+    private static String createContents(int i) {
+        return "" +
+                "GLOBAL"+i+" = 1\n" +
+                "class Class"+i+":\n" +
+                "    ATTR = 2\n" +
+                "    def __init__(self):\n" +
+                "        self.a"+i+" = 1\n" +
+                "def method"+i+"():\n" +
+                "    pass\n";
+    }
+
+    private static TreeSet<String> getTokens(AbstractAdditionalTokensInfo info) {
+        TreeSet<String> ret = new TreeSet<String>();
+        for(IInfo i:info.getAllTokens()){
+            ret.add(i.toString());
+        }
+        return ret;
+    }
+
+    public void testSameAsSequential() throws Exception {
+        List<ModulesKey> keys = new ArrayList<ModulesKey>();
+        for(int i=0;i<100;i++){
+            File f = new File(baseDir, "mod"+i+".py");
+            REF.writeStrToFile(createContents(i), f);
+            keys.add(new ModulesKey("mod"+i, f));
+        }
+        //not a source module (should be skipped)
+        File txt = new File(baseDir, "data.txt");
+        REF.writeStrToFile("a = 1", txt);
+        keys.add(new ModulesKey("data", txt));
+
+        File zip = new File(baseDir, "lib.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try{
+            for(int i=100;i<400;i++){
+                out.putNextEntry(new ZipEntry("zipmod"+i+".py"));
+                out.write(createContents(i).getBytes());
+                out.closeEntry();
+            }
+        }finally{
+            out.close();
+        }
+        for(int i=100;i<400;i++){
+            keys.add(new ModulesKeyForZip("zipmod"+i, zip, "zipmod"+i+".py", true));
+        }
+
+        AbstractAdditionalTokensInfo sequential = createInfo();
+        for(ModulesKey key:keys){
+            if(key.file != txt){
+                sequential.addAstInfo(key, false);
+            }
+        }
+
+        AbstractAdditionalTokensInfo parallel = createInfo();
+        ParallelIndexBuilder builder = new ParallelIndexBuilder(parallel, keys.toArray(new ModulesKey[keys.size()]),
+                IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7);
+        assertTrue(builder.build(new NullProgressMonitor(), "test"));
+
+        TreeSet<String> expected = getTokens(sequential);
+        assertEquals(400*6, expected.size());
+        assertEquals(expected, getTokens(parallel));
+    }
+
+    public void testCancel() throws Exception {
+        File f = new File(baseDir, "mod.py");
+        REF.writeStrToFile(createContents(0), f);
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        AbstractAdditionalTokensInfo info = createInfo();
+        ParallelIndexBuilder builder = new ParallelIndexBuilder(info, new ModulesKey[]{new ModulesKey("mod", f)},
+                IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7);
+        assertFalse(builder.build(monitor, "test"));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.python.pydev.analysis.additionalinfo.dependencies;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.jython.SimpleNode;
+
+/**
+ * @author Fabio
+ */
+public class ImportsGraphTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ImportsGraphTest.class);
+    }
+
+    private static List<String> sorted(Collection<String> l) {
+        ArrayList<String> ret = new ArrayList<String>(l);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static Set<String> getImportedModules(String contents, String moduleName, boolean isPackage) {
+        Tuple<SimpleNode, Throwable> r = PyParser.reparseDocument(new PyParser.ParserInfo(
+                new Document(contents), IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_6));
+        if(r.o2 != null){
+            throw new RuntimeException(r.o2);
+        }
+        return ImportsGraph.getImportedModules(r.o1, moduleName, isPackage);
+    }
+
+    public void testImporters() throws Exception {
+        ImportsGraph graph = new ImportsGraph();
+        graph.setImports("mod1", Arrays.asList("mod2", "os"));
+        graph.setImports("mod2", Arrays.asList("mod3"));
+        graph.setImports("mod3", Arrays.asList("mod1")); //cycle
+        graph.setImports("mod4", Arrays.asList("mod3"));
+
+        assertEquals(Arrays.asList("mod1"), sorted(graph.getImporters("mod2", false)));
+        assertEquals(Arrays.asList("mod2", "mod4"), sorted(graph.getImporters("mod3", false)));
+        assertEquals(Arrays.asList("mod1", "mod2", "mod4"), sorted(graph.getImporters("mod3", true)));
+        assertEquals(0, graph.getImporters("mod4", true).size());
+
+        //replacing the imports removes the previous ones
+        graph.setImports("mod4", Arrays.asList("mod2"));
+        assertEquals(Arrays.asList("mod2"), sorted(graph.getImporters("mod3", false)));
+        assertEquals(Arrays.asList("mod1", "mod4"), sorted(graph.getImporters("mod2", false)));
+
+        graph.removeModule("mod1");
+        assertEquals(Arrays.asList("mod4"), sorted(graph.getImporters("mod2", false)));
+        assertEquals(Arrays.asList("mod2"), sorted(graph.getImporters("mod3", false)));
+        assertEquals(3, graph.getModulesCount());
+
+        //restores its imports when it's added back
+        graph.setTopLevelTokens("mod1", Arrays.asList("a"));
+        assertEquals(Arrays.asList("mod1", "mod4"), sorted(graph.getImporters("mod2", false)));
+    }
+
+    public void testStructuralChanges() throws Exception {
+        ImportsGraph graph = new ImportsGraph();
+        PyStructuralChange change = graph.setTopLevelTokens("mod1", Arrays.asList("a", "b", "c"));
+        assertEquals("mod1", change.getModule());
+        assertEquals(new HashSet<String>(Arrays.asList("mod1")), change.getChangedTokens());
+
+        assertNull(graph.setTopLevelTokens("mod1", Arrays.asList("c", "b", "a")));
+
+        change = graph.setTopLevelTokens("mod1", Arrays.asList("a", "c", "d", "e"));
+        assertEquals(Arrays.asList("b", "d", "e"), sorted(change.getChangedTokens()));
+
+        //the usual remove/add when a module is analyzed again
+        graph.removeModule("mod1");
+        assertNull(graph.setTopLevelTokens("mod1", Arrays.asList("a", "c", "d", "e")));
+
+        //actually removed and added back
+        graph.removeModule("mod1");
+        graph.forgetRemoved("mod1");
+        change = graph.setTopLevelTokens("mod1", Arrays.asList("a", "c", "d", "e"));
+        assertEquals(Arrays.asList("mod1"), sorted(change.getChangedTokens()));
+    }
+
+    public void testImportedModules() throws Exception {
+        String contents = "" +
+                "import os, xml.dom\n" +
+                "from foo.bar import a, b as c\n" +
+                "from . import sibling\n" +
+                "from ..up import d\n" +
+                "from other import *\n" +
+                "def m():\n" +
+                "    import inner\n" +
+                "";
+        assertEquals(Arrays.asList(
+                "foo.bar", "foo.bar.a", "foo.bar.b", "inner", "os", "other",
+                "pack.sub", "pack.sub.foo.bar", "pack.sub.foo.bar.a", "pack.sub.foo.bar.b", "pack.sub.inner",
+                "pack.sub.os", "pack.sub.other", "pack.sub.sibling", "pack.sub.xml.dom", "pack.up", "pack.up.d",
+                "xml.dom"),
+                sorted(getImportedModules(contents, "pack.sub.mod", false)));
+
+        //in a package, the relative imports are relative to the package itself
+        assertEquals(Arrays.asList("pack.sub", "pack.sub.sibling"),
+                sorted(getImportedModules("from . import sibling\n", "pack.sub", true)));
+
+        //no package: only absolute imports (and relative imports that go beyond the root are ignored)
+        assertEquals(Arrays.asList("os"), sorted(getImportedModules("import os\nfrom .. import a\n", "mod", false)));
+    }
+
+    public void testSaveLoad() throws Exception {
+        ImportsGraph graph = new ImportsGraph();
+        graph.setImports("mod1", Arrays.asList("mod2"));
+        graph.setTopLevelTokens("mod1", Arrays.asList("a", "b"));
+        graph.setImports("mod3", Arrays.asList("mod2"));
+
+        File file = File.createTempFile("importsgraph", ".index");
+        try {
+            graph.save(file);
+            ImportsGraph loaded = new ImportsGraph();
+            assertTrue(loaded.load(file));
+            assertEquals(2, loaded.getModulesCount());
+            assertEquals(Arrays.asList("mod1", "mod3"), sorted(loaded.getImporters("mod2", false)));
+            assertNull(loaded.setTopLevelTokens("mod1", Arrays.asList("a", "b")));
+
+            //tokens still unknown for mod3
+            assertNotNull(loaded.setTopLevelTokens("mod3", Arrays.asList("a", "b")));
+        } finally {
+            file.delete();
+        }
+        assertFalse(new ImportsGraph().load(file));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pep8;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.jython.JythonPlugin;
+
+import com.python.pydev.analysis.AnalysisPreferencesStub;
+import com.python.pydev.analysis.messages.IMessage;
+
+/**
+ * Checks the throughput of the pep8 analysis per file with pep8 off, with pep8 on with a new interpreter
+ * for each file (MAX_IDLE_INTERPRETERS = 0, as it was before the pool) and with pep8 on reusing the pooled
+ * interpreters (and checks that the messages are the same with and without the pool).
+ *
+ * Run main() to see the numbers for 200 files.
+ */
+public class Pep8VisitorBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            Pep8VisitorBenchmark test = new Pep8VisitorBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.files = 200;
+            test.testThroughput();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int files = 10;
+
+    private static final String CONTENTS = "" +
+            "import os,sys\n" +
+            "class Foo :\n" +
+            "    def method(self,a):\n" +
+            "        x=a+1 # comment\n" +
+            "        return  x\n" +
+            "\n" +
+            "\n" +
+            "\n" +
+            "def func( a ):\n" +
+            "\tpass\n" +
+            "";
+
+    private File pep8Loc;
+    private int initialMaxIdle;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        JythonPlugin.setDebugReload(false);
+        JythonPlugin.IN_TESTS = true;
+        pep8Loc = new File(TestDependent.TEST_PYDEV_PLUGIN_LOC + "PySrc/ThirdParty/pep8/pep8.py");
+        initialMaxIdle = Pep8InterpreterPool.MAX_IDLE_INTERPRETERS;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Pep8InterpreterPool.MAX_IDLE_INTERPRETERS = initialMaxIdle;
+        Pep8InterpreterPool.clear();
+        JythonPlugin.setDebugReload(true);
+        super.tearDown();
+    }
+
+    /**
+     * @return the messages found for each file (as strings).
+     */
+    private List<List<String>> analyze(boolean pep8On) {
+        AnalysisPreferencesStub prefs = new AnalysisPreferencesStub();
+        prefs.severityForPep8 = pep8On ? IMarker.SEVERITY_WARNING : IMarker.SEVERITY_INFO;
+
+        List<List<String>> ret = new ArrayList<List<String>>();
+        for(int i=0;i<files;i++){
+            Document doc = new Document(CONTENTS);
+            Pep8Visitor visitor = new Pep8Visitor();
+            List<IMessage> messages;
+            if(pep8On){
+                messages = visitor.getMessages(new File("mod" + i + ".py"), doc, prefs, new String[0], pep8Loc, false);
+            }else{
+                //returns before getting anything else from the module or preferences page.
+                messages = visitor.getMessages(null, doc, null, prefs);
+            }
+            List<String> found = new ArrayList<String>();
+            for (IMessage message : messages) {
+                found.add(message.getStartLine(doc) + ":" + message.getStartCol(doc) + ": " + message.getMessage());
+            }
+            ret.add(found);
+        }
+        return ret;
+    }
+
+    public void testThroughput() throws Exception {
+        long initial = System.nanoTime();
+        List<List<String>> off = analyze(false);
+        long offTime = (System.nanoTime() - initial) / 1000000;
+
+        Pep8InterpreterPool.MAX_IDLE_INTERPRETERS = 0;
+        Pep8InterpreterPool.clear();
+        initial = System.nanoTime();
+        List<List<String>> newInterpreters = analyze(true);
+        long newInterpretersTime = (System.nanoTime() - initial) / 1000000;
+
+        Pep8InterpreterPool.MAX_IDLE_INTERPRETERS = initialMaxIdle;
+        initial = System.nanoTime();
+        List<List<String>> pooled = analyze(true);
+        long pooledTime = (System.nanoTime() - initial) / 1000000;
+
+        for(int i=0;i<files;i++){
+            assertEquals(0, off.get(i).size());
+            assertTrue(newInterpreters.get(i).toString(), newInterpreters.get(i).size() > 0);
+            assertEquals(newInterpreters.get(i), pooled.get(i));
+        }
+
+        if(printTimes){
+            System.out.println("Files: " + files);
+            System.out.println("Pep8 off: " + offTime + " ms");
+            System.out.println("Pep8 on (new interpreter per file): " + newInterpretersTime + " ms");
+            System.out.println("Pep8 on (pooled interpreters): " + pooledTime + " ms");
+        }
+    }
+}
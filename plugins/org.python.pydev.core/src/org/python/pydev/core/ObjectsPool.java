@@ -11,7 +11,6 @@ package org.python.pydev.core;
 
 import java.lang.ref.WeakReference;
 import java.util.HashMap;
-import java.util.Map;
 import java.util.WeakHashMap;
 
 /**
@@ -21,6 +20,10 @@ import java.util.WeakHashMap;
  * so, it should be safe to assume that it will be available for garbage collecting once
  * no other place has a reference to the same string.
  * 
+ * The strings are spread through many maps (each with its own lock, chosen by the string hash), so, clients in
+ * different threads interning strings don't have to wait for each other (unless they hit the same stripe at the
+ * same time).
+ * 
  * Still, use this with care...
  */
 public final class ObjectsPool {
@@ -28,75 +31,121 @@ public final class ObjectsPool {
     private ObjectsPool(){
     }
 
-    private static final Map<String, WeakReference<String>> weakHashMap = new WeakHashMap<String, WeakReference<String>>();
-    public static final Object lock = new Object(); 
+    /**
+     * Number of maps (2^STRIPE_BITS).
+     */
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
     
     /**
-     * This is a way to intern a String in the regular heap (instead of the String.intern which uses the perm-gen).
+     * Each stripe is a map whose monitor is used to synchronize the access to it.
      */
-    public static String intern(String o){
-        if(o == null){
-            return null;
-        }
-        synchronized(lock){
-            WeakReference<String> w = (WeakReference<String>)weakHashMap.get(o);
-            if(w == null){
-                //Yes, the String constructor will do things properly, so, if a big string is actually backed up by the one
-                //passed, it'll create a new array only with the parts we want.
-                o = new String(o);
-                //garbage collected or still not there...
-                weakHashMap.put(o, new WeakReference<String>(o));
-                return o;
-                
-            }else{
-                final String ret = w.get();
-                if(ret == null && o != null){
-                    //garbage collected just in time hum?
-                    o = new String(o);
-                    weakHashMap.put(o, new WeakReference<String>(o));
-                    return o;
-                    
-                }else{
+    private static final class Stripe extends WeakHashMap<String, WeakReference<String>>{
+
+        /**
+         * Must be called with the stripe lock held.
+         */
+        private String intern(String o){
+            WeakReference<String> w = get(o);
+            if(w != null){
+                String ret = w.get();
+                if(ret != null){
                     return ret;
                 }
+                //garbage collected just in time hum?
             }
+            //Yes, the String constructor will do things properly, so, if a big string is actually backed up by the one
+            //passed, it'll create a new array only with the parts we want.
+            o = new String(o);
+            //garbage collected or still not there...
+            put(o, new WeakReference<String>(o));
+            return o;
         }
     }
     
+    private static final Stripe[] stripes = new Stripe[STRIPES];
+    static{
+        for(int i=0;i<STRIPES;i++){
+            stripes[i] = new Stripe();
+        }
+    }
     
     /**
-     * Same thing as intern, but the client is responsible for synchronizing on the lock object of this class!
-     * 
-     * Note that this should be done on a fast process where many objects will be added (but only on fast processes
-     * that want to avoid synchronizing at each step).
+     * Uses the higher bits of a multiplicative hash (the WeakHashMap uses the lower bits of the hash to choose the 
+     * bucket, so, using them here would put all the strings of a stripe in the same few buckets).
      */
-    public static String internUnsynched(String o){
+    private static int getStripeIndex(String o){
+        return (o.hashCode() * 0x9E3779B9) >>> (32 - STRIPE_BITS);
+    }
+    
+    /**
+     * This is a way to intern a String in the regular heap (instead of the String.intern which uses the perm-gen).
+     */
+    public static String intern(String o){
         if(o == null){
             return null;
         }
-        WeakReference<String> w = (WeakReference<String>)weakHashMap.get(o);
-        if(w == null){
-            //Yes, the String constructor will do things properly, so, if a big string is actually backed up by the one
-            //passed, it'll create a new array only with the parts we want.
-            o = new String(o);
-            //garbage collected or still not there...
-            weakHashMap.put(o, new WeakReference<String>(o));
-            return o;
-            
-        }else{
-            final String ret = w.get();
-            if(ret == null && o != null){
-                //garbage collected just in time hum?
-                o = new String(o);
-                weakHashMap.put(o, new WeakReference<String>(o));
-                return o;
-                
-            }else{
-                return ret;
+        Stripe stripe = stripes[getStripeIndex(o)];
+        synchronized(stripe){
+            return stripe.intern(o);
+        }
+    }
+    
+    /**
+     * Interns all the strings in the passed array (the array is changed in place and null entries are kept as null).
+     * 
+     * Strings are grouped by stripe, so, the lock of each stripe is acquired only once (use this when many strings 
+     * have to be interned at once).
+     */
+    public static void intern(String[] strings){
+        int len = strings.length;
+        if(len == 0){
+            return;
+        }
+        if(len == 1){
+            strings[0] = intern(strings[0]);
+            return;
+        }
+        
+        //counting sort of the indexes by stripe
+        int[] stripeOf = new int[len];
+        int[] counts = new int[STRIPES+1];
+        for(int i=0;i<len;i++){
+            String o = strings[i];
+            if(o != null){
+                int stripe = getStripeIndex(o);
+                stripeOf[i] = stripe;
+                counts[stripe+1]++;
+            }
+        }
+        for(int i=0;i<STRIPES;i++){
+            counts[i+1] += counts[i];
+        }
+        int[] starts = counts.clone();
+        int[] sorted = new int[counts[STRIPES]];
+        for(int i=0;i<len;i++){
+            if(strings[i] != null){
+                sorted[starts[stripeOf[i]]++] = i;
+            }
+        }
+        
+        for(int stripeIndex=0;stripeIndex<STRIPES;stripeIndex++){
+            int start = counts[stripeIndex];
+            int end = counts[stripeIndex+1];
+            if(start == end){
+                continue;
+            }
+            Stripe stripe = stripes[stripeIndex];
+            synchronized(stripe){
+                for(int j=start;j<end;j++){
+                    int i = sorted[j];
+                    strings[i] = stripe.intern(strings[i]);
+                }
             }
         }
     }
     
+    
     /**
      * Class used to store items interned locally in a map (without weak references)
      */
@@ -600,17 +600,27 @@ public class REF {
         
         ZipFile zipFile = new ZipFile(f, ZipFile.OPEN_READ);
         try {
-            InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(pathInZip));
-            try {
-                return REF.getStreamContents(inputStream, null, null, returnType);
-            } finally {
-                inputStream.close();
-            }
+            return getCustomReturnFromZip(zipFile, pathInZip, returnType);
         } finally {
             zipFile.close();
         }
     }
     
+    /**
+     * Same as getCustomReturnFromZip(File, String, Class) but using a zip file that's already opened (which is
+     * not closed afterwards) -- useful when many entries of the same zip have to be read.
+     */
+    public static Object getCustomReturnFromZip(ZipFile zipFile, String pathInZip, Class<? extends Object> returnType) 
+        throws Exception {
+        
+        InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(pathInZip));
+        try {
+            return REF.getStreamContents(inputStream, null, null, returnType);
+        } finally {
+            inputStream.close();
+        }
+    }
+    
     
     /**
      * @return a string with the contents of the passed file
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache which may be used by multiple threads (no external synchronization is needed).
+ *
+ * The entries are split among stripes (each one with its own lock and a part of the maximum weight), and each
+ * stripe is a segmented LRU: new entries are added to a probation segment and are only promoted to the protected
+ * segment when they're accessed again, so, a scan through many entries that are accessed only once does not
+ * remove the entries which are frequently used (the probation entries are the first ones to be evicted).
+ *
+ * The size of the cache is given by the weight of its entries (and not by the number of entries).
+ *
+ * @author Fabio
+ */
+public final class SegmentedLRUCache<Key, Val> implements Cache<Key, Val> {
+
+    /**
+     * Gives the weight of the values added to the cache.
+     */
+    public interface Weigher<Val>{
+        /**
+         * @return the weight of the value (must be >= 1).
+         */
+        int getWeight(Val val);
+    }
+
+    /**
+     * Percentage of the weight of a stripe that may be used by the protected segment.
+     */
+    private static final int PROTECTED_PERCENTAGE = 80;
+
+    /**
+     * Maximum percentage of the weight of a stripe that a single entry may have (heavier entries are still added, but
+     * with this weight, so that a single entry never flushes the whole stripe -- and then itself).
+     */
+    private static final int MAX_ENTRY_PERCENTAGE = 20;
+
+    private static final class Entry<Val>{
+        private Val val;
+        private int weight;
+        private boolean isProtected;
+
+        private Entry(Val val, int weight) {
+            this.val = val;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A part of the cache (guarded by its own lock).
+     */
+    private final class Stripe{
+
+        private final long maxWeight;
+        private final long maxProtectedWeight;
+        private final int maxEntryWeight;
+
+        /**
+         * Entries accessed only once (the first entry is the least recently added).
+         */
+        private final LinkedHashMap<Key, Entry<Val>> probation = new LinkedHashMap<Key, Entry<Val>>();
+
+        /**
+         * Entries accessed more than once (the first entry is the least recently used).
+         */
+        private final LinkedHashMap<Key, Entry<Val>> protectedEntries = new LinkedHashMap<Key, Entry<Val>>(16, 0.75f, true);
+
+        private long weight;
+        private long protectedWeight;
+
+        //the statistics are kept in the stripes (so that the threads don't contend on them)
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Stripe(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.maxProtectedWeight = maxWeight * PROTECTED_PERCENTAGE / 100;
+            this.maxEntryWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxWeight * MAX_ENTRY_PERCENTAGE / 100));
+        }
+
+        private synchronized Val get(Key key) {
+            Entry<Val> entry = protectedEntries.get(key); //updates the access order
+            if(entry == null){
+                entry = probation.remove(key);
+                if(entry == null){
+                    misses++;
+                    return null;
+                }
+                //accessed again: promote it
+                entry.isProtected = true;
+                protectedEntries.put(key, entry);
+                protectedWeight += entry.weight;
+                demoteProtected();
+            }
+            hits++;
+            return entry.val;
+        }
+
+        private synchronized Val peek(Key key) {
+            Entry<Val> entry = protectedEntries.get(key);
+            if(entry == null){
+                entry = probation.get(key);
+            }
+            return entry != null ? entry.val : null;
+        }
+
+        private synchronized void add(Key key, Val val, int entryWeight) {
+            entryWeight = Math.min(entryWeight, maxEntryWeight);
+            Entry<Val> entry = protectedEntries.get(key);
+            if(entry == null){
+                entry = probation.get(key);
+            }
+            if(entry != null){
+                weight += entryWeight - entry.weight;
+                if(entry.isProtected){
+                    protectedWeight += entryWeight - entry.weight;
+                }
+                entry.val = val;
+                entry.weight = entryWeight;
+                demoteProtected();
+            }else{
+                probation.put(key, new Entry<Val>(val, entryWeight));
+                weight += entryWeight;
+            }
+            evict();
+        }
+
+        private synchronized void remove(Key key) {
+            Entry<Val> entry = protectedEntries.remove(key);
+            if(entry == null){
+                entry = probation.remove(key);
+            }
+            if(entry != null){
+                weight -= entry.weight;
+                if(entry.isProtected){
+                    protectedWeight -= entry.weight;
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            probation.clear();
+            protectedEntries.clear();
+            weight = 0;
+            protectedWeight = 0;
+        }
+
+        private synchronized long getWeight() {
+            return weight;
+        }
+
+        private synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+
+        /**
+         * Adds the hits, misses and evictions of this stripe to the given array.
+         */
+        private synchronized void addStats(long[] stats) {
+            stats[0] += hits;
+            stats[1] += misses;
+            stats[2] += evictions;
+        }
+
+        /**
+         * Moves the least recently used protected entries to the probation segment while the protected segment is
+         * too heavy.
+         */
+        private void demoteProtected() {
+            if(protectedWeight <= maxProtectedWeight){
+                return;
+            }
+            Iterator<Map.Entry<Key, Entry<Val>>> it = protectedEntries.entrySet().iterator();
+            while(protectedWeight > maxProtectedWeight && it.hasNext()){
+                Map.Entry<Key, Entry<Val>> next = it.next();
+                it.remove();
+                Entry<Val> entry = next.getValue();
+                entry.isProtected = false;
+                protectedWeight -= entry.weight;
+                probation.put(next.getKey(), entry);
+            }
+        }
+
+        /**
+         * Removes entries (first from the probation segment) while the stripe is too heavy.
+         */
+        private void evict() {
+            while(weight > maxWeight){
+                LinkedHashMap<Key, Entry<Val>> from = probation.size() > 0 ? probation : protectedEntries;
+                Iterator<Entry<Val>> it = from.values().iterator();
+                if(!it.hasNext()){
+                    return;
+                }
+                Entry<Val> entry = it.next();
+                it.remove();
+                weight -= entry.weight;
+                if(entry.isProtected){
+                    protectedWeight -= entry.weight;
+                }
+                evictions++;
+            }
+        }
+    }
+
+    private final Stripe[] stripes;
+    private final Weigher<Val> weigher;
+
+    /**
+     * @param maxWeight the maximum weight of the cache (split among the stripes).
+     * @param stripesCount the number of stripes (rounded up to a power of 2).
+     * @param weigher gives the weight of the values (if null, all the values have weight 1).
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLRUCache(long maxWeight, int stripesCount, Weigher<Val> weigher) {
+        int count = 1;
+        while(count < stripesCount){
+            count <<= 1;
+        }
+        this.stripes = new SegmentedLRUCache.Stripe[count];
+        long stripeWeight = Math.max(1, maxWeight / count);
+        for(int i=0;i<count;i++){
+            stripes[i] = new Stripe(stripeWeight);
+        }
+        this.weigher = weigher;
+    }
+
+    private Stripe getStripe(Object key) {
+        //spread the bits of the hash (the hash of a Tuple multiplies the hashes, so, the lower bits are not good)
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    public Val getObj(Key key) {
+        return getStripe(key).get(key);
+    }
+
+    /**
+     * @return the value for the key without promoting it in the cache (nor changing the statistics).
+     */
+    public Val peek(Key key) {
+        return getStripe(key).peek(key);
+    }
+
+    public void add(Key key, Val val) {
+        int weight = weigher != null ? Math.max(1, weigher.getWeight(val)) : 1;
+        getStripe(key).add(key, val, weight);
+    }
+
+    public void remove(Key key) {
+        getStripe(key).remove(key);
+    }
+
+    public void clear() {
+        for(Stripe stripe:stripes){
+            stripe.clear();
+        }
+    }
+
+    public void removeStaleEntries() {
+        //the entries are evicted when added
+    }
+
+    /**
+     * @return the weight of all the entries in the cache.
+     */
+    public long getWeight() {
+        long ret = 0;
+        for(Stripe stripe:stripes){
+            ret += stripe.getWeight();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public int size() {
+        int ret = 0;
+        for(Stripe stripe:stripes){
+            ret += stripe.size();
+        }
+        return ret;
+    }
+
+    /**
+     * @return an array with the number of hits, misses and evictions.
+     */
+    private long[] getStatsArray() {
+        long[] ret = new long[3];
+        for(Stripe stripe:stripes){
+            stripe.addStats(ret);
+        }
+        return ret;
+    }
+
+    public long getHitCount() {
+        return getStatsArray()[0];
+    }
+
+    public long getMissCount() {
+        return getStatsArray()[1];
+    }
+
+    public long getEvictionCount() {
+        return getStatsArray()[2];
+    }
+
+    /**
+     * @return a string with the statistics of the cache (for logging).
+     */
+    public String getStats() {
+        long[] stats = getStatsArray();
+        long total = stats[0] + stats[1];
+        return "Entries: " + size() + " Weight: " + getWeight() + " Hits: " + stats[0] + " Misses: " + stats[1] +
+            " Hit rate: " + (total == 0 ? 0 : (stats[0] * 100 / total)) + "% Evictions: " + stats[2];
+    }
+}
@@ -607,33 +607,31 @@ public final class StringUtils {
      * Empty strings are also never added.
      */
     public static void splitWithIntern(String string, char toSplit, Collection<String> addTo) {
-        synchronized (ObjectsPool.lock) {
-            int len = string.length();
-            
-            int last = 0;
-            
-            char c = 0;
-            
-            for (int i = 0; i < len; i++) {
-                c = string.charAt(i);
-                if(c == toSplit){
-                    if(last != i){
-                        addTo.add(ObjectsPool.internUnsynched(string.substring(last, i)));
-                    }
-                    while(c == toSplit && i < len-1){
-                        i++;
-                        c = string.charAt(i);
-                    }
-                    last = i;
+        int len = string.length();
+        
+        int last = 0;
+        
+        char c = 0;
+        
+        for (int i = 0; i < len; i++) {
+            c = string.charAt(i);
+            if(c == toSplit){
+                if(last != i){
+                    addTo.add(ObjectsPool.intern(string.substring(last, i)));
                 }
-            }
-            if(c != toSplit){
-                if(last == 0 && len > 0){
-                    addTo.add(ObjectsPool.internUnsynched(string)); //it is equal to the original (no char to split)
-                    
-                }else if(last < len){
-                    addTo.add(ObjectsPool.internUnsynched(string.substring(last, len)));
+                while(c == toSplit && i < len-1){
+                    i++;
+                    c = string.charAt(i);
                 }
+                last = i;
+            }
+        }
+        if(c != toSplit){
+            if(last == 0 && len > 0){
+                addTo.add(ObjectsPool.intern(string)); //it is equal to the original (no char to split)
+                
+            }else if(last < len){
+                addTo.add(ObjectsPool.intern(string.substring(last, len)));
             }
         }
     }
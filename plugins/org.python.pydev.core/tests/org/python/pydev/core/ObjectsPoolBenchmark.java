@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the throughput of the ObjectsPool when interning from many threads with the previous implementation
+ * (a single map synchronized on a global lock).
+ *
+ * Run main() to see the times (the test only runs a small number of iterations).
+ */
+public class ObjectsPoolBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            ObjectsPoolBenchmark test = new ObjectsPoolBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.iterations = 2000000;
+            test.testThroughput();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int iterations = 50000;
+
+    /**
+     * The implementation before the pool was striped.
+     */
+    private static final class GlobalLockPool{
+
+        private static final Map<String, WeakReference<String>> weakHashMap = new WeakHashMap<String, WeakReference<String>>();
+        private static final Object lock = new Object();
+
+        private static String intern(String o){
+            synchronized(lock){
+                WeakReference<String> w = weakHashMap.get(o);
+                if(w != null){
+                    String ret = w.get();
+                    if(ret != null){
+                        return ret;
+                    }
+                }
+                o = new String(o);
+                weakHashMap.put(o, new WeakReference<String>(o));
+                return o;
+            }
+        }
+    }
+
+    private static interface IInterner{
+        String intern(String s);
+    }
+
+    /**
+     * @return the time (in millis) for the given number of threads to intern the strings.
+     */
+    private long run(final IInterner interner, int threads, final String[] strings) throws Exception {
+        //keep the interned strings referenced so that they're not collected during the run
+        String[] interned = new String[strings.length];
+        for(int i=0;i<strings.length;i++){
+            interned[i] = interner.intern(strings[i]);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final int perThread = iterations / threads;
+        for(int t=0;t<threads;t++){
+            final int offset = t * 7;
+            new Thread(){
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i=0;i<perThread;i++){
+                            interner.intern(strings[(i+offset) % strings.length]);
+                        }
+                    } catch (InterruptedException e) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long initial = System.nanoTime();
+        start.countDown();
+        done.await();
+        long time = (System.nanoTime() - initial) / 1000000;
+        assertSame(interned[0], interner.intern(strings[0]));
+        return time;
+    }
+
+    public void testThroughput() throws Exception {
+        final String[] strings = new String[5000];
+        for(int i=0;i<strings.length;i++){
+            strings[i] = "token"+i;
+        }
+        IInterner globalLock = new IInterner(){
+            public String intern(String s) {
+                return GlobalLockPool.intern(s);
+            }
+        };
+        IInterner striped = new IInterner(){
+            public String intern(String s) {
+                return ObjectsPool.intern(s);
+            }
+        };
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = cpus > 1 ? new int[]{1, cpus} : new int[]{1};
+        for(int threads:threadCounts){
+            //warm up
+            run(globalLock, threads, strings);
+            run(striped, threads, strings);
+
+            long globalLockTime = run(globalLock, threads, strings);
+            long stripedTime = run(striped, threads, strings);
+            if(printTimes){
+                System.out.println("Threads: "+threads+" iterations: "+iterations);
+                System.out.println("Global lock (ms): "+globalLockTime);
+                System.out.println("Striped (ms): "+stripedTime);
+            }
+        }
+
+        String[] batch = strings.clone();
+        for(int i=0;i<batch.length;i++){
+            batch[i] = new String(batch[i]);
+        }
+        ObjectsPool.intern(batch);
+        for(int i=0;i<batch.length;i++){
+            assertSame(ObjectsPool.intern(strings[i]), batch[i]);
+        }
+    }
+}
@@ -25,13 +25,17 @@ public class ObjectsPoolTest extends TestCase {
     public void testObjectsPool() throws Exception {
         String intern = ObjectsPool.intern(new String("foo"));
         assertSame(ObjectsPool.intern(new String("foo")), intern);
-        
-//        Timer t = new Timer();
-//        synchronized (ObjectsPool.lock){
-//            for(int i=0;i<100000000;i++){
-//                ObjectsPool.internUnsynched("foo");
-//            }
-//        }
-//        t.printDiff();
+    }
+    
+    public void testBatchIntern() throws Exception {
+        String foo = ObjectsPool.intern(new String("foo"));
+        String[] strings = new String[]{new String("foo"), null, new String("bar"), new String("foo"), "baz"};
+        ObjectsPool.intern(strings);
+        assertSame(foo, strings[0]);
+        assertNull(strings[1]);
+        assertSame(strings[0], strings[3]);
+        assertSame(ObjectsPool.intern(new String("bar")), strings[2]);
+        assertSame(ObjectsPool.intern(new String("baz")), strings[4]);
+        ObjectsPool.intern(new String[0]);
     }
 }
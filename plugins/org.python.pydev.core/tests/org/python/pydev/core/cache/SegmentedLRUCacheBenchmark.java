@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Accesses the modules cache as the getModule of many threads would (with a set of modules that is frequently
+ * used and a build passing through all the modules) and compares the LRUCache synchronized with a global lock
+ * (as the ModulesManagerCache used to do) with the SegmentedLRUCache (a miss creates the module again, so, its cost
+ * is also considered).
+ *
+ * Run main() to see the numbers (the test only does a small number of accesses).
+ */
+public class SegmentedLRUCacheBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            SegmentedLRUCacheBenchmark test = new SegmentedLRUCacheBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.accesses = 2000000;
+            test.testGetModule();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int accesses = 20000;
+
+    private static final int THREADS = 8;
+    private static final int MODULES = 20000;
+    private static final int FREQUENT_MODULES = 300;
+    private static final int CACHE_SIZE = 400;
+
+    /**
+     * The LRUCache with the global lock.
+     */
+    private static final class SynchronizedLRUCache implements Cache<Integer, Object>{
+        private final LRUCache<Integer, Object> cache = new LRUCache<Integer, Object>(CACHE_SIZE);
+        private final Object lock = new Object();
+
+        public Object getObj(Integer o) {
+            synchronized (lock) {
+                return cache.getObj(o);
+            }
+        }
+        public void remove(Integer key) {
+            synchronized (lock) {
+                cache.remove(key);
+            }
+        }
+        public void add(Integer key, Object n) {
+            synchronized (lock) {
+                cache.add(key, n);
+            }
+        }
+        public void removeStaleEntries() {
+        }
+        public void clear() {
+            synchronized (lock) {
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Simulates the (cheap) creation of a module on a cache miss.
+     */
+    private static Object parse(int module) {
+        char[] contents = new char[2048];
+        int h = module;
+        for(int i=0;i<contents.length;i++){
+            contents[i] = (char) ('a' + (h & 15));
+            h = h * 31 + contents[i];
+        }
+        return new String(contents);
+    }
+
+    /**
+     * @return the time (in millis) and the number of misses (in the array).
+     */
+    private long run(final Cache<Integer, Object> cache, final long[] misses) throws Exception {
+        final int accessesPerThread = accesses / THREADS;
+        Thread[] threads = new Thread[THREADS];
+        for(int t=0;t<THREADS;t++){
+            final int seed = t;
+            threads[t] = new Thread(){
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    int scan = seed * (MODULES / THREADS);
+                    long localMisses = 0;
+                    for(int i=0;i<accessesPerThread;i++){
+                        int module;
+                        if(i % 4 == 0){
+                            //the build passes through all the modules
+                            module = scan++ % MODULES;
+                        }else{
+                            module = random.nextInt(FREQUENT_MODULES);
+                        }
+                        Integer key = module;
+                        if(cache.getObj(key) == null){
+                            localMisses++;
+                            cache.add(key, parse(module));
+                        }
+                    }
+                    synchronized (misses) {
+                        misses[0] += localMisses;
+                    }
+                }
+            };
+        }
+        long initial = System.nanoTime();
+        for(Thread t:threads){
+            t.start();
+        }
+        for(Thread t:threads){
+            t.join();
+        }
+        return (System.nanoTime() - initial) / 1000000;
+    }
+
+    public void testGetModule() throws Exception {
+        long[] lruMisses = new long[1];
+        long lruTime = run(new SynchronizedLRUCache(), lruMisses);
+
+        long[] slruMisses = new long[1];
+        SegmentedLRUCache<Integer, Object> slru = new SegmentedLRUCache<Integer, Object>(CACHE_SIZE, 16, null);
+        long slruTime = run(slru, slruMisses);
+
+        if(printTimes){
+            System.out.println("Accesses: "+accesses+" Threads: "+THREADS);
+            System.out.println("LRU with global lock: time (ms): "+lruTime+" misses: "+lruMisses[0]);
+            System.out.println("Segmented LRU (striped): time (ms): "+slruTime+" misses: "+slruMisses[0]);
+            System.out.println(slru.getStats());
+        }
+        //the frequent modules must survive the scan
+        assertTrue("Expected less misses. LRU: "+lruMisses[0]+" SLRU: "+slruMisses[0], slruMisses[0] < lruMisses[0]);
+    }
+}
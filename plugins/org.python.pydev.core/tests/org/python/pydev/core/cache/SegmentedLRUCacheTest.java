@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.core.cache;
+
+import junit.framework.TestCase;
+
+public class SegmentedLRUCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(SegmentedLRUCacheTest.class);
+    }
+
+    private static final SegmentedLRUCache.Weigher<String> lengthWeigher = new SegmentedLRUCache.Weigher<String>(){
+        public int getWeight(String val) {
+            return val.length();
+        }
+    };
+
+    public void testRegular() throws Exception {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(2, 1, null);
+        cache.add(1, "1");
+        cache.add(2, "2");
+        cache.add(3, "3");
+        assertNull(cache.getObj(1));
+        assertEquals("3", cache.getObj(3));
+
+        cache.add(4, "4");
+        assertNull(cache.getObj(2));
+        assertEquals(2, cache.size());
+
+        cache.remove(3);
+        assertNull(cache.getObj(3));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    public void testScanResistant() throws Exception {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(10, 1, null);
+        for(int i=0;i<5;i++){
+            cache.add(i, "v"+i);
+            assertNotNull(cache.getObj(i)); //accessed again: protected
+        }
+        //a scan through many entries accessed only once
+        for(int i=100;i<200;i++){
+            cache.add(i, "v"+i);
+        }
+        for(int i=0;i<5;i++){
+            assertEquals("v"+i, cache.getObj(i));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(95, cache.getEvictionCount());
+    }
+
+    public void testWeight() throws Exception {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(20, 1, lengthWeigher);
+        cache.add(1, "aaaa");
+        cache.add(2, "bbbb");
+        cache.add(3, "cccc");
+        cache.add(4, "dddd");
+        assertEquals(16, cache.getWeight());
+
+        cache.add(5, "eeee");
+        cache.add(6, "ffff"); //too heavy: the first one is evicted
+        assertNull(cache.getObj(1));
+        assertEquals(20, cache.getWeight());
+
+        cache.add(2, "b"); //replacing changes the weight
+        assertEquals(17, cache.getWeight());
+        assertEquals("b", cache.getObj(2));
+    }
+
+    public void testHeavyEntry() throws Exception {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100, 1, lengthWeigher);
+        for(int i=0;i<10;i++){
+            cache.add(i, "vvvvv");
+            assertNotNull(cache.getObj(i));
+        }
+        //heavier than the whole cache: added with the maximum weight of an entry (and nothing is evicted)
+        cache.add(10, new String(new char[1000]));
+        assertEquals(70, cache.getWeight());
+        assertNotNull(cache.getObj(10));
+        for(int i=0;i<10;i++){
+            assertNotNull(cache.getObj(i));
+        }
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    public void testStats() throws Exception {
+        SegmentedLRUCache<Integer, String> cache = new SegmentedLRUCache<Integer, String>(100, 4, null);
+        cache.add(1, "1");
+        cache.getObj(1);
+        cache.getObj(1);
+        cache.getObj(2);
+        assertNull(cache.peek(3));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
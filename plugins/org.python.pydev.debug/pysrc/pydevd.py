@@ -23,14 +23,19 @@ from pydevd_comm import  CMD_CHANGE_VARIABLE, \
                          CMD_RUN_TO_LINE, \
                          CMD_RELOAD_CODE, \
                          CMD_VERSION, \
+                         COMPACT_PAYLOADS, \
                          CMD_GET_FILE_CONTENTS, \
                          CMD_SET_PROPERTY_TRACE, \
+                         CMD_GET_VARIABLES_BATCH, \
+                         CMD_GET_VARIABLE_RANGE, \
                          GetGlobalDebugger, \
                          InternalChangeVariable, \
                          InternalGetCompletions, \
                          InternalEvaluateExpression, \
                          InternalGetFrame, \
                          InternalGetVariable, \
+                         InternalGetVariablesBatch, \
+                         InternalGetVariableRange, \
                          InternalTerminateThread, \
                          InternalRunThread, \
                          InternalStepThread, \
@@ -441,7 +446,10 @@ class PyDB:
                     self.readyToRun = True
                     
                 elif cmd_id == CMD_VERSION: 
-                    # response is version number
+                    # response is version number (text is the client version, optionally followed by the features
+                    # it supports)
+                    if COMPACT_PAYLOADS in text.split('\t')[1:]:
+                        self.cmdFactory.setCompactPayloads(True)
                     cmd = self.cmdFactory.makeVersionMessage(seq)
                     
                 elif cmd_id == CMD_LIST_THREADS: 
@@ -543,6 +551,41 @@ class PyDB:
                     except:
                         traceback.print_exc()
                         
+                elif cmd_id == CMD_GET_VARIABLES_BATCH:
+                    #we received some command to get the contents of many variables at once
+                    #the text is: levels\tnumber of paths\t(parts in path\tthread_id\tframe_id\tscope\tattributes*)+
+                    #(all the paths must be in the same thread)
+                    try:
+                        splitted = text.split('\t')
+                        levels = int(splitted[0])
+                        paths = []
+                        thread_id = None
+                        i = 2
+                        for _p in range(int(splitted[1])):
+                            parts = int(splitted[i])
+                            path = splitted[i + 1:i + 1 + parts]
+                            i += 1 + parts
+                            thread_id = path[0]
+                            paths.append((path[1], path[2], path[3:]))
+                            
+                        int_cmd = InternalGetVariablesBatch(seq, thread_id, levels, paths)
+                        self.postInternalCommand(int_cmd, thread_id)
+                            
+                    except:
+                        traceback.print_exc()
+                        
+                elif cmd_id == CMD_GET_VARIABLE_RANGE:
+                    #we received some command to get a range of the items in a container
+                    #the text is: start\tend\tthread_id\tframe_id\tFRAME|GLOBAL\tattributes*
+                    try:
+                        start, end, thread_id, frame_id, scope, attrs = text.split('\t', 5)
+                        
+                        int_cmd = InternalGetVariableRange(seq, thread_id, frame_id, scope, attrs, int(start), int(end))
+                        self.postInternalCommand(int_cmd, thread_id)
+                            
+                    except:
+                        traceback.print_exc()
+                        
                 elif cmd_id == CMD_GET_COMPLETIONS:
                     #we received some command to get a variable
                     #the text is: thread_id\tframe_id\tactivation token
@@ -12,6 +12,9 @@ each command has a format:
     payload: it is protocol dependent. When response is a complex structure, it
     is returned as XML. Each attribute value is urlencoded, and then the whole
     payload is urlencoded again to prevent stray characters corrupting protocol/xml encodings
+    
+    If the debugger sends COMPACT after its version in CMD_VERSION (and pydevd confirms it in the response), the
+    threads, stacks and variables are sent in a compact format instead of XML (see pydevd_vars).
 
     Commands:
  
@@ -49,6 +52,11 @@ each command has a format:
     121      CMD_SET_NEXT_STATEMENT
     122      CMD_SET_PY_EXCEPTION
     124      CMD_SET_PROPERTY_TRACE
+    125      CMD_GET_VARIABLES_BATCH  JAVA      levels \t number of paths \t   GET_VARIABLES_BATCH with XML of the contents of
+                                                (parts in path \t thread_id \t   all the paths (and of the containers found in
+                                                frame_id \t scope \t attrs*)+    them, up to the given levels)
+    126      CMD_GET_VARIABLE_RANGE   JAVA      start \t end \t thread_id \t     GET_VARIABLE_RANGE with XML of the items from
+                                                frame_id \t scope \t attrs*     start to end (for containers with a len)
     
 500 series diagnostics/ok
     901      VERSION                  either      Version string (1.0)        Currently just used at startup
@@ -108,6 +116,8 @@ CMD_SET_NEXT_STATEMENT = 121
 CMD_SET_PY_EXCEPTION = 122
 CMD_GET_FILE_CONTENTS = 123
 CMD_SET_PROPERTY_TRACE = 124
+CMD_GET_VARIABLES_BATCH = 125
+CMD_GET_VARIABLE_RANGE = 126
 CMD_VERSION = 501
 CMD_RETURN = 502
 CMD_ERROR = 901 
@@ -137,6 +147,8 @@ ID_TO_MEANING = {
     '122':'CMD_SET_PY_EXCEPTION',
     '123':'CMD_GET_FILE_CONTENTS',
     '124':'CMD_SET_PROPERTY_TRACE',
+    '125':'CMD_GET_VARIABLES_BATCH',
+    '126':'CMD_GET_VARIABLE_RANGE',
     '501':'CMD_VERSION',
     '502':'CMD_RETURN',
     '901':'CMD_ERROR',
@@ -145,7 +157,10 @@ ID_TO_MEANING = {
 MAX_IO_MSG_SIZE = 1000  #if the io is too big, we'll not send all (could make the debugger too non-responsive)
                         #this number can be changed if there's need to do so
 
-VERSION_STRING = "1.1"
+VERSION_STRING = "1.3"
+
+#feature the client may ask for in CMD_VERSION (and that's confirmed in the response if accepted)
+COMPACT_PAYLOADS = "COMPACT"
 
 
 #--------------------------------------------------------------------------------------------------- UTILITIES
@@ -397,7 +412,11 @@ class NetCommand:
         return self.outgoing
     
     def makeMessage(self, cmd, seq, payload):
-        encoded = quote(str(payload), '/<>_=" \t')
+        payload = str(payload)
+        if payload.startswith(pydevd_vars.COMPACT_MARKER):
+            encoded = payload #the compact format has no new lines and must not be url-encoded
+        else:
+            encoded = quote(payload, '/<>_=" \t')
         return str(cmd) + '\t' + str(seq) + '\t' + encoded + "\n"
 
 #=======================================================================================================================
@@ -405,11 +424,25 @@ class NetCommand:
 #=======================================================================================================================
 class NetCommandFactory:
     
+    #pydevd_vars.XML_FORMAT or pydevd_vars.COMPACT_FORMAT (if requested by the client in CMD_VERSION)
+    payloadFormat = pydevd_vars.XML_FORMAT
+    
     def __init_(self):
         self.next_seq = 0
 
+    def setCompactPayloads(self, compact):
+        if compact:
+            self.payloadFormat = pydevd_vars.COMPACT_FORMAT
+        else:
+            self.payloadFormat = pydevd_vars.XML_FORMAT
+            
+    def isCompact(self):
+        return self.payloadFormat is pydevd_vars.COMPACT_FORMAT
+
     def threadToXML(self, thread):
         """ thread information as XML """
+        if self.isCompact():
+            return pydevd_vars.compactRecord('T', (pydevd_vars.toUtf8(thread.getName()), str(GetThreadId(thread))))
         name = pydevd_vars.makeValidXmlValue(thread.getName())
         cmdText = '<thread name="%s" id="%s" />' % (quote(name), GetThreadId(thread))
         return cmdText
@@ -421,18 +454,18 @@ class NetCommandFactory:
         return cmd
 
     def makeThreadCreatedMessage(self, thread):
-        cmdText = "<xml>" + self.threadToXML(thread) + "</xml>"
+        cmdText = self.payloadFormat.start() + self.threadToXML(thread) + self.payloadFormat.end()
         return NetCommand(CMD_THREAD_CREATE, 0, cmdText)
  
     def makeListThreadsMessage(self, seq):
         """ returns thread listing as XML """
         try:
             t = threading.enumerate()
-            cmdText = "<xml>"
+            cmdText = self.payloadFormat.start()
             for i in t:
                 if t.isAlive():
                     cmdText += self.threadToXML(i)
-            cmdText += "</xml>"
+            cmdText += self.payloadFormat.end()
             return NetCommand(CMD_RETURN, seq, cmdText)
         except:
             return self.makeErrorMessage(seq, GetExceptionTracebackStr())
@@ -464,6 +497,8 @@ class NetCommandFactory:
     
     def makeVersionMessage(self, seq):
         try:
+            if self.isCompact():
+                return NetCommand(CMD_VERSION, seq, VERSION_STRING + '\t' + COMPACT_PAYLOADS)
             return NetCommand(CMD_VERSION, seq, VERSION_STRING)
         except:
             return self.makeErrorMessage(seq, GetExceptionTracebackStr())
@@ -484,8 +519,12 @@ class NetCommandFactory:
             </thread>
            """
         try:
-            cmdTextList = ["<xml>"]
-            cmdTextList.append('<thread id="%s" stop_reason="%s">' % (thread_id, stop_reason))
+            compact = self.isCompact()
+            if compact:
+                cmdTextList = [pydevd_vars.COMPACT_MARKER, pydevd_vars.compactRecord('S', (str(thread_id), str(stop_reason)))]
+            else:
+                cmdTextList = ["<xml>"]
+                cmdTextList.append('<thread id="%s" stop_reason="%s">' % (thread_id, stop_reason))
             
             curFrame = frame
             while curFrame:
@@ -512,6 +551,11 @@ class NetCommandFactory:
                 #the variables are all gotten 'on-demand'
                 #variables = pydevd_vars.frameVarsToXML(curFrame)
 
+                if compact:
+                    cmdTextList.append(pydevd_vars.compactRecord('F', (myId, myName, pydevd_vars.toUtf8(myFile), myLine)))
+                    curFrame = curFrame.f_back
+                    continue
+                
                 variables = ''
                 cmdTextList.append('<frame id="%s" name="%s" ' % (myId , pydevd_vars.makeValidXmlValue(myName))) 
                 cmdTextList.append('file="%s" line="%s">"' % (quote(myFile, '/>_= \t'), myLine)) 
@@ -519,7 +563,8 @@ class NetCommandFactory:
                 cmdTextList.append("</frame>") 
                 curFrame = curFrame.f_back
             
-            cmdTextList.append("</thread></xml>")
+            if not compact:
+                cmdTextList.append("</thread></xml>")
             cmdText = ''.join(cmdTextList)
             return NetCommand(CMD_THREAD_SUSPEND, 0, cmdText)
         except:
@@ -543,6 +588,18 @@ class NetCommandFactory:
         except Exception:
             return self.makeErrorMessage(seq, GetExceptionTracebackStr())
 
+    def makeGetVariablesBatchMessage(self, seq, payload):
+        try:
+            return NetCommand(CMD_GET_VARIABLES_BATCH, seq, payload)
+        except Exception:
+            return self.makeErrorMessage(seq, GetExceptionTracebackStr())
+
+    def makeGetVariableRangeMessage(self, seq, payload):
+        try:
+            return NetCommand(CMD_GET_VARIABLE_RANGE, seq, payload)
+        except Exception:
+            return self.makeErrorMessage(seq, GetExceptionTracebackStr())
+
             
     def makeEvaluateExpressionMessage(self, seq, payload):
         try:
@@ -662,7 +719,8 @@ class InternalGetVariable(InternalThreadCommand):
     def doIt(self, dbg):
         """ Converts request into python variable """
         try:
-            xml = "<xml>"            
+            fmt = dbg.cmdFactory.payloadFormat
+            xml = fmt.start()
             valDict = pydevd_vars.resolveCompoundVariable(self.thread_id, self.frame_id, self.scope, self.attributes)                        
             keys = valDict.keys()
             if hasattr(keys, 'sort'):
@@ -670,9 +728,9 @@ class InternalGetVariable(InternalThreadCommand):
             else:
                 keys = sorted(keys, key=str) #Jython 2.1 does not have it (and all must be compared as strings).
             for k in keys:
-                xml += pydevd_vars.varToXML(valDict[k], str(k))
+                xml += fmt.var(valDict[k], str(k))
 
-            xml += "</xml>"
+            xml += fmt.end()
             cmd = dbg.cmdFactory.makeGetVariableMessage(self.sequence, xml)
             dbg.writer.addCommand(cmd)
         except Exception:
@@ -680,6 +738,70 @@ class InternalGetVariable(InternalThreadCommand):
             dbg.writer.addCommand(cmd)
 
 
+#=======================================================================================================================
+# InternalGetVariablesBatch
+#=======================================================================================================================
+class InternalGetVariablesBatch(InternalThreadCommand):
+    """ gets the contents of several variables in a single request (and the contents of the containers found in
+    them up to the given levels, so that the client doesn't need to ask for each one of those later) """
+    def __init__(self, seq, thread_id, levels, paths):
+        self.sequence = seq
+        self.thread_id = thread_id
+        self.levels = levels
+        self.paths = paths #list of tuples (frame_id, scope, attrs) where attrs is a list
+
+    def doIt(self, dbg):
+        """ Converts request into python variables """
+        try:
+            fmt = dbg.cmdFactory.payloadFormat
+            xml = [fmt.start()]
+            for i in range(len(self.paths)):
+                frame_id, scope, attrs = self.paths[i]
+                valDict = pydevd_vars.resolveVariablesDict(self.thread_id, frame_id, scope, attrs)
+                xml.append(fmt.startVars(i))
+                pydevd_vars.varsToXML(valDict, self.levels, xml, fmt)
+                xml.append(fmt.endVars())
+                del valDict
+            xml.append(fmt.end())
+            cmd = dbg.cmdFactory.makeGetVariablesBatchMessage(self.sequence, ''.join(xml))
+            dbg.writer.addCommand(cmd)
+        except Exception:
+            cmd = dbg.cmdFactory.makeErrorMessage(self.sequence, "Error resolving variables " + GetExceptionTracebackStr())
+            dbg.writer.addCommand(cmd)
+
+
+#=======================================================================================================================
+# InternalGetVariableRange
+#=======================================================================================================================
+class InternalGetVariableRange(InternalThreadCommand):
+    """ gets the items from start to end (exclusive) of a container (in the order in which they're in the container) """
+    def __init__(self, seq, thread_id, frame_id, scope, attrs, start, end):
+        self.sequence = seq
+        self.thread_id = thread_id
+        self.frame_id = frame_id
+        self.scope = scope
+        self.attributes = attrs
+        self.start = start
+        self.end = end
+
+    def doIt(self, dbg):
+        """ Converts request into python variables """
+        try:
+            fmt = dbg.cmdFactory.payloadFormat
+            xml = [fmt.start()]
+            items = pydevd_vars.resolveCompoundVariableRange(
+                self.thread_id, self.frame_id, self.scope, self.attributes, self.start, self.end)
+            for key, item in items:
+                xml.append(fmt.var(item, str(key)))
+            del items
+            xml.append(fmt.end())
+            cmd = dbg.cmdFactory.makeGetVariableRangeMessage(self.sequence, ''.join(xml))
+            dbg.writer.addCommand(cmd)
+        except Exception:
+            cmd = dbg.cmdFactory.makeErrorMessage(self.sequence, "Error resolving variables " + GetExceptionTracebackStr())
+            dbg.writer.addCommand(cmd)
+
+
 #=======================================================================================================================
 # InternalChangeVariable
 #=======================================================================================================================
@@ -719,10 +841,11 @@ class InternalGetFrame(InternalThreadCommand):
         try:
             frame = pydevd_vars.findFrame(self.thread_id, self.frame_id)
             if frame is not None:
-                xml = "<xml>"            
-                xml += pydevd_vars.frameVarsToXML(frame)
+                fmt = dbg.cmdFactory.payloadFormat
+                xml = fmt.start()
+                xml += pydevd_vars.frameVarsToXML(frame, fmt)
                 del frame
-                xml += "</xml>"
+                xml += fmt.end()
                 cmd = dbg.cmdFactory.makeGetFrameMessage(self.sequence, xml)
                 dbg.writer.addCommand(cmd)
             else:
@@ -754,9 +877,10 @@ class InternalEvaluateExpression(InternalThreadCommand):
         """ Converts request into python variable """
         try:
             result = pydevd_vars.evaluateExpression(self.thread_id, self.frame_id, self.expression, self.doExec)
-            xml = "<xml>"
-            xml += pydevd_vars.varToXML(result, self.expression)
-            xml += "</xml>"
+            fmt = dbg.cmdFactory.payloadFormat
+            xml = fmt.start()
+            xml += fmt.var(result, self.expression)
+            xml += fmt.end()
             cmd = dbg.cmdFactory.makeEvaluateExpressionMessage(self.sequence, xml)
             dbg.writer.addCommand(cmd)
         except:
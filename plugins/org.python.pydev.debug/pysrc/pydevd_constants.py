@@ -39,6 +39,10 @@ except AttributeError:
 #this value was raised from 200 to 1000.
 MAXIMUM_VARIABLE_REPRESENTATION_SIZE = 1000
 
+#Used when the contents of the variables are requested in batch: containers with more items than this are not
+#expanded (their contents are only gathered if eclipse asks for them later).
+MAXIMUM_CHILDREN_TO_PREFETCH = 100
+
 import threading 
 import os
 
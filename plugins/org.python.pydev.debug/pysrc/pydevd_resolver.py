@@ -42,6 +42,15 @@ try:
 except:
     pass
 
+try:
+    iter
+    def iterKeys(d):
+        return iter(d)
+except NameError:
+    #no iterators (jython 2.1)
+    def iterKeys(d):
+        return d.keys()
+
 #types does not include a MethodWrapperType
 try:
     MethodWrapperType = type([].__str__)
@@ -81,6 +90,23 @@ class AbstractResolver:
         '''
         raise NotImplementedError
 
+    #Resolvers for containers that may be too big to be gotten at once also provide getLength/getRange, so
+    #that their contents can be gotten in pages:
+
+    def getLength(self, var):
+        '''
+            @return: the number of items in the var (i.e.: children to be shown, not counting the __len__).
+        '''
+        raise NotImplementedError
+
+    def getRange(self, var, start, end):
+        '''
+            @return: a list with tuples (key, item) for the items from start to end (exclusive) -- the keys are the
+            same ones returned in getDictionary (so that they can be resolved later) and only the items in the 
+            range should be visited (so that memory is bounded by the size of the range).
+        '''
+        raise NotImplementedError
+
 
 #=======================================================================================================================
 # DefaultResolver
@@ -218,12 +244,26 @@ class DictResolver:
         #ok, we have to iterate over the items to find the one that matches the id, because that's the only way
         #to actually find the reference from the string we have before.
         expected_id = int(key.split('(')[-1][:-1])
-        for key, val in dict.items():
+        for key in iterKeys(dict):
             if id(key) == expected_id:
-                return val
+                return dict[key]
 
         raise UnableToResolveVariableException()
 
+    def getLength(self, dict):
+        return len(dict)
+
+    def getRange(self, dict, start, end):
+        ret = []
+        i = 0
+        for key in iterKeys(dict):
+            if i >= end:
+                break
+            if i >= start:
+                ret.append(('%s (%s)' % (key, id(key)), dict[key]))
+            i += 1
+        return ret
+
     def getDictionary(self, dict):
         ret = {}
 
@@ -268,6 +308,17 @@ class TupleResolver: #to enumerate tuples and lists
         d['__len__'] = len(var)
         return d
 
+    def getLength(self, var):
+        return len(var)
+
+    def getRange(self, var, start, end):
+        l = len(var)
+        format = '%0' + str(int(len(str(l)))) + 'd'
+        ret = []
+        for i in range(start, min(end, l)):
+            ret.append((format % i, var[i]))
+        return ret
+
 
 
 #=======================================================================================================================
@@ -296,6 +347,20 @@ class SetResolver:
         d['__len__'] = len(var)
         return d
 
+    def getLength(self, var):
+        return len(var)
+
+    def getRange(self, var, start, end):
+        ret = []
+        i = 0
+        for item in var:
+            if i >= end:
+                break
+            if i >= start:
+                ret.append((id(item), item))
+            i += 1
+        return ret
+
 
 #=======================================================================================================================
 # InstanceResolver
@@ -344,6 +409,15 @@ class JyArrayResolver:
         ret['__len__'] = len(obj)
         return ret
 
+    def getLength(self, obj):
+        return len(obj)
+
+    def getRange(self, obj, start, end):
+        ret = []
+        for i in range(start, min(end, len(obj))):
+            ret.append((i, obj[i]))
+        return ret
+
 defaultResolver = DefaultResolver()
 dictResolver = DictResolver()
 tupleResolver = TupleResolver()
@@ -137,8 +137,10 @@ except:
         return s.replace('<', '&lt;').replace('>', '&gt;').replace('"', '&quot;')
 
 
-def varToXML(v, name):
-    """ single variable or dictionary to xml representation """
+def varInfo(v):
+    """ @return a tuple with the type name, the (utf-8) value representation and the resolver of the variable (None
+    if it's not a container).
+    """
     type, typeName, resolver = getType(v)
 
     try:
@@ -164,8 +166,6 @@ def varToXML(v, name):
         except:
             value = 'Unable to get repr for %s' % v.__class__
 
-    xml = '<var name="%s" type="%s"' % (makeValidXmlValue(name),makeValidXmlValue(typeName))
-
     if value:
         #cannot be too big... communication may not handle it.
         if len(value) > MAXIMUM_VARIABLE_REPRESENTATION_SIZE:
@@ -183,12 +183,36 @@ def varToXML(v, name):
         except TypeError: #in java, unicode is a function
             pass
 
+    return typeName, value, resolver
+
+
+def getContainerLength(v, resolver):
+    """ @return the length of the container as a string (or '' if it can't be gotten in pages) """
+    if hasattr(resolver, 'getLength'):
+        try:
+            return str(resolver.getLength(v))
+        except:
+            pass
+    return ''
+
+
+def varToXML(v, name):
+    """ single variable or dictionary to xml representation """
+    typeName, value, resolver = varInfo(v)
+
+    xml = '<var name="%s" type="%s"' % (makeValidXmlValue(name),makeValidXmlValue(typeName))
+
+    if value:
         xmlValue = ' value="%s"' % (makeValidXmlValue(quote(value, '/>_= \t')))
     else:
         xmlValue = ''
 
     if resolver is not None:
         xmlCont = ' isContainer="True"'
+        length = getContainerLength(v, resolver)
+        if length:
+            #containers that can be gotten in pages report their length
+            xmlCont += ' len="%s"' % (length,)
     else:
         xmlCont = ''
 
@@ -204,8 +228,154 @@ if USE_PSYCO_OPTIMIZATION:
             sys.exc_clear() #don't keep the traceback -- clients don't want to see it
 
 
-def frameVarsToXML(frame):
-    """ dumps frame variables to XML
+#=======================================================================================================================
+# Compact format
+#
+# When requested by the client (in CMD_VERSION), the threads, stacks and variables are sent in a compact format
+# instead of XML: a marker followed by records, where each record is a tag followed by its fields:
+#
+#     \x02 (tag (\x1f field)* \x1e)*
+#
+# Inside a field only the backslash, '\n', '\r', '\x1e' and '\x1f' are escaped (with a backslash followed by '\\', 'n', 
+# 'r', 'e' and 'f'), and the message is not url-encoded (so, the client only has to split the fields).
+#
+# Records:
+#     T name id                          thread
+#     S thread_id stop_reason            suspended thread (followed by its frames)
+#     F id name file line                frame
+#     V name type value isContainer len  variable (isContainer is '1' or ''; len is '' if not available)
+#     P path / p                         start/end of the variables of the path at the given index (batch)
+#     C name / c                         start/end of the contents of the container just before it (batch)
+#=======================================================================================================================
+COMPACT_MARKER = '\x02'
+COMPACT_FIELD_SEP = '\x1f'
+COMPACT_RECORD_SEP = '\x1e'
+
+COMPACT_ESCAPES = (('\\', '\\\\'), ('\n', '\\n'), ('\r', '\\r'), ('\x1e', '\\e'), ('\x1f', '\\f'))
+
+def toUtf8(s):
+    """ @return the string encoded as utf-8 if it's unicode (in python 2) """
+    try:
+        if not IS_PY3K and isinstance(s, unicode):
+            return s.encode('utf-8')
+    except TypeError: #in java, unicode is a function
+        pass
+    return s
+
+def compactEscape(s):
+    for c, escaped in COMPACT_ESCAPES:
+        if c in s:
+            s = s.replace(c, escaped)
+    return s
+
+def compactRecord(tag, fields):
+    return tag + ''.join([COMPACT_FIELD_SEP + compactEscape(f) for f in fields]) + COMPACT_RECORD_SEP
+
+def varToCompact(v, name):
+    """ single variable to its compact representation """
+    typeName, value, resolver = varInfo(v)
+    if resolver is not None:
+        return compactRecord('V', (name, typeName, value, '1', getContainerLength(v, resolver)))
+    return compactRecord('V', (name, typeName, value, '', ''))
+
+
+class XmlFormat:
+    """ Writes the variables as XML (the default) """
+
+    def start(self):
+        return '<xml>'
+
+    def end(self):
+        return '</xml>'
+
+    def var(self, v, name):
+        return varToXML(v, name)
+
+    def startVars(self, path):
+        return '<vars path="%s">' % (path,)
+
+    def endVars(self):
+        return '</vars>'
+
+    def startChildren(self, name):
+        return '<children name="%s">' % (makeValidXmlValue(name),)
+
+    def endChildren(self):
+        return '</children>'
+
+
+class CompactFormat:
+    """ Writes the variables in the compact format """
+
+    def start(self):
+        return COMPACT_MARKER
+
+    def end(self):
+        return ''
+
+    def var(self, v, name):
+        return varToCompact(v, name)
+
+    def startVars(self, path):
+        return compactRecord('P', (str(path),))
+
+    def endVars(self):
+        return compactRecord('p', ())
+
+    def startChildren(self, name):
+        return compactRecord('C', (name,))
+
+    def endChildren(self):
+        return compactRecord('c', ())
+
+
+XML_FORMAT = XmlFormat()
+COMPACT_FORMAT = CompactFormat()
+
+
+def sortedKeys(valDict):
+    keys = valDict.keys()
+    if hasattr(keys, 'sort'):
+        keys.sort() #Python 3.0 does not have it
+    else:
+        keys = sorted(keys, key=str) #Jython 2.1 does not have it (and all must be compared as strings).
+    return keys
+
+
+def varsToXML(valDict, levels, xml, fmt=XML_FORMAT):
+    """ appends to the xml list the variables in the dict and, while levels > 1, the contents of the containers
+    found (as <children name="container name">...</children>, right after the container variable).
+    
+    Containers with more than MAXIMUM_CHILDREN_TO_PREFETCH items are not expanded.
+    
+    @param fmt: XML_FORMAT or COMPACT_FORMAT
+    """
+    for k in sortedKeys(valDict):
+        try:
+            v = valDict[k]
+            name = str(k)
+            xml.append(fmt.var(v, name))
+            if levels > 1:
+                _type, _typeName, resolver = getType(v)
+                if resolver is not None:
+                    try:
+                        if hasattr(resolver, 'getLength') and resolver.getLength(v) > MAXIMUM_CHILDREN_TO_PREFETCH:
+                            continue #don't even get the dictionary for big containers
+                    except:
+                        continue #unable to get its length: not prefetched (its children are requested when needed)
+                    children = resolver.getDictionary(v)
+                    if children is not None and len(children) <= MAXIMUM_CHILDREN_TO_PREFETCH:
+                        childrenXml = [fmt.startChildren(name)]
+                        varsToXML(children, levels - 1, childrenXml, fmt)
+                        childrenXml.append(fmt.endChildren())
+                        xml.extend(childrenXml) #only added when complete
+        except Exception:
+            traceback.print_exc()
+            sys.stderr.write("Unexpected error, recovered safely.\n")
+
+
+def frameVarsToXML(frame, fmt=XML_FORMAT):
+    """ dumps frame variables to XML (or to the compact format)
     <var name="var_name" scope="local" type="type" value="value"/>
     """
     xml = ""
@@ -219,7 +389,7 @@ def frameVarsToXML(frame):
     for k in keys:
         try:
             v = frame.f_locals[k]
-            xml += varToXML(v, str(k))
+            xml += fmt.var(v, str(k))
         except Exception:
             traceback.print_exc()
             sys.stderr.write("Unexpected error, recovered safely.\n")
@@ -328,6 +498,27 @@ def resolveCompoundVariable(thread_id, frame_id, scope, attrs):
     if frame is None:
         return {}
     
+    var = resolveVarInFrame(frame, thread_id, frame_id, scope, attrs)
+
+    try:
+        type, _typeName, resolver = getType(var)
+        return resolver.getDictionary(var)
+    except:
+        traceback.print_exc()
+
+def resolveCompoundVariableRange(thread_id, frame_id, scope, attrs, start, end):
+    """ returns a list with tuples (key, item) for the items from start to end (exclusive) of the compound variable
+    (only for variables whose resolver provides getRange) """
+    frame = findFrame(thread_id, frame_id)
+    if frame is None:
+        return []
+    
+    var = resolveVarInFrame(frame, thread_id, frame_id, scope, attrs)
+    type, _typeName, resolver = getType(var)
+    return resolver.getRange(var, start, end)
+
+def resolveVarInFrame(frame, thread_id, frame_id, scope, attrs):
+    """ returns the variable in the given location of the frame """
     attrList = attrs.split('\t')
     if scope == 'EXPRESSION':
         for count in range(len(attrList)):
@@ -347,12 +538,23 @@ def resolveCompoundVariable(thread_id, frame_id, scope, attrs):
         for k in attrList:
             type, _typeName, resolver = getType(var)
             var = resolver.resolve(var, k)
+    return var
 
-    try:
-        type, _typeName, resolver = getType(var)
-        return resolver.getDictionary(var)
-    except:
-        traceback.print_exc()
+def resolveVariablesDict(thread_id, frame_id, scope, attrs):
+    """ returns a dictionary with the contents of the variable at the given location (if no attributes are
+    passed for a FRAME or LOCAL scope, those are the frame locals)
+    @param attrs: a list with the attributes to resolve
+    """
+    if not attrs and scope in ('FRAME', 'LOCAL'):
+        frame = findFrame(thread_id, frame_id)
+        if frame is None:
+            return {}
+        return frame.f_locals
+    
+    valDict = resolveCompoundVariable(thread_id, frame_id, scope, '\t'.join(attrs))
+    if valDict is None:
+        return {}
+    return valDict
 
 def evaluateExpression(thread_id, frame_id, expression, doExec):
     '''returns the result of the evaluated expression
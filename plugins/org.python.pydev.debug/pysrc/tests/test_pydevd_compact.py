@@ -0,0 +1,88 @@
+import sys
+import os
+
+
+import unittest
+try:
+    from StringIO import StringIO
+except ImportError:
+    from io import StringIO #Python 3.0
+
+class Test(unittest.TestCase):
+
+    def setUp(self):
+        #make it as if we were executing from the directory above this one
+        import test_pydevd_compact #@UnresolvedImport - importing itself
+        self.ADD_TO_PYTHONPATH = os.path.join(os.path.dirname(os.path.dirname(test_pydevd_compact.__file__)))
+        sys.path.insert(0, self.ADD_TO_PYTHONPATH)
+
+    def tearDown(self):
+        #remove it to leave it ok for other tests
+        sys.path.remove(self.ADD_TO_PYTHONPATH)
+
+    def testEscape(self):
+        import pydevd_vars
+        self.assertEquals('a\\\\b\\nc\\rd\\ee\\ff', pydevd_vars.compactEscape('a\\b\nc\rd\x1ee\x1ff'))
+        self.assertEquals('V\x1fa\x1fb\\n\x1e', pydevd_vars.compactRecord('V', ('a', 'b\n')))
+        self.assertEquals('c\x1e', pydevd_vars.compactRecord('c', ()))
+
+    def testVars(self):
+        import pydevd_vars
+        self.assertEquals('V\x1fa\x1fint\x1fint: 10\x1f\x1f\x1e', pydevd_vars.varToCompact(10, 'a'))
+        self.assertEquals('V\x1fb\x1flist\x1flist: [1, 2]\x1f1\x1f2\x1e', pydevd_vars.varToCompact([1, 2], 'b'))
+
+        xml = []
+        pydevd_vars.varsToXML({'b':[1], 'a':'x\ny'}, 2, xml, pydevd_vars.COMPACT_FORMAT)
+        self.assertEquals(
+            'V\x1fa\x1fstr\x1fstr: x\\ny\x1f\x1f\x1e'
+            'V\x1fb\x1flist\x1flist: [1]\x1f1\x1f1\x1e'
+            'C\x1fb\x1e'
+            'V\x1f0\x1fint\x1fint: 1\x1f\x1f\x1e'
+            'V\x1f__len__\x1fint\x1fint: 1\x1f\x1f\x1e'
+            'c\x1e', ''.join(xml))
+
+    def testPrefetchLengthError(self):
+        import pydevd_vars
+        class BadLen(list):
+            def __len__(self):
+                raise RuntimeError('unable to get the length')
+
+        xml = []
+        original = sys.stderr
+        sys.stderr = errors = StringIO()
+        try:
+            pydevd_vars.varsToXML({'b':BadLen([1])}, 2, xml, pydevd_vars.COMPACT_FORMAT)
+        finally:
+            sys.stderr = original
+        #not prefetched (and no error reported)
+        self.assertEquals(1, len(xml))
+        self.assert_(xml[0].startswith('V\x1fb\x1fBadLen\x1f'))
+        self.assertEquals('', errors.getvalue())
+
+    def testNotUrlEncoded(self):
+        import pydevd_comm
+        import pydevd_vars
+        payload = pydevd_vars.COMPACT_MARKER + pydevd_vars.varToCompact('a b%', 'a')
+        cmd = pydevd_comm.NetCommand(pydevd_comm.CMD_GET_VARIABLE, 2, payload)
+        self.assertEquals('110\t2\t' + payload + '\n', cmd.getOutgoing())
+
+        #xml is still url-encoded
+        cmd = pydevd_comm.NetCommand(pydevd_comm.CMD_GET_VARIABLE, 2, '<xml>%</xml>')
+        self.assertEquals('110\t2\t<xml>%25</xml>\n', cmd.getOutgoing())
+
+    def testVersion(self):
+        import pydevd_comm
+        factory = pydevd_comm.NetCommandFactory()
+        self.assert_(not factory.isCompact())
+        self.assertEquals('501\t3\t%s\n' % (pydevd_comm.VERSION_STRING,), factory.makeVersionMessage(3).getOutgoing())
+
+        factory.setCompactPayloads(True)
+        self.assertEquals('501\t3\t%s\tCOMPACT\n' % (pydevd_comm.VERSION_STRING,),
+            factory.makeVersionMessage(3).getOutgoing())
+
+        
+if __name__ == '__main__':
+    #this is so that we can run it frem the jython tests -- because we don't actually have an __main__ module
+    #(so, it won't try importing the __main__ module)
+    unittest.TextTestRunner().run(unittest.makeSuite(Test))
+
@@ -0,0 +1,73 @@
+import sys
+import os
+
+
+import unittest
+
+class Test(unittest.TestCase):
+    
+    def setUp(self):
+        #make it as if we were executing from the directory above this one
+        import test_pydevd_resolver #@UnresolvedImport - importing itself
+        self.ADD_TO_PYTHONPATH = os.path.join(os.path.dirname(os.path.dirname(test_pydevd_resolver.__file__)))
+        sys.path.insert(0, self.ADD_TO_PYTHONPATH)
+        
+    def tearDown(self):
+        #remove it to leave it ok for other tests
+        sys.path.remove(self.ADD_TO_PYTHONPATH)
+    
+    def testTupleRange(self):
+        import pydevd_resolver
+        l = list(range(1000))
+        resolver = pydevd_resolver.tupleResolver
+        self.assertEquals(1000, resolver.getLength(l))
+        items = resolver.getRange(l, 100, 103)
+        self.assertEquals([('0100', 100), ('0101', 101), ('0102', 102)], items)
+        
+        #the keys are the same ones used in getDictionary and can be resolved later
+        self.assertEquals(101, resolver.resolve(l, items[1][0]))
+        
+        #the end may go beyond the length
+        self.assertEquals([('0998', 998), ('0999', 999)], resolver.getRange(l, 998, 1100))
+        
+        #formatted with the number of digits of the length (as in getDictionary)
+        self.assertEquals([('00001', 1)], resolver.getRange(list(range(1000 * 10)), 1, 2))
+        
+    def testDictRange(self):
+        import pydevd_resolver
+        d = {}
+        for i in range(500):
+            d['key%s' % i] = i
+        resolver = pydevd_resolver.dictResolver
+        self.assertEquals(500, resolver.getLength(d))
+        
+        found = {}
+        for start in range(0, 500, 100):
+            items = resolver.getRange(d, start, start + 100)
+            self.assertEquals(100, len(items))
+            for key, item in items:
+                self.assertEquals(item, resolver.resolve(d, key))
+                found[item] = 1
+        self.assertEquals(500, len(found))
+        
+    def testSetRange(self):
+        import pydevd_resolver
+        s = set(range(250))
+        resolver = pydevd_resolver.setResolver
+        self.assertEquals(250, resolver.getLength(s))
+        
+        items = resolver.getRange(s, 200, 300)
+        self.assertEquals(50, len(items))
+        for key, item in items:
+            self.assertEquals(item, resolver.resolve(s, str(key)))
+        
+    def testLenInXml(self):
+        import pydevd_vars
+        self.assert_(' len="3"' in pydevd_vars.varToXML([1, 2, 3], 'var'))
+        self.assert_(' len=' not in pydevd_vars.varToXML(1, 'var'))
+        
+        
+if __name__ == '__main__':
+    #this is so that we can run it frem the jython tests -- because we don't actually have an __main__ module
+    #(so, it won't try importing the __main__ module)
+    unittest.TextTestRunner().run(unittest.makeSuite(Test))
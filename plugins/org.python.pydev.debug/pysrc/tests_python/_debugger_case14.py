@@ -0,0 +1,8 @@
+def Call():
+    variable_for_test_1 = [10, 20]
+    variable_for_test_2 = 30
+    print 'stop here'
+    
+if __name__ == '__main__':
+    Call()
+    print 'TEST SUCEEDED!'
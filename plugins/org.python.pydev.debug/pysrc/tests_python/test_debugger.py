@@ -163,6 +163,22 @@ class AbstractWriterThread(threading.Thread):
             
         return threadId, frameId
         
+    def WaitForCompactBreakpointHit(self, reason='111'): 
+        i = 0
+        #wait for hit breakpoint
+        while not ('\x1f%s\x1eF\x1f' % reason) in self.readerThread.lastReceived:
+            i += 1
+            time.sleep(1)
+            if i >= 10:
+                raise AssertionError('After %s seconds, a break with reason: %s was not hit. Found: %r' % \
+                    (i, reason, self.readerThread.lastReceived))
+            
+        #we have something like 105\t2\t\x02S\x1f<thread_id>\x1f111\x1eF\x1f<frame_id>\x1f...
+        splitted = self.readerThread.lastReceived.split('\x02S\x1f')[1].split('\x1f')
+        threadId = splitted[0]
+        frameId = splitted[2]
+        return threadId, frameId
+        
     def WaitForVars(self, expected): 
         i = 0
         #wait for hit breakpoint
@@ -182,6 +198,9 @@ class AbstractWriterThread(threading.Thread):
     def WriteVersion(self):
         self.Write("501\t%s\t1.0" % self.NextSeq())
         
+    def WriteVersionCompact(self):
+        self.Write("501\t%s\t1.3\tCOMPACT" % self.NextSeq())
+        
     def WriteAddBreakpoint(self, line, func):
         '''
             @param line: starts at 1
@@ -197,6 +216,15 @@ class AbstractWriterThread(threading.Thread):
     def WriteGetFrame(self, threadId, frameId):
         self.Write("114\t%s\t%s\t%s\tFRAME" % (self.NextSeq(), threadId, frameId))
         
+    def WriteGetVariablesBatch(self, threadId, frameId, levels, *attrs):
+        #always asks for the frame and for the given attributes in the frame
+        self.Write("125\t%s\t%s\t2\t3\t%s\t%s\tFRAME\t%s\t%s\t%s\tLOCAL\t%s" % (
+            self.NextSeq(), levels, threadId, frameId, 3 + len(attrs), threadId, frameId, '\t'.join(attrs)))
+        
+    def WriteGetVariableRange(self, threadId, frameId, start, end, *attrs):
+        self.Write("126\t%s\t%s\t%s\t%s\t%s\tLOCAL\t%s" % (
+            self.NextSeq(), start, end, threadId, frameId, '\t'.join(attrs)))
+        
     def WriteStepOver(self, threadId):
         self.Write("108\t%s\t%s" % (self.NextSeq(), threadId,))
         
@@ -215,6 +243,76 @@ class AbstractWriterThread(threading.Thread):
     def WriteKillThread(self, threadId):
         self.Write("104\t%s\t%s" % (self.NextSeq(), threadId,))
         
+#=======================================================================================================================
+# WriterThreadCase15
+#======================================================================================================================
+class WriterThreadCase15(AbstractWriterThread):
+    
+    TEST_FILE = NormFile('_debugger_case14.py')
+        
+    def run(self):
+        self.StartSocket()
+        self.WriteVersionCompact()
+        self.WaitForVars('\t1.3\tCOMPACT\n')
+        
+        self.WriteAddBreakpoint(4, 'Call') 
+        self.WriteMakeInitialRun()
+        
+        threadId, frameId = self.WaitForCompactBreakpointHit('111')
+        
+        self.WriteGetFrame(threadId, frameId)
+        
+        #not url-encoded
+        self.WaitForVars(
+            '\x02V\x1fvariable_for_test_1\x1flist\x1flist: [10, 20]\x1f1\x1f2\x1e'
+            'V\x1fvariable_for_test_2\x1fint\x1fint: 30\x1f\x1f\x1e\n')
+        
+        self.WriteRunThread(threadId)
+        
+        self.finishedOk = True
+        
+        
+#=======================================================================================================================
+# WriterThreadCase14
+#======================================================================================================================
+class WriterThreadCase14(AbstractWriterThread):
+    
+    TEST_FILE = NormFile('_debugger_case14.py')
+        
+    def run(self):
+        self.StartSocket()
+        self.WriteAddBreakpoint(4, 'Call') 
+        self.WriteMakeInitialRun()
+        
+        threadId, frameId = self.WaitForBreakpointHit('111')
+        
+        self.WriteGetVariablesBatch(threadId, frameId, 2, 'variable_for_test_1')
+        
+        self.WaitForVars(
+            '<xml><vars path="0">'
+            '<var name="variable_for_test_1" type="list" value="list%253A %255B10%252C 20%255D" isContainer="True" len="2" />%0A'
+            '<children name="variable_for_test_1">'
+            '<var name="0" type="int" value="int%253A 10" />%0A'
+            '<var name="1" type="int" value="int%253A 20" />%0A'
+            '<var name="__len__" type="int" value="int%253A 2" />%0A'
+            '</children>'
+            '<var name="variable_for_test_2" type="int" value="int%253A 30" />%0A'
+            '</vars>'
+            '<vars path="1">'
+            '<var name="0" type="int" value="int%253A 10" />%0A'
+            '<var name="1" type="int" value="int%253A 20" />%0A'
+            '<var name="__len__" type="int" value="int%253A 2" />%0A'
+            '</vars></xml>')
+        
+        self.WriteGetVariableRange(threadId, frameId, 1, 2, 'variable_for_test_1')
+        
+        self.WaitForVars('<xml><var name="1" type="int" value="int%253A 20" />%0A</xml>')
+        
+        self.WriteRunThread(threadId)
+        
+        self.finishedOk = True
+        
+        
 #=======================================================================================================================
 # WriterThreadCase13
 #======================================================================================================================
@@ -792,6 +890,12 @@ class Test(unittest.TestCase):
         
     def testCase13(self):
         self.CheckCase(WriterThreadCase13)
+        
+    def testCase14(self):
+        self.CheckCase(WriterThreadCase14)
+        
+    def testCase15(self):
+        self.CheckCase(WriterThreadCase15)
 
             
     def testCase1a(self):
@@ -832,6 +936,12 @@ class Test(unittest.TestCase):
 
     def testCase13a(self):
         self.CheckCase(WriterThreadCase13, False)
+        
+    def testCase14a(self):
+        self.CheckCase(WriterThreadCase14, False)
+        
+    def testCase15a(self):
+        self.CheckCase(WriterThreadCase15, False)
 
 def GetLocationFromLine(line):
     loc = line.split('=')[1].strip()
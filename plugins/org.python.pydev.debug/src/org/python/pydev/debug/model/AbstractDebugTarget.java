@@ -53,6 +53,7 @@ import org.python.pydev.debug.model.remote.SendPyExceptionCommand;
 import org.python.pydev.debug.model.remote.SetBreakpointCommand;
 import org.python.pydev.debug.model.remote.SetPropertyTraceCommand;
 import org.python.pydev.debug.model.remote.ThreadListCommand;
+import org.python.pydev.debug.model.remote.VariablesCache;
 import org.python.pydev.debug.model.remote.VersionCommand;
 import org.python.pydev.debug.ui.launching.PythonRunnerConfig;
 
@@ -97,6 +98,11 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
     private ValueModificationChecker modificationChecker;
 
     private PyRunToLineTarget runToLineTarget;
+    
+    /**
+     * Responses to the variables/frames/expressions requested while the threads are suspended.
+     */
+    private final VariablesCache variablesCache = new VariablesCache();
 
     public AbstractDebugTarget() {
         modificationChecker = new ValueModificationChecker();
@@ -106,6 +112,55 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
         return modificationChecker;
     }
     
+    public VariablesCache getVariablesCache(){
+        return variablesCache;
+    }
+    
+    /**
+     * Commands already answered in the current suspend are answered from the cache (and not sent).
+     */
+    @Override
+    public void postCommand(AbstractDebuggerCommand cmd) {
+        if(variablesCache.onPostCommand(cmd)){
+            return;
+        }
+        super.postCommand(cmd);
+    }
+    
+    /**
+     * The version of pydevd we're connected to (null until the version command is answered).
+     */
+    private volatile String pydevdVersion;
+    
+    public void setPydevdVersion(String pydevdVersion) {
+        this.pydevdVersion = pydevdVersion;
+    }
+    
+    /**
+     * @return whether the pydevd we're connected to has at least the given version.
+     */
+    public boolean isPydevdVersionAtLeast(int major, int minor) {
+        String version = pydevdVersion;
+        if(version == null){
+            return false;
+        }
+        try {
+            String[] parts = version.trim().split("\\.");
+            int pydevdMajor = Integer.parseInt(parts[0]);
+            int pydevdMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return pydevdMajor > major || (pydevdMajor == major && pydevdMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return whether we can get the variables with a GetVariablesBatchCommand (pydevd 1.2 onwards).
+     */
+    public boolean supportsBatchedVariables() {
+        return isPydevdVersionAtLeast(1, 2);
+    }
+    
     public abstract boolean canTerminate();
     public abstract boolean isTerminated();
     
@@ -147,6 +202,7 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
 
         
         threads = new PyThread[0];
+        variablesCache.invalidateAll();
         fireEvent(new DebugEvent(this, DebugEvent.TERMINATE));
 
     }
@@ -457,6 +513,7 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
     
     // Remote this from our thread list
     private void processThreadKilled(String thread_id) {
+        variablesCache.invalidate(thread_id);
         PyThread threadToDelete = findThreadByID(thread_id);
         if (threadToDelete != null) {
             int j = 0;
@@ -506,6 +563,7 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
             }
         }
         if (t != null) {
+            variablesCache.invalidate(t.getId());
             modificationChecker.onlyLeaveThreads((PyThread[]) this.threads);
             
             IStackFrame stackFrame[] = (IStackFrame[])threadNstack[2]; 
@@ -565,6 +623,7 @@ public abstract class AbstractDebugTarget extends AbstractDebugTargetWithTransmi
             }
             
             String threadID = threadIdAndReason.o1;
+            variablesCache.invalidate(threadID);
             PyThread t = (PyThread)findThreadByID(threadID);
             if (t != null) {
                 t.setSuspended(false, null);
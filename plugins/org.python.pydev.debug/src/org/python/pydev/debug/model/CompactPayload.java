@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.debug.core.model.IStackFrame;
+import org.python.pydev.debug.core.PydevDebugPlugin;
+
+/**
+ * Reads the threads, stacks and variables that pydevd sends in the compact format (requested in the version command)
+ * instead of xml.
+ *
+ * The payload is a marker followed by records, where each record is a tag followed by its fields:
+ *
+ * \x02 (tag (\x1f field)* \x1e)*
+ *
+ * Inside a field only the backslash, '\n', '\r', '\x1e' and '\x1f' are escaped (with a backslash followed by '\\', 'n',
+ * 'r', 'e' and 'f') and the payload is not url-encoded. See pydevd_vars.py for the records available.
+ *
+ * @author Fabio
+ */
+public class CompactPayload {
+
+    /**
+     * The feature sent along with the version to request the compact format.
+     */
+    public static final String FEATURE = "COMPACT";
+
+    public static final char MARKER = '\u0002';
+    public static final char FIELD_SEP = '\u001f';
+    public static final char RECORD_SEP = '\u001e';
+
+    /**
+     * @return whether the given (not url-decoded) payload is in the compact format.
+     */
+    public static boolean isCompact(String payload) {
+        return payload.length() > 0 && payload.charAt(0) == MARKER;
+    }
+
+    /**
+     * Goes through the records of a payload.
+     */
+    static class RecordReader {
+
+        private final String payload;
+        private int pos = 1; //skip the marker
+        private final List<String> fields = new ArrayList<String>();
+
+        RecordReader(String payload) {
+            this.payload = payload;
+        }
+
+        /**
+         * @return the fields of the next record (the tag is the first one) or null if there are no more records. The
+         * list returned is reused in the next call.
+         */
+        List<String> next() throws CoreException {
+            fields.clear();
+            int len = payload.length();
+            if (pos >= len) {
+                return null;
+            }
+            int start = pos;
+            boolean escaped = false;
+            while (true) {
+                if (pos >= len) {
+                    throw error("Unfinished record", null);
+                }
+                char c = payload.charAt(pos);
+                if (c == FIELD_SEP || c == RECORD_SEP) {
+                    String field = payload.substring(start, pos);
+                    fields.add(escaped ? unescape(field) : field);
+                    pos++;
+                    if (c == RECORD_SEP) {
+                        return fields;
+                    }
+                    start = pos;
+                    escaped = false;
+                } else {
+                    if (c == '\\') {
+                        escaped = true;
+                        pos++; //the next one is never a separator
+                    }
+                    pos++;
+                }
+            }
+        }
+
+        private CoreException error(String msg, Throwable e) {
+            return new CoreException(PydevDebugPlugin.makeStatus(IStatus.ERROR, msg + " reading:" + payload, e));
+        }
+
+        /**
+         * @return the field at the given index in the current record.
+         */
+        String get(int i) throws CoreException {
+            if (i >= fields.size()) {
+                throw error("Expected at least " + (i + 1) + " fields in " + fields.get(0) + " record", null);
+            }
+            return fields.get(i);
+        }
+
+        int getInt(int i) throws CoreException {
+            String field = get(i);
+            try {
+                return Integer.parseInt(field);
+            } catch (NumberFormatException e) {
+                throw error("Expected int. Found: " + field, e);
+            }
+        }
+    }
+
+    static String unescape(String field) {
+        int len = field.length();
+        StringBuffer buf = new StringBuffer(len);
+        for (int i = 0; i < len; i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < len) {
+                i++;
+                c = field.charAt(i);
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 'e':
+                        c = RECORD_SEP;
+                        break;
+                    case 'f':
+                        c = FIELD_SEP;
+                        break;
+                }
+            }
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+    private static boolean isTag(List<String> record, char tag) {
+        String t = record.get(0);
+        return t.length() == 1 && t.charAt(0) == tag;
+    }
+
+    private static PyVariable createVariable(AbstractDebugTarget target, IVariableLocator locator, RecordReader reader)
+            throws CoreException {
+        //V name type value isContainer len
+        return XMLUtils.createVariable(target, locator, reader.get(1), reader.get(2), reader.get(3),
+                reader.get(4).length() > 0, reader.get(5));
+    }
+
+    /**
+     * @see XMLUtils#ThreadsFromXML(AbstractDebugTarget, String)
+     */
+    static PyThread[] toThreads(AbstractDebugTarget target, String payload) throws CoreException {
+        List<PyThread> threads = new ArrayList<PyThread>();
+        RecordReader reader = new RecordReader(payload);
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            if (isTag(record, 'T')) {
+                threads.add(new PyThread(target, reader.get(1), reader.get(2)));
+            }
+        }
+        return threads.toArray(new PyThread[threads.size()]);
+    }
+
+    /**
+     * @see XMLUtils#XMLToStack(AbstractDebugTarget, String)
+     */
+    static Object[] toStack(AbstractDebugTarget target, String payload) throws CoreException {
+        PyThread thread = null;
+        String stopReason = null;
+        List<IStackFrame> stack = new ArrayList<IStackFrame>();
+
+        RecordReader reader = new RecordReader(payload);
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            if (isTag(record, 'S')) {
+                String threadId = reader.get(1);
+                thread = target.findThreadByID(threadId);
+                if (thread == null) {
+                    // can happen when debugger has been destroyed
+                    throw reader.error("Thread not found (" + threadId + ")", null);
+                }
+                stopReason = reader.get(2);
+
+            } else if (isTag(record, 'F')) {
+                if (thread == null) {
+                    throw reader.error("Frame before thread", null);
+                }
+                //F id name file line
+                stack.add(XMLUtils.createFrame(target, thread, reader.get(1), reader.get(2), reader.get(3),
+                        reader.get(4)));
+            }
+        }
+        return new Object[] { thread, stopReason, stack.toArray(new IStackFrame[stack.size()]) };
+    }
+
+    /**
+     * @see XMLUtils#XMLToVariables(AbstractDebugTarget, IVariableLocator, String)
+     */
+    static PyVariable[] toVariables(AbstractDebugTarget target, IVariableLocator locator, String payload)
+            throws CoreException {
+        List<PyVariable> vars = new ArrayList<PyVariable>();
+        RecordReader reader = new RecordReader(payload);
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            if (isTag(record, 'V')) {
+                vars.add(createVariable(target, locator, reader));
+            }
+        }
+        return vars.toArray(new PyVariable[vars.size()]);
+    }
+
+    /**
+     * @see XMLUtils#XMLToVariablesBatch(AbstractDebugTarget, IVariableLocator[], String)
+     */
+    static PyVariable[][] toVariablesBatch(AbstractDebugTarget target, IVariableLocator[] locators, String payload)
+            throws CoreException {
+        XMLUtils.XMLToVariablesBatchInfo info = new XMLUtils.XMLToVariablesBatchInfo(target, locators);
+        RecordReader reader = new RecordReader(payload);
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            String tag = record.get(0);
+            if (tag.length() != 1) {
+                continue;
+            }
+            switch (tag.charAt(0)) {
+                case 'V':
+                    info.addVariable(createVariable(target, info.getCurrentLocator(), reader));
+                    break;
+                case 'C':
+                    info.startChildren(reader.get(1));
+                    break;
+                case 'c':
+                    info.endChildren();
+                    break;
+                case 'P':
+                    int path = reader.getInt(1);
+                    if (path < 0 || path >= locators.length) {
+                        throw reader.error("Invalid path: " + path, null);
+                    }
+                    info.startVars(path);
+                    break;
+                case 'p':
+                    info.endVars();
+                    break;
+            }
+        }
+        return info.getVars();
+    }
+}
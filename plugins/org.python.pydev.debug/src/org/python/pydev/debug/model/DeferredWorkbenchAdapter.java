@@ -7,12 +7,14 @@
 package org.python.pydev.debug.model;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.ui.DeferredDebugElementWorkbenchAdapter;
 import org.eclipse.ui.progress.IDeferredWorkbenchAdapter;
 import org.eclipse.ui.progress.IElementCollector;
 import org.python.pydev.core.log.Log;
 import org.python.pydev.debug.model.remote.AbstractDebuggerCommand;
 import org.python.pydev.debug.model.remote.GetVariableCommand;
+import org.python.pydev.debug.model.remote.GetVariablesBatchCommand;
 import org.python.pydev.debug.model.remote.ICommandResponseListener;
 
 public class DeferredWorkbenchAdapter extends DeferredDebugElementWorkbenchAdapter implements IDeferredWorkbenchAdapter, ICommandResponseListener{
@@ -60,12 +62,29 @@ public class DeferredWorkbenchAdapter extends DeferredDebugElementWorkbenchAdapt
             throw new RuntimeException("This is valid only for a single getChildren!");
         }
         
-        if(o instanceof PyVariableCollection){
+        if(o instanceof PyIndexedVariableCollection){
+            //too big: only its first page is shown here
+            try {
+                return ((PyIndexedVariableCollection)o).getVariables();
+            } catch (DebugException e) {
+                Log.log(e);
+                return new Object[0];
+            }
+            
+        }else if(o instanceof PyVariableCollection){
             PyVariableCollection variableCollection = (PyVariableCollection)o;
             
+            PyVariable[] prefetched = variableCollection.getPrefetchedVariables();
+            if(prefetched != null){
+                return prefetched;
+            }
+            
             target = variableCollection.getTarget();
             if(target != null){
                 locator = variableCollection;
+                if(target.supportsBatchedVariables()){
+                    return getBatched();
+                }
                 
                 GetVariableCommand variableCommand = variableCollection.getVariableCommand(target);
                 variableCommand.setCompletionListener(this);
@@ -81,6 +100,9 @@ public class DeferredWorkbenchAdapter extends DeferredDebugElementWorkbenchAdapt
             target = f.getTarget();
             if(target != null){
                 locator = f;
+                if(target.supportsBatchedVariables()){
+                    return getBatched();
+                }
     
                 GetVariableCommand variableCommand = f.getFrameCommand(target);
                 variableCommand.setCompletionListener(this);
@@ -97,6 +119,33 @@ public class DeferredWorkbenchAdapter extends DeferredDebugElementWorkbenchAdapt
         }
     }
 
+    /**
+     * Gets the children of the locator with a GetVariablesBatchCommand (which also gets the contents of the
+     * containers found, so, expanding them later doesn't need a new request).
+     */
+    private PyVariable[] getBatched() {
+        GetVariablesBatchCommand cmd = new GetVariablesBatchCommand(target, new IVariableLocator[]{locator}, 
+                GetVariablesBatchCommand.PREFETCH_LEVELS);
+        target.postCommand(cmd);
+        try {
+            long timeout = System.currentTimeMillis() + 5000; //up to 5 seconds
+            //wait in slices only to check whether the request was canceled
+            while (!cmd.waitForResponse(100)){
+                if(this.monitor != null && this.monitor.isCanceled() == true){
+                    //canceled request... let's return
+                    return new PyVariable[0];
+                }
+                if(System.currentTimeMillis() > timeout){
+                    return new PyVariable[0];
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.log(e);
+            return new PyVariable[0];
+        }
+        return getChildrenFor(cmd.getVariables(0));
+    }
+
     private PyVariable[] waitForCommand() {
         try {
             // VariablesView does not deal well with children changing asynchronously.
@@ -128,16 +177,22 @@ public class DeferredWorkbenchAdapter extends DeferredDebugElementWorkbenchAdapt
     }
 
     public void commandComplete(AbstractDebuggerCommand cmd) {
-        PyVariable[] temp = PyVariableCollection.getCommandVariables(cmd, target, locator);
+        commandVariables = getChildrenFor(PyVariableCollection.getCommandVariables(cmd, target, locator));
+    }
+
+    /**
+     * @return the children to be shown for the parent given the variables resolved for it.
+     */
+    private PyVariable[] getChildrenFor(PyVariable[] temp) {
         if(parent instanceof PyVariableCollection){
-            commandVariables = temp;
+            return temp;
             
         } else if(parent instanceof PyStackFrame){
             PyStackFrame f = (PyStackFrame) parent;
             PyVariable[] temp1 = new PyVariable[temp.length +1];
             System.arraycopy(temp,0,temp1,1,temp.length);
             temp1[0] = new PyVariableCollection(target, "Globals", "frame.f_global", "Global variables", f.getGlobalLocator());
-            commandVariables = temp1;
+            return temp1;
             
         }else{
             throw new RuntimeException("Unknown parent:"+parent.getClass());
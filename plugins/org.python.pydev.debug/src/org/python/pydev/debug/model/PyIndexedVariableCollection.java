@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.model.IIndexedValue;
+import org.eclipse.debug.core.model.IVariable;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.debug.core.PydevDebugPlugin;
+import org.python.pydev.debug.model.remote.GetVariableRangeCommand;
+
+/**
+ * A container that's too big to have all its contents gotten at once (i.e.: a list with 1M items).
+ *
+ * As it's an IIndexedValue, eclipse shows it in partitions ([0..99], [100..199], ...) and its contents are only gotten
+ * (in pages of PAGE_SIZE items) when a partition is expanded. Only the last MAX_CACHED_PAGES pages are kept.
+ *
+ * @author Fabio
+ */
+public class PyIndexedVariableCollection extends PyVariableCollection implements IIndexedValue {
+
+    /**
+     * Containers with more items than this are gotten in pages.
+     */
+    public static int MIN_LENGTH_TO_PAGE = 100;
+
+    public static int PAGE_SIZE = 100;
+
+    public static int MAX_CACHED_PAGES = 20;
+
+    /**
+     * Timeout (in millis) to wait for the pages requested.
+     */
+    public static int PAGE_TIMEOUT = 5000;
+
+    private final int length;
+
+    /**
+     * Page index --> variables in the page (access-ordered, so that the least recently used page is removed).
+     */
+    private final Map<Integer, PyVariable[]> pages = new LinkedHashMap<Integer, PyVariable[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PyVariable[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    public PyIndexedVariableCollection(AbstractDebugTarget target, String name, String type, String value,
+            IVariableLocator locator, int length) {
+        super(target, name, type, value, locator);
+        this.length = length;
+    }
+
+    public int getSize() throws DebugException {
+        return length;
+    }
+
+    public int getInitialOffset() {
+        return 0;
+    }
+
+    public boolean hasVariables() throws DebugException {
+        return length > 0;
+    }
+
+    /**
+     * Only the first page is returned (the other items are gotten through the partitions).
+     */
+    public IVariable[] getVariables() throws DebugException {
+        return getVariables(0, Math.min(length, PAGE_SIZE));
+    }
+
+    public IVariable getVariable(int offset) throws DebugException {
+        return getVariables(offset, 1)[0];
+    }
+
+    public IVariable[] getVariables(int offset, int len) throws DebugException {
+        if (offset < 0 || len < 0 || offset + len > length) {
+            throw new DebugException(PydevDebugPlugin.makeStatus(IStatus.ERROR, "Invalid range: " + offset + " len: "
+                    + len + " (length: " + length + ")", null));
+        }
+        if (len == 0) {
+            return new IVariable[0];
+        }
+        int firstPage = offset / PAGE_SIZE;
+        int lastPage = (offset + len - 1) / PAGE_SIZE;
+        PyVariable[][] found = new PyVariable[lastPage - firstPage + 1][];
+
+        //request all the missing pages before waiting for any of them (so, they're pipelined)
+        GetVariableRangeCommand[] requested = new GetVariableRangeCommand[found.length];
+        synchronized (pages) {
+            for (int page = firstPage; page <= lastPage; page++) {
+                found[page - firstPage] = pages.get(page);
+            }
+        }
+        String location = getPyDBLocation();
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                int start = (firstPage + i) * PAGE_SIZE;
+                requested[i] = new GetVariableRangeCommand(target, location, start, Math.min(length, start + PAGE_SIZE));
+                target.postCommand(requested[i]);
+            }
+        }
+
+        long timeout = System.currentTimeMillis() + PAGE_TIMEOUT;
+        for (int i = 0; i < found.length; i++) {
+            if (requested[i] == null) {
+                continue;
+            }
+            try {
+                if (requested[i].waitForResponse(Math.max(1, timeout - System.currentTimeMillis()))) {
+                    PyVariable[] vars = getCommandVariables(requested[i], target, this);
+                    found[i] = vars;
+                    if (vars.length == Math.min(PAGE_SIZE, length - (firstPage + i) * PAGE_SIZE)) {
+                        synchronized (pages) {
+                            pages.put(firstPage + i, vars);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.log(e);
+            }
+        }
+
+        IVariable[] ret = new IVariable[len];
+        for (int i = 0; i < len; i++) {
+            int index = offset + i;
+            PyVariable[] page = found[index / PAGE_SIZE - firstPage];
+            int indexInPage = index % PAGE_SIZE;
+            if (page != null && indexInPage < page.length) {
+                ret[i] = page[indexInPage];
+            } else if (page == null) {
+                ret[i] = new PyVariable(target, "err:", "", "Timed out while getting var.", this);
+            } else {
+                ret[i] = new PyVariable(target, "err:", "", "Unable to get var.", this);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of pages currently cached.
+     */
+    int getCachedPages() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+}
@@ -12,6 +12,8 @@ package org.python.pydev.debug.model;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -352,10 +354,10 @@ public class PyStackFrame extends PlatformObject implements IStackFrame, IVariab
     
     public String getFileContents() {
         if(fileContents == null){
-            // send the command, and then busy-wait
+            // send the command, and then wait for the response
             GetFileContentsCommand cmd = new GetFileContentsCommand(target, this.path.toOSString());
             
-            final Object lock = new Object();
+            final CountDownLatch responseArrived = new CountDownLatch(1);
             final String[] response = new String[1];
             
             cmd.setCompletionListener(new ICommandResponseListener() {
@@ -366,30 +368,16 @@ public class PyStackFrame extends PlatformObject implements IStackFrame, IVariab
                     } catch (CoreException e) {
                         response[0] = "";
                     }
-                    try {
-                        synchronized (lock) {
-                            lock.notify();
-                        }
-                    } catch (Exception e) {
-                        //ignore
-                    }
+                    responseArrived.countDown();
                 }
             });
             
             target.postCommand(cmd);
             int timeout = PySourceLocatorPrefs.getFileContentsTimeout();
-            long initialTimeMillis = System.currentTimeMillis();
-            while(response[0] == null){
-                synchronized (lock) {
-                    try {
-                        lock.wait(50);
-                    } catch (Exception e) {
-                        //ignore
-                    }
-                }
-                if(System.currentTimeMillis() - initialTimeMillis > timeout){
-                    break;
-                }
+            try {
+                responseArrived.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                //ignore
             }
             fileContents = response[0];
         }
@@ -19,6 +19,7 @@ import org.python.pydev.core.log.Log;
 import org.python.pydev.debug.core.PydevDebugPlugin;
 import org.python.pydev.debug.model.remote.AbstractDebuggerCommand;
 import org.python.pydev.debug.model.remote.GetVariableCommand;
+import org.python.pydev.debug.model.remote.GetVariablesBatchCommand;
 import org.python.pydev.debug.model.remote.ICommandResponseListener;
 
 /**
@@ -74,7 +75,14 @@ public class PyVariableCollection extends PyVariable implements ICommandResponse
      * Received when the command has been completed.
      */
     public void commandComplete(AbstractDebuggerCommand cmd) {
-        variables = getCommandVariables(cmd);
+        if (cmd instanceof GetVariablesBatchCommand){
+            if (networkState == NETWORK_REQUEST_ARRIVED){
+                return; //already set by the thread that was waiting for it
+            }
+            variables = ((GetVariablesBatchCommand) cmd).getVariables(0);
+        }else{
+            variables = getCommandVariables(cmd);
+        }
         
         networkState = NETWORK_REQUEST_ARRIVED;
         if (fireChangeEvent){
@@ -113,8 +121,13 @@ public class PyVariableCollection extends PyVariable implements ICommandResponse
             return getWaitVariables();
         }
 
-        // send the command, and then busy-wait
-        GetVariableCommand cmd = getVariableCommand(target);
+        // send the command, and then wait for the response
+        AbstractDebuggerCommand cmd;
+        if (target.supportsBatchedVariables()){
+            cmd = new GetVariablesBatchCommand(target, new IVariableLocator[]{this}, GetVariablesBatchCommand.PREFETCH_LEVELS);
+        }else{
+            cmd = getVariableCommand(target);
+        }
         cmd.setCompletionListener(this);
         networkState = NETWORK_REQUEST_NOT_ARRIVED;
         fireChangeEvent = false;    // do not fire change event while we are waiting on response
@@ -125,9 +138,16 @@ public class PyVariableCollection extends PyVariable implements ICommandResponse
             // of visibility.
             // I try to minimize the occurrence here, by giving pydevd time to complete the
             // task before we are forced to do asynchronous notification.
-            int i = 10; 
-            while (--i > 0 && networkState != NETWORK_REQUEST_ARRIVED){
-                Thread.sleep(50);
+            if (cmd instanceof GetVariablesBatchCommand){
+                GetVariablesBatchCommand batchCmd = (GetVariablesBatchCommand) cmd;
+                if (batchCmd.waitForResponse(500)){
+                    setPrefetchedVariables(batchCmd.getVariables(0));
+                }
+            }else{
+                int i = 10; 
+                while (--i > 0 && networkState != NETWORK_REQUEST_ARRIVED){
+                    Thread.sleep(50);
+                }
             }
             
         } catch (InterruptedException e) {
@@ -142,6 +162,25 @@ public class PyVariableCollection extends PyVariable implements ICommandResponse
     }
 
     
+    /**
+     * Sets the contents of this collection when they were already gotten (i.e.: in the same request that got its
+     * parent), so that no request is needed to get them.
+     */
+    void setPrefetchedVariables(PyVariable[] variables) {
+        this.variables = variables;
+        networkState = NETWORK_REQUEST_ARRIVED;
+    }
+    
+    /**
+     * @return the contents of this collection if they were already gotten (or null if they weren't).
+     */
+    PyVariable[] getPrefetchedVariables() {
+        if (networkState == NETWORK_REQUEST_ARRIVED){
+            return variables;
+        }
+        return null;
+    }
+
     public GetVariableCommand getVariableCommand(AbstractDebugTarget dbg) {
         return new GetVariableCommand(dbg, getPyDBLocation());
     }
@@ -41,6 +41,10 @@ public class PyVariableContentProviderHack extends VariableContentProvider{
             IWatchExpression watchExpression = (IWatchExpression) parent;
             return super.getAllChildren(watchExpression.getValue(), context);
         }
+        if(parent instanceof PyIndexedVariableCollection){
+            //let eclipse split it in partitions (so that only the expanded ones are gotten)
+            return super.getAllChildren(parent, context);
+        }
         if(parent instanceof PyVariableCollection){
             PyVariableCollection pyVariableCollection = (PyVariableCollection) parent;
             return pyVariableCollection.getVariables();
@@ -41,13 +41,27 @@ import org.xml.sax.helpers.DefaultHandler;
 public class XMLUtils {
 
     static SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+    
+    /**
+     * Parsers are reused in each thread (creating a new one for each response is expensive).
+     */
+    private static final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>();
 
     static SAXParser getSAXParser() throws CoreException {
-        SAXParser parser = null;
+        SAXParser parser = parsers.get();
+        if(parser != null){
+            try {
+                parser.reset();
+                return parser;
+            } catch (UnsupportedOperationException e) {
+                //create a new one
+            }
+        }
         try {
             synchronized(parserFactory) {
                 parser = parserFactory.newSAXParser();
             }
+            parsers.set(parser);
         } catch (ParserConfigurationException e) {
             throw new CoreException(PydevDebugPlugin.makeStatus(IStatus.ERROR, "Unexpected XML SAX error", e));
         } catch (SAXException e) {
@@ -95,6 +109,9 @@ public class XMLUtils {
      * Creates IThread[] from the XML response
      */
     static public PyThread[] ThreadsFromXML(AbstractDebugTarget target, String payload) throws CoreException {
+        if(CompactPayload.isCompact(payload)){
+            return CompactPayload.toThreads(target, payload);
+        }
         try {
             SAXParser parser = getSAXParser();
             XMLToThreadInfo info = new XMLToThreadInfo(target);
@@ -115,7 +132,6 @@ public class XMLUtils {
      * <var name="self" type="ObjectType" value="<DeepThread>"/>
      */
     static PyVariable createVariable(AbstractDebugTarget target, IVariableLocator locator, Attributes attributes) {
-        PyVariable var;
         String name = attributes.getValue("name");
         String type = attributes.getValue("type");
         String value = attributes.getValue("value");
@@ -127,15 +143,64 @@ public class XMLUtils {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        String isContainer = attributes.getValue("isContainer");
-        if ("True".equals(isContainer)){
-            var = new PyVariableCollection(target, name, type, value, locator);
+        return createVariable(target, locator, name, type, value, "True".equals(attributes.getValue("isContainer")), 
+                attributes.getValue("len"));
+    }
+    
+    /**
+     * Creates a variable (the value must be already decoded).
+     * 
+     * @param len the length of the container or null if not available.
+     */
+    static PyVariable createVariable(AbstractDebugTarget target, IVariableLocator locator, String name, String type, 
+            String value, boolean isContainer, String len) {
+        PyVariable var;
+        if (isContainer){
+            int length = -1;
+            if (len != null){
+                try {
+                    length = Integer.parseInt(len);
+                } catch (NumberFormatException e) {
+                    //just ignore it (the contents will be gotten at once)
+                }
+            }
+            if (length > PyIndexedVariableCollection.MIN_LENGTH_TO_PAGE){
+                var = new PyIndexedVariableCollection(target, name, type, value, locator, length);
+            }else{
+                var = new PyVariableCollection(target, name, type, value, locator);
+            }
         }else{ 
             var = new PyVariable(target,  name, type, value, locator);
         }
         return var;
     }
 
+    /**
+     * Creates a frame for the thread (or updates the existing one with the same id).
+     * 
+     * @param file the file of the frame (already decoded).
+     */
+    static PyStackFrame createFrame(AbstractDebugTarget target, PyThread thread, String id, String name, 
+            String file, String line) {
+        if (file != null){
+            File tempFile = new File(file);
+            if(tempFile.exists()){
+                file = REF.getFileAbsolutePath(tempFile);
+            }
+        }
+        IPath filePath = new Path(file);
+        // Try to recycle old stack objects
+        PyStackFrame frame = thread.findStackFrameByID(id);
+        if (frame == null){
+            frame = new PyStackFrame(thread, id, name, filePath, Integer.parseInt(line), target);
+        } else { 
+            frame.setName(name);
+            frame.setPath(filePath);
+            frame.setLine(Integer.parseInt(line));
+        }
+        return frame;
+    }
+
     /**
      * XMLToStack SAX traverse
      */
@@ -162,32 +227,16 @@ public class XMLUtils {
         }
         
         private void startFrame(Attributes attributes) {
-            String name = attributes.getValue("name");
-            String id = attributes.getValue("id");
             String file = attributes.getValue("file");
             try {
                 if (file != null){
                     file = URLDecoder.decode(file, "UTF-8");
-                    File tempFile = new File(file);
-                    if(tempFile.exists()){
-                        file = REF.getFileAbsolutePath(tempFile);
-                    }
                 }
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
-            
-            String line = attributes.getValue("line");
-            IPath filePath = new Path(file);
-            // Try to recycle old stack objects
-            currentFrame = thread.findStackFrameByID(id);
-            if (currentFrame == null){
-                currentFrame = new PyStackFrame(thread, id, name, filePath, Integer.parseInt(line), target);
-            } else { 
-                currentFrame.setName(name);
-                currentFrame.setPath(filePath);
-                currentFrame.setLine(Integer.parseInt(line));
-            }
+            currentFrame = createFrame(target, thread, attributes.getValue("id"), attributes.getValue("name"), file, 
+                    attributes.getValue("line"));
             stack.add(currentFrame);
         }
         
@@ -228,6 +277,9 @@ public class XMLUtils {
      * @return an array of [thread_id, stop_reason, IStackFrame[]]
      */
     public static Object[] XMLToStack(AbstractDebugTarget target, String payload) throws CoreException {
+        if(CompactPayload.isCompact(payload)){
+            return CompactPayload.toStack(target, payload);
+        }
         IStackFrame[] stack;
         Object[] retVal = new Object[3];
         try {
@@ -276,6 +328,9 @@ public class XMLUtils {
     }
 
     public static PyVariable[] XMLToVariables(AbstractDebugTarget target, IVariableLocator locator, String payload) throws CoreException {
+        if(CompactPayload.isCompact(payload)){
+            return CompactPayload.toVariables(target, locator, payload);
+        }
         try {
             SAXParser parser = getSAXParser();
             XMLToVariableInfo info = new XMLToVariableInfo(target, locator);
@@ -294,9 +349,156 @@ public class XMLUtils {
     }
 
     
+    /**
+     * Processes CMD_GET_VARIABLES_BATCH return
+     */
+    static class XMLToVariablesBatchInfo extends DefaultHandler {
+        private AbstractDebugTarget target;
+        private IVariableLocator[] locators;
+        public PyVariable[][] vars;
+        
+        /**
+         * The variables being filled for each level (the last one is the current level).
+         */
+        private List<List<PyVariable>> levels = new ArrayList<List<PyVariable>>();
+        
+        /**
+         * The locator for the variables in each level (the container of the level or the requested locator).
+         */
+        private List<IVariableLocator> levelLocators = new ArrayList<IVariableLocator>();
+        
+        private int currentPath;
+        
+        public XMLToVariablesBatchInfo(AbstractDebugTarget target, IVariableLocator[] locators) {
+            this.target = target;
+            this.locators = locators;
+            this.vars = new PyVariable[locators.length][];
+        }
+        
+        private List<PyVariable> currentLevel() {
+            return levels.get(levels.size()-1);
+        }
+        
+        private void pushLevel(IVariableLocator locator) {
+            levels.add(new ArrayList<PyVariable>());
+            levelLocators.add(locator);
+        }
+        
+        private PyVariable[] popLevel() {
+            levelLocators.remove(levelLocators.size()-1);
+            List<PyVariable> level = levels.remove(levels.size()-1);
+            return level.toArray(new PyVariable[level.size()]);
+        }
+        
+        public void startElement(String uri, String localName, String qName,
+                                Attributes attributes) throws SAXException {
+            /*
+             <xml>
+               <vars path="0">  -- index of the locator requested
+                 <var name="self" type="ObjectType" value="<DeepThread>" isContainer="True"/>
+                 <children name="self"> -- contents of the container just before it
+                   <var name="attr" type="int" value="10"/>
+                 </children>
+               </vars>*
+             */
+            if (qName.equals("var")){
+                addVariable(createVariable(target, getCurrentLocator(), attributes));
+                
+            }else if (qName.equals("children")){
+                startChildren(attributes.getValue("name"));
+                
+            }else if (qName.equals("vars")){
+                startVars(Integer.parseInt(attributes.getValue("path")));
+            }
+        }
+        
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (qName.equals("children")){
+                endChildren();
+                
+            }else if (qName.equals("vars")){
+                endVars();
+            }
+        }
+        
+        /**
+         * @return the locator for the variables created in the current level.
+         */
+        IVariableLocator getCurrentLocator() {
+            return levelLocators.get(levelLocators.size()-1);
+        }
+        
+        void addVariable(PyVariable var) {
+            currentLevel().add(var);
+        }
+        
+        void startVars(int path) {
+            currentPath = path;
+            pushLevel(locators[currentPath]);
+        }
+        
+        void endVars() {
+            vars[currentPath] = popLevel();
+        }
+        
+        /**
+         * The contents of the container with the given name (which must be the last one with that name in the current
+         * level).
+         */
+        void startChildren(String name) {
+            List<PyVariable> level = currentLevel();
+            IVariableLocator container = null;
+            for(int i=level.size()-1;i>=0;i--){
+                PyVariable var = level.get(i);
+                if(var instanceof PyVariableCollection && var.name.equals(name)){
+                    container = var;
+                    break;
+                }
+            }
+            //if not found, the contents are still parsed, but just discarded at the end.
+            pushLevel(container);
+        }
+        
+        void endChildren() {
+            IVariableLocator container = getCurrentLocator();
+            PyVariable[] children = popLevel();
+            if(container != null){
+                ((PyVariableCollection) container).setPrefetchedVariables(children);
+            }
+        }
+        
+        PyVariable[][] getVars() {
+            for (int i = 0; i < vars.length; i++){
+                if(vars[i] == null){
+                    vars[i] = new PyVariable[0];
+                }
+            }
+            return vars;
+        }
+    }
     
-    
-    
+    /**
+     * @return the variables for each one of the locators requested (the contents of the containers that were also
+     * resolved are already set in the related PyVariableCollection).
+     */
+    public static PyVariable[][] XMLToVariablesBatch(AbstractDebugTarget target, IVariableLocator[] locators, 
+            String payload) throws CoreException {
+        if(CompactPayload.isCompact(payload)){
+            return CompactPayload.toVariablesBatch(target, locators, payload);
+        }
+        try {
+            SAXParser parser = getSAXParser();
+            XMLToVariablesBatchInfo info = new XMLToVariablesBatchInfo(target, locators);
+            parser.parse(new ByteArrayInputStream(payload.getBytes()), info);
+            return info.getVars();
+        } catch (CoreException e) {
+            throw e;
+        } catch (SAXException e) {
+            throw new CoreException(PydevDebugPlugin.makeStatus(IStatus.ERROR, "Unexpected XML error", e));
+        } catch (IOException e) {
+            throw new CoreException(PydevDebugPlugin.makeStatus(IStatus.ERROR, "Unexpected XML error", e));
+        }
+    }
     
     
     /**
@@ -63,6 +63,8 @@ public abstract class AbstractDebuggerCommand {
     static public final int CMD_SET_PY_EXCEPTION = 122;
     static public final int CMD_GET_FILE_CONTENTS = 123;
     static public final int CMD_SET_PROPERTY_TRACE = 124;
+    static public final int CMD_GET_VARIABLES_BATCH = 125;
+    static public final int CMD_GET_VARIABLE_RANGE = 126;
     static public final int CMD_ERROR = 901;
     static public final int CMD_VERSION = 501;
     static public final int CMD_RETURN = 502;
@@ -72,6 +74,11 @@ public abstract class AbstractDebuggerCommand {
     protected ICommandResponseListener responseListener;
     int sequence;
     
+    /**
+     * The generation of the VariablesCache when this command was posted (used to know whether its response may be kept)
+     */
+    int cacheGeneration;
+    
     public AbstractDebuggerCommand(AbstractDebugTarget debugger) {
         this.target = debugger;
         this.responseListener = null;
@@ -107,6 +114,23 @@ public abstract class AbstractDebuggerCommand {
         return false;
     }
     
+    /**
+     * Commands whose response may be reused for the same request while the thread is suspended should return a key
+     * identifying the request (which must start with the thread id -- as the variable locators do).
+     * 
+     * @return the key for the response of this command in the VariablesCache or null if it shouldn't be cached.
+     */
+    public String getCacheKey() {
+        return null;
+    }
+    
+    /**
+     * @return whether this command may change the state of the debuggee (so, the cached responses are no longer valid).
+     */
+    public boolean invalidatesCachedVariables() {
+        return false;
+    }
+    
     /**
      * returns Sequence # 
      */
@@ -123,6 +147,7 @@ public abstract class AbstractDebuggerCommand {
         }else{
             processOKResponse(cmdCode, payload);
         }
+        target.getVariablesCache().onResponse(this, cmdCode, payload);
         
         if (responseListener != null){
             responseListener.commandComplete(this);
@@ -43,6 +43,11 @@ public class ChangeVariableCommand extends AbstractDebuggerCommand {
     protected int getCommandId() {
         return CMD_CHANGE_VARIABLE;
     }
+
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
     
 }
 
@@ -8,7 +8,6 @@ package org.python.pydev.debug.model.remote;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.Socket;
 import java.net.URLDecoder;
 import java.util.Dictionary;
@@ -19,9 +18,13 @@ import org.python.pydev.core.log.Log;
 import org.python.pydev.debug.core.PydevDebugPlugin;
 import org.python.pydev.debug.model.AbstractDebugTarget;
 import org.python.pydev.debug.model.AbstractDebugTargetWithTransmission;
+import org.python.pydev.debug.model.CompactPayload;
 
 /**
  * Reads and dispatches commands
+ * 
+ * The reader thread blocks in the socket until some data is available and dispatches all the commands that are 
+ * complete in what was read (no polling is done).
  */
 public class DebuggerReader implements Runnable {
     /**
@@ -39,11 +42,6 @@ public class DebuggerReader implements Runnable {
      */
     private volatile boolean done = false;
     
-    /**
-     * Lock object for sleeping.
-     */
-    private Object lock = new Object();
-    
     /**
      * commands waiting for response. Their keys are the sequence ids
      */
@@ -52,7 +50,20 @@ public class DebuggerReader implements Runnable {
     /**
      * we read from this
      */
-    private InputStreamReader in;
+    private InputStream in;
+    
+    /**
+     * The bytes read from the socket (the ones from pos to limit weren't consumed yet).
+     */
+    private final byte[] buf = new byte[8192];
+    private int pos;
+    private int limit;
+    
+    /**
+     * The bytes of the line being read.
+     */
+    private byte[] line = new byte[256];
+    private int lineLen;
     
     /**
      * that's the debugger that made us... we have to finish it when we are done
@@ -70,8 +81,7 @@ public class DebuggerReader implements Runnable {
     public DebuggerReader(Socket s, AbstractDebugTargetWithTransmission r ) throws IOException {
         remote = (AbstractDebugTarget) r;
         socket = s;
-        InputStream sin = socket.getInputStream();
-        in = new InputStreamReader(sin);
+        in = socket.getInputStream();
     }
     
     /**
@@ -99,7 +109,10 @@ public class DebuggerReader implements Runnable {
             String[] cmdParsed = cmdLine.split("\t", 3);
             int cmdCode = Integer.parseInt(cmdParsed[0]);
             int seqCode = Integer.parseInt(cmdParsed[1]);
-            String payload = URLDecoder.decode(cmdParsed[2], "UTF-8");
+            String payload = cmdParsed[2];
+            if(!CompactPayload.isCompact(payload)){
+                payload = URLDecoder.decode(payload, "UTF-8");
+            }
 
             
             // is there a response waiting
@@ -136,9 +149,6 @@ public class DebuggerReader implements Runnable {
                 if(cmdLine != null && cmdLine.trim().length() > 0){
                     processCommand(cmdLine);
                 }
-                synchronized(lock) {
-                    Thread.sleep(50);
-                }
             } catch (Exception e1) {
                 done = true;
                 //that's ok, it means that the client finished
@@ -161,19 +171,41 @@ public class DebuggerReader implements Runnable {
     /**
      * Implemented our own: with the BufferedReader, when the socket was closed, it still appeared stuck in the method.
      * 
-     * @return a line that was read from the debugger.
+     * Reads as much as is available from the socket at once and only blocks when there's no complete line buffered.
+     * 
+     * @return a line that was read from the debugger (may be empty, as '\r\n' is seen as 2 line ends).
      * @throws IOException
      */
     private String readLine() throws IOException {
-        StringBuffer contents = new StringBuffer();
-        int i;
-        while ((i = in.read()) != -1) {
-            char c = (char) i;
-            if(c == '\n' || c == '\r'){
-                return contents.toString();
+        lineLen = 0;
+        while (true) {
+            if(pos == limit){
+                int read = in.read(buf, 0, buf.length);
+                if(read == -1){
+                    throw new IOException("Done");
+                }
+                pos = 0;
+                limit = read;
             }
-            contents.append(c);
+            int start = pos;
+            while (pos < limit) {
+                byte b = buf[pos++];
+                if(b == '\n' || b == '\r'){
+                    appendToLine(start, pos - 1 - start);
+                    return new String(line, 0, lineLen, "UTF-8");
+                }
+            }
+            appendToLine(start, limit - start);
+        }
+    }
+    
+    private void appendToLine(int start, int len) {
+        if(lineLen + len > line.length){
+            byte[] newLine = new byte[Math.max(line.length * 2, lineLen + len)];
+            System.arraycopy(line, 0, newLine, 0, lineLen);
+            line = newLine;
         }
-        throw new IOException("Done");
+        System.arraycopy(buf, start, line, lineLen, len);
+        lineLen += len;
     }
 }
@@ -6,15 +6,22 @@
  */
 package org.python.pydev.debug.model.remote;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Writer writes debugger commands to the network. Use postCommand to put new
  * ones in queue.
+ * 
+ * The writer thread blocks until a command is posted, so, commands are sent as soon as they're posted (and all the
+ * commands that are already in the queue when it wakes up are written with a single flush). When it's done, a stop
+ * marker is posted, so, it stops even if it wasn't waiting for a command yet.
  */
 public class DebuggerWriter implements Runnable {
 
@@ -24,70 +31,69 @@ public class DebuggerWriter implements Runnable {
     private Socket socket;
 
     /**
-     * a list of RemoteDebuggerCommands
+     * Posted when the writer is done (the writer stops when it gets it).
      */
-    private List<AbstractDebuggerCommand> cmdQueue = new ArrayList<AbstractDebuggerCommand>();
-
-    private OutputStreamWriter out;
+    private static final Object STOP = new Object();
 
     /**
-     * Volatile, as multiple threads may ask it to be 'done'
+     * the RemoteDebuggerCommands waiting to be sent (and the STOP marker)
      */
-    private volatile boolean done = false;
+    private final LinkedBlockingQueue<Object> cmdQueue = new LinkedBlockingQueue<Object>();
+
+    private Writer out;
 
     /**
-     * Lock object for sleeping.
+     * Volatile, as multiple threads may ask it to be 'done'
      */
-    private Object lock = new Object();
+    private volatile boolean done = false;
 
     
     public DebuggerWriter(Socket s) throws IOException {
         socket = s;
-        out = new OutputStreamWriter(s.getOutputStream());
+        out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()));
     }
 
     /**
      * Add command for processing
      */
     public void postCommand(AbstractDebuggerCommand cmd) {
-        synchronized (cmdQueue) {
-            cmdQueue.add(cmd);
-        }
+        cmdQueue.add(cmd);
     }
 
     public void done() {
         this.done = true;
+        cmdQueue.add(STOP);
     }
 
     /**
      * Loops and writes commands to the output
      */
     public void run() {
-        while (!done) {
-            AbstractDebuggerCommand cmd = null;
-            synchronized (cmdQueue) {
-                if (cmdQueue.size() > 0){
-                    cmd = (AbstractDebuggerCommand) cmdQueue.remove(0);
-                }
-            }
-            try {
-                if (cmd != null) {
+        List<Object> cmds = new ArrayList<Object>();
+        try {
+            while (!done) {
+                cmds.add(cmdQueue.take());
+                cmdQueue.drainTo(cmds);
+                for (Object o : cmds) {
+                    if(o == STOP){
+                        return;
+                    }
+                    AbstractDebuggerCommand cmd = (AbstractDebuggerCommand) o;
                     cmd.aboutToSend();
                     out.write(cmd.getOutgoing());
                     out.write("\n");
-                    out.flush();
                 }
-                synchronized (lock) {
-                    Thread.sleep(100);
+                cmds.clear();
+                out.flush();
+                
+                if ((socket == null) || !socket.isConnected()) {
+                    done = true;
                 }
-            } catch (InterruptedException e) {
-                done = true;
-            } catch (IOException e1) {
-                done = true;
-            }
-            if ((socket == null) || !socket.isConnected()) {
-                done = true;
             }
+        } catch (InterruptedException e) {
+            done = true;
+        } catch (IOException e1) {
+            done = true;
         }
     }
 }
@@ -51,6 +51,19 @@ public class EvaluateExpressionCommand extends AbstractDebuggerCommand {
     public boolean needResponse() {
         return true;
     }
+    
+    @Override
+    public String getCacheKey() {
+        if(doExec){
+            return null;
+        }
+        return locator + "\t" + CMD_EVALUATE_EXPRESSION + "\t" + expression;
+    }
+    
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return doExec;
+    }
 
     public void processOKResponse(int cmdCode, String payload) {
         responseCode = cmdCode;
@@ -10,6 +10,9 @@
  */
 package org.python.pydev.debug.model.remote;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.python.pydev.debug.core.PydevDebugPlugin;
@@ -19,7 +22,7 @@ import org.python.pydev.debug.model.AbstractDebugTarget;
  * GetVariable network command.
  * 
  * GetVariable gets the value of the variable from network as XML.
- * The caller can busy-wait for the response.
+ * The caller can wait for the response with waitForResponse.
  */
 public class GetVariableCommand extends AbstractDebuggerCommand {
 
@@ -27,6 +30,7 @@ public class GetVariableCommand extends AbstractDebuggerCommand {
     boolean isError = false;
     int responseCode;
     String payload;
+    private final CountDownLatch responseArrived = new CountDownLatch(1);
 
     public GetVariableCommand(AbstractDebugTarget debugger, String locator) {
         super(debugger);
@@ -49,16 +53,30 @@ public class GetVariableCommand extends AbstractDebuggerCommand {
             isError = true;
             PydevDebugPlugin.log(IStatus.ERROR, "Unexpected response to "+this.getClass(), null);
         }
+        responseArrived.countDown();
     }
 
     protected int getCommandId() {
         return CMD_GET_VARIABLE;
     }
     
+    @Override
+    public String getCacheKey() {
+        return locator + "\t" + getCommandId();
+    }
+    
     public void processErrorResponse(int cmdCode, String payload) {
         responseCode = cmdCode;
         this.payload = payload;
         isError = true;
+        responseArrived.countDown();
+    }
+    
+    /**
+     * @return whether the response arrived in the given timeout.
+     */
+    public boolean waitForResponse(long timeoutMillis) throws InterruptedException {
+        return responseArrived.await(timeoutMillis, TimeUnit.MILLISECONDS);
     }
         
     public String getResponse() throws CoreException {
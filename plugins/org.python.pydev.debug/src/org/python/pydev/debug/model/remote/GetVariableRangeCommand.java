@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model.remote;
+
+import org.python.pydev.debug.model.AbstractDebugTarget;
+
+/**
+ * Gets the items from start to end (exclusive) of a container (only for the containers that report their length).
+ * 
+ * The response has the same format of the GetVariableCommand response.
+ * 
+ * @author Fabio
+ */
+public class GetVariableRangeCommand extends GetVariableCommand {
+
+    private final int start;
+    private final int end;
+
+    public GetVariableRangeCommand(AbstractDebugTarget debugger, String locator, int start, int end) {
+        super(debugger, locator);
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getOutgoing() {
+        return makeCommand(getCommandId(), sequence, start + "\t" + end + "\t" + locator);
+    }
+
+    @Override
+    public String getCacheKey() {
+        return super.getCacheKey() + "\t" + start + "\t" + end;
+    }
+
+    @Override
+    protected int getCommandId() {
+        return CMD_GET_VARIABLE_RANGE;
+    }
+}
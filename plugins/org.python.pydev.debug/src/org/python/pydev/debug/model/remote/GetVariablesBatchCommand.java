@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model.remote;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.python.pydev.core.docutils.StringUtils;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.debug.core.PydevDebugPlugin;
+import org.python.pydev.debug.model.AbstractDebugTarget;
+import org.python.pydev.debug.model.IVariableLocator;
+import org.python.pydev.debug.model.PyVariable;
+import org.python.pydev.debug.model.XMLUtils;
+
+/**
+ * Gets the contents of many variables in a single request (all the locations must be in the same thread).
+ *
+ * The containers found in those variables are also resolved by pydevd up to the given levels, and their contents
+ * are set in the PyVariableCollections created, so that expanding them later doesn't need a new request.
+ *
+ * The caller may wait for the response with {@link #waitForResponse(long)} (instead of busy-waiting for it).
+ *
+ * @author Fabio
+ */
+public class GetVariablesBatchCommand extends AbstractDebuggerCommand {
+
+    /**
+     * The levels requested when expanding some variable (1 means only the variable contents).
+     */
+    public static int PREFETCH_LEVELS = 2;
+
+    private final IVariableLocator[] locators;
+    private final int levels;
+    private final CountDownLatch responseArrived = new CountDownLatch(1);
+
+    private volatile boolean isError = false;
+    private volatile String payload;
+
+    /**
+     * The variables for each locator (parsed only once, when first requested).
+     */
+    private PyVariable[][] variables;
+
+    /**
+     * @param locators the locators of the variables to get (and to be used as the locators of the variables created).
+     * @param levels the number of levels to resolve (must be >= 1).
+     */
+    public GetVariablesBatchCommand(AbstractDebugTarget debugger, IVariableLocator[] locators, int levels) {
+        super(debugger);
+        this.locators = locators;
+        this.levels = levels;
+    }
+
+    /**
+     * levels \t number of paths \t (parts in path \t thread_id \t frame_id \t scope \t attributes*)+
+     */
+    public String getOutgoing() {
+        return makeCommand(CMD_GET_VARIABLES_BATCH, sequence, getPayload());
+    }
+
+    private String getPayload() {
+        FastStringBuffer buf = new FastStringBuffer(locators.length * 60);
+        buf.append(levels).append('\t').append(locators.length);
+        for (IVariableLocator locator : locators) {
+            String location = locator.getPyDBLocation();
+            buf.append('\t').append(StringUtils.count(location, '\t') + 1).append('\t').append(location);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * The thread id of the first location and the whole request (all the locations are in the same thread).
+     */
+    @Override
+    public String getCacheKey() {
+        if (locators.length == 0) {
+            return null;
+        }
+        String location = locators[0].getPyDBLocation();
+        int i = location.indexOf('\t');
+        String threadId = i == -1 ? location : location.substring(0, i);
+        return threadId + "\t" + CMD_GET_VARIABLES_BATCH + "\t" + getPayload();
+    }
+
+    public boolean needResponse() {
+        return true;
+    }
+
+    public void processOKResponse(int cmdCode, String payload) {
+        if (cmdCode != CMD_GET_VARIABLES_BATCH) {
+            isError = true;
+            PydevDebugPlugin.log(IStatus.ERROR, "Unexpected response to " + this.getClass(), null);
+        }
+        this.payload = payload;
+        responseArrived.countDown();
+    }
+
+    public void processErrorResponse(int cmdCode, String payload) {
+        this.payload = payload;
+        isError = true;
+        responseArrived.countDown();
+    }
+
+    /**
+     * @return whether the response arrived in the given timeout.
+     */
+    public boolean waitForResponse(long timeoutMillis) throws InterruptedException {
+        return responseArrived.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the variables for the locator at the given index (only valid after the response arrived). If there was
+     * some error, a single variable with the error is returned.
+     */
+    public synchronized PyVariable[] getVariables(int locatorIndex) {
+        if (variables == null) {
+            try {
+                if (isError) {
+                    throw new CoreException(PydevDebugPlugin.makeStatus(IStatus.ERROR, "pydevd error:" + payload, null));
+                }
+                variables = XMLUtils.XMLToVariablesBatch(target, locators, payload);
+            } catch (CoreException e) {
+                variables = new PyVariable[locators.length][];
+                for (int i = 0; i < locators.length; i++) {
+                    variables[i] = new PyVariable[] { new PyVariable(target, "Error", "pydev ERROR",
+                            "Could not resolve variable", locators[i]) };
+                }
+
+                String msg = e.getMessage(); //we don't want to show this error
+                if (msg == null || (msg.indexOf("Error resolving frame:") == -1 && msg.indexOf("from thread:") == -1)) {
+                    PydevDebugPlugin.log(IStatus.ERROR, "Error fetching variables", e);
+                }
+            }
+        }
+        return variables[locatorIndex];
+    }
+}
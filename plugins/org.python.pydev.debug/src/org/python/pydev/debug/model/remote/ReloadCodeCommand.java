@@ -24,4 +24,9 @@ public class ReloadCodeCommand extends AbstractDebuggerCommand {
         return makeCommand(CMD_RELOAD_CODE, sequence, this.moduleName);
     }
 
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
+
 }
@@ -33,4 +33,9 @@ public class RunToLineCommand extends AbstractDebuggerCommand {
         return makeCommand(commandId, sequence, threadId+"\t"+line+"\t"+funcName);
     }
 
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
+
 }
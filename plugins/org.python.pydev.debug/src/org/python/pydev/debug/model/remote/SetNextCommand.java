@@ -34,4 +34,9 @@ public class SetNextCommand extends AbstractDebuggerCommand {
         return makeCommand(commandId, sequence, threadId+"\t"+line+"\t"+funcName);
     }
 
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
+
 }
@@ -34,4 +34,9 @@ public class StepCommand extends AbstractDebuggerCommand {
         return makeCommand(commandId, sequence, threadId);
     }
 
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
+
 }
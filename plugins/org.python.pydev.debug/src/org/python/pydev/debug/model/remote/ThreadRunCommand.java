@@ -27,4 +27,9 @@ public class ThreadRunCommand extends AbstractDebuggerCommand {
     public String getOutgoing() {
         return makeCommand(CMD_THREAD_RUN, sequence, thread);
     }
+
+    @Override
+    public boolean invalidatesCachedVariables() {
+        return true;
+    }
 }
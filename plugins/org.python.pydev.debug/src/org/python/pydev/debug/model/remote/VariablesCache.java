@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model.remote;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the responses to the commands that get variables/frames/expressions while a thread is suspended, so that the
+ * same request (i.e.: from the variables view, the hover and the watch expressions) is answered without going to
+ * pydevd again.
+ *
+ * The entries of a thread are removed when it's resumed/suspended again and all the entries are removed when a
+ * command that may change the state in the debuggee is posted (i.e.: changing a variable, stepping).
+ *
+ * @author Fabio
+ */
+public class VariablesCache {
+
+    /**
+     * The maximum number of responses kept (the least recently used ones are removed).
+     */
+    public static int MAX_CACHED_RESPONSES = 500;
+
+    private static final class Response {
+        private final int cmdCode;
+        private final String payload;
+
+        private Response(int cmdCode, String payload) {
+            this.cmdCode = cmdCode;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Cache key --> response (the keys start with the thread id, as the locators do).
+     */
+    private final Map<String, Response> responses = new LinkedHashMap<String, Response>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+            return size() > MAX_CACHED_RESPONSES;
+        }
+    };
+
+    /**
+     * Incremented whenever something is invalidated (so that the responses to commands posted before that aren't
+     * kept).
+     */
+    private int generation = 0;
+
+    private int hits = 0;
+
+    /**
+     * Must be called before posting some command.
+     *
+     * @return true if the command was already answered with a cached response (in which case it must not be sent).
+     */
+    public boolean onPostCommand(AbstractDebuggerCommand cmd) {
+        if (cmd.invalidatesCachedVariables()) {
+            invalidateAll();
+            return false;
+        }
+        String key = cmd.getCacheKey();
+        if (key == null) {
+            return false;
+        }
+        Response response;
+        synchronized (this) {
+            response = responses.get(key);
+            if (response == null) {
+                cmd.cacheGeneration = generation;
+                return false;
+            }
+            hits++;
+        }
+        cmd.processResponse(response.cmdCode, response.payload);
+        return true;
+    }
+
+    /**
+     * Called when the response to some command arrives.
+     */
+    public void onResponse(AbstractDebuggerCommand cmd, int cmdCode, String payload) {
+        if (cmdCode / 100 == 9) {
+            return; //errors are not kept
+        }
+        String key = cmd.getCacheKey();
+        if (key == null) {
+            return;
+        }
+        synchronized (this) {
+            if (cmd.cacheGeneration == generation) {
+                responses.put(key, new Response(cmdCode, payload));
+            }
+        }
+    }
+
+    /**
+     * Removes the responses for the given thread (i.e.: when it's resumed).
+     */
+    public synchronized void invalidate(String threadId) {
+        generation++;
+        String prefix = threadId + "\t";
+        for (Iterator<String> it = responses.keySet().iterator(); it.hasNext();) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        responses.clear();
+    }
+
+    /**
+     * @return the number of responses currently kept.
+     */
+    public synchronized int size() {
+        return responses.size();
+    }
+
+    /**
+     * @return the number of commands answered from the cache.
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+}
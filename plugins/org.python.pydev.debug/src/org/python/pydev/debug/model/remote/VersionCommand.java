@@ -11,6 +11,7 @@
 package org.python.pydev.debug.model.remote;
 
 import org.python.pydev.debug.model.AbstractDebugTarget;
+import org.python.pydev.debug.model.CompactPayload;
 
 /**
  * Version debugger command.
@@ -19,7 +20,13 @@ import org.python.pydev.debug.model.AbstractDebugTarget;
  */
 public class VersionCommand extends AbstractDebuggerCommand {
 
-    static final String VERSION = "1.1";
+    static final String VERSION = "1.3";
+    
+    /**
+     * Whether pydevd should send the threads, stacks and variables in the compact format (pydevd 1.3 onwards: older
+     * versions ignore it and keep on sending xml).
+     */
+    public static boolean REQUEST_COMPACT_PAYLOADS = true;
     
     /**
      * @param debugger
@@ -29,6 +36,9 @@ public class VersionCommand extends AbstractDebuggerCommand {
     }
 
     public String getOutgoing() {
+        if(REQUEST_COMPACT_PAYLOADS){
+            return makeCommand(CMD_VERSION, sequence, VERSION + "\t" + CompactPayload.FEATURE);
+        }
         return makeCommand(CMD_VERSION, sequence, VERSION);
     }
 
@@ -37,8 +47,8 @@ public class VersionCommand extends AbstractDebuggerCommand {
     }
     
     public void processOKResponse(int cmdCode, String payload) {
-//        System.err.println("The version is " + payload);
-// not checking for versioning in 1.0, might come in useful later
+        //the version is used to know which commands pydevd supports (and is followed by the features it accepted)
+        target.setPydevdVersion(payload.split("\t")[0]);
     }
 
 }
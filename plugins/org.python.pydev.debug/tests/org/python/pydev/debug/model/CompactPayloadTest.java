@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * @author Fabio
+ */
+public class CompactPayloadTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompactPayloadTest.class);
+    }
+
+    private static final String FRAME = "pid1_seq1\t22\tFRAME";
+
+    private AbstractDebugTarget target;
+    private IVariableLocator frame;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        target = new AbstractDebugTarget() {
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean canTerminate() {
+                return false;
+            }
+        };
+        frame = new IVariableLocator() {
+            public String getPyDBLocation() {
+                return FRAME;
+            }
+        };
+    }
+
+    private static String var(String name, String type, String value, String isContainer, String len) {
+        return "V\u001f" + name + "\u001f" + type + "\u001f" + value + "\u001f" + isContainer + "\u001f" + len
+                + "\u001e";
+    }
+
+    public void testIsCompact() throws Exception {
+        assertTrue(CompactPayload.isCompact("\u0002"));
+        assertFalse(CompactPayload.isCompact("<xml></xml>"));
+        assertFalse(CompactPayload.isCompact(""));
+    }
+
+    public void testUnescape() throws Exception {
+        assertEquals("a\\b\nc\rd\u001ee\u001ff", CompactPayload.unescape("a\\\\b\\nc\\rd\\ee\\ff"));
+        assertEquals("no escapes", CompactPayload.unescape("no escapes"));
+    }
+
+    public void testVariables() throws Exception {
+        PyVariable[] vars = XMLUtils.XMLToVariables(target, frame, "\u0002"
+                + var("a", "str", "str: x\\ny\\\\z\\e%20", "", "")
+                + var("b", "list", "list: [1, 2]", "1", "2")
+                + var("c", "list", "list: [0, 1, ...]", "1", "1000000")
+                + var("d", "dict", "", "1", ""));
+
+        assertEquals(4, vars.length);
+        assertEquals("a", vars[0].getName());
+        assertEquals("str", vars[0].getReferenceTypeName());
+        //not url-decoded
+        assertEquals("str: x\ny\\z\u001e%20", vars[0].getValueString());
+        assertEquals(FRAME + "\ta", vars[0].getPyDBLocation());
+        assertFalse(vars[0] instanceof PyVariableCollection);
+
+        assertTrue(vars[1] instanceof PyVariableCollection);
+        assertFalse(vars[1] instanceof PyIndexedVariableCollection);
+        assertTrue(vars[2] instanceof PyIndexedVariableCollection);
+        assertEquals(1000000, ((PyIndexedVariableCollection) vars[2]).getSize());
+        assertTrue(vars[3] instanceof PyVariableCollection);
+        assertEquals("", vars[3].getValueString());
+    }
+
+    public void testVariablesBatch() throws Exception {
+        IVariableLocator other = new IVariableLocator() {
+            public String getPyDBLocation() {
+                return FRAME + "\tother";
+            }
+        };
+        PyVariable[][] vars = XMLUtils.XMLToVariablesBatch(target, new IVariableLocator[] { frame, other }, "\u0002"
+                + "P\u001f0\u001e"
+                + var("b", "list", "list: [1]", "1", "1")
+                + "C\u001fb\u001e"
+                + var("0", "int", "int: 1", "", "")
+                + "c\u001e"
+                + "p\u001e"
+                + "P\u001f1\u001e"
+                + var("x", "int", "int: 2", "", "")
+                + "p\u001e");
+
+        assertEquals(2, vars.length);
+        assertEquals(1, vars[0].length);
+        PyVariableCollection b = (PyVariableCollection) vars[0][0];
+        PyVariable[] children = b.getPrefetchedVariables();
+        assertEquals(1, children.length);
+        assertEquals(FRAME + "\tb\t0", children[0].getPyDBLocation());
+
+        assertEquals(1, vars[1].length);
+        assertEquals(FRAME + "\tother\tx", vars[1][0].getPyDBLocation());
+    }
+
+    public void testMissingPathIsEmpty() throws Exception {
+        PyVariable[][] vars = XMLUtils.XMLToVariablesBatch(target, new IVariableLocator[] { frame, frame }, "\u0002"
+                + "P\u001f1\u001e" + var("x", "int", "int: 2", "", "") + "p\u001e");
+        assertEquals(0, vars[0].length);
+        assertEquals(1, vars[1].length);
+    }
+
+    public void testErrors() throws Exception {
+        try {
+            XMLUtils.XMLToVariables(target, frame, "\u0002V\u001fa\u001fint");
+            fail("Expected error: unfinished record");
+        } catch (CoreException e) {
+            //expected
+        }
+        try {
+            XMLUtils.XMLToVariables(target, frame, "\u0002V\u001fa\u001e");
+            fail("Expected error: missing fields");
+        } catch (CoreException e) {
+            //expected
+        }
+        try {
+            XMLUtils.XMLToVariablesBatch(target, new IVariableLocator[] { frame }, "\u0002P\u001f1\u001ep\u001e");
+            fail("Expected error: invalid path");
+        } catch (CoreException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.model.IVariable;
+import org.python.pydev.debug.model.remote.AbstractDebuggerCommand;
+
+/**
+ * Gets the contents of a list with 1M items from a local stub pydevd (which answers the range requests) in pages.
+ *
+ * @author Fabio
+ */
+public class PyIndexedVariableCollectionTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(PyIndexedVariableCollectionTest.class);
+    }
+
+    private static final int LENGTH = 1000000;
+
+    private ServerSocket serverSocket;
+    private Socket stubSocket;
+    private AbstractDebugTarget target;
+    private List<String> rangesRequested;
+
+    private int initialPageSize;
+    private int initialMaxCachedPages;
+
+    /**
+     * Answers the range requests for a list where each item is its own index.
+     */
+    private static class StubPydevd extends Thread {
+
+        private final Socket socket;
+        private final List<String> rangesRequested;
+
+        private StubPydevd(Socket socket, List<String> rangesRequested) {
+            this.socket = socket;
+            this.rangesRequested = rangesRequested;
+            setName("Stub pydevd");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                Writer out = new OutputStreamWriter(socket.getOutputStream());
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] cmd = line.split("\t");
+                    if (Integer.parseInt(cmd[0]) != AbstractDebuggerCommand.CMD_GET_VARIABLE_RANGE) {
+                        continue;
+                    }
+                    //cmd seq start end thread frame scope attrs
+                    int start = Integer.parseInt(cmd[2]);
+                    int end = Integer.parseInt(cmd[3]);
+                    rangesRequested.add(start + "-" + end);
+
+                    StringBuffer payload = new StringBuffer("<xml>");
+                    for (int i = start; i < end; i++) {
+                        payload.append("<var name=\"").append(String.format("%07d", i));
+                        payload.append("\" type=\"int\" value=\"int%253A ").append(i).append("\" />\n");
+                    }
+                    payload.append("</xml>");
+                    out.write(AbstractDebuggerCommand.CMD_GET_VARIABLE_RANGE + "\t" + cmd[1] + "\t"
+                            + URLEncoder.encode(payload.toString(), "UTF-8") + "\n");
+                    out.flush();
+                }
+            } catch (Exception e) {
+                //finished
+            }
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        initialPageSize = PyIndexedVariableCollection.PAGE_SIZE;
+        initialMaxCachedPages = PyIndexedVariableCollection.MAX_CACHED_PAGES;
+
+        rangesRequested = Collections.synchronizedList(new ArrayList<String>());
+        serverSocket = new ServerSocket(0);
+        stubSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        new StubPydevd(stubSocket, rangesRequested).start();
+
+        Socket socket = serverSocket.accept();
+        target = new AbstractDebugTarget() {
+
+            @Override
+            public boolean canTerminate() {
+                return true;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return socket == null;
+            }
+        };
+        target.startTransmission(socket);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PyIndexedVariableCollection.PAGE_SIZE = initialPageSize;
+        PyIndexedVariableCollection.MAX_CACHED_PAGES = initialMaxCachedPages;
+        target.terminate();
+        stubSocket.close();
+        serverSocket.close();
+        super.tearDown();
+    }
+
+    private PyIndexedVariableCollection createList() {
+        IVariableLocator frame = new IVariableLocator() {
+            public String getPyDBLocation() {
+                return "pid1_seq1\t22\tFRAME";
+            }
+        };
+        return new PyIndexedVariableCollection(target, "lst", "list", "list: [0, 1, ...]", frame, LENGTH);
+    }
+
+    public void testCreatedFromXML() throws Exception {
+        IVariableLocator frame = new IVariableLocator() {
+            public String getPyDBLocation() {
+                return "pid1_seq1\t22\tFRAME";
+            }
+        };
+        PyVariable[] vars = XMLUtils.XMLToVariables(target, frame, "<xml>"
+                + "<var name=\"small\" type=\"list\" value=\"list%3A %5B1%5D\" isContainer=\"True\" len=\"1\" />\n"
+                + "<var name=\"big\" type=\"list\" value=\"list%3A %5B0%5D\" isContainer=\"True\" len=\"1000000\" />\n"
+                + "</xml>");
+        assertFalse(vars[0] instanceof PyIndexedVariableCollection);
+        assertTrue(vars[1] instanceof PyIndexedVariableCollection);
+        assertEquals(LENGTH, ((PyIndexedVariableCollection) vars[1]).getSize());
+    }
+
+    public void testGetPages() throws Exception {
+        PyIndexedVariableCollection lst = createList();
+
+        IVariable[] vars = lst.getVariables();
+        assertEquals(PyIndexedVariableCollection.PAGE_SIZE, vars.length);
+        assertEquals("0000000", vars[0].getName());
+        assertEquals("pid1_seq1\t22\tFRAME\tlst\t0000099", ((PyVariable) vars[99]).getPyDBLocation());
+        assertEquals("[0-100]", rangesRequested.toString());
+
+        //spans 2 pages (only the 2nd one must be requested)
+        vars = lst.getVariables(150, 100);
+        assertEquals(100, vars.length);
+        assertEquals("0000150", vars[0].getName());
+        assertEquals("0000249", vars[99].getName());
+        assertEquals("[0-100, 100-200, 200-300]", rangesRequested.toString());
+
+        //already cached
+        assertEquals("0000120", lst.getVariable(120).getName());
+        assertEquals(3, rangesRequested.size());
+
+        //the last one
+        vars = lst.getVariables(LENGTH - 1, 1);
+        assertEquals("0999999", vars[0].getName());
+        assertEquals("999900-1000000", rangesRequested.get(3));
+    }
+
+    public void testCacheIsBounded() throws Exception {
+        PyIndexedVariableCollection.MAX_CACHED_PAGES = 5;
+        PyIndexedVariableCollection lst = createList();
+
+        for (int i = 0; i < 50; i++) {
+            IVariable[] vars = lst.getVariables(i * 20000, 100);
+            assertEquals(String.format("%07d", i * 20000), vars[0].getName());
+            assertTrue(lst.getCachedPages() <= 5);
+        }
+        assertEquals(50, rangesRequested.size());
+
+        //the most recent ones are still there, but the first one was removed
+        lst.getVariables(49 * 20000, 100);
+        assertEquals(50, rangesRequested.size());
+        lst.getVariables(0, 100);
+        //requested again (and answered by the target cache, as the thread is still suspended)
+        assertEquals(50, rangesRequested.size());
+        assertEquals(1, target.getVariablesCache().getHits());
+    }
+
+    public void testInvalidRange() throws Exception {
+        PyIndexedVariableCollection lst = createList();
+        try {
+            lst.getVariables(LENGTH - 1, 2);
+            fail("Expected error");
+        } catch (DebugException e) {
+            //expected
+        }
+        assertEquals(0, rangesRequested.size());
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.debug.model.remote.AbstractDebuggerCommand;
+import org.python.pydev.debug.model.remote.GetVariablesBatchCommand;
+
+/**
+ * @author Fabio
+ */
+public class XMLUtilsTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(XMLUtilsTest.class);
+    }
+
+    private AbstractDebugTarget target;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        target = new AbstractDebugTarget() {
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean canTerminate() {
+                return false;
+            }
+        };
+    }
+
+    private static IVariableLocator createLocator(final String location) {
+        return new IVariableLocator() {
+            public String getPyDBLocation() {
+                return location;
+            }
+        };
+    }
+
+    public void testVariablesBatch() throws Exception {
+        IVariableLocator frame = createLocator("pid1_seq1\t22\tFRAME");
+        IVariableLocator globals = createLocator("pid1_seq1\t22\tGLOBAL");
+
+        String payload = "" +
+                "<xml>" +
+                "<vars path=\"0\">" +
+                "<var name=\"a\" type=\"list\" value=\"list%3A %5B1%5D\" isContainer=\"True\" />\n" +
+                "<children name=\"a\">" +
+                "<var name=\"0\" type=\"int\" value=\"int%3A 1\" />\n" +
+                "<var name=\"__len__\" type=\"int\" value=\"int%3A 1\" />\n" +
+                "</children>" +
+                "<var name=\"b\" type=\"dict\" value=\"dict%3A %7B%7D\" isContainer=\"True\" />\n" +
+                "</vars>" +
+                "<vars path=\"1\">" +
+                "<var name=\"c\" type=\"int\" value=\"int%3A 2\" />\n" +
+                "</vars>" +
+                "</xml>";
+
+        PyVariable[][] vars = XMLUtils.XMLToVariablesBatch(target, new IVariableLocator[] { frame, globals }, payload);
+        assertEquals(2, vars.length);
+
+        assertEquals(2, vars[0].length);
+        PyVariableCollection a = (PyVariableCollection) vars[0][0];
+        assertEquals("a", a.getName());
+        assertEquals("list: [1]", a.getValueString());
+        assertEquals("pid1_seq1\t22\tFRAME\ta", a.getPyDBLocation());
+
+        //the contents of 'a' came in the same response
+        PyVariable[] aContents = a.getPrefetchedVariables();
+        assertEquals(2, aContents.length);
+        assertEquals("0", aContents[0].getName());
+        assertEquals("pid1_seq1\t22\tFRAME\ta\t0", aContents[0].getPyDBLocation());
+
+        //but not the contents of 'b'
+        assertNull(((PyVariableCollection) vars[0][1]).getPrefetchedVariables());
+
+        assertEquals(1, vars[1].length);
+        assertEquals("pid1_seq1\t22\tGLOBAL\tc", vars[1][0].getPyDBLocation());
+    }
+
+    public void testVariablesBatchOutgoing() throws Exception {
+        IVariableLocator frame = createLocator("pid1_seq1\t22\tFRAME");
+        IVariableLocator var = createLocator("pid1_seq1\t22\tLOCAL\ta\tb");
+        GetVariablesBatchCommand cmd = new GetVariablesBatchCommand(target, new IVariableLocator[] { frame, var }, 2);
+        assertEquals(AbstractDebuggerCommand.CMD_GET_VARIABLES_BATCH + "\t" + cmd.getSequence() + "\t" +
+                "2\t2\t3\tpid1_seq1\t22\tFRAME\t5\tpid1_seq1\t22\tLOCAL\ta\tb", cmd.getOutgoing());
+
+        assertFalse(cmd.waitForResponse(1));
+        cmd.processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLES_BATCH,
+                "<xml><vars path=\"1\"><var name=\"c\" type=\"int\" value=\"int%3A 2\" />\n</vars></xml>");
+        assertTrue(cmd.waitForResponse(1));
+        assertEquals(0, cmd.getVariables(0).length);
+        assertEquals("c", cmd.getVariables(1)[0].getName());
+    }
+
+    public void testPydevdVersion() throws Exception {
+        assertFalse(target.supportsBatchedVariables());
+        target.setPydevdVersion("1.1");
+        assertFalse(target.supportsBatchedVariables());
+        target.setPydevdVersion("1.2");
+        assertTrue(target.supportsBatchedVariables());
+        target.setPydevdVersion("2.0");
+        assertTrue(target.isPydevdVersionAtLeast(1, 2));
+        assertFalse(target.isPydevdVersionAtLeast(2, 1));
+    }
+}
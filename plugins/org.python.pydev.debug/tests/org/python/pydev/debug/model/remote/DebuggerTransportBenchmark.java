@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model.remote;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.debug.model.AbstractDebugTarget;
+
+/**
+ * Measures the round-trip of a step command through the DebuggerWriter/DebuggerReader against a local stub pydevd
+ * (which answers each step with a thread suspend, as the real pydevd does when the step finishes).
+ *
+ * Run main() to see the numbers for 2000 steps.
+ *
+ * @author Fabio
+ */
+public class DebuggerTransportBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            DebuggerTransportBenchmark test = new DebuggerTransportBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.steps = 2000;
+            test.testStepRoundTrip();
+            test.testPipelinedSteps();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int steps = 100;
+
+    private ServerSocket serverSocket;
+    private Socket stubSocket;
+    private StubTarget target;
+
+    /**
+     * Target that only counts the suspends received.
+     */
+    private static class StubTarget extends AbstractDebugTarget {
+
+        private final Semaphore suspended = new Semaphore(0);
+
+        @Override
+        public boolean canTerminate() {
+            return true;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return socket == null;
+        }
+
+        @Override
+        public void processCommand(String sCmdCode, String sSeqCode, String payload) {
+            if(Integer.parseInt(sCmdCode) == AbstractDebuggerCommand.CMD_THREAD_SUSPEND){
+                suspended.release();
+            }
+        }
+    }
+
+    /**
+     * Answers each step command with a thread suspend until the connection is closed.
+     */
+    private static class StubPydevd extends Thread {
+
+        private final Socket socket;
+
+        private StubPydevd(Socket socket) {
+            this.socket = socket;
+            setName("Stub pydevd");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                Writer out = new OutputStreamWriter(socket.getOutputStream());
+                String line;
+                while((line = in.readLine()) != null){
+                    String[] cmd = line.split("\t");
+                    int cmdCode = Integer.parseInt(cmd[0]);
+                    if(cmdCode == AbstractDebuggerCommand.CMD_STEP_INTO ||
+                            cmdCode == AbstractDebuggerCommand.CMD_STEP_OVER ||
+                            cmdCode == AbstractDebuggerCommand.CMD_STEP_RETURN){
+                        String payload = "<xml><thread id=\"" + cmd[2] + "\" stop_reason=\"" + cmdCode + "\">" +
+                                "</thread></xml>";
+                        out.write(AbstractDebuggerCommand.CMD_THREAD_SUSPEND + "\t" + cmd[1] + "\t" +
+                                URLEncoder.encode(payload, "UTF-8") + "\n");
+                        out.flush();
+                    }
+                }
+            } catch (Exception e) {
+                //finished
+            }
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        serverSocket = new ServerSocket(0);
+        stubSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        stubSocket.setTcpNoDelay(true);
+        new StubPydevd(stubSocket).start();
+
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        target = new StubTarget();
+        target.startTransmission(socket);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        target.terminate();
+        stubSocket.close();
+        serverSocket.close();
+        super.tearDown();
+    }
+
+    private void step() {
+        target.postCommand(new StepCommand(target, AbstractDebuggerCommand.CMD_STEP_OVER, "pid1_seq1"));
+    }
+
+    public void testStepRoundTrip() throws Exception {
+        for(int i=0;i<10;i++){ //warm up
+            step();
+            assertTrue(target.suspended.tryAcquire(5, TimeUnit.SECONDS));
+        }
+
+        long initial = System.nanoTime();
+        for(int i=0;i<steps;i++){
+            step();
+            assertTrue(target.suspended.tryAcquire(5, TimeUnit.SECONDS));
+        }
+        double perStep = (System.nanoTime() - initial) / 1000000.0 / steps;
+        if(printTimes){
+            System.out.println("Steps: " + steps + " round-trip: " + perStep + " ms/step");
+        }
+        //the writer used to poll each 100ms and the reader slept 50ms after each command.
+        assertTrue("Round-trip: " + perStep + " ms", perStep < 20);
+    }
+
+    public void testPipelinedSteps() throws Exception {
+        long initial = System.nanoTime();
+        for(int i=0;i<steps;i++){
+            step();
+        }
+        assertTrue(target.suspended.tryAcquire(steps, 10, TimeUnit.SECONDS));
+        double perStep = (System.nanoTime() - initial) / 1000000.0 / steps;
+        if(printTimes){
+            System.out.println("Pipelined steps: " + steps + ": " + perStep + " ms/step");
+        }
+        assertTrue("Pipelined: " + perStep + " ms", perStep < 20);
+    }
+}
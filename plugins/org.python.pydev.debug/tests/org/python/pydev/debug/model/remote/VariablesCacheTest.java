@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.debug.model.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.debug.model.AbstractDebugTarget;
+
+/**
+ * @author Fabio
+ */
+public class VariablesCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(VariablesCacheTest.class);
+    }
+
+    private static final String FRAME = "pid1_seq1\t22\tFRAME";
+    private static final String PAYLOAD = "<xml><var name=\"a\" type=\"int\" value=\"int%3A 1\" />\n</xml>";
+
+    /**
+     * Not connected: the commands that aren't answered from the cache are just dropped (and their responses are
+     * simulated with processResponse).
+     */
+    private AbstractDebugTarget target;
+    private VariablesCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        target = new AbstractDebugTarget() {
+
+            @Override
+            public boolean isTerminated() {
+                return false;
+            }
+
+            @Override
+            public boolean canTerminate() {
+                return false;
+            }
+        };
+        cache = target.getVariablesCache();
+    }
+
+    private GetVariableCommand post(String locator) {
+        GetVariableCommand cmd = new GetVariableCommand(target, locator);
+        target.postCommand(cmd);
+        return cmd;
+    }
+
+    public void testSameRequestAnsweredFromCache() throws Exception {
+        GetVariableCommand cmd = post(FRAME + "\ta");
+        assertFalse(cmd.waitForResponse(1));
+        cmd.processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        assertEquals(1, cache.size());
+
+        final List<AbstractDebuggerCommand> completed = new ArrayList<AbstractDebuggerCommand>();
+        GetVariableCommand cmd2 = new GetVariableCommand(target, FRAME + "\ta");
+        cmd2.setCompletionListener(new ICommandResponseListener() {
+            public void commandComplete(AbstractDebuggerCommand cmd) {
+                completed.add(cmd);
+            }
+        });
+        target.postCommand(cmd2);
+        assertTrue(cmd2.waitForResponse(1));
+        assertEquals(PAYLOAD, cmd2.getResponse());
+        assertEquals(1, completed.size());
+        assertEquals(1, cache.getHits());
+
+        //another location, a frame or a range of the same location are different requests
+        assertFalse(post(FRAME + "\tb").waitForResponse(1));
+        GetFrameCommand frameCmd = new GetFrameCommand(target, FRAME + "\ta");
+        target.postCommand(frameCmd);
+        assertFalse(frameCmd.waitForResponse(1));
+        GetVariableRangeCommand rangeCmd = new GetVariableRangeCommand(target, FRAME + "\ta", 0, 100);
+        target.postCommand(rangeCmd);
+        assertFalse(rangeCmd.waitForResponse(1));
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testErrorsNotCached() throws Exception {
+        GetVariableCommand cmd = post(FRAME + "\ta");
+        cmd.processResponse(901, "Error resolving frame");
+        assertEquals(0, cache.size());
+        assertFalse(post(FRAME + "\ta").waitForResponse(1));
+    }
+
+    public void testInvalidateThread() throws Exception {
+        post(FRAME + "\ta").processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        post("pid1_seq2\t33\tFRAME\ta").processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        assertEquals(2, cache.size());
+
+        cache.invalidate("pid1_seq1");
+        assertEquals(1, cache.size());
+        assertFalse(post(FRAME + "\ta").waitForResponse(1));
+        assertTrue(post("pid1_seq2\t33\tFRAME\ta").waitForResponse(1));
+    }
+
+    public void testChangeVariableInvalidates() throws Exception {
+        post(FRAME + "\ta").processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        target.postCommand(new ChangeVariableCommand(target, FRAME + "\ta", "2"));
+        assertEquals(0, cache.size());
+
+        post(FRAME + "\ta").processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        target.postCommand(new StepCommand(target, AbstractDebuggerCommand.CMD_STEP_OVER, "pid1_seq1"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testResponseAfterInvalidateNotCached() throws Exception {
+        GetVariableCommand cmd = post(FRAME + "\ta");
+        target.postCommand(new ThreadRunCommand(target, "pid1_seq1"));
+        //the response to a request done before the resume must not be kept
+        cmd.processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+        assertEquals(0, cache.size());
+    }
+
+    public void testExpressions() throws Exception {
+        EvaluateExpressionCommand cmd = new EvaluateExpressionCommand(target, "a+1", FRAME, false);
+        target.postCommand(cmd);
+        cmd.processResponse(AbstractDebuggerCommand.CMD_EVALUATE_EXPRESSION, PAYLOAD);
+        assertEquals(1, cache.size());
+
+        cmd = new EvaluateExpressionCommand(target, "a+1", FRAME, false);
+        target.postCommand(cmd);
+        assertEquals(PAYLOAD, cmd.getResponse());
+        assertEquals(1, cache.getHits());
+
+        //an exec may change anything
+        target.postCommand(new EvaluateExpressionCommand(target, "a=2", FRAME, true));
+        assertEquals(0, cache.size());
+    }
+
+    public void testBounded() throws Exception {
+        int initial = VariablesCache.MAX_CACHED_RESPONSES;
+        VariablesCache.MAX_CACHED_RESPONSES = 10;
+        try {
+            for (int i = 0; i < 50; i++) {
+                post(FRAME + "\t" + i).processResponse(AbstractDebuggerCommand.CMD_GET_VARIABLE, PAYLOAD);
+            }
+            assertEquals(10, cache.size());
+        } finally {
+            VariablesCache.MAX_CACHED_RESPONSES = initial;
+        }
+    }
+}
@@ -31,6 +31,14 @@ public interface IPythonInterpreter {
      */
     void exec(String exec);
 
+    /**
+     * Executes some code that was already compiled (i.e.: with Py.compile_flags), so that code that's executed
+     * many times doesn't need to be compiled again on each execution.
+     *
+     * @param code The code object that should be executed
+     */
+    void exec(PyObject code);
+
     /**
      * This method returns the variable that we want to get from the interpreter as a java object
      * 
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.jython.SimpleNode;
+
+/**
+ * Process-wide cache for the result of parsing some contents with a given grammar, so that the same contents
+ * parsed by different clients (i.e.: builders, modules manager, editor on save) are parsed only once.
+ *
+ * The entries are kept in a LRU bounded by the number of entries and by the size of the contents and the asts are
+ * only softly referenced (so, they may be collected if memory is needed).
+ *
+ * Note that all the clients that get an ast from this cache get the same tree, so, it must not be changed (clients
+ * that need to change it should work on a copy -- e.g.: SimpleNode.createCopy()).
+ *
+ * @see PyParser.ParserInfo#useAstCache
+ *
+ * @author Fabio
+ */
+public final class AstCache {
+
+    /**
+     * Maximum number of asts kept.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 150;
+
+    /**
+     * Maximum number of chars (summing the contents of all the entries).
+     */
+    public static final int DEFAULT_MAX_CHARS = 8 * 1024 * 1024;
+
+    private static final AstCache cache = new AstCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+
+    public static AstCache getCache() {
+        return cache;
+    }
+
+
+    /**
+     * The key is the contents parsed and the grammar used (the contents hash is cached in the String itself).
+     */
+    private static final class Key{
+
+        private final String contents;
+        private final int grammarVersion;
+        private final int hash;
+
+        private Key(String contents, int grammarVersion) {
+            this.contents = contents;
+            this.grammarVersion = grammarVersion;
+            this.hash = contents.hashCode() * 31 + grammarVersion;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Key)){
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && grammarVersion == other.grammarVersion && contents.equals(other.contents);
+        }
+    }
+
+
+    private final int maxEntries;
+    private final int maxChars;
+    private final Object lock = new Object();
+
+    /**
+     * Access-ordered (so, the first entry is the least recently used).
+     */
+    private final LinkedHashMap<Key, SoftReference<Tuple<SimpleNode, Throwable>>> entries =
+        new LinkedHashMap<Key, SoftReference<Tuple<SimpleNode, Throwable>>>(16, 0.75f, true);
+
+    private int totalChars;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    /*default*/ AstCache(int maxEntries, int maxChars) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+    }
+
+
+    /**
+     * @return the ast and error for the given contents or null if it's not in the cache.
+     */
+    public Tuple<SimpleNode, Throwable> get(String contents, int grammarVersion) {
+        Key key = new Key(contents, grammarVersion);
+        synchronized(lock){
+            SoftReference<Tuple<SimpleNode, Throwable>> ref = entries.get(key);
+            if(ref != null){
+                Tuple<SimpleNode, Throwable> found = ref.get();
+                if(found != null){
+                    hits.incrementAndGet();
+                    //the tuple itself is not shared (only its contents)
+                    return new Tuple<SimpleNode, Throwable>(found.o1, found.o2);
+                }
+                //collected
+                entries.remove(key);
+                totalChars -= contents.length();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+
+    /**
+     * Adds the result of parsing the given contents to the cache.
+     */
+    public void put(String contents, int grammarVersion, Tuple<SimpleNode, Throwable> result) {
+        if(result.o1 == null || contents.length() > maxChars){
+            return;
+        }
+        Key key = new Key(contents, grammarVersion);
+        synchronized(lock){
+            SoftReference<Tuple<SimpleNode, Throwable>> old = entries.put(key,
+                    new SoftReference<Tuple<SimpleNode, Throwable>>(
+                            new Tuple<SimpleNode, Throwable>(result.o1, result.o2)));
+            if(old == null){
+                totalChars += contents.length();
+            }
+
+            Iterator<Map.Entry<Key, SoftReference<Tuple<SimpleNode, Throwable>>>> it = entries.entrySet().iterator();
+            while(it.hasNext() && (entries.size() > maxEntries || totalChars > maxChars)){
+                Map.Entry<Key, SoftReference<Tuple<SimpleNode, Throwable>>> eldest = it.next();
+                it.remove();
+                totalChars -= eldest.getKey().contents.length();
+            }
+        }
+    }
+
+
+    public void clear() {
+        synchronized(lock){
+            entries.clear();
+            totalChars = 0;
+        }
+    }
+
+    public int size() {
+        synchronized(lock){
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        FastStringBuffer buf = new FastStringBuffer(100);
+        buf.append("AstCache[entries: ").append(size());
+        buf.append(", hits: ").append(getHits());
+        buf.append(", misses: ").append(getMisses());
+        buf.append("]");
+        return buf.toString();
+    }
+}
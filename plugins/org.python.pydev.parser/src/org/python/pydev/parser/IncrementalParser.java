@@ -0,0 +1,605 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IPythonNature;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.parser.PyParser.ParserInfo;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.SpecialStr;
+import org.python.pydev.parser.jython.ast.Call;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Import;
+import org.python.pydev.parser.jython.ast.ImportFrom;
+import org.python.pydev.parser.jython.ast.Lambda;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.TryExcept;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+import org.python.pydev.parser.jython.ast.commentType;
+import org.python.pydev.parser.jython.ast.decoratorsType;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+/**
+ * Reparses only the top-level statements of a module that were touched by an edit, reusing the remaining
+ * statements of the last successful parse.
+ *
+ * The lines that changed are accumulated in a {@link ChangedLines} (fed by the document events) and when a
+ * reparse is requested, the smallest range of top-level statements enclosing those lines is cut from the
+ * document, parsed alone and spliced into a new Module (with the lines of the new nodes and of the statements
+ * after it fixed).
+ *
+ * Whenever it's not possible to guarantee that the result is the same that a full parse would give,
+ * null is returned and the client should do a full parse.
+ *
+ * Note: the previous ast is never changed (it may still be in use by other threads): the statements after the
+ * changed region are shared with it when the number of lines didn't change and copied (with the lines fixed)
+ * otherwise.
+ */
+public final class IncrementalParser {
+
+    /**
+     * Keeps the region of lines changed in the document since the last parse.
+     *
+     * All the lines are 0-based and the start/end are in the coordinates of the current document (so, the
+     * same region in the document that generated the last ast is start to end-linesDelta).
+     */
+    public static final class ChangedLines{
+
+        public int startLine;
+        public int endLine;
+        public int linesDelta;
+
+        public ChangedLines(int startLine, int oldEndLine, int newEndLine){
+            this.startLine = startLine;
+            this.endLine = newEndLine;
+            this.linesDelta = newEndLine - oldEndLine;
+        }
+
+        /**
+         * Adds a new change (with the lines in the coordinates of the document just before that change).
+         */
+        public void add(int startLine, int oldEndLine, int newEndLine){
+            int delta = newEndLine - oldEndLine;
+            int end = this.endLine;
+            if(end > oldEndLine){
+                end += delta;
+            }else if(end >= startLine){
+                end = newEndLine;
+            }
+            this.endLine = Math.max(end, newEndLine);
+            this.startLine = Math.min(this.startLine, startLine);
+            this.linesDelta += delta;
+        }
+
+        /**
+         * @return the last line changed in the document that generated the previous ast.
+         */
+        public int getOldEndLine(){
+            return Math.max(this.startLine, this.endLine - this.linesDelta);
+        }
+
+        @Override
+        public String toString() {
+            return "ChangedLines[start:"+startLine+" end:"+endLine+" delta:"+linesDelta+"]";
+        }
+    }
+
+
+    /**
+     * Goes through the contents finding the lines where a new top-level statement starts (i.e.: lines that
+     * are not inside a string, brackets or a line continuation and that start with code in the first column,
+     * not counting lines such as 'else:' or a 'def' after a decorator, which are part of the previous statement).
+     */
+    /*default*/ static final class StatementStartsScanner{
+
+        private final String contents;
+        private final int length;
+        private int offset;
+        private int line;
+        private int lastStartOffset = -1;
+        private boolean inDecorator;
+
+        /*default*/ StatementStartsScanner(String contents){
+            this.contents = contents;
+            this.length = contents.length();
+        }
+
+        /**
+         * @return the offset where the line last returned from nextStart() starts.
+         */
+        /*default*/ int getLastStartOffset() {
+            return lastStartOffset;
+        }
+
+        /**
+         * @return the next line (0-based) where a top-level statement starts or -1 if there are no more
+         * statements.
+         */
+        /*default*/ int nextStart(){
+            while(offset < length){
+                int lineOffset = offset;
+                int lineNumber = line;
+                char c = contents.charAt(offset);
+                boolean isStart = false;
+
+                if(c != '#' && !Character.isWhitespace(c)){
+                    if(c == '@'){
+                        isStart = !inDecorator;
+                        inDecorator = true;
+                    }else if(inDecorator){
+                        inDecorator = false;
+                    }else{
+                        isStart = !startsWithKeyword(lineOffset, "else") && !startsWithKeyword(lineOffset, "elif") &&
+                                  !startsWithKeyword(lineOffset, "except") && !startsWithKeyword(lineOffset, "finally");
+                    }
+                }
+                skipLogicalLine();
+
+                if(isStart){
+                    lastStartOffset = lineOffset;
+                    return lineNumber;
+                }
+            }
+            return -1;
+        }
+
+        private boolean startsWithKeyword(int i, String keyword) {
+            if(!contents.startsWith(keyword, i)){
+                return false;
+            }
+            int end = i+keyword.length();
+            return end >= length || !Character.isJavaIdentifierPart(contents.charAt(end));
+        }
+
+        /**
+         * Skips the current logical line (considering strings, brackets and continuation lines), leaving the
+         * offset at the start of the next line.
+         */
+        private void skipLogicalLine() {
+            int brackets = 0;
+            while(offset < length){
+                char c = contents.charAt(offset);
+                switch(c){
+                    case '#':
+                        while(offset+1 < length && !isNewLine(contents.charAt(offset+1))){
+                            offset++;
+                        }
+                        break;
+
+                    case '\'':
+                    case '"':
+                        skipString(c);
+                        continue;
+
+                    case '\\':
+                        offset++;
+                        if(offset < length && isNewLine(contents.charAt(offset))){
+                            skipNewLine();
+                        }
+                        continue;
+
+                    case '(':
+                    case '[':
+                    case '{':
+                        brackets++;
+                        break;
+
+                    case ')':
+                    case ']':
+                    case '}':
+                        if(brackets > 0){
+                            brackets--;
+                        }
+                        break;
+
+                    case '\r':
+                    case '\n':
+                        skipNewLine();
+                        if(brackets == 0){
+                            return;
+                        }
+                        continue;
+                }
+                offset++;
+            }
+        }
+
+        private void skipString(char quote) {
+            boolean triple = offset+2 < length &&
+                contents.charAt(offset+1) == quote && contents.charAt(offset+2) == quote;
+            offset += triple ? 3 : 1;
+
+            while(offset < length){
+                char c = contents.charAt(offset);
+                if(c == '\\'){
+                    offset++;
+                    if(offset < length){
+                        if(isNewLine(contents.charAt(offset))){
+                            skipNewLine();
+                        }else{
+                            offset++;
+                        }
+                    }
+                    continue;
+                }
+                if(c == quote){
+                    if(!triple){
+                        offset++;
+                        return;
+                    }
+                    if(offset+2 < length && contents.charAt(offset+1) == quote && contents.charAt(offset+2) == quote){
+                        offset += 3;
+                        return;
+                    }
+                }else if(isNewLine(c) && !triple){
+                    //unterminated string: the new line ends the logical line
+                    return;
+                }else if(isNewLine(c)){
+                    skipNewLine();
+                    continue;
+                }
+                offset++;
+            }
+        }
+
+        private void skipNewLine() {
+            char c = contents.charAt(offset);
+            offset++;
+            if(c == '\r' && offset < length && contents.charAt(offset) == '\n'){
+                offset++;
+            }
+            line++;
+        }
+
+        private static boolean isNewLine(char c) {
+            return c == '\r' || c == '\n';
+        }
+    }
+
+
+    /**
+     * Collects all the nodes of a statement (in the order they're traversed).
+     *
+     * Note that the accept() of some node types (arguments, decorators, keywords, aliases and except handlers)
+     * only traverses their children without visiting the node itself, so, those are explicitly collected
+     * from their parents.
+     */
+    private static final class NodesCollector extends VisitorBase{
+
+        private final List<SimpleNode> nodes = new ArrayList<SimpleNode>();
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            nodes.add(node);
+            if(node instanceof FunctionDef){
+                FunctionDef functionDef = (FunctionDef) node;
+                addNotVisited(functionDef.args);
+                addNotVisited(functionDef.decs);
+
+            }else if(node instanceof ClassDef){
+                ClassDef classDef = (ClassDef) node;
+                addNotVisited(classDef.decs);
+                addNotVisited(classDef.keywords);
+
+            }else if(node instanceof Lambda){
+                addNotVisited(((Lambda) node).args);
+
+            }else if(node instanceof Call){
+                addNotVisited(((Call) node).keywords);
+
+            }else if(node instanceof Import){
+                addNotVisited(((Import) node).names);
+
+            }else if(node instanceof ImportFrom){
+                addNotVisited(((ImportFrom) node).names);
+
+            }else if(node instanceof TryExcept){
+                addNotVisited(((TryExcept) node).handlers);
+            }
+            return null;
+        }
+
+        private void addNotVisited(SimpleNode[] nodes) {
+            if(nodes != null){
+                for(SimpleNode node:nodes){
+                    addNotVisited(node);
+                }
+            }
+        }
+
+        private void addNotVisited(SimpleNode node) {
+            if(node != null){
+                nodes.add(node);
+                if(node instanceof decoratorsType){
+                    addNotVisited(((decoratorsType) node).keywords);
+                }
+            }
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+
+        private static List<SimpleNode> collect(SimpleNode node) throws Exception {
+            NodesCollector collector = new NodesCollector();
+            node.accept(collector);
+            return collector.nodes;
+        }
+    }
+
+
+    private static int fixLine(int line, int delta) {
+        //some nodes (i.e.: comprehensions) don't have a position set
+        return line > 0 ? line + delta : line;
+    }
+
+
+    /**
+     * @return a copy of the given special (comment or special string) with its line fixed.
+     */
+    private static Object copySpecial(Object special, int delta) {
+        if(special instanceof commentType){
+            commentType comment = ((commentType) special).createCopy(false);
+            comment.beginLine = fixLine(comment.beginLine, delta);
+            return comment;
+
+        }else if(special instanceof SpecialStr){
+            SpecialStr s = (SpecialStr) special;
+            return new SpecialStr(s.str, fixLine(s.beginLine, delta), s.beginCol);
+        }
+        return special;
+    }
+
+
+    private static void fixSpecials(List<Object> specials, int delta) {
+        if(specials == null){
+            return;
+        }
+        int size = specials.size();
+        for(int i=0;i<size;i++){
+            specials.set(i, copySpecial(specials.get(i), delta));
+        }
+    }
+
+
+    private static void copySpecials(List<Object> from, List<Object> to, int delta) {
+        for(Object special:from){
+            to.add(copySpecial(special, delta));
+        }
+    }
+
+
+    /**
+     * Fixes the lines of the given statements in-place (only used for new nodes, which no one else references).
+     */
+    private static void fixLines(stmtType[] stmts, int delta) throws Exception {
+        if(delta == 0){
+            return;
+        }
+        for(stmtType stmt:stmts){
+            for(SimpleNode node:NodesCollector.collect(stmt)){
+                node.beginLine = fixLine(node.beginLine, delta);
+                fixSpecials(node.specialsBefore, delta);
+                fixSpecials(node.specialsAfter, delta);
+            }
+        }
+    }
+
+
+    /**
+     * @return a copy of the given statement with its lines fixed (the statement itself is not changed, as it's
+     * still part of the previous ast, which may be in use by other threads).
+     */
+    static stmtType copyWithLinesFixed(stmtType stmt, int delta) throws Exception {
+        //the specials are copied later on (createCopy only keeps the comments)
+        stmtType copy = (stmtType) stmt.createCopy(false);
+        List<SimpleNode> original = NodesCollector.collect(stmt);
+        List<SimpleNode> copied = NodesCollector.collect(copy);
+        if(original.size() != copied.size()){
+            throw new RuntimeException("Copy of "+stmt+" does not have the same structure.");
+        }
+        for(int i=0;i<original.size();i++){
+            SimpleNode from = original.get(i);
+            SimpleNode to = copied.get(i);
+            to.beginLine = fixLine(from.beginLine, delta);
+            to.beginColumn = from.beginColumn;
+            if(from.specialsBefore != null){
+                copySpecials(from.specialsBefore, to.getSpecialsBefore(), delta);
+            }
+            if(from.specialsAfter != null){
+                copySpecials(from.specialsAfter, to.getSpecialsAfter(), delta);
+            }
+        }
+        return copy;
+    }
+
+
+    private IncrementalParser() {
+    }
+
+
+    /**
+     * @param previousRoot the ast generated by the last successful parse (without errors) of the document.
+     * @param previousContents the contents that generated the previousRoot.
+     * @param changed the lines changed since the previousContents.
+     * @param contents the current contents of the document.
+     * @param grammarVersion the grammar to be used.
+     *
+     * @return a tuple with the new ast (and no error) or null if it was not possible to do an incremental
+     * reparse (in which case a full parse must be done).
+     */
+    public static Tuple<SimpleNode, Throwable> reparse(SimpleNode previousRoot, String previousContents,
+            ChangedLines changed, String contents, int grammarVersion) {
+
+        if(grammarVersion == IPythonNature.GRAMMAR_PYTHON_VERSION_CYTHON || !(previousRoot instanceof Module)){
+            return null;
+        }
+        Module previous = (Module) previousRoot;
+        stmtType[] body = previous.body;
+        if(body == null || body.length == 0 || hasSpecials(previous)){
+            return null;
+        }
+
+        //find the top-level statements enclosing the changed lines in the new contents (0-based lines)
+        StatementStartsScanner scanner = new StatementStartsScanner(contents);
+        int sliceStartLine = -1;
+        int sliceStartOffset = -1;
+        int changedStartOffset = -1;
+        int sliceEndLine = -1;
+        int sliceEndOffset = contents.length();
+        int line;
+        while((line = scanner.nextStart()) != -1){
+            if(line < changed.startLine){
+                sliceStartLine = line;
+                sliceStartOffset = scanner.getLastStartOffset();
+
+            }else if(line == changed.startLine){
+                changedStartOffset = scanner.getLastStartOffset();
+
+            }else if(line > changed.endLine){
+                sliceEndLine = line;
+                sliceEndOffset = scanner.getLastStartOffset();
+                break;
+            }
+        }
+
+        //the lines must also start statements in the contents that generated the previous ast (otherwise
+        //we can't know which of the previous statements are still valid). Note that the lines before the
+        //changed start line are the same in both, so, only the changed start line and the end must be checked.
+        int previousEndLine = sliceEndLine == -1 ? -1 : sliceEndLine - changed.linesDelta;
+        StatementStartsScanner previousScanner = new StatementStartsScanner(previousContents);
+        boolean foundChangedStart = false;
+        boolean foundEnd = previousEndLine == -1;
+        while((line = previousScanner.nextStart()) != -1){
+            if(line == changed.startLine){
+                foundChangedStart = true;
+            }
+            if(line == previousEndLine){
+                foundEnd = true;
+            }
+            if(line >= changed.startLine && line >= previousEndLine){
+                break;
+            }
+        }
+        if(!foundEnd){
+            return null;
+        }
+        if(changedStartOffset != -1 && foundChangedStart){
+            sliceStartLine = changed.startLine;
+            sliceStartOffset = changedStartOffset;
+        }
+        if(sliceStartLine == -1){
+            //changed something before the first statement (i.e.: comments at the start of the module)
+            return null;
+        }
+
+        if(endsWithComment(contents, sliceStartOffset, sliceEndOffset) ||
+                endsWithComment(contents, 0, sliceStartOffset)){
+            //comments between statements may be attached to the statement before or after it.
+            return null;
+        }
+
+        //the listeners must not get the ast of the slice (the parser notifies them with the whole ast)
+        Tuple<SimpleNode, Throwable> sliceParse = PyParser.reparseDocument(
+                new ParserInfo(new Document(contents.substring(sliceStartOffset, sliceEndOffset)), grammarVersion), 
+                false);
+        if(sliceParse.o1 == null || sliceParse.o2 != null || !(sliceParse.o1 instanceof Module)){
+            return null;
+        }
+        Module slice = (Module) sliceParse.o1;
+        if(hasSpecials(slice)){
+            return null;
+        }
+        stmtType[] sliceBody = slice.body;
+
+        //as the slice starts/ends at statement starts in the previous contents, the statements before/after
+        //it may be found by their lines (which are 1-based in the ast).
+        int firstReplaced = 0;
+        while(firstReplaced < body.length && body[firstReplaced].beginLine <= sliceStartLine){
+            firstReplaced++;
+        }
+        int firstKept = body.length;
+        if(previousEndLine != -1){
+            firstKept = firstReplaced;
+            while(firstKept < body.length && body[firstKept].beginLine <= previousEndLine){
+                firstKept++;
+            }
+        }
+
+        stmtType[] newBody = new stmtType[firstReplaced + sliceBody.length + (body.length - firstKept)];
+        System.arraycopy(body, 0, newBody, 0, firstReplaced);
+        System.arraycopy(sliceBody, 0, newBody, firstReplaced, sliceBody.length);
+
+        try {
+            fixLines(sliceBody, sliceStartLine);
+            if(changed.linesDelta == 0){
+                System.arraycopy(body, firstKept, newBody, firstReplaced+sliceBody.length, body.length - firstKept);
+            }else{
+                //the statements after the slice are copied (and not changed in-place) as the previous ast
+                //may still be in use (i.e.: outline, analysis)
+                for(int i=firstKept, j=firstReplaced+sliceBody.length;i<body.length;i++, j++){
+                    newBody[j] = copyWithLinesFixed(body[i], changed.linesDelta);
+                }
+            }
+        } catch (Exception e) {
+            Log.log(e);
+            return null;
+        }
+
+        Module newRoot = new Module(newBody);
+        newRoot.beginLine = previous.beginLine;
+        newRoot.beginColumn = previous.beginColumn;
+        return new Tuple<SimpleNode, Throwable>(newRoot, null);
+    }
+
+
+    private static boolean hasSpecials(SimpleNode node) {
+        return (node.specialsBefore != null && node.specialsBefore.size() > 0) ||
+               (node.specialsAfter != null && node.specialsAfter.size() > 0);
+    }
+
+
+    /**
+     * @return true if the last non-blank line in the given range is a comment.
+     */
+    private static boolean endsWithComment(String contents, int start, int end) {
+        int i = end-1;
+        while(i >= start){
+            //skip the whitespaces at the end
+            if(!Character.isWhitespace(contents.charAt(i))){
+                break;
+            }
+            i--;
+        }
+        while(i >= start){
+            char c = contents.charAt(i);
+            if(c == '\r' || c == '\n'){
+                break;
+            }
+            i--;
+        }
+        i++;
+        while(i < end){
+            char c = contents.charAt(i);
+            if(c == '#'){
+                return true;
+            }
+            if(!Character.isWhitespace(c)){
+                return false;
+            }
+            i++;
+        }
+        return false;
+    }
+}
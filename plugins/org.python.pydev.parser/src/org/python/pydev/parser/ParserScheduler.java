@@ -6,54 +6,77 @@
  */
 /*
  * Created on Sep 14, 2005
- * 
+ *
  * @author Fabio Zadrozny
  */
 package org.python.pydev.parser;
 
+import java.util.concurrent.ScheduledFuture;
+
+import org.python.pydev.core.log.Log;
+import org.python.pydev.parser.ParsingExecutor.ParseRequest;
+
+/**
+ * Decides when the parser should do a parse (the parse itself is done in the ParsingExecutor shared by all the
+ * parsers).
+ *
+ * Requests done while the user is changing the document are only issued after the document stays unchanged for
+ * the time specified in the preferences and requests done while another one is still pending are coalesced
+ * into a single parse.
+ */
 public class ParserScheduler {
 
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final Object lock = new Object();
+
     /**
-     * used to do parsings in a thread - is null when not doing parsings
-     */
-    public volatile ParsingThread parsingThread; 
-    
-    /**
-     * indicates that currently nothing is happening
-     */
-    public static final int STATE_WAITING = 0; 
-    
-    /**
-     * indicates whether some parse later has been requested
+     * the timer waiting for the user to stop changing the document - is null when not waiting
      */
-    public static final int STATE_PARSE_LATER = 1; 
+    private ScheduledFuture<?> elapseTimer;
 
     /**
-     * indicates if a thread is currently waiting for an elapse cycle to end
+     * the request waiting for a thread in the executor - is null when nothing is waiting
      */
-    public static final int STATE_WAITING_FOR_ELAPSE = 2;
-    
+    private ParseRequest queuedRequest;
+
     /**
-     * indicates if a thread is currently doing a parse action
+     * indicates if a parse is currently being done
      */
-    public static final int STATE_DOING_PARSE = 3;
-    
+    private boolean doingParse;
+
     /**
-     * initially we're waiting
+     * indicates that the document changed while a parse was being done (so, another one is needed afterwards)
      */
-    int state = STATE_WAITING;
-    
+    private boolean parseAfterCurrent;
+
     /**
-     * this is the exact time a parse later was requested
+     * the arguments to be passed to the next parse
      */
-    private long timeParseLaterRequested = 0;
-    
+    private Object[] argsToReparse = EMPTY_ARGS;
+
     /**
-     * this is the exact time the last parse was requested
+     * indicates that the next parse was forced (i.e.: on save), in which case its ast may be shared in the AstCache
      */
-    private long timeLastParse = 0;
+    private boolean forcedParse;
 
-    private PyParser parser;
+    private volatile PyParser parser;
+
+    private final Runnable onElapsed = new Runnable() {
+        public void run() {
+            synchronized(lock){
+                elapseTimer = null;
+                if(parser == null){
+                    return;
+                }
+                if(doingParse){
+                    parseAfterCurrent = true;
+                }else{
+                    queueRequest(ParsingExecutor.PRIORITY_HIGH);
+                }
+            }
+        }
+    };
 
     public ParserScheduler(PyParser parser) {
         super();
@@ -64,109 +87,163 @@ public class ParserScheduler {
     public void parseNow() {
         parseNow(false);
     }
-    
+
     /**
      * The arguments passed in argsToReparse will be passed to the reparseDocument, and then on to fireParserChanged / fireParserError
-     * 
+     *
      * @return false if we asked a forced reparse and it will not be scheduled because a reparse is already in action.
      */
     public boolean parseNow(boolean force, Object ... argsToReparse) {
-        if(!force){
-            if(state != STATE_WAITING_FOR_ELAPSE && state != STATE_DOING_PARSE){
-                //waiting or parse later
-                state = STATE_WAITING_FOR_ELAPSE; // the parser will reset it later
-                timeLastParse = System.currentTimeMillis();
-                checkCreateAndStartParsingThread();
-            }else{
+        synchronized(lock){
+            if(parser == null){
+                return true;
+            }
+            if(!force){
                 //another request... we keep waiting until the user stops adding requests
-                boolean created = checkCreateAndStartParsingThread();
-                if(!created){
-                    parsingThread.okToGo = false;
-                }
+                requestAfterElapse(getElapseMillisBeforeAnalysis(), true);
+                return true;
             }
-        }else{
-            ParsingThread parserThreadLocal = parsingThread; //if it dies suddenly, we don't want to get it as null...
-            if(state == ParserScheduler.STATE_DOING_PARSE){
+
+            if(doingParse){
                 //a parse is already in action
                 return false;
-            }else{
-                if(parserThreadLocal == null){
-                    parserThreadLocal = new ParsingThread(this, argsToReparse);
-                    parsingThread = parserThreadLocal;
-                    parserThreadLocal.force = true;
-                    parserThreadLocal.setPriority(Thread.MIN_PRIORITY); //parsing is low priority
-                    parserThreadLocal.start();
-                }else{
-                    //force it to run
-                    parserThreadLocal.force = true;
-                    parserThreadLocal.interrupt();
-                }
             }
+            int priority = ParsingExecutor.PRIORITY_NORMAL;
+            if(elapseTimer != null){
+                //the user was changing it, so, keep the priority of that request
+                elapseTimer.cancel(false);
+                elapseTimer = null;
+                priority = ParsingExecutor.PRIORITY_HIGH;
+            }
+            if(argsToReparse != null && argsToReparse.length > 0){
+                this.argsToReparse = argsToReparse;
+            }
+            forcedParse = true;
+            queueRequest(priority);
         }
         return true;
     }
 
 
+    public void parseLater() {
+        synchronized(lock){
+            if(parser == null){
+                return;
+            }
+            //only wait if there's no other request already in action (parseNow waits as much again if the
+            //user keeps changing the document)
+            requestAfterElapse(getElapseMillisBeforeAnalysis()*2, false);
+        }
+    }
+
+
     /**
-     * @return whether we really created the thread (returns false if the thread already exists)
+     * Requests a parse after the given delay (must be called with the lock held).
+     *
+     * @param restartTimer if true and we're already waiting, the wait is restarted.
      */
-    private boolean checkCreateAndStartParsingThread() {
-        ParsingThread p = parsingThread;
-        if(p == null){
-            p = new ParsingThread(this);
-            p.setPriority(Thread.MIN_PRIORITY); //parsing is low priority
-            p.start();
-            parsingThread = p;
-            return true;
+    private void requestAfterElapse(long delayMillis, boolean restartTimer) {
+        if(doingParse){
+            parseAfterCurrent = true;
+            return;
         }
-        return false;
+        if(queuedRequest != null){
+            //it'll get the current contents of the document: just make sure it'll be done soon.
+            queueRequest(ParsingExecutor.PRIORITY_HIGH);
+            return;
+        }
+        if(elapseTimer != null){
+            if(!restartTimer){
+                return;
+            }
+            elapseTimer.cancel(false);
+        }
+        elapseTimer = ParsingExecutor.getExecutor().schedule(onElapsed, delayMillis);
     }
-    
-    public void parseLater() {
-        if(state != STATE_WAITING_FOR_ELAPSE && state != STATE_PARSE_LATER){
-            state = STATE_PARSE_LATER;
-            //ok, the time for this request is:
-            timeParseLaterRequested = System.currentTimeMillis();
-            Thread thread = new Thread(){
-                @Override
-                public void run() {
-                    try {
-                        sleep(PyParserManager.getPyParserManager(null).getElapseMillisBeforeAnalysis());
-                    } catch (Exception e) {
-                        //that's ok
-                    }
-                    //ok, no parse happened while we were sleeping
-                    if( state == STATE_PARSE_LATER && timeLastParse < timeParseLaterRequested){
-                        parseNow();
-                    }
-                }
-            };
-            thread.setName("ParserScheduler");
-            thread.start();
+
+
+    /**
+     * Puts a request in the executor (or raises the priority of the one already there). Must be called with
+     * the lock held.
+     */
+    private void queueRequest(int priority) {
+        ParsingExecutor executor = ParsingExecutor.getExecutor();
+        if(queuedRequest != null){
+            if(queuedRequest.priority <= priority || !executor.remove(queuedRequest)){
+                return;
+            }
+        }
+        queuedRequest = new ParseRequest(this, priority);
+        executor.execute(queuedRequest);
+    }
+
+
+    private static long getElapseMillisBeforeAnalysis() {
+        try {
+            return PyParserManager.getPyParserManager(null).getElapseMillisBeforeAnalysis();
+        } catch (Throwable e) {
+            //the manager is not available (i.e.: the parser was not created for an editor)
+            return 0;
         }
-        
     }
 
 
     /**
-     * this should call back to the parser itself for doing a parse
+     * Called from the ParsingExecutor to actually do the parse.
      * 
-     * The argsToReparse will be passed to the IParserObserver2
+     * @return false if the request was stale (disposed or replaced by another one), in which case no parse was done.
      */
-    public void reparseDocument(Object ... argsToReparse) {
-        PyParser p = parser;
-        if(p != null){
-            p.reparseDocument(argsToReparse);
+    /*default*/ boolean runParse(ParseRequest request) {
+        PyParser p;
+        Object[] args;
+        boolean forced;
+        synchronized(lock){
+            if(request != queuedRequest){
+                return false; //it was disposed or replaced by another one
+            }
+            queuedRequest = null;
+            p = parser;
+            if(p == null){
+                return false;
+            }
+            doingParse = true;
+            args = argsToReparse;
+            argsToReparse = EMPTY_ARGS;
+            forced = forcedParse;
+            forcedParse = false;
         }
+
+        try {
+            p.reparseDocument(forced, args);
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            synchronized(lock){
+                doingParse = false;
+                if(parseAfterCurrent){
+                    parseAfterCurrent = false;
+                    if(parser != null){
+                        requestAfterElapse(getElapseMillisBeforeAnalysis(), true);
+                    }
+                }
+            }
+        }
+        return true;
     }
 
 
     public void dispose() {
-        ParsingThread p = this.parsingThread;
-        if(p != null){
-            p.dispose();
+        synchronized(lock){
+            if(elapseTimer != null){
+                elapseTimer.cancel(false);
+                elapseTimer = null;
+            }
+            if(queuedRequest != null){
+                ParsingExecutor.getExecutor().remove(queuedRequest);
+                queuedRequest = null;
+            }
+            this.parser = null;
         }
-        this.parser = null;
     }
 
 
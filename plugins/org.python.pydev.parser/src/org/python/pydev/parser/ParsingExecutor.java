@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.python.pydev.core.structure.FastStringBuffer;
+
+/**
+ * Executor shared by all the parsers (through their ParserScheduler).
+ *
+ * It has a single timer thread (used to wait until the user stops typing before requesting a parse) and a bounded
+ * number of threads which actually do the parsing. Parse requests waiting for a thread are ordered by priority
+ * (and then by the time they were requested), so, the editor being changed is parsed before the ones that were just
+ * saved/opened.
+ *
+ * Each ParserScheduler has at most one request pending in this executor at any time (requests done while another
+ * is waiting are coalesced in the scheduler).
+ *
+ * @author Fabio
+ */
+public final class ParsingExecutor {
+
+    /**
+     * Priority for parses requested because the user changed the document.
+     */
+    public static final int PRIORITY_HIGH = 0;
+
+    /**
+     * Priority for other parses (i.e.: on save, when the editor is opened, forced reparses).
+     */
+    public static final int PRIORITY_NORMAL = 1;
+
+    /**
+     * The number of threads that may be parsing at the same time.
+     */
+    public static final int PARSING_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()-1));
+
+
+    /**
+     * A parse request in the executor queue.
+     */
+    /*default*/ static final class ParseRequest implements Runnable, Comparable<ParseRequest>{
+
+        private static final AtomicLong nextSequence = new AtomicLong();
+
+        /*default*/ final int priority;
+        private final long sequence;
+        private final long queuedTime;
+        private final ParserScheduler scheduler;
+
+        /*default*/ ParseRequest(ParserScheduler scheduler, int priority) {
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.sequence = nextSequence.getAndIncrement();
+            this.queuedTime = System.nanoTime();
+        }
+
+        public int compareTo(ParseRequest o) {
+            if(priority != o.priority){
+                return priority < o.priority ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+
+        public void run() {
+            long start = System.nanoTime();
+            if(!scheduler.runParse(this)){
+                return; //stale request: not counted in the metrics
+            }
+            long parseNanos = System.nanoTime() - start;
+
+            ParsingExecutor executor = getExecutor();
+            executor.totalWaitNanos.addAndGet(start - queuedTime);
+            executor.totalParseNanos.addAndGet(parseNanos);
+            executor.parsesDone.incrementAndGet();
+            long max;
+            while(parseNanos > (max = executor.maxParseNanos.get())){
+                if(executor.maxParseNanos.compareAndSet(max, parseNanos)){
+                    break;
+                }
+            }
+        }
+    }
+
+
+    private static final class ParsingThreadFactory implements ThreadFactory{
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private ParsingThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name+"-"+count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY); //parsing is low priority
+            return t;
+        }
+    }
+
+
+    // ---------------------------------------------------------------------------------------------- singleton stuff...
+    private static ParsingExecutor executor;
+
+    public static synchronized ParsingExecutor getExecutor() {
+        if(executor == null){
+            executor = new ParsingExecutor();
+        }
+        return executor;
+    }
+
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor workers;
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalParseNanos = new AtomicLong();
+    private final AtomicLong maxParseNanos = new AtomicLong();
+    private final AtomicLong parsesDone = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    private ParsingExecutor() {
+        timer = new ScheduledThreadPoolExecutor(1, new ParsingThreadFactory("ParserScheduler"));
+        workers = new ThreadPoolExecutor(PARSING_THREADS, PARSING_THREADS, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ParsingThreadFactory("ParsingThread"));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * Schedules the given runnable to be run in the timer thread after the given delay.
+     */
+    /*default*/ ScheduledFuture<?> schedule(Runnable runnable, long delayMillis) {
+        return timer.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a request to be parsed as soon as some parsing thread is available.
+     */
+    /*default*/ void execute(ParseRequest request) {
+        workers.execute(request);
+        int size = workers.getQueue().size();
+        if(size > maxQueueDepth){
+            maxQueueDepth = size;
+        }
+    }
+
+    /**
+     * Removes a request that's still waiting for a parsing thread.
+     *
+     * @return true if it was removed (and false if it's already running or finished).
+     */
+    /*default*/ boolean remove(ParseRequest request) {
+        return workers.remove(request);
+    }
+
+
+    // ---------------------------------------------------------------------------------------------- metrics
+    /**
+     * @return the number of requests waiting for a parsing thread.
+     */
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return the maximum number of requests that were waiting for a parsing thread at the same time.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return the number of parses done in this executor (requests that were stale when they got a thread are not
+     * counted).
+     */
+    public long getParsesDone() {
+        return parsesDone.get();
+    }
+
+    /**
+     * @return the average time (in millis) that a request had to wait for a parsing thread.
+     */
+    public double getAverageWaitMillis() {
+        long done = parsesDone.get();
+        return done == 0 ? 0 : totalWaitNanos.get() / (done * 1000000.0);
+    }
+
+    /**
+     * @return the average time (in millis) that a parse took.
+     */
+    public double getAverageParseMillis() {
+        long done = parsesDone.get();
+        return done == 0 ? 0 : totalParseNanos.get() / (done * 1000000.0);
+    }
+
+    /**
+     * @return the maximum time (in millis) that a parse took.
+     */
+    public double getMaxParseMillis() {
+        return maxParseNanos.get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        FastStringBuffer buf = new FastStringBuffer(200);
+        buf.append("ParsingExecutor[threads: ").append(PARSING_THREADS);
+        buf.append(", queue depth: ").append(getQueueDepth());
+        buf.append(", max queue depth: ").append(getMaxQueueDepth());
+        buf.append(", parses: ").append(getParsesDone());
+        buf.append(", avg wait (ms): ").append(getAverageWaitMillis());
+        buf.append(", avg parse (ms): ").append(getAverageParseMillis());
+        buf.append(", max parse (ms): ").append(getMaxParseMillis());
+        buf.append("]");
+        return buf.toString();
+    }
+}
@@ -27,8 +27,10 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.ui.IEditorInput;
@@ -50,6 +52,7 @@ import org.python.pydev.core.parser.IParserObserver;
 import org.python.pydev.core.parser.IParserObserver2;
 import org.python.pydev.core.parser.IParserObserver3;
 import org.python.pydev.core.parser.IPyParser;
+import org.python.pydev.parser.IncrementalParser.ChangedLines;
 import org.python.pydev.parser.fastparser.FastParser;
 import org.python.pydev.parser.grammar24.PythonGrammar24;
 import org.python.pydev.parser.grammar25.PythonGrammar25;
@@ -69,8 +72,9 @@ import org.python.pydev.parser.jython.ast.stmtType;
 /**
  * PyParser uses org.python.parser to parse the document (lexical analysis) It
  * is attached to PyEdit (a view), and it listens to document changes On every
- * document change, the syntax tree is regenerated The reparsing of the document
- * is done on a ParsingThread
+ * document change, the syntax tree is regenerated. When to reparse the document
+ * is decided by its ParserScheduler and the parse itself is done in a thread of
+ * the ParsingExecutor (shared by all the parsers)
  * 
  * Clients that need to know when new parse tree has been generated should
  * register as parseListeners.
@@ -94,6 +98,11 @@ public class PyParser implements IPyParser {
      */
     public static boolean USE_FAST_STREAM = true;
     
+    /**
+     * Defines whether we should reparse only the top-level statements changed in the document (when possible)
+     */
+    public static boolean USE_INCREMENTAL_PARSE = true;
+    
     /**
      * this is the document we should parse 
      */
@@ -139,6 +148,33 @@ public class PyParser implements IPyParser {
      */
     private volatile boolean disposed = false;
 
+    /**
+     * Lock for the fields used to do an incremental reparse (lastCleanRoot, lastCleanContents, changedLines and pending lines).
+     */
+    private final Object incrementalLock = new Object();
+    
+    /**
+     * ast for the last parsing without errors (used as the base for an incremental reparse). May be null.
+     */
+    private SimpleNode lastCleanRoot;
+    
+    /**
+     * The contents that generated lastCleanRoot.
+     */
+    private String lastCleanContents;
+    
+    /**
+     * The lines changed in the document since lastCleanRoot was generated (null if nothing changed).
+     */
+    private ChangedLines changedLines;
+    
+    /**
+     * Lines of the change being done in the document (set in documentAboutToBeChanged and consumed
+     * in documentChanged). -1 when no change is in progress.
+     */
+    private int pendingStartLine = -1;
+    private int pendingOldEndLine = -1;
+
     
     public static String getGrammarVersionStr(int grammarVersion){
         if(grammarVersion == IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_4){
@@ -182,6 +218,8 @@ public class PyParser implements IPyParser {
         documentListener = new IDocumentListener() {
 
             public void documentChanged(DocumentEvent event) {
+                onDocumentChanged(event);
+                
                 if(useAnalysisOnlyOnDocSave){
                     //if we're doing analysis only on doc change, the parser will not give any changes
                     //to the scheduler, so, we won't have any parse events to respond to
@@ -211,11 +249,65 @@ public class PyParser implements IPyParser {
             }
 
             public void documentAboutToBeChanged(DocumentEvent event) {
+                onDocumentAboutToBeChanged(event);
             }
         };
 
     }
     
+    
+    private void onDocumentAboutToBeChanged(DocumentEvent event) {
+        synchronized(incrementalLock){
+            try {
+                IDocument doc = event.getDocument();
+                pendingStartLine = doc.getLineOfOffset(event.getOffset());
+                pendingOldEndLine = doc.getLineOfOffset(event.getOffset()+event.getLength());
+            } catch (BadLocationException e) {
+                pendingStartLine = -1;
+                lastCleanRoot = null;
+                lastCleanContents = null;
+            }
+        }
+    }
+    
+    
+    private void onDocumentChanged(DocumentEvent event) {
+        synchronized(incrementalLock){
+            if(pendingStartLine < 0){
+                //we didn't get the change before it happened: the last ast can't be used as a base anymore.
+                lastCleanRoot = null;
+                lastCleanContents = null;
+                changedLines = null;
+                return;
+            }
+            try {
+                String text = event.getText();
+                int newEndLine = event.getDocument().getLineOfOffset(
+                        event.getOffset()+(text != null ? text.length() : 0));
+                
+                if(changedLines == null){
+                    changedLines = new ChangedLines(pendingStartLine, pendingOldEndLine, newEndLine);
+                }else{
+                    changedLines.add(pendingStartLine, pendingOldEndLine, newEndLine);
+                }
+            } catch (BadLocationException e) {
+                lastCleanRoot = null;
+                lastCleanContents = null;
+                changedLines = null;
+            }
+            pendingStartLine = -1;
+            pendingOldEndLine = -1;
+        }
+    }
+    
+    
+    private static long getModificationStamp(IDocument doc) {
+        if(doc instanceof IDocumentExtension4){
+            return ((IDocumentExtension4) doc).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+    
     /**
      * Ok, create the parser for an editor
      * 
@@ -289,6 +381,13 @@ public class PyParser implements IPyParser {
 
         // Set up new listener
         this.document = doc;
+        synchronized(incrementalLock){
+            lastCleanRoot = null;
+            lastCleanContents = null;
+            changedLines = null;
+            pendingStartLine = -1;
+            pendingOldEndLine = -1;
+        }
         if (doc == null) {
             Log.log("No document in PyParser::setDocument?");
             return;
@@ -418,6 +517,16 @@ public class PyParser implements IPyParser {
      *         if we are able to recover from a reparse, we have both, the root and the error.
      */
     public Tuple<SimpleNode, Throwable> reparseDocument(Object ... argsToReparse) {
+        return reparseDocument(false, argsToReparse);
+    }
+    
+    /**
+     * @param useAstCache if true, the ast may be shared through the AstCache with other clients (in which case
+     * it won't be used as the base for an incremental reparse, as that'd change it).
+     * 
+     * @see #reparseDocument(Object...)
+     */
+    /*default*/ Tuple<SimpleNode, Throwable> reparseDocument(boolean useAstCache, Object[] argsToReparse) {
         
         //get the document ast and error in object
         int version;
@@ -428,7 +537,55 @@ public class PyParser implements IPyParser {
             version = IGrammarVersionProvider.LATEST_GRAMMAR_VERSION;
         }
         long documentTime = System.currentTimeMillis();
-        Tuple<SimpleNode, Throwable> obj = reparseDocument(new ParserInfo(document, version));
+        IDocument doc = document;
+        
+        SimpleNode base;
+        String baseContents;
+        ChangedLines changed;
+        long stamp;
+        synchronized(incrementalLock){
+            base = lastCleanRoot;
+            baseContents = lastCleanContents;
+            changed = changedLines;
+            lastCleanRoot = null;
+            lastCleanContents = null;
+            changedLines = null;
+            
+            //if some change is in progress, we can't know which lines were changed in the contents we'll get.
+            stamp = pendingStartLine < 0 ? getModificationStamp(doc) : IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+        }
+        
+        Tuple<SimpleNode, Throwable> obj = null;
+        String contents = null;
+        if(USE_INCREMENTAL_PARSE && !useAstCache && stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP){
+            contents = doc.get();
+            if(stamp != getModificationStamp(doc)){
+                contents = null;
+                
+            }else if(base != null && baseContents != null && changed != null){
+                obj = IncrementalParser.reparse(base, baseContents, changed, contents, version);
+                if(obj != null && obj.o1 != null){
+                    //the slice was parsed without notifying: notify with the whole ast
+                    notifySuccessfulParseListeners(obj.o1, new ParserInfo(new Document(contents), version));
+                }
+            }
+        }
+        if(obj == null){
+            ParserInfo info = contents != null ? 
+                    new ParserInfo(new Document(contents), version) : new ParserInfo(doc, version);
+            info.useAstCache = useAstCache;
+            obj = reparseDocument(info);
+        }
+        
+        if(obj.o1 != null && obj.o2 == null && contents != null){
+            synchronized(incrementalLock){
+                //only keep it if the document didn't change while parsing
+                if(changedLines == null && pendingStartLine < 0 && stamp == getModificationStamp(doc)){
+                    lastCleanRoot = obj.o1;
+                    lastCleanContents = contents;
+                }
+            }
+        }
         
         IFile original = null;
         IAdaptable adaptable = null;
@@ -533,6 +690,12 @@ public class PyParser implements IPyParser {
          */
         public final File file;
         
+        /**
+         * If true, the result may be gotten from (and will be put in) the AstCache, so, the returned ast may be shared
+         * with other clients and must not be changed.
+         */
+        public boolean useAstCache = false;
+        
         /**
          * @param grammarVersion: see IPythonNature.GRAMMAR_XXX constants
          */
@@ -580,6 +743,16 @@ public class PyParser implements IPyParser {
      *         if we are able to recover from a reparse, we have both, the root and the error.
      */
     public static Tuple<SimpleNode, Throwable> reparseDocument(ParserInfo info) {
+        return reparseDocument(info, true);
+    }
+    
+    /**
+     * @param notifyListeners if false, the successfulParseListeners are not notified (used when parsing only a part
+     * of a document, as the listeners must only get the ast of the whole document).
+     * 
+     * @see #reparseDocument(ParserInfo)
+     */
+    /*default*/ static Tuple<SimpleNode, Throwable> reparseDocument(ParserInfo info, boolean notifyListeners) {
         if(info.grammarVersion == IPythonNature.GRAMMAR_PYTHON_VERSION_CYTHON){
             IDocument doc = info.document;
             return createCythonAst(doc);
@@ -593,6 +766,20 @@ public class PyParser implements IPyParser {
             return new Tuple<SimpleNode, Throwable>(new Module(new stmtType[0]), null);
         }
         
+        String cacheKey = null;
+        if(info.useAstCache){
+            //looked up before copying the contents to be parsed
+            Tuple<SimpleNode, Throwable> cached = AstCache.getCache().get(startDoc, info.grammarVersion);
+            if(cached != null){
+                if(cached.o1 != null && notifyListeners){
+                    //the listeners are notified just as if the parse had been done
+                    notifySuccessfulParseListeners(cached.o1, info);
+                }
+                return cached;
+            }
+            cacheKey = startDoc;
+        }
+        
         int length = startDoc.length();
         int skipAtStart = 0;
         if(startDoc.startsWith(REF.BOM_UTF8)){
@@ -656,14 +843,9 @@ public class PyParser implements IPyParser {
             returnVar.o1 = newRoot;
             
             //only notify successful parses
-            if(successfulParseListeners.size() > 0){
-                Tuple3<SimpleNode, Throwable, ParserInfo> param = new Tuple3<SimpleNode, Throwable, ParserInfo>(
-                        returnVar.o1, returnVar.o2, info);
-                
-                for(ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> callback: successfulParseListeners){
-                    callback.call(param);
-                }
-            }        
+            if(notifyListeners){
+                notifySuccessfulParseListeners(newRoot, info);
+            }
             
             returnVar.o2 = grammar.getErrorOnParsing();
 
@@ -709,9 +891,23 @@ public class PyParser implements IPyParser {
             }
         }
 //        System.out.println("Output grammar: "+returnVar);
+        if(cacheKey != null){
+            AstCache.getCache().put(cacheKey, info.grammarVersion, returnVar);
+        }
         return returnVar;
     }
 
+    private static void notifySuccessfulParseListeners(SimpleNode root, ParserInfo info) {
+        if(successfulParseListeners.size() > 0){
+            Tuple3<SimpleNode, Throwable, ParserInfo> param = new Tuple3<SimpleNode, Throwable, ParserInfo>(
+                    root, null, info);
+            
+            for(ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> callback: successfulParseListeners){
+                callback.call(param);
+            }
+        }        
+    }
+
     public static Tuple<SimpleNode, Throwable> createCythonAst(IDocument doc) {
         List<stmtType> classesAndFunctions = FastParser.parseCython(doc);
         return new Tuple<SimpleNode, Throwable>(
@@ -0,0 +1,518 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.fastparser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.pydev.core.log.Log;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Assign;
+import org.python.pydev.parser.jython.ast.Attribute;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.jython.ast.exprType;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+/**
+ * Keeps the definitions found by the FastDefinitionsParser for a set of modules (i.e.: the modules of an
+ * interpreter) in a compact binary file, so that when the index has to be recreated the modules whose file didn't
+ * change don't have to be read and parsed again.
+ *
+ * Each entry is keyed by the file path (and the path inside the zip for modules in zips) and is only valid while
+ * the file has the same modification time and size.
+ *
+ * The file is memory-mapped when loaded and an entry is only deserialized when it's actually requested.
+ *
+ * As a mapped file can't be replaced or deleted on Windows (and there's no portable way to unmap it), each save
+ * writes a new generation (the snapshot file name with a '.' and the generation number appended), switches the
+ * mapping to it and only then removes the previous generation (when the previous generation can't be removed
+ * it's removed when the snapshot is loaded again).
+ *
+ * File format (version 1):
+ *
+ * int magic, int version, int number of entries and then for each entry:
+ * string file, string path in zip ("" if not in a zip), long modification time, long size, int length of the data,
+ * data (the serialized module).
+ *
+ * Strings are written as an int with the length followed by the chars.
+ *
+ * @author Fabio
+ */
+public final class DefinitionsSnapshot {
+
+    private static final int MAGIC = 0x50594453; //PYDS
+
+    /**
+     * Should be raised whenever the format changes (the previous file is discarded when the version doesn't match).
+     */
+    public static final int VERSION = 1;
+
+    private static final byte KIND_CLASS = 1;
+    private static final byte KIND_FUNCTION = 2;
+    private static final byte KIND_ASSIGN = 3;
+
+    private static final byte TARGET_NAME = 1;
+    private static final byte TARGET_SELF_ATTRIBUTE = 2;
+
+
+    private static final class Entry{
+
+        private final String file;
+        private final String zipPath;
+        private final long lastModified;
+        private final long size;
+
+        /**
+         * The serialized module (a slice of the mapped file or a heap buffer for entries added in this session).
+         */
+        private final ByteBuffer data;
+
+        /**
+         * Whether this entry was requested or added since it was loaded.
+         */
+        private boolean used;
+
+        private Entry(String file, String zipPath, long lastModified, long size, ByteBuffer data) {
+            this.file = file;
+            this.zipPath = zipPath;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+
+    private final File snapshotFile;
+    private final Object lock = new Object();
+
+    /**
+     * The generation currently mapped (0 if none).
+     */
+    private long generation;
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private boolean loaded;
+    private boolean changed;
+
+    private int hits;
+    private int misses;
+
+    public DefinitionsSnapshot(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+
+    private static String createKey(String file, String zipPath) {
+        if(zipPath == null || zipPath.length() == 0){
+            return file;
+        }
+        return new FastStringBuffer(file, zipPath.length()+1).append('!').append(zipPath).toString();
+    }
+
+    /**
+     * @param file the file with the module (or the zip which contains the module)
+     * @param zipPath the path of the module inside the zip (null if it's not in a zip)
+     * @param lastModified the modification time of the file (gotten before the file contents were read)
+     * @param size the size of the file (gotten before the file contents were read)
+     *
+     * @return the definitions for the module (as returned by the FastDefinitionsParser) or null if it's not
+     * available or if the file changed since it was added.
+     */
+    public SimpleNode get(File file, String zipPath, long lastModified, long size) {
+        ByteBuffer data = null;
+        synchronized(lock){
+            loadIfNeeded();
+            Entry entry = entries.get(createKey(file.getAbsolutePath(), zipPath));
+            if(entry != null && entry.lastModified == lastModified && entry.size == size){
+                entry.used = true;
+                data = entry.data.duplicate();
+                hits++;
+            }else{
+                misses++;
+            }
+        }
+        if(data == null){
+            return null;
+        }
+        try {
+            return readModule(data);
+        } catch (Exception e) {
+            Log.log(e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Adds the definitions for a module.
+     *
+     * @see #get(File, String, long, long)
+     */
+    public void put(File file, String zipPath, long lastModified, long size, SimpleNode definitions) {
+        if(lastModified == 0 || !(definitions instanceof Module)){
+            return;
+        }
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+            DataOutputStream dataOut = new DataOutputStream(out);
+            writeStmts(dataOut, ((Module)definitions).body);
+            dataOut.flush();
+            bytes = out.toByteArray();
+        } catch (IOException e) {
+            //some node we don't know how to handle (i.e.: not created by the FastDefinitionsParser)
+            return;
+        }
+        String path = file.getAbsolutePath();
+        Entry entry = new Entry(path, zipPath == null ? "" : zipPath, lastModified, size, ByteBuffer.wrap(bytes));
+        entry.used = true;
+        synchronized(lock){
+            loadIfNeeded();
+            entries.put(createKey(path, zipPath), entry);
+            changed = true;
+        }
+    }
+
+
+    /**
+     * Writes the snapshot to the disk (if something changed since it was loaded).
+     *
+     * Entries which were not requested in this session are only kept if their file is still unchanged.
+     */
+    public void save() {
+        synchronized(lock){
+            if(!changed){
+                return;
+            }
+            List<Entry> toSave = new ArrayList<Entry>(entries.size());
+            for(Entry entry:entries.values()){
+                if(!entry.used){
+                    File f = new File(entry.file);
+                    if(f.lastModified() != entry.lastModified || f.length() != entry.size){
+                        continue;
+                    }
+                }
+                toSave.add(entry);
+            }
+
+            //never write over the mapped file (not allowed on Windows)
+            long newGeneration = generation+1;
+            File newFile = getGenerationFile(newGeneration);
+            File tempFile = new File(newFile.getPath()+".tmp");
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+                try{
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(toSave.size());
+                    for(Entry entry:toSave){
+                        writeString(out, entry.file);
+                        writeString(out, entry.zipPath);
+                        out.writeLong(entry.lastModified);
+                        out.writeLong(entry.size);
+                        ByteBuffer data = entry.data.duplicate();
+                        out.writeInt(data.remaining());
+                        if(data.hasArray()){
+                            out.write(data.array(), data.arrayOffset()+data.position(), data.remaining());
+                        }else{
+                            byte[] bytes = new byte[data.remaining()];
+                            data.get(bytes);
+                            out.write(bytes);
+                        }
+                    }
+                }finally{
+                    out.close();
+                }
+                newFile.delete(); //leftover from some failed save (not mapped)
+                if(!tempFile.renameTo(newFile)){
+                    Log.log("Unable to write: "+newFile);
+                    tempFile.delete();
+                    return;
+                }
+                //switch the mapping to the new generation (the entries are read again when needed)
+                File previousFile = generation > 0 ? getGenerationFile(generation) : null;
+                generation = newGeneration;
+                entries.clear();
+                loaded = false;
+                changed = false;
+                if(previousFile != null){
+                    previousFile.delete(); //may fail while still mapped: removed in the next load
+                }
+            } catch (IOException e) {
+                Log.log(e);
+                tempFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * Removes all the entries (and the files in the disk).
+     */
+    public void clear() {
+        synchronized(lock){
+            entries.clear();
+            loaded = true;
+            changed = false;
+            //the generation isn't reset (so, one which can't be removed now is never loaded again)
+            for(File f:listGenerations().values()){
+                f.delete();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized(lock){
+            loadIfNeeded();
+            return entries.size();
+        }
+    }
+
+    public int getHits() {
+        synchronized(lock){
+            return hits;
+        }
+    }
+
+    public int getMisses() {
+        synchronized(lock){
+            return misses;
+        }
+    }
+
+
+    /**
+     * @return the file for the given generation of the snapshot.
+     */
+    private File getGenerationFile(long generation) {
+        return new File(snapshotFile.getPath()+"."+generation);
+    }
+
+    /**
+     * @return the generations of the snapshot found in the disk (generation to file).
+     */
+    private Map<Long, File> listGenerations() {
+        Map<Long, File> ret = new HashMap<Long, File>();
+        File[] files = snapshotFile.getParentFile() != null ? snapshotFile.getParentFile().listFiles() : null;
+        if(files == null){
+            return ret;
+        }
+        String prefix = snapshotFile.getName()+".";
+        for(File f:files){
+            String name = f.getName();
+            if(name.startsWith(prefix) && f.isFile()){
+                try {
+                    long generation = Long.parseLong(name.substring(prefix.length()));
+                    if(generation > 0){
+                        ret.put(generation, f);
+                    }
+                } catch (NumberFormatException e) {
+                    //not a generation (i.e.: .tmp file)
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Maps the latest generation and reads the entries headers (must be called with the lock held).
+     *
+     * Older generations (which couldn't be removed when the snapshot was saved) are removed.
+     */
+    private void loadIfNeeded() {
+        if(loaded){
+            return;
+        }
+        loaded = true;
+        Map<Long, File> generations = listGenerations();
+        for(long g:generations.keySet()){
+            generation = Math.max(generation, g);
+        }
+        for(Map.Entry<Long, File> entry:generations.entrySet()){
+            if(entry.getKey() != generation){
+                entry.getValue().delete();
+            }
+        }
+        File mappedFile = generations.get(generation);
+        if(mappedFile == null){
+            return;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(mappedFile, "r");
+            try{
+                //the mapping stays valid after the channel is closed
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if(buf.remaining() < 12 || buf.getInt() != MAGIC || buf.getInt() != VERSION){
+                    return; //old version: it'll be overridden in the next save
+                }
+                int count = buf.getInt();
+                for(int i=0;i<count;i++){
+                    String file = readString(buf);
+                    String zipPath = readString(buf);
+                    long lastModified = buf.getLong();
+                    long size = buf.getLong();
+                    int len = buf.getInt();
+                    ByteBuffer data = buf.slice();
+                    data.limit(len);
+                    buf.position(buf.position()+len);
+                    entries.put(createKey(file, zipPath), new Entry(file, zipPath, lastModified, size, data));
+                }
+            }finally{
+                raf.close();
+            }
+        } catch (Exception e) {
+            //corrupted: start from scratch
+            Log.log("Unable to read: "+mappedFile, e);
+            entries.clear();
+        }
+    }
+
+
+    // ------------------------------------------------------------------------------------------------- serialization
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        char[] chars = new char[len];
+        for(int i=0;i<len;i++){
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    private static void writeStmts(DataOutputStream out, stmtType[] body) throws IOException {
+        int count = 0;
+        if(body != null){
+            for(stmtType stmt:body){
+                if(stmt != null){
+                    count++;
+                }
+            }
+        }
+        out.writeInt(count);
+        if(count == 0){
+            return;
+        }
+        for(stmtType stmt:body){
+            if(stmt == null){
+                continue;
+            }
+            if(stmt instanceof ClassDef){
+                ClassDef classDef = (ClassDef) stmt;
+                writeHeader(out, KIND_CLASS, stmt);
+                writeString(out, ((NameTok)classDef.name).id);
+                writeStmts(out, classDef.body);
+
+            }else if(stmt instanceof FunctionDef){
+                FunctionDef functionDef = (FunctionDef) stmt;
+                writeHeader(out, KIND_FUNCTION, stmt);
+                writeString(out, ((NameTok)functionDef.name).id);
+                writeStmts(out, functionDef.body);
+
+            }else if(stmt instanceof Assign){
+                Assign assign = (Assign) stmt;
+                writeHeader(out, KIND_ASSIGN, stmt);
+                out.writeInt(assign.targets.length);
+                for(exprType target:assign.targets){
+                    if(target instanceof Name){
+                        out.writeByte(TARGET_NAME);
+                        writeString(out, ((Name)target).id);
+
+                    }else if(target instanceof Attribute){
+                        out.writeByte(TARGET_SELF_ATTRIBUTE);
+                        writeString(out, ((NameTok)((Attribute)target).attr).id);
+
+                    }else{
+                        throw new IOException("Unexpected target: "+target);
+                    }
+                }
+            }else{
+                throw new IOException("Unexpected node: "+stmt);
+            }
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, byte kind, stmtType stmt) throws IOException {
+        out.writeByte(kind);
+        out.writeInt(stmt.beginLine);
+        out.writeInt(stmt.beginColumn);
+    }
+
+    private static Module readModule(ByteBuffer buf) throws IOException {
+        return new Module(readStmts(buf));
+    }
+
+    private static stmtType[] readStmts(ByteBuffer buf) throws IOException {
+        int count = buf.getInt();
+        stmtType[] body = new stmtType[count];
+        for(int i=0;i<count;i++){
+            byte kind = buf.get();
+            int beginLine = buf.getInt();
+            int beginColumn = buf.getInt();
+            stmtType stmt;
+            switch(kind){
+                case KIND_CLASS:
+                    NameTok className = new NameTok(readString(buf), NameTok.ClassName);
+                    stmt = new ClassDef(className, null, readStmts(buf), null, null, null, null);
+                    break;
+
+                case KIND_FUNCTION:
+                    NameTok functionName = new NameTok(readString(buf), NameTok.ClassName);
+                    FunctionDef functionDef = new FunctionDef(functionName, null, null, null, null);
+                    stmtType[] functionBody = readStmts(buf);
+                    if(functionBody.length > 0){
+                        functionDef.body = functionBody;
+                    }
+                    stmt = functionDef;
+                    break;
+
+                case KIND_ASSIGN:
+                    exprType[] targets = new exprType[buf.getInt()];
+                    for(int j=0;j<targets.length;j++){
+                        byte targetKind = buf.get();
+                        if(targetKind == TARGET_NAME){
+                            targets[j] = new Name(readString(buf), Name.Store, false);
+                        }else if(targetKind == TARGET_SELF_ATTRIBUTE){
+                            targets[j] = new Attribute(new Name("self", Name.Load, false),
+                                    new NameTok(readString(buf), NameTok.Attrib), Attribute.Load);
+                        }else{
+                            throw new IOException("Unexpected target kind: "+targetKind);
+                        }
+                    }
+                    stmt = new Assign(targets, null);
+                    break;
+
+                default:
+                    throw new IOException("Unexpected kind: "+kind);
+            }
+            stmt.beginLine = beginLine;
+            stmt.beginColumn = beginColumn;
+            body[i] = stmt;
+        }
+        return body;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.Tuple3;
+import org.python.pydev.core.callbacks.ICallback;
+import org.python.pydev.parser.PyParser.ParserInfo;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Expr;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.Name;
+import org.python.pydev.parser.jython.ast.stmtType;
+
+public class AstCacheTest extends PyParserTestBase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(AstCacheTest.class);
+    }
+
+    private Tuple<SimpleNode, Throwable> parse(String contents, int version, boolean useAstCache) {
+        ParserInfo info = new ParserInfo(new Document(contents), version);
+        info.useAstCache = useAstCache;
+        return PyParser.reparseDocument(info);
+    }
+
+    public void testSharedAst() throws Exception {
+        AstCache cache = AstCache.getCache();
+        cache.clear();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        String s = "class A:\n    def m(self):\n        pass\n";
+        int version = IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7;
+        Tuple<SimpleNode, Throwable> first = parse(s, version, true);
+        Tuple<SimpleNode, Throwable> second = parse(s, version, true);
+        assertSame(first.o1, second.o1);
+        assertEquals(hits+1, cache.getHits());
+        assertEquals(misses+1, cache.getMisses());
+
+        //another grammar or not using the cache: a new parse
+        assertNotSame(first.o1, parse(s, IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_3_0, true).o1);
+        assertNotSame(first.o1, parse(s, version, false).o1);
+
+        //contents with the same hash but different
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        Module aa = (Module) parse("Aa\n", version, true).o1;
+        Module bb = (Module) parse("BB\n", version, true).o1;
+        assertNotSame(aa, bb);
+        assertEquals("Aa", ((Name)((Expr)aa.body[0]).value).id);
+        assertEquals("BB", ((Name)((Expr)bb.body[0]).value).id);
+    }
+
+    public void testListenersNotifiedOnHit() throws Exception {
+        AstCache.getCache().clear();
+        final List<SimpleNode> parsed = new ArrayList<SimpleNode>();
+        ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> listener = 
+            new ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>>(){
+                public Object call(Tuple3<SimpleNode, Throwable, ParserInfo> arg) {
+                    parsed.add(arg.o1);
+                    return null;
+                }
+            };
+        PyParser.successfulParseListeners.add(listener);
+        try {
+            String s = "a = 10\n";
+            int version = IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_2_7;
+            SimpleNode first = parse(s, version, true).o1;
+            SimpleNode second = parse(s, version, true).o1;
+            assertEquals(2, parsed.size());
+            assertSame(first, parsed.get(0));
+            assertSame(second, parsed.get(1));
+        } finally {
+            PyParser.successfulParseListeners.remove(listener);
+        }
+    }
+
+    public void testEviction() throws Exception {
+        AstCache cache = new AstCache(2, 1000);
+        Tuple<SimpleNode, Throwable> t = new Tuple<SimpleNode, Throwable>(new Module(new stmtType[0]), null);
+        cache.put("a", 1, t);
+        cache.put("b", 1, t);
+        assertNotNull(cache.get("a", 1)); //a is now the most recently used
+        cache.put("c", 1, t);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("a", 1));
+        assertNotNull(cache.get("c", 1));
+
+        //bounded by the contents size too
+        cache.put(new String(new char[999]), 1, t);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a", 1));
+        assertNotNull(cache.get("c", 1));
+
+        //errors without an ast are not kept
+        cache.put("d", 1, new Tuple<SimpleNode, Throwable>(null, new RuntimeException()));
+        assertNull(cache.get("d", 1));
+    }
+}
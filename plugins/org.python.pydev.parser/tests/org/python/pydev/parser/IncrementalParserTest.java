@@ -0,0 +1,425 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.REF;
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.Tuple3;
+import org.python.pydev.core.callbacks.ICallback;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.IncrementalParser.ChangedLines;
+import org.python.pydev.parser.PyParser.ParserInfo;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.VisitorBase;
+import org.python.pydev.parser.jython.ast.aliasType;
+import org.python.pydev.parser.jython.ast.argumentsType;
+import org.python.pydev.parser.jython.ast.commentType;
+import org.python.pydev.parser.jython.ast.decoratorsType;
+import org.python.pydev.parser.jython.ast.excepthandlerType;
+import org.python.pydev.parser.jython.ast.keywordType;
+
+public class IncrementalParserTest extends PyParserTestBase {
+
+    public static void main(String[] args) {
+        try {
+            IncrementalParserTest test = new IncrementalParserTest();
+            test.setUp();
+            test.testRandomEdits();
+            test.tearDown();
+            junit.textui.TestRunner.run(IncrementalParserTest.class);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Document doc;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PyParser.USE_INCREMENTAL_PARSE = true;
+        //don't let the scheduler parse in a thread when the document changes
+        parser.resetTimeoutPreferences(true);
+    }
+
+    /**
+     * Dumps the ast with the lines/cols of each node (and comments) so that we can compare the incremental
+     * and the full parse.
+     * 
+     * The nodes whose accept() doesn't visit the node itself (only its children) are found in the fields of their
+     * parents.
+     */
+    private static final class DumpVisitor extends VisitorBase{
+
+        private final FastStringBuffer buf = new FastStringBuffer();
+
+        @Override
+        protected Object unhandled_node(SimpleNode node) throws Exception {
+            dumpNode(node);
+            dumpNotVisited(node);
+            return null;
+        }
+
+        private static boolean isNotVisited(Object o) {
+            return o instanceof argumentsType || o instanceof decoratorsType || o instanceof keywordType || 
+                o instanceof aliasType || o instanceof excepthandlerType;
+        }
+
+        private void dumpNotVisited(SimpleNode node) throws Exception {
+            for(Field field:node.getClass().getFields()){
+                if(Modifier.isStatic(field.getModifiers())){
+                    continue;
+                }
+                Object value = field.get(node);
+                if(value instanceof Object[]){
+                    for(Object o:(Object[]) value){
+                        if(isNotVisited(o)){
+                            dumpNode((SimpleNode) o);
+                            dumpNotVisited((SimpleNode) o);
+                        }
+                    }
+                }else if(isNotVisited(value)){
+                    dumpNode((SimpleNode) value);
+                    dumpNotVisited((SimpleNode) value);
+                }
+            }
+        }
+
+        private void dumpNode(SimpleNode node) {
+            buf.append(node.getClass().getSimpleName()).append(' ');
+            buf.append(node.beginLine).append(':').append(node.beginColumn).append(' ');
+            buf.append(node.toString()).append('\n');
+            dumpSpecials(node.specialsBefore);
+            dumpSpecials(node.specialsAfter);
+        }
+
+        private void dumpSpecials(List<Object> specials) {
+            if(specials != null){
+                for(Object o:specials){
+                    if(o instanceof commentType){
+                        commentType c = (commentType) o;
+                        buf.append("    comment ").append(c.beginLine).append(':').append(c.beginColumn);
+                        buf.append(' ').append(c.id).append('\n');
+                    }else{
+                        buf.append("    special ").append(o.toString()).append('\n');
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void traverse(SimpleNode node) throws Exception {
+            node.traverse(this);
+        }
+    }
+
+    private static String dump(SimpleNode node) throws Exception {
+        DumpVisitor visitor = new DumpVisitor();
+        node.accept(visitor);
+        return visitor.buf.toString();
+    }
+
+    private SimpleNode parseInitial(String contents) {
+        doc = new Document(contents);
+        return parseLegalDoc(doc, new Object[0], parser);
+    }
+
+    /**
+     * Reparses the current document and checks that the ast is the same one we'd get from a full parse.
+     */
+    private Tuple<SimpleNode, Throwable> checkReparse() throws Exception {
+        Tuple<SimpleNode, Throwable> incremental = parser.reparseDocument();
+        Tuple<SimpleNode, Throwable> full = PyParser.reparseDocument(
+                new ParserInfo(new Document(doc.get()), getDefaultVersion()));
+
+        assertEquals(doc.get(), full.o1 == null, incremental.o1 == null);
+        assertEquals(doc.get()+"\n"+full.o2, full.o2 == null, incremental.o2 == null);
+        if(full.o1 != null){
+            assertEquals(doc.get(), dump(full.o1), dump(incremental.o1));
+        }
+        return incremental;
+    }
+
+    public void testChangedLines() throws Exception {
+        //add 2 lines at line 10
+        ChangedLines changed = new ChangedLines(10, 10, 12);
+        assertEquals(10, changed.startLine);
+        assertEquals(12, changed.endLine);
+        assertEquals(2, changed.linesDelta);
+        assertEquals(10, changed.getOldEndLine());
+
+        //remove line 5 (lines after it go up)
+        changed.add(5, 6, 5);
+        assertEquals(5, changed.startLine);
+        assertEquals(11, changed.endLine);
+        assertEquals(1, changed.linesDelta);
+        assertEquals(10, changed.getOldEndLine());
+
+        //change something after the region
+        changed.add(20, 20, 20);
+        assertEquals(5, changed.startLine);
+        assertEquals(20, changed.endLine);
+        assertEquals(1, changed.linesDelta);
+        assertEquals(19, changed.getOldEndLine());
+    }
+
+    public void testStatementStarts() throws Exception {
+        String s = "" +
+        "import os\n" +
+        "# comment\n" +
+        "if a:\n" +
+        "    pass\n" +
+        "else:\n" +
+        "    pass\n" +
+        "@dec\n" +
+        "@dec2(\n" +
+        "1)\n" +
+        "def m():\n" +
+        "    '''\n" +
+        "not a statement\n" +
+        "'''\n" +
+        "x = \\\n" +
+        "y\r\n" +
+        "call(a,\n" +
+        "b)\n" +
+        "";
+        IncrementalParser.StatementStartsScanner scanner = new IncrementalParser.StatementStartsScanner(s);
+        assertEquals(0, scanner.nextStart());
+        assertEquals(2, scanner.nextStart());
+        assertEquals(6, scanner.nextStart());
+        assertEquals(13, scanner.nextStart());
+        assertEquals(15, scanner.nextStart());
+        assertEquals(s.indexOf("call"), scanner.getLastStartOffset());
+        assertEquals(-1, scanner.nextStart());
+    }
+
+    public void testReparseOnlyChangedStatement() throws Exception {
+        String s = "" +
+        "import os\n" +
+        "\n" +
+        "def m1():\n" +
+        "    pass\n" +
+        "\n" +
+        "class A(object):\n" +
+        "\n" +
+        "    @classmethod\n" +
+        "    def m2(cls):\n" +
+        "        return 1\n" +
+        "\n" +
+        "@decorator\n" +
+        "def m3(a, b):\n" +
+        "    return a + b #comment\n" +
+        "";
+        Module initial = (Module) parseInitial(s);
+
+        //add a new line in m1
+        doc.replace(doc.getLineOffset(3), 0, "    a = 10\n");
+        Module reparsed = (Module) checkReparse().o1;
+        assertSame(initial.body[0], reparsed.body[0]);
+        assertNotSame(initial.body[1], reparsed.body[1]);
+        //the ones after it are copied with the new lines (the previous ast is not changed)
+        assertNotSame(initial.body[2], reparsed.body[2]);
+        assertNotSame(initial.body[3], reparsed.body[3]);
+        assertEquals(6, initial.body[2].beginLine);
+        assertEquals(7, reparsed.body[2].beginLine); //was 6 and a line was added before it.
+
+        //change the decorator
+        doc.replace(doc.getLineOffset(12), 0, "@another_decorator\n");
+        Module reparsed2 = (Module) checkReparse().o1;
+        assertSame(reparsed.body[2], reparsed2.body[2]);
+        assertNotSame(reparsed.body[3], reparsed2.body[3]);
+
+        //change a line (without adding lines): the ones after it are kept as is
+        doc.replace(doc.getLineOffset(4), doc.getLineLength(4), "    b = 20\n");
+        Module reparsed3 = (Module) checkReparse().o1;
+        assertNotSame(reparsed2.body[1], reparsed3.body[1]);
+        assertSame(reparsed2.body[2], reparsed3.body[2]);
+        assertSame(reparsed2.body[3], reparsed3.body[3]);
+
+        //add a statement between the statements
+        doc.replace(doc.getLineOffset(5), 0, "x = 10\n");
+        Module reparsed4 = (Module) checkReparse().o1;
+        assertEquals(5, reparsed4.body.length);
+        assertSame(reparsed3.body[0], reparsed4.body[0]);
+        assertEquals(reparsed3.body[2].beginLine + 1, reparsed4.body[3].beginLine);
+
+        //remove it again
+        doc.replace(doc.getLineOffset(5), doc.getLineLength(5), "");
+        assertEquals(4, ((Module) checkReparse().o1).body.length);
+    }
+
+    public void testListenersGetWholeAst() throws Exception {
+        String s = "" +
+        "def m1():\n" +
+        "    pass\n" +
+        "\n" +
+        "class A(object):\n" +
+        "    pass\n" +
+        "";
+        Module initial = (Module) parseInitial(s);
+        
+        final List<SimpleNode> parsed = new ArrayList<SimpleNode>();
+        ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>> listener = 
+            new ICallback<Object, Tuple3<SimpleNode, Throwable, ParserInfo>>(){
+                public Object call(Tuple3<SimpleNode, Throwable, ParserInfo> arg) {
+                    parsed.add(arg.o1);
+                    return null;
+                }
+            };
+        PyParser.successfulParseListeners.add(listener);
+        try {
+            //change a line (without adding lines), so, the class after it is kept as is
+            doc.replace(doc.getLineOffset(1), doc.getLineLength(1), "    a = 10\n");
+            Module reparsed = (Module) parser.reparseDocument().o1;
+            assertSame(initial.body[1], reparsed.body[1]); //i.e.: it was an incremental reparse
+            
+            //notified only once (with the whole ast and not only with the slice reparsed)
+            assertEquals(1, parsed.size());
+            assertSame(reparsed, parsed.get(0));
+            assertEquals(2, reparsed.body.length);
+        } finally {
+            PyParser.successfulParseListeners.remove(listener);
+        }
+    }
+
+    public void testPreviousAstNotChanged() throws Exception {
+        String s = "" +
+        "def m1():\n" +
+        "    pass\n" +
+        "\n" +
+        "@dec(a=1)\n" +
+        "def m2(a, b=2, *args, **kwargs):\n" +
+        "    try:\n" +
+        "        import os as o\n" +
+        "        from os import path as p\n" +
+        "    except (ImportError, ValueError), e: #comment\n" +
+        "        call(a, b=lambda x=1: x)\n" +
+        "\n" +
+        "class A(object):\n" +
+        "    pass\n" +
+        "";
+        SimpleNode initial = parseInitial(s);
+        String initialDump = dump(initial);
+
+        doc.replace(doc.getLineOffset(1), 0, "    a = 10\n    b = 20\n");
+        checkReparse(); //the dump includes the decorators, keywords, arguments, aliases and except handlers.
+        assertEquals(initialDump, dump(initial));
+
+        doc.replace(doc.getLineOffset(1), doc.getLineLength(1) + doc.getLineLength(2), "");
+        checkReparse();
+        assertEquals(initialDump, dump(initial));
+    }
+
+    public void testErrorsFallbackToFullParse() throws Exception {
+        String s = "" +
+        "def m1():\n" +
+        "    pass\n" +
+        "\n" +
+        "def m2():\n" +
+        "    pass\n" +
+        "";
+        parseInitial(s);
+
+        //unclosed string that'd change the meaning of the statements after the region
+        doc.replace(doc.getLineOffset(1), 0, "    a = '''\n");
+        assertNotNull(checkReparse().o2);
+
+        doc.replace(doc.getLineOffset(1), doc.getLineLength(1), "");
+        assertNull(checkReparse().o2);
+
+        //indent the start of a statement so that it becomes part of the previous one
+        doc.replace(doc.getLineOffset(3), 0, "    ");
+        checkReparse();
+
+        //multiple changes in different places
+        doc.replace(doc.getLineOffset(0), 0, "# comment\n");
+        doc.replace(doc.getLineOffset(5), 0, "    b = 20\n");
+        checkReparse();
+    }
+
+    public void testComments() throws Exception {
+        String s = "" +
+        "class A:\n" +
+        "    pass\n" +
+        "    # comment at the end of A\n" +
+        "\n" +
+        "# comment before m1\n" +
+        "def m1():\n" +
+        "    pass\n" +
+        "\n" +
+        "def m2():\n" +
+        "    pass\n" +
+        "# end comment\n" +
+        "";
+        parseInitial(s);
+        doc.replace(doc.getLineOffset(1), 0, "    a = 10\n");
+        checkReparse();
+        doc.replace(doc.getLineOffset(7), 0, "    a = 10\n");
+        checkReparse();
+        doc.replace(doc.getLineOffset(9), 0, "    # new comment\n");
+        checkReparse();
+        doc.replace(doc.getLineOffset(11), 0, "    a = 10\n");
+        checkReparse();
+    }
+
+    public void testRandomEdits() throws Exception {
+        String[] edits = new String[]{
+                "\n",
+                "    a = 10\n",
+                "x = 20\n",
+                "# comment\n",
+                "    # comment\n",
+                "def method():\n    pass\n",
+                "@decorator\n",
+                "class B(object):\n    '''doc'''\n",
+                "    ",
+                "(",
+                "'''",
+                "x = \\\n",
+        };
+        String[] files = new String[]{
+                TestDependent.TEST_PYDEV_PLUGIN_LOC+"PySrc/pycompletionserver.py",
+                TestDependent.TEST_PYDEV_PLUGIN_LOC+"PySrc/importsTipper.py",
+                TestDependent.TEST_PYDEV_PLUGIN_LOC+"PySrc/pydevconsole.py",
+        };
+        Random random = new Random(1);
+        for(String f:files){
+            parseInitial(REF.getFileContents(new File(f)));
+            String lastValid = doc.get();
+            for(int i=0;i<100;i++){
+                int line = random.nextInt(doc.getNumberOfLines());
+                if(random.nextInt(3) == 0){
+                    //remove a line
+                    doc.replace(doc.getLineOffset(line), doc.getLineLength(line), "");
+                }else{
+                    doc.replace(doc.getLineOffset(line), 0, edits[random.nextInt(edits.length)]);
+                }
+                if(random.nextInt(3) == 0){
+                    //accumulate some changes before reparsing
+                    continue;
+                }
+                if(checkReparse().o2 != null){
+                    //go back to a valid state (otherwise we'd only do full parses from now on)
+                    doc.set(lastValid);
+                    checkReparse();
+                }else{
+                    lastValid = doc.get();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.preference.PreferenceStore;
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.parser.ParsingExecutor.ParseRequest;
+import org.python.pydev.parser.jython.SimpleNode;
+
+public class ParserSchedulerTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ParserSchedulerTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PreferenceStore prefs = new PreferenceStore();
+        prefs.setValue(PyParserManager.PYDEV_ELAPSE_BEFORE_ANALYSIS, 300);
+        PyParserManager.setPyParserManager(null);
+        PyParserManager.getPyParserManager(prefs);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PyParserManager.setPyParserManager(null);
+        super.tearDown();
+    }
+
+    /**
+     * Parser that just counts the parses requested.
+     */
+    private static final class CountingParser extends PyParser{
+
+        private volatile int parses;
+
+        private CountingParser() {
+            super((IGrammarVersionProvider)null);
+        }
+
+        @Override
+        Tuple<SimpleNode, Throwable> reparseDocument(boolean useAstCache, Object[] argsToReparse) {
+            synchronized(this){
+                parses++;
+                this.notifyAll();
+            }
+            return new Tuple<SimpleNode, Throwable>(null, null);
+        }
+
+        private synchronized void waitParses(int expected) throws InterruptedException {
+            long timeout = System.currentTimeMillis() + 5000;
+            while(parses < expected && System.currentTimeMillis() < timeout){
+                this.wait(50);
+            }
+            assertEquals(expected, parses);
+        }
+    }
+
+    public void testCoalesceRequests() throws Exception {
+        CountingParser parser = new CountingParser();
+        ParserScheduler scheduler = new ParserScheduler(parser);
+        for(int i=0;i<50;i++){
+            scheduler.parseNow();
+            scheduler.parseLater();
+        }
+        parser.waitParses(1);
+        synchronized(this){
+            wait(500);
+        }
+        assertEquals(1, parser.parses);
+
+        assertTrue(scheduler.parseNow(true));
+        parser.waitParses(2);
+        scheduler.dispose();
+    }
+
+    public void testPriority() throws Exception {
+        CountingParser parser = new CountingParser();
+        ParseRequest normal = new ParseRequest(new ParserScheduler(parser), ParsingExecutor.PRIORITY_NORMAL);
+        ParseRequest high = new ParseRequest(new ParserScheduler(parser), ParsingExecutor.PRIORITY_HIGH);
+        ParseRequest normal2 = new ParseRequest(new ParserScheduler(parser), ParsingExecutor.PRIORITY_NORMAL);
+        assertTrue(high.compareTo(normal) < 0);
+        assertTrue(normal.compareTo(normal2) < 0);
+        assertTrue(normal2.compareTo(high) > 0);
+    }
+
+    public void testMetrics() throws Exception {
+        CountingParser parser = new CountingParser();
+        parser.setDocument(new Document(), false, null);
+        ParsingExecutor executor = ParsingExecutor.getExecutor();
+        long before = executor.getParsesDone();
+        ParserScheduler scheduler = new ParserScheduler(parser);
+        scheduler.parseNow(true);
+        parser.waitParses(1);
+        long timeout = System.currentTimeMillis() + 5000;
+        while(executor.getParsesDone() == before && System.currentTimeMillis() < timeout){
+            synchronized(this){
+                wait(10);
+            }
+        }
+        assertTrue(executor.getParsesDone() > before);
+        assertTrue(executor.getAverageParseMillis() >= 0);
+        scheduler.dispose();
+    }
+
+    public void testStaleRequestNotCounted() throws Exception {
+        CountingParser parser = new CountingParser();
+        ParsingExecutor executor = ParsingExecutor.getExecutor();
+        long before = executor.getParsesDone();
+
+        //not the request queued in the scheduler (i.e.: it was replaced or disposed)
+        new ParseRequest(new ParserScheduler(parser), ParsingExecutor.PRIORITY_NORMAL).run();
+        assertEquals(0, parser.parses);
+        assertEquals(before, executor.getParsesDone());
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.fastparser;
+
+import java.io.File;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.REF;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Assign;
+import org.python.pydev.parser.jython.ast.Attribute;
+import org.python.pydev.parser.jython.ast.ClassDef;
+import org.python.pydev.parser.jython.ast.FunctionDef;
+import org.python.pydev.parser.jython.ast.Module;
+import org.python.pydev.parser.jython.ast.NameTok;
+import org.python.pydev.parser.visitors.scope.ASTEntry;
+import org.python.pydev.parser.visitors.scope.DefinitionsASTIteratorVisitor;
+
+public class DefinitionsSnapshotTest extends TestCase {
+
+    private File baseDir;
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(DefinitionsSnapshotTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = new File(System.getProperty("java.io.tmpdir"), "DefinitionsSnapshotTest");
+        if(baseDir.exists()){
+            REF.deleteDirectoryTree(baseDir);
+        }
+        baseDir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        REF.deleteDirectoryTree(baseDir);
+        super.tearDown();
+    }
+
+    /**
+     * @return a string with the definitions found by the DefinitionsASTIteratorVisitor
+     */
+    private String getOutline(SimpleNode node) throws Exception {
+        DefinitionsASTIteratorVisitor visitor = new DefinitionsASTIteratorVisitor();
+        node.accept(visitor);
+        FastStringBuffer buf = new FastStringBuffer();
+        for(Iterator<ASTEntry> it = visitor.getOutline(); it.hasNext();){
+            ASTEntry entry = it.next();
+            buf.append(entry.getName()).append(' ').append(entry.node.beginLine).append(' ');
+            buf.append(entry.node.beginColumn).append(' ').append(entry.parent == null ? "" : entry.parent.getName());
+            buf.append('\n');
+        }
+        return buf.toString();
+    }
+
+    public void testSnapshot() throws Exception {
+        String contents = "" +
+                "GLOBAL = 1\n" +
+                "class Foo:\n" +
+                "    ATTR = 2\n" +
+                "    def __init__(self):\n" +
+                "        self.a = 1\n" +
+                "        self.b = 2\n" +
+                "    class Inner:\n" +
+                "        pass\n" +
+                "def method():\n" +
+                "    pass\n";
+        File module = new File(baseDir, "mod.py");
+        REF.writeStrToFile(contents, module);
+        SimpleNode parsed = FastDefinitionsParser.parse(contents, "mod");
+
+        File snapshotFile = new File(baseDir, "snapshot");
+        DefinitionsSnapshot snapshot = new DefinitionsSnapshot(snapshotFile);
+        long lastModified = module.lastModified();
+        long size = module.length();
+        assertNull(snapshot.get(module, null, lastModified, size));
+        snapshot.put(module, null, lastModified, size, parsed);
+        snapshot.save();
+        assertTrue(new File(baseDir, "snapshot.1").isFile());
+
+        //a new one reads it from the disk
+        snapshot = new DefinitionsSnapshot(snapshotFile);
+        Module restored = (Module) snapshot.get(module, null, lastModified, size);
+        assertEquals(getOutline(parsed), getOutline(restored));
+        assertEquals(1, snapshot.getHits());
+
+        ClassDef classDef = (ClassDef) restored.body[1];
+        assertEquals(2, classDef.beginLine);
+        assertEquals(3, classDef.body.length);
+        FunctionDef init = (FunctionDef) classDef.body[1];
+        assertEquals("__init__", ((NameTok)init.name).id);
+        assertEquals(2, init.body.length);
+        assertEquals("b", ((NameTok)((Attribute)((Assign)init.body[1]).targets[0]).attr).id);
+
+        //changed: not returned
+        assertNull(snapshot.get(module, null, lastModified, size+1));
+        assertNull(snapshot.get(module, null, lastModified+1, size));
+        assertNull(snapshot.get(module, "mod.py", lastModified, size));
+    }
+
+    public void testUnusedEntriesOfChangedFilesRemoved() throws Exception {
+        File mod1 = new File(baseDir, "mod1.py");
+        File mod2 = new File(baseDir, "mod2.py");
+        REF.writeStrToFile("a = 1\n", mod1);
+        REF.writeStrToFile("b = 1\n", mod2);
+
+        File snapshotFile = new File(baseDir, "snapshot");
+        DefinitionsSnapshot snapshot = new DefinitionsSnapshot(snapshotFile);
+        snapshot.put(mod1, null, mod1.lastModified(), mod1.length(), FastDefinitionsParser.parse("a = 1\n", "mod1"));
+        snapshot.put(mod2, null, mod2.lastModified(), mod2.length(), FastDefinitionsParser.parse("b = 1\n", "mod2"));
+        snapshot.put(mod2, "zipped.py", mod2.lastModified(), mod2.length(), FastDefinitionsParser.parse("c = 1\n", "zipped"));
+        snapshot.save();
+
+        REF.writeStrToFile("a = 10\n", mod1);
+        snapshot = new DefinitionsSnapshot(snapshotFile);
+        File mod3 = new File(baseDir, "mod3.py");
+        REF.writeStrToFile("c = 1\n", mod3);
+        snapshot.put(mod3, null, mod3.lastModified(), mod3.length(), FastDefinitionsParser.parse("c = 1\n", "mod3"));
+        snapshot.save();
+
+        snapshot = new DefinitionsSnapshot(snapshotFile);
+        assertEquals(3, snapshot.size());
+        assertNotNull(snapshot.get(mod2, null, mod2.lastModified(), mod2.length()));
+        assertNotNull(snapshot.get(mod2, "zipped.py", mod2.lastModified(), mod2.length()));
+        assertNotNull(snapshot.get(mod3, null, mod3.lastModified(), mod3.length()));
+    }
+
+    public void testSaveWhileMapped() throws Exception {
+        File mod1 = new File(baseDir, "mod1.py");
+        File mod2 = new File(baseDir, "mod2.py");
+        REF.writeStrToFile("a = 1\n", mod1);
+        REF.writeStrToFile("b = 1\n", mod2);
+
+        File snapshotFile = new File(baseDir, "snapshot");
+        DefinitionsSnapshot snapshot = new DefinitionsSnapshot(snapshotFile);
+        snapshot.put(mod1, null, mod1.lastModified(), mod1.length(), FastDefinitionsParser.parse("a = 1\n", "mod1"));
+        snapshot.save();
+
+        //the entry is now read from the mapped file and a new generation is written
+        assertNotNull(snapshot.get(mod1, null, mod1.lastModified(), mod1.length()));
+        snapshot.put(mod2, null, mod2.lastModified(), mod2.length(), FastDefinitionsParser.parse("b = 1\n", "mod2"));
+        snapshot.save();
+        assertTrue(new File(baseDir, "snapshot.2").isFile());
+        assertEquals(2, snapshot.size());
+        assertNotNull(snapshot.get(mod1, null, mod1.lastModified(), mod1.length()));
+
+        //a leftover generation is removed when loading
+        REF.writeStrToFile("", new File(baseDir, "snapshot.1"));
+        snapshot = new DefinitionsSnapshot(snapshotFile);
+        assertEquals(2, snapshot.size());
+        assertFalse(new File(baseDir, "snapshot.1").exists());
+
+        snapshot.clear();
+        assertFalse(new File(baseDir, "snapshot.2").exists());
+        assertEquals(0, new DefinitionsSnapshot(snapshotFile).size());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.parser.profile;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.structure.FastStringBuffer;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.PyParserTestBase;
+import org.python.pydev.parser.jython.SimpleNode;
+import org.python.pydev.parser.jython.ast.Module;
+
+/**
+ * Compares the time to reparse a big module after a small edit with the full parse and with the incremental parse.
+ */
+public class IncrementalParseBenchmark extends PyParserTestBase {
+
+    private static final int EDITS = 50;
+
+    public static void main(String[] args) {
+        try {
+            IncrementalParseBenchmark test = new IncrementalParseBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.testEditBigModule();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        //don't let the scheduler parse in a thread when the document changes
+        parser.resetTimeoutPreferences(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PyParser.USE_INCREMENTAL_PARSE = true;
+        super.tearDown();
+    }
+
+    private static String createBigModule(int classes) {
+        FastStringBuffer buf = new FastStringBuffer(classes*300);
+        buf.append("import os\nimport sys\n\n");
+        for(int i=0;i<classes;i++){
+            buf.append("class Class").append(i).append("(object):\n");
+            buf.append("    '''\n    Docstring for Class").append(i).append("\n    '''\n\n");
+            buf.append("    def method(self, a, b=10):\n");
+            buf.append("        if a > b:\n            return [x for x in range(a) if x % 2]\n");
+            buf.append("        return {'a': a, 'b': b}\n\n");
+            buf.append("def function").append(i).append("(*args, **kwargs):\n");
+            buf.append("    #comment\n    return Class").append(i).append("().method(*args, **kwargs)\n\n");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Edits lines in the middle of a module with 1000 classes/functions (~13000 lines) and reparses it.
+     */
+    public void testEditBigModule() throws Exception {
+        String contents = createBigModule(1000);
+        long full = timeEdits(contents, false);
+        long incremental = timeEdits(contents, true);
+        if(printTimes){
+            System.out.println("Full parse: "+full+" ms ("+EDITS+" edits)");
+            System.out.println("Incremental parse: "+incremental+" ms ("+EDITS+" edits)");
+        }
+    }
+
+    private long timeEdits(String contents, boolean useIncremental) throws Exception {
+        PyParser.USE_INCREMENTAL_PARSE = useIncremental;
+        Document doc = new Document(contents);
+        Module initial = (Module) parseLegalDoc(doc, new Object[0]);
+        int stmts = initial.body.length;
+
+        long curr = System.currentTimeMillis();
+        for(int i=0;i<EDITS;i++){
+            int line = doc.getNumberOfLines()/2 + i*3;
+            doc.replace(doc.getLineOffset(line), 0, "\n");
+            Tuple<SimpleNode, Throwable> obj = parser.reparseDocument();
+            assertNull(obj.o2);
+            assertEquals(stmts, ((Module) obj.o1).body.length);
+        }
+        return System.currentTimeMillis()-curr;
+    }
+}
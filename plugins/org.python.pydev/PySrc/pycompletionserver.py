@@ -55,6 +55,10 @@ for name, mod in sys.modules.items():
 
 import traceback
 import time
+try:
+    import struct
+except ImportError:
+    struct = None #the binary protocol is not supported without it
 
 try:
     import StringIO
@@ -97,6 +101,21 @@ MSG_IMPORTS = '@@IMPORTS:'
 MSG_PYTHONPATH = '@@PYTHONPATH_END@@'
 MSG_CHANGE_PYTHONPATH = '@@CHANGE_PYTHONPATH:'
 MSG_SEARCH = '@@SEARCH'
+MSG_BINARY_PROTOCOL = '@@BINARY_PROTOCOL_END@@'
+MSG_BINARY_PROTOCOL_UNSUPPORTED = '@@BINARY_PROTOCOL_UNSUPPORTED_END@@'
+
+#After the MSG_BINARY_PROTOCOL is answered with MSG_OK, the requests are received as an int with the length
+#followed by the request (utf-8) and the responses are sent as frames with a byte for the type, an int with
+#the length and the payload (see: Processor.formatCompletionMessageBinary).
+FRAME_PROGRESS = 1
+FRAME_COMPLETIONS = 2
+FRAME_OK = 3
+FRAME_INVALID_REQUEST = 4
+
+if IS_PYTHON3K:
+    EMPTY_BYTES = bytes()
+else:
+    EMPTY_BYTES = ''
 
 BUFFER_SIZE = 1024
 
@@ -116,6 +135,28 @@ def CompleteFromDir(dir):
     sys.path.insert(0, dir)
 
 
+def ToBytes(msg):
+    '''
+    @return: the msg as a string of bytes encoded in utf-8 (empty strings are sent as ' ', as in the text protocol).
+    '''
+    if IS_PYTHON3K:
+        msg = str(msg)
+        if not msg:
+            msg = ' '
+        return msg.encode('utf-8')
+    
+    try:
+        if isinstance(msg, unicode):
+            msg = msg.encode('utf-8')
+        else:
+            msg = str(msg)
+    except NameError:
+        msg = str(msg) #no unicode type
+    if not msg:
+        msg = ' '
+    return msg
+
+
 def ChangePythonPath(pythonpath):
     '''Changes the pythonpath (clears all the previous pythonpath)
     
@@ -129,25 +170,38 @@ def ChangePythonPath(pythonpath):
         if len(path) > 0:
             sys.path.append(path)
     
+def CreateFrame(frameType, payload=EMPTY_BYTES):
+    return struct.pack('>bi', frameType, len(payload)) + payload
+
+
 class KeepAliveThread(Thread):
-    def __init__(self, socket):
+    def __init__(self, socket, binary=False):
         Thread.__init__(self)
         self.socket = socket
         self.processMsgFunc = None
         self.lastMsg = None
+        self.binary = binary
     
     def run(self):
         time.sleep(0.1)
         
+        binary = self.binary
         def send(s, msg):
-            if IS_PYTHON3K:
+            if binary:
+                s.sendall(msg) #already encoded as a frame
+            elif IS_PYTHON3K:
                 s.send(bytearray(msg, 'utf-8'))
             else:
                 s.send(msg)
             
         while self.lastMsg == None:
             
-            if self.processMsgFunc != None:
+            if binary:
+                if self.processMsgFunc != None:
+                    sent = send(self.socket, CreateFrame(FRAME_PROGRESS, ToBytes(self.processMsgFunc())))
+                else:
+                    sent = send(self.socket, CreateFrame(FRAME_PROGRESS))
+            elif self.processMsgFunc != None:
                 s = MSG_PROCESSING_PROGRESS % quote_plus(self.processMsgFunc())
                 sent = send(self.socket, s)
             else:
@@ -207,6 +261,37 @@ class Processor:
         
         return '%s(%s)%s' % (MSG_COMPLETIONS, ''.join(compMsg), MSG_END)
     
+    
+    def formatCompletionMessageBinary(self, defFile, completionsList):
+        '''
+        Format the completions suggestions as a frame whose payload is:
+        
+        the module file, the number of completions and then 4 strings for each completion (token, description, 
+        args and type -- None if not available)
+        
+        where each string is an int with its length (or -1 for None) followed by its bytes in utf-8.
+        '''
+        parts = []
+        
+        def append(msg):
+            if msg is None:
+                parts.append(struct.pack('>i', -1))
+            else:
+                msg = ToBytes(msg)
+                parts.append(struct.pack('>i', len(msg)))
+                parts.append(msg)
+                
+        append('%s' % (defFile,))
+        parts.append(struct.pack('>i', len(completionsList)))
+        for tup in completionsList:
+            for i in range(4):
+                if i < len(tup):
+                    append(tup[i])
+                else:
+                    append(None)
+                    
+        return CreateFrame(FRAME_COMPLETIONS, EMPTY_BYTES.join(parts))
+    
 
 class T(Thread):
 
@@ -216,6 +301,7 @@ class T(Thread):
         self.serverPort = serverP
         self.socket = None #socket to send messages.
         self.processor = Processor()
+        self.binary = False #whether the binary protocol was requested.
 
 
     def connectToServer(self):
@@ -232,8 +318,43 @@ class T(Thread):
         '''
         get message with completions.
         '''
+        if self.binary:
+            return self.processor.formatCompletionMessageBinary(defFile, completionsList)
         return self.processor.formatCompletionMessage(defFile, completionsList)
     
+    def getOkMessage(self):
+        if self.binary:
+            return CreateFrame(FRAME_OK)
+        return MSG_OK
+    
+    def getInvalidRequestMessage(self):
+        if self.binary:
+            return CreateFrame(FRAME_INVALID_REQUEST)
+        return MSG_INVALID_REQUEST
+    
+    def receiveAll(self, conn, size):
+        '''
+        @return: the given number of bytes read from the connection (exits if the connection is closed).
+        '''
+        parts = []
+        while size > 0:
+            received = conn.recv(size)
+            if len(received) == 0:
+                sys.exit(0) #ok, connection ended
+            parts.append(received)
+            size -= len(received)
+        return EMPTY_BYTES.join(parts)
+    
+    def receiveRequest(self, conn):
+        '''
+        @return: the contents of a request sent in the binary protocol (the same message as in the text protocol).
+        '''
+        size = struct.unpack('>i', self.receiveAll(conn, 4))[0]
+        data = self.receiveAll(conn, size)
+        if IS_PYTHON3K:
+            data = data.decode('utf-8')
+        return data
+    
     def getTokenAndData(self, data):
         '''
         When we receive this, we have 'token):data'
@@ -282,16 +403,19 @@ class T(Thread):
             while 1:
                 data = ''
                 returnMsg = ''
-                keepAliveThread = KeepAliveThread(self.socket)
+                keepAliveThread = KeepAliveThread(self.socket, self.binary)
                 
-                while data.find(MSG_END) == -1:
-                    received = conn.recv(BUFFER_SIZE)
-                    if len(received) == 0:
-                        sys.exit(0) #ok, connection ended
-                    if IS_PYTHON3K:
-                        data = data + received.decode('utf-8')
-                    else:
-                        data = data + received
+                if self.binary:
+                    data = self.receiveRequest(conn)
+                else:
+                    while data.find(MSG_END) == -1:
+                        received = conn.recv(BUFFER_SIZE)
+                        if len(received) == 0:
+                            sys.exit(0) #ok, connection ended
+                        if IS_PYTHON3K:
+                            data = data + received.decode('utf-8')
+                        else:
+                            data = data + received
     
                 try:
                     try:
@@ -304,7 +428,15 @@ class T(Thread):
                         dbg(SERVER_NAME + ' starting keep alive thread', INFO2)
                         keepAliveThread.start()
                         
-                        if data.find(MSG_PYTHONPATH) != -1:
+                        if data.find(MSG_BINARY_PROTOCOL) != -1:
+                            #answered in the text protocol: the binary protocol starts in the next request.
+                            if struct is not None and hasattr(self.socket, 'sendall'):
+                                returnMsg = MSG_OK
+                                self.binary = True
+                            else:
+                                returnMsg = MSG_BINARY_PROTOCOL_UNSUPPORTED
+                            
+                        elif data.find(MSG_PYTHONPATH) != -1:
                             comps = []
                             for p in _sys_path:
                                 comps.append((p, ' '))
@@ -323,7 +455,7 @@ class T(Thread):
                                 data = data.replace(MSG_CHANGE_PYTHONPATH, '')
                                 data = unquote_plus(data)
                                 ChangePythonPath(data)
-                                returnMsg = MSG_OK
+                                returnMsg = self.getOkMessage()
         
                             elif data.startswith(MSG_SEARCH):
                                 data = data.replace(MSG_SEARCH, '')
@@ -335,13 +467,13 @@ class T(Thread):
                                 data = data.replace(MSG_CHANGE_DIR, '')
                                 data = unquote_plus(data)
                                 CompleteFromDir(data)
-                                returnMsg = MSG_OK
+                                returnMsg = self.getOkMessage()
                                 
                             elif data.startswith(MSG_BIKE): 
-                                returnMsg = MSG_INVALID_REQUEST #No longer supported.
+                                returnMsg = self.getInvalidRequestMessage() #No longer supported.
                                 
                             else:
-                                returnMsg = MSG_INVALID_REQUEST
+                                returnMsg = self.getInvalidRequestMessage()
                     except SystemExit:
                         returnMsg = self.getCompletionsMessage(None, [('Exit:', 'SystemExit', '')])
                         keepAliveThread.lastMsg = returnMsg
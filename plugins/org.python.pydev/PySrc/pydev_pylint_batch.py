@@ -0,0 +1,76 @@
+'''
+Runs pylint on many files in the same process (so that the interpreter and pylint are loaded only once).
+
+Usage: python pydev_pylint_batch.py <location of pylint/lint.py> [pylint args]
+
+The files to be analyzed are read from stdin (one per line, an empty line or the end of stdin finishes) and for
+each file, pylint is run with the given args + the file (in the dir of the file, as when it's run for a single file)
+and its stdout is written followed by MSG_STDERR, its stderr and MSG_FILE_END (each in a separate line).
+
+@author Fabio Zadrozny
+'''
+import sys
+import os
+import traceback
+
+try:
+    from StringIO import StringIO
+except ImportError:
+    from io import StringIO #Python 3.0
+
+MSG_STDERR = '@@PYDEV_PYLINT_STDERR@@'
+MSG_FILE_END = '@@PYDEV_PYLINT_FILE_END@@'
+
+
+def RunPyLint(lint, args, filename):
+    '''
+    @return: a tuple with the stdout and stderr of running pylint for the given file.
+    '''
+    out = StringIO()
+    err = StringIO()
+
+    originalOut = sys.stdout
+    originalErr = sys.stderr
+    sys.stdout = out
+    sys.stderr = err
+    try:
+        try:
+            os.chdir(os.path.dirname(filename))
+            lint.Run(args + [filename])
+        except SystemExit:
+            pass #pylint always exits at the end
+        except:
+            traceback.print_exc()
+    finally:
+        sys.stdout = originalOut
+        sys.stderr = originalErr
+
+    return out.getvalue(), err.getvalue()
+
+
+def main():
+    lintLocation = os.path.abspath(sys.argv[1])
+    args = sys.argv[2:]
+
+    #the dir of the lint.py is the pylint package (its parent is where it may be imported from)
+    sys.path.insert(0, os.path.dirname(os.path.dirname(lintLocation)))
+    from pylint import lint
+
+    while True:
+        line = sys.stdin.readline()
+        filename = line.strip()
+        if not filename:
+            break
+
+        out, err = RunPyLint(lint, args, filename)
+
+        write = sys.stdout.write
+        write(out)
+        write('\n%s\n' % (MSG_STDERR,))
+        write(err)
+        write('\n%s\n' % (MSG_FILE_END,))
+        sys.stdout.flush()
+
+
+if __name__ == '__main__':
+    main()
@@ -57,7 +57,42 @@ if sys.platform.find('java') == -1:
             l.append(('De,f)2', 'de,s,c,ription2', ''))
             msg = t.processor.formatCompletionMessage(None, l)
             self.assertEquals('@@COMPLETIONS(None,(Def,desc%2C%2Cr%2C%2Ci%28%29ption, ),(Def%281,descriptio%28n1, ),(De%2Cf%292,de%2Cs%2Cc%2Cription2, ))END@@', msg)
-    
+
+        def testBinaryMessage(self):
+            import struct
+            t = pycompletionserver.T(0, 0)
+
+            l = []
+            l.append(('Def', 'desc,,r,,i()ption', '', '1'))
+            l.append(('Def1', 'description1'))
+            msg = t.processor.formatCompletionMessageBinary(None, l)
+
+            frameType, length = struct.unpack('>bi', msg[:5])
+            self.assertEquals(pycompletionserver.FRAME_COMPLETIONS, frameType)
+            self.assertEquals(len(msg) - 5, length)
+
+            payload = msg[5:]
+            pos = [0]
+            def readInt():
+                i = struct.unpack('>i', payload[pos[0]:pos[0] + 4])[0]
+                pos[0] += 4
+                return i
+            def readString():
+                size = readInt()
+                if size == -1:
+                    return None
+                s = payload[pos[0]:pos[0] + size]
+                pos[0] += size
+                if IS_PYTHON_3K:
+                    s = s.decode('utf-8')
+                return s
+
+            self.assertEquals('None', readString())
+            self.assertEquals(2, readInt())
+            self.assertEquals(['Def', 'desc,,r,,i()ption', ' ', '1'], [readString() for i in range(4)])
+            self.assertEquals(['Def1', 'description1', None, None], [readString() for i in range(4)])
+            self.assertEquals(len(payload), pos[0])
+
         def createConnections(self, p1=50002, p2=50003):
             '''
             Creates the connections needed for testing.
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.python.pydev.core.log.Log;
+
+/**
+ * Helper to build many items in parallel: the items are prepared in worker threads (i.e.: read, parsed and
+ * passed to the thread-safe visitors) and consumed one at a time in the thread that called {@link #build()}
+ * (i.e.: passed to the visitors that are not thread-safe), in the order in which they were prepared.
+ *
+ * The number of prepared items waiting to be consumed is bounded (so, the workers wait if the consumer can't keep up).
+ *
+ * @param <W> the state kept by each worker thread (created in the worker thread).
+ * @param <T> the type of the prepared items.
+ *
+ * @author Fabio
+ */
+public abstract class ParallelBuild<W, T> {
+
+    /**
+     * Marks that a worker finished.
+     */
+    private static final Object WORKER_FINISHED = new Object();
+
+    private final int items;
+    private final int nThreads;
+    private final ArrayBlockingQueue<Object> prepared;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Set when the build should stop (canceled or the consumer was interrupted).
+     */
+    private volatile boolean stop = false;
+
+    /**
+     * Set when the consumer stopped consuming (interrupted), in which case nothing else should be added.
+     */
+    private volatile boolean consumerFinished = false;
+
+    /**
+     * @param items the number of items to be built.
+     * @param nThreads the number of worker threads.
+     * @param maxPrepared the maximum number of items prepared and waiting to be consumed.
+     */
+    public ParallelBuild(int items, int nThreads, int maxPrepared) {
+        this.items = items;
+        this.nThreads = Math.max(1, Math.min(nThreads, items));
+        this.prepared = new ArrayBlockingQueue<Object>(Math.max(1, maxPrepared));
+    }
+
+    /**
+     * Called in the worker thread when it starts.
+     */
+    protected abstract W createWorkerState();
+
+    /**
+     * Called in the worker thread when it finishes.
+     */
+    protected void disposeWorkerState(W state) {
+    }
+
+    /**
+     * Called in some worker thread to prepare the item at the given index.
+     *
+     * @return the object to be consumed (if null, nothing is consumed for the item).
+     */
+    protected abstract T prepare(W state, int index) throws Exception;
+
+    /**
+     * Called in the thread that called build() for each prepared item.
+     */
+    protected abstract void consume(T prepared) throws Exception;
+
+    /**
+     * @return whether the build was canceled (called from the worker threads and from the consumer).
+     */
+    protected abstract boolean isCanceled();
+
+    /**
+     * Builds all the items (returns only when all the workers are finished).
+     */
+    @SuppressWarnings("unchecked")
+    public void build() {
+        for(int i=0;i<nThreads;i++){
+            Thread worker = new Thread(){
+                @Override
+                public void run() {
+                    work();
+                }
+            };
+            worker.setName("PyDev: parallel build worker " + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        int finished = 0;
+        while(finished < nThreads){
+            Object o;
+            try {
+                o = prepared.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                stop = true;
+                consumerFinished = true;
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if(!stop && isCanceled()){
+                stop = true;
+            }
+            if(o == null){
+                continue;
+            }
+            if(o == WORKER_FINISHED){
+                finished++;
+
+            }else if(!stop){ //if stopped, just drain what's still there
+                try {
+                    consume((T) o);
+                } catch (Throwable e) {
+                    Log.log(e);
+                }
+            }
+        }
+    }
+
+    private void work() {
+        W state = null;
+        try {
+            state = createWorkerState();
+            while(!stop){
+                if(isCanceled()){
+                    stop = true;
+                    break;
+                }
+                int i = next.getAndIncrement();
+                if(i >= items){
+                    break;
+                }
+                T t = null;
+                try {
+                    t = prepare(state, i);
+                } catch (Throwable e) {
+                    Log.log(e);
+                }
+                if(t != null){
+                    put(t);
+                }
+            }
+        } catch (Throwable e) {
+            Log.log(e);
+        } finally {
+            try {
+                if(state != null){
+                    disposeWorkerState(state);
+                }
+            } catch (Throwable e) {
+                Log.log(e);
+            } finally {
+                put(WORKER_FINISHED);
+            }
+        }
+    }
+
+    /**
+     * Puts an object to be consumed (if the build was stopped, prepared items are discarded, but the
+     * WORKER_FINISHED is always added as the consumer keeps draining the queue until all the workers finish).
+     */
+    private void put(Object o) {
+        while(true){
+            try {
+                if(prepared.offer(o, 50, TimeUnit.MILLISECONDS)){
+                    return;
+                }
+            } catch (InterruptedException e) {
+                //keep on going (we must still put the WORKER_FINISHED)
+            }
+            if(consumerFinished || (stop && o != WORKER_FINISHED)){
+                return;
+            }
+        }
+    }
+}
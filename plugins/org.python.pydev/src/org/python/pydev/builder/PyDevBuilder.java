@@ -26,6 +26,7 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 import org.python.pydev.builder.pycremover.PycHandlerBuilderVisitor;
 import org.python.pydev.builder.pylint.PyLintVisitor;
@@ -39,6 +40,7 @@ import org.python.pydev.core.log.Log;
 import org.python.pydev.core.structure.FastStringBuffer;
 import org.python.pydev.editor.codecompletion.revisited.PyCodeCompletionVisitor;
 import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
+import org.python.pydev.editor.codecompletion.shell.ShellPool;
 import org.python.pydev.plugin.nature.PythonNature;
 import org.python.pydev.utils.PyFileListing;
 
@@ -51,6 +53,17 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
 
     private static final boolean DEBUG = false;
 
+    /**
+     * If true, on a full build the files are read and parsed (and passed to the thread-safe visitors) in
+     * FULL_BUILD_THREADS worker threads (see buildResourcesInParallel).
+     */
+    public static boolean PARALLEL_FULL_BUILD = true;
+
+    /**
+     * The number of worker threads used in a parallel full build.
+     */
+    public static int FULL_BUILD_THREADS = Runtime.getRuntime().availableProcessors();
+
     /**
      * 
      * @return a list of visitors for building the application.
@@ -77,6 +90,16 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
      * @see org.eclipse.core.internal.events InternalBuilder#build(int, java.util.Map, org.eclipse.core.runtime.IProgressMonitor)
      */
     protected IProject[] build(int kind, Map args, IProgressMonitor monitor) throws CoreException {
+        //what the builders ask to the shells goes to the background lane (see ShellPool)
+        boolean previousBackground = ShellPool.setBackgroundThread(true);
+        try{
+            return doBuild(kind, monitor);
+        }finally{
+            ShellPool.setBackgroundThread(previousBackground);
+        }
+    }
+
+    private IProject[] doBuild(int kind, IProgressMonitor monitor) throws CoreException {
 
         if (PyDevBuilderPrefPage.usePydevBuilders() == false)
             return null;
@@ -254,6 +277,10 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
      * @param visitors
      */
     public void buildResources(List<IFile> resourcesToParse, IProgressMonitor monitor, List<PyDevBuilderVisitor> visitors) {
+        if(PARALLEL_FULL_BUILD && FULL_BUILD_THREADS > 1 && resourcesToParse.size() > 1){
+            buildResourcesInParallel(resourcesToParse, monitor, visitors);
+            return;
+        }
 
         // we have 100 units here
         double inc = (visitors.size() * 100) / (double) resourcesToParse.size();
@@ -331,6 +358,204 @@ public class PyDevBuilder extends IncrementalProjectBuilder {
         }
     }
 
+    /**
+     * The state of a worker thread in a parallel full build.
+     */
+    private static final class WorkerState {
+        private final List<PyDevBuilderVisitor> threadSafeVisitors;
+        
+        /**
+         * Whether the worker thread was marked as a background thread before (restored when it finishes).
+         */
+        private final boolean previousBackground;
+
+        private WorkerState(List<PyDevBuilderVisitor> threadSafeVisitors, boolean previousBackground) {
+            this.threadSafeVisitors = threadSafeVisitors;
+            this.previousBackground = previousBackground;
+        }
+    }
+    
+    /**
+     * A file read (and parsed) in a worker thread, waiting for the visitors that are not thread-safe.
+     */
+    private static final class PreparedFile {
+        private final IFile file;
+        private final IPythonNature nature;
+        private final IDocument document;
+        private final HashMap<String, Object> memo;
+
+        private PreparedFile(IFile file, IPythonNature nature, IDocument document, HashMap<String, Object> memo) {
+            this.file = file;
+            this.nature = nature;
+            this.document = document;
+            this.memo = memo;
+        }
+    }
+
+    /**
+     * Builds the resources with FULL_BUILD_THREADS worker threads: each worker reads and parses the files, puts the 
+     * module in the memo and passes it to its own instances of the thread-safe visitors. The other visitors (from
+     * the passed list) visit the files in this thread, one at a time.
+     * 
+     * The progress is only reported from this thread.
+     */
+    private void buildResourcesInParallel(final List<IFile> resourcesToParse, final IProgressMonitor monitor, 
+            List<PyDevBuilderVisitor> visitors) {
+        
+        final List<PyDevBuilderVisitor> serialVisitors = new ArrayList<PyDevBuilderVisitor>();
+        for (PyDevBuilderVisitor visitor : visitors) {
+            if(!visitor.isThreadSafe()){
+                serialVisitors.add(visitor);
+            }
+        }
+        final IPythonNature projectNature = PythonNature.getPythonNature(getProject());
+        final int totalResources = resourcesToParse.size();
+        
+        // we have 100 units here
+        final double inc = (visitors.size() * 100) / (double) totalResources;
+        
+        ParallelBuild<WorkerState, PreparedFile> build = 
+            new ParallelBuild<WorkerState, PreparedFile>(totalResources, FULL_BUILD_THREADS, FULL_BUILD_THREADS * 4){
+            
+            private final FastStringBuffer bufferToCreateString = new FastStringBuffer();
+            private double total = 0;
+            private int i = 0;
+            private volatile boolean loggedMisconfiguration = false;
+            
+            @Override
+            protected WorkerState createWorkerState() {
+                //what the builders ask to the shells goes to the background lane (see ShellPool)
+                boolean previousBackground = ShellPool.setBackgroundThread(true);
+                
+                List<PyDevBuilderVisitor> threadSafeVisitors = new ArrayList<PyDevBuilderVisitor>();
+                for (PyDevBuilderVisitor visitor : getVisitors()) {
+                    if(visitor.isThreadSafe()){
+                        threadSafeVisitors.add(visitor);
+                    }
+                }
+                Collections.sort(threadSafeVisitors);
+                notifyVisitingWillStart(threadSafeVisitors, new NullProgressMonitor(), true, projectNature);
+                return new WorkerState(threadSafeVisitors, previousBackground);
+            }
+            
+            @Override
+            protected void disposeWorkerState(WorkerState state) {
+                try{
+                    notifyVisitingEnded(state.threadSafeVisitors, new NullProgressMonitor());
+                }finally{
+                    ShellPool.setBackgroundThread(state.previousBackground);
+                }
+            }
+            
+            @Override
+            protected PreparedFile prepare(WorkerState state, int index) throws Exception {
+                IFile r = resourcesToParse.get(index);
+                
+                PythonPathHelper.markAsPyDevFileIfDetected(r);
+                
+                IPythonNature nature = PythonNature.getPythonNature(r);
+                if (nature == null){
+                    return new PreparedFile(r, null, null, null);
+                }
+                if(!nature.startRequests()){
+                    return new PreparedFile(r, null, null, null);
+                }
+                try{
+                    String moduleName;
+                    try{
+                        //we visit external because we must index them
+                        moduleName = nature.resolveModuleOnlyInProjectSources(r, true);
+                        if(moduleName == null){
+                            return new PreparedFile(r, null, null, null); // we only analyze resources that are in the pythonpath
+                        }
+                    }catch(Exception e1){
+                        if(!loggedMisconfiguration){
+                            loggedMisconfiguration = true; //No point in logging it over and over again.
+                            Log.log(e1);
+                        }
+                        return new PreparedFile(r, null, null, null);
+                    }
+                    
+                    //create new memo for each resource
+                    HashMap<String, Object> memo = new HashMap<String, Object>();
+                    memo.put(PyDevBuilderVisitor.IS_FULL_BUILD, true); //mark it as full build
+                    
+                    IDocument doc = REF.getDocFromResource(r);
+                    memo.put(PyDevBuilderVisitor.DOCUMENT_TIME, System.currentTimeMillis());
+                    
+                    PyDevBuilderVisitor.setModuleNameInCache(memo, r, moduleName);
+                    
+                    if(doc == null){ //might be out of synch
+                        return new PreparedFile(r, null, null, null);
+                    }
+                    
+                    //parse it here so that the visitors don't have to
+                    try{
+                        PyDevBuilderVisitor.setModuleInCache(memo, r, 
+                                PyDevBuilderVisitor.createSourceModule(r, doc, moduleName));
+                    }catch (Exception e) {
+                        Log.log(e);
+                    }
+                    
+                    NullProgressMonitor nullMonitor = new NullProgressMonitor();
+                    for (PyDevBuilderVisitor visitor : state.threadSafeVisitors) {
+                        if(isCanceled()){
+                            break;
+                        }
+                        try{
+                            visitor.memo = memo; //setting the memo must be the first thing.
+                            //on a full build, all visits are as some add...
+                            visitor.visitAddedResource(r, doc, nullMonitor);
+                        }catch (Exception e) {
+                            Log.log(e);
+                        }
+                    }
+                    return new PreparedFile(r, nature, doc, memo);
+                }finally{
+                    nature.endRequests();
+                }
+            }
+            
+            @Override
+            protected void consume(PreparedFile prepared) throws Exception {
+                i += 1;
+                total += inc;
+                
+                if(prepared.document != null && prepared.nature.startRequests()){
+                    try{
+                        for (Iterator<PyDevBuilderVisitor> it = serialVisitors.iterator(); it.hasNext() && monitor.isCanceled() == false;) {
+                            
+                            try{
+                                PyDevBuilderVisitor visitor = it.next();
+                                visitor.memo = prepared.memo; //setting the memo must be the first thing.
+                                
+                                communicateProgress(monitor, totalResources, i, prepared.file, visitor, bufferToCreateString);
+                                
+                                //on a full build, all visits are as some add...
+                                visitor.visitAddedResource(prepared.file, prepared.document, monitor);
+                            }catch (Exception e) {
+                                Log.log(e);
+                            }
+                        }
+                    }finally{
+                        prepared.nature.endRequests();
+                    }
+                }
+                
+                if (total > 1) {
+                    monitor.worked((int) total);
+                    total -= (int) total;
+                }
+            }
+            
+            @Override
+            protected boolean isCanceled() {
+                return monitor.isCanceled();
+            }
+        };
+        build.build();
+    }
+
     /**
      * Used so that we can communicate the progress to the user
      * 
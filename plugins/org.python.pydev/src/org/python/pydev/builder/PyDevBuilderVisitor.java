@@ -165,6 +165,14 @@ public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisi
      * @param module this is the module to set in the cache
      */
     protected void setModuleInCache(IResource resource, IModule module) {
+        setModuleInCache(memo, resource, module);
+    }
+    
+    /**
+     * @param module this is the module to set in the cache (i.e.: a parallel build may create the module in a 
+     * worker thread so that the visitors don't need to parse it again).
+     */
+    public static void setModuleInCache(Map<String, Object> memo, IResource resource, IModule module) {
         memo.put(MODULE_CACHE+resource.getModificationStamp(), module);
     }
 
@@ -176,6 +184,13 @@ public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisi
      * @throws MisconfigurationException 
      */
     protected SourceModule createSoureModule(IResource resource, IDocument document, String moduleName) throws MisconfigurationException {
+        return createSourceModule(resource, document, moduleName);
+    }
+    
+    /**
+     * Creates the module for the given resource (parsing the document).
+     */
+    public static SourceModule createSourceModule(IResource resource, IDocument document, String moduleName) throws MisconfigurationException {
         SourceModule module;
         PythonNature nature = PythonNature.getPythonNature(resource.getProject());
         IFile f = (IFile) resource;
@@ -314,6 +329,20 @@ public abstract class PyDevBuilderVisitor implements Comparable<PyDevBuilderVisi
         return MAX_TO_VISIT_INFINITE;
     }
     
+    /**
+     * In a parallel full build, the visitors that are thread-safe visit the resources in worker threads (each
+     * worker has its own instances of the visitors, so, the memo is not shared, but any static state must be
+     * thread-safe) and the others visit them in the builder thread.
+     * 
+     * Note that visitors that change the workspace while visiting (i.e.: creating markers or removing files)
+     * must not be thread-safe, as only the builder thread may change it during the build.
+     * 
+     * @return false by default, but may be reimplemented in subclasses.
+     */
+    public boolean isThreadSafe(){
+        return false;
+    }
+    
     /**
      * if all the files below a folder that has an __init__.py just added or removed should 
      * be visited, this method should return true, otherwise it should return false 
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.ui.console.IOConsoleOutputStream;
+import org.python.pydev.builder.PydevMarkerUtils;
+import org.python.pydev.core.REF;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.plugin.PydevPlugin;
+import org.python.pydev.plugin.nature.PythonNature;
+import org.python.pydev.runners.SimplePythonRunner;
+import org.python.pydev.runners.ThreadStreamReader;
+
+/**
+ * Runs pylint for the files collected in a full build: instead of creating a new process for each file,
+ * PyLintPrefPage.getMaxPyLintDelta() processes running pydev_pylint_batch.py are created and each one
+ * analyzes files from a shared queue (so, the interpreter startup and the pylint import are only paid once
+ * per process and not once per file).
+ *
+ * When all the files are analyzed, the markers are added in a single workspace operation.
+ *
+ * @author Fabio
+ */
+public class PyLintBatch extends Thread {
+
+    /**
+     * A file to be analyzed (with the info needed to create its markers later on).
+     */
+    public static class FileToLint {
+        public final IResource resource;
+        public final IDocument document;
+        public final IPath location;
+
+        public FileToLint(IResource resource, IDocument document, IPath location) {
+            this.resource = resource;
+            this.document = document;
+            this.location = location;
+        }
+    }
+
+    /**
+     * The files still to be analyzed (synchronize on it to access it).
+     */
+    private final LinkedList<FileToLint> queue;
+
+    /**
+     * The files analyzed and their markers (synchronize on it to access it).
+     */
+    private final List<Tuple<FileToLint, List<Object[]>>> results = new ArrayList<Tuple<FileToLint, List<Object[]>>>();
+
+    private final int totalFiles;
+
+    public PyLintBatch(List<FileToLint> files) {
+        setName("PyLint batch");
+        this.queue = new LinkedList<FileToLint>(files);
+        this.totalFiles = files.size();
+    }
+
+    /**
+     * @return the next file to be analyzed or null if there are no more files.
+     */
+    private FileToLint nextFile() {
+        synchronized (queue) {
+            if(queue.size() == 0){
+                return null;
+            }
+            return queue.removeFirst();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            IOConsoleOutputStream out = PyLintVisitor.getConsoleOutputStream();
+
+            int nWorkers = Math.min(Math.max(1, PyLintPrefPage.getMaxPyLintDelta()), totalFiles);
+            PyLintVisitor.write("PyLint: Analyzing " + totalFiles + " files with " + nWorkers + " process(es)\n", out);
+
+            List<Thread> workers = new ArrayList<Thread>();
+            for(int i=0;i<nWorkers;i++){
+                Thread worker = new Worker(out);
+                worker.setName("PyLint batch worker: " + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            addMarkers();
+        } catch (final Exception e) {
+            Log.log(e);
+        }
+    }
+
+    /**
+     * Adds all the markers found in a single workspace operation.
+     */
+    private void addMarkers() {
+        final List<Tuple<FileToLint, List<Object[]>>> analyzed;
+        synchronized (results) {
+            analyzed = new ArrayList<Tuple<FileToLint, List<Object[]>>>(results);
+        }
+        if(analyzed.size() == 0){
+            return;
+        }
+
+        new Job("Adding markers"){
+
+            protected IStatus run(IProgressMonitor monitor) {
+                IWorkspaceRunnable r = new IWorkspaceRunnable() {
+
+                    public void run(IProgressMonitor monitor) throws CoreException {
+                        for (Tuple<FileToLint, List<Object[]>> tup : analyzed) {
+                            PydevMarkerUtils.replaceMarkers(PyLintVisitor.createMarkerInfos(tup.o1.document, tup.o2),
+                                    tup.o1.resource, PyLintVisitor.PYLINT_PROBLEM_MARKER, true, monitor);
+                        }
+                    }
+                };
+                try {
+                    ResourcesPlugin.getWorkspace().run(r, null, IWorkspace.AVOID_UPDATE, monitor);
+                } catch (CoreException e) {
+                    Log.log(e);
+                }
+                return PydevPlugin.makeStatus(Status.OK, "", null);
+            }
+        }.schedule();
+    }
+
+    /**
+     * Keeps a pylint process and analyzes files from the queue until it's empty.
+     */
+    private class Worker extends Thread {
+
+        private final IOConsoleOutputStream out;
+
+        private PyLintBatchProcess process;
+        private ThreadStreamReader stderrReader;
+
+        /**
+         * The project for which the current process was created (the process gets the environment from the
+         * project, so, a new one is needed if files from another project are found).
+         */
+        private IProject processProject;
+
+        public Worker(IOConsoleOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                FileToLint file;
+                while((file = nextFile()) != null){
+                    try {
+                        lint(file);
+                    } catch (Exception e) {
+                        Log.log(e);
+                        //the process may be broken, so, a new one is created for the next file.
+                        finishProcess();
+                    }
+                }
+            } finally {
+                finishProcess();
+            }
+        }
+
+        private void lint(FileToLint file) throws Exception {
+            IProject project = file.resource.getProject();
+            if(process == null || !project.equals(processProject)){
+                finishProcess();
+                if(!startProcess(project)){
+                    return;
+                }
+            }
+
+            String path = REF.getFileAbsolutePath(new File(file.location.toOSString()));
+            PyLintVisitor.write("PyLint: Analyzing: " + path + "\n", out);
+
+            Tuple<String, String> outTup;
+            try {
+                outTup = process.lint(path);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage() + "\nProcess stderr: " + stderrReader.getContents(), e);
+            }
+
+            PyLintVisitor.write("PyLint: The stdout of the command line is: " + outTup.o1, out);
+            PyLintVisitor.write("PyLint: The stderr of the command line is: " + outTup.o2, out);
+
+            List<Object[]> markers = new ArrayList<Object[]>();
+            PyLintVisitor.addMarkers(outTup, file.document, markers);
+            synchronized (results) {
+                results.add(new Tuple<FileToLint, List<Object[]>>(file, markers));
+            }
+        }
+
+        /**
+         * @return true if the process could be started and false otherwise.
+         */
+        private boolean startProcess(IProject project) throws Exception {
+            PythonNature nature = PythonNature.getPythonNature(project);
+            if(nature == null){
+                Throwable e = new RuntimeException("PyLint ERROR: Nature not configured for: " + project);
+                Log.log(e);
+                return false;
+            }
+
+            ArrayList<String> args = PyLintVisitor.getPyLintArgs();
+            args.add(0, REF.getFileAbsolutePath(new File(PyLintPrefPage.getPyLintLocation())));
+
+            String[] cmdLine = SimplePythonRunner.preparePythonCallParameters(
+                    nature.getProjectInterpreter().getExecutableOrJar(),
+                    PydevPlugin.getScriptWithinPySrc(PyLintBatchProcess.SCRIPT).getAbsolutePath(),
+                    args.toArray(new String[0]));
+            PyLintVisitor.write("PyLint: Executing command line:'", out, cmdLine, "'\n");
+
+            Process p = new SimplePythonRunner().run(cmdLine, null, nature, null).o1;
+            stderrReader = new ThreadStreamReader(p.getErrorStream());
+            stderrReader.start();
+            process = new PyLintBatchProcess(p);
+            processProject = project;
+            return true;
+        }
+
+        private void finishProcess() {
+            if(process != null){
+                process.finish();
+                process = null;
+                processProject = null;
+            }
+        }
+    }
+}
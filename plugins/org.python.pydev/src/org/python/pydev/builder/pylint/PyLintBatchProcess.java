@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import org.python.pydev.core.Tuple;
+
+/**
+ * Talks with a process running pydev_pylint_batch.py: each file passed is analyzed by pylint in that same process
+ * and the output is read back until the end marker for the file.
+ *
+ * Not thread-safe (each worker should have its own process).
+ *
+ * @author Fabio
+ */
+public final class PyLintBatchProcess {
+
+    public static final String SCRIPT = "pydev_pylint_batch.py";
+
+    private static final String MSG_STDERR = "@@PYDEV_PYLINT_STDERR@@";
+    private static final String MSG_FILE_END = "@@PYDEV_PYLINT_FILE_END@@";
+
+    private final Process process;
+    private final OutputStream in;
+    private final BufferedReader out;
+
+    /**
+     * @param process a process created to run the pydev_pylint_batch.py (its stderr must be consumed by the caller).
+     */
+    public PyLintBatchProcess(Process process) {
+        this.process = process;
+        this.in = process.getOutputStream();
+        this.out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    }
+
+    /**
+     * Runs pylint for the given file (blocks until its output is received).
+     *
+     * @return a tuple with the stdout and stderr of pylint for the file.
+     * @throws IOException if the process finished or the communication failed.
+     */
+    public Tuple<String, String> lint(String file) throws IOException {
+        in.write((file + "\n").getBytes());
+        in.flush();
+
+        StringBuffer stdout = new StringBuffer();
+        StringBuffer stderr = new StringBuffer();
+        StringBuffer current = stdout;
+        while(true){
+            String line = out.readLine();
+            if(line == null){
+                throw new IOException("PyLint process finished while analyzing: " + file + "\nOutput: " + stdout +
+                        "\nErrors: " + stderr);
+            }
+            if(line.equals(MSG_STDERR)){
+                current = stderr;
+            }else if(line.equals(MSG_FILE_END)){
+                break;
+            }else{
+                current.append(line).append('\n');
+            }
+        }
+        return new Tuple<String, String>(stdout.toString(), stderr.toString());
+    }
+
+    /**
+     * Asks the process to finish (and kills it if it doesn't finish by itself in some time).
+     */
+    public void finish() {
+        try {
+            in.write("\n".getBytes());
+            in.close();
+        } catch (IOException e) {
+            //ignore (it may already be finished)
+        }
+        for(int i=0;i<20;i++){
+            try {
+                process.exitValue();
+                return;
+            } catch (IllegalThreadStateException e) {
+                //still running
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        process.destroy();
+    }
+}
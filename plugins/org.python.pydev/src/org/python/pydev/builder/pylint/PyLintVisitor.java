@@ -36,6 +36,7 @@ import org.python.pydev.builder.PydevMarkerUtils;
 import org.python.pydev.builder.PydevMarkerUtils.MarkerInfo;
 import org.python.pydev.consoles.MessageConsoles;
 import org.python.pydev.core.IInterpreterManager;
+import org.python.pydev.core.IPythonNature;
 import org.python.pydev.core.MisconfigurationException;
 import org.python.pydev.core.PythonNatureWithoutProjectException;
 import org.python.pydev.core.REF;
@@ -64,6 +65,17 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
     
     private static Object lock = new Object();
     
+    /**
+     * If true, on a full build the files are collected and analyzed in batch (with a few pylint processes that
+     * analyze many files each) instead of creating a new process for each file.
+     */
+    public static boolean USE_BATCH_ON_FULL_BUILD = true;
+    
+    /**
+     * The files collected to be analyzed in batch (only not null during a full build).
+     */
+    private List<PyLintBatch.FileToLint> filesToLint;
+    
     /**
      * This class runs as a thread to get the markers, and only stops the IDE when the markers are being added.
      * 
@@ -110,19 +122,7 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
                     
                         protected IStatus run(IProgressMonitor monitor) {
                             
-                            ArrayList<MarkerInfo> lst = new ArrayList<PydevMarkerUtils.MarkerInfo>();
-    
-                            for (Iterator<Object[]> iter = markers.iterator(); iter.hasNext();) {
-                                Object[] el = iter.next();
-                                
-                                String tok   = (String) el[0];
-                                int priority = ((Integer)el[1]).intValue();
-                                String id    = (String) el[2];
-                                int line     = ((Integer)el[3]).intValue();
-                                
-                                lst.add(new PydevMarkerUtils.MarkerInfo(document, "ID:" + id + " " + tok,
-                                        PYLINT_PROBLEM_MARKER, priority, false, false, line, 0, line, 0, null));
-                            }
+                            ArrayList<MarkerInfo> lst = createMarkerInfos(document, markers);
                             
                             PydevMarkerUtils.replaceMarkers(lst, resource, PYLINT_PROBLEM_MARKER, true, monitor);
     
@@ -147,26 +147,6 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
             }
         }
 
-        private IOConsoleOutputStream getConsoleOutputStream() throws MalformedURLException {
-            if(PyLintPrefPage.useConsole()){
-                return MessageConsoles.getConsoleOutputStream("PyLint", UIConstants.PY_LINT_ICON);
-            }else{
-                return null;
-            }
-        }
-
-
-        /**
-         * @param tok
-         * @param type
-         * @param priority
-         * @param id
-         * @param line
-         */
-        private void addToMarkers(String tok, int priority, String id, int line) {
-            markers.add(new Object[]{tok, priority, id, line} );
-        }
-        
         /**
          * @param resource
          * @param out 
@@ -180,15 +160,7 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
             File script = new File(PyLintPrefPage.getPyLintLocation());
             File arg = new File(location.toOSString());
 
-            ArrayList<String> list = new ArrayList<String>();
-            list.add("--include-ids=y");
-            
-            //user args
-            String userArgs = StringUtils.replaceNewLines(PyLintPrefPage.getPyLintArgs(), " ");
-            StringTokenizer tokenizer2 = new StringTokenizer(userArgs);
-            while(tokenizer2.hasMoreTokens()){
-                list.add(tokenizer2.nextToken());
-            }
+            ArrayList<String> list = getPyLintArgs();
             list.add(REF.getFileAbsolutePath(arg));
             
             
@@ -211,130 +183,184 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
             write("PyLint: The stdout of the command line is: "+outTup.o1, out);
             write("PyLint: The stderr of the command line is: "+outTup.o2, out);
             
-            String output = outTup.o1;
+            addMarkers(outTup, document, markers);
+        }
+    }
+    
+    /**
+     * @return the arguments passed to pylint (without the file to be analyzed).
+     */
+    public static ArrayList<String> getPyLintArgs() {
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("--include-ids=y");
+        
+        //user args
+        String userArgs = StringUtils.replaceNewLines(PyLintPrefPage.getPyLintArgs(), " ");
+        StringTokenizer tokenizer2 = new StringTokenizer(userArgs);
+        while(tokenizer2.hasMoreTokens()){
+            list.add(tokenizer2.nextToken());
+        }
+        return list;
+    }
+    
+    public static IOConsoleOutputStream getConsoleOutputStream() throws MalformedURLException {
+        if(PyLintPrefPage.useConsole()){
+            return MessageConsoles.getConsoleOutputStream("PyLint", UIConstants.PY_LINT_ICON);
+        }else{
+            return null;
+        }
+    }
+    
+    /**
+     * Parses the output of pylint for some file, adding the markers found as Object[]{tok, priority, id, line}
+     * to the passed list.
+     * 
+     * @param outTup the stdout and stderr of pylint.
+     * @param document the document that was analyzed.
+     * @param markers the list where the markers should be added.
+     */
+    public static void addMarkers(Tuple<String, String> outTup, IDocument document, List<Object[]> markers) {
+        String output = outTup.o1;
 
-            StringTokenizer tokenizer = new StringTokenizer(output, "\r\n");
-            
-            boolean useW = PyLintPrefPage.useWarnings();
-            boolean useE = PyLintPrefPage.useErrors();
-            boolean useF = PyLintPrefPage.useFatal();
-            boolean useC = PyLintPrefPage.useCodingStandard();
-            boolean useR = PyLintPrefPage.useRefactorTips();
-            
-            //Set up local values for severity
-            int wSeverity = PyLintPrefPage.wSeverity();
-            int eSeverity = PyLintPrefPage.eSeverity();
-            int fSeverity = PyLintPrefPage.fSeverity();
-            int cSeverity = PyLintPrefPage.cSeverity();
-            int rSeverity = PyLintPrefPage.rSeverity();
+        StringTokenizer tokenizer = new StringTokenizer(output, "\r\n");
+        
+        boolean useW = PyLintPrefPage.useWarnings();
+        boolean useE = PyLintPrefPage.useErrors();
+        boolean useF = PyLintPrefPage.useFatal();
+        boolean useC = PyLintPrefPage.useCodingStandard();
+        boolean useR = PyLintPrefPage.useRefactorTips();
+        
+        //Set up local values for severity
+        int wSeverity = PyLintPrefPage.wSeverity();
+        int eSeverity = PyLintPrefPage.eSeverity();
+        int fSeverity = PyLintPrefPage.fSeverity();
+        int cSeverity = PyLintPrefPage.cSeverity();
+        int rSeverity = PyLintPrefPage.rSeverity();
+        
+        //System.out.println(output);
+        if(output.indexOf("Traceback (most recent call last):") != -1){
+            Throwable e = new RuntimeException("PyLint ERROR: \n"+output);
+            Log.log(e);
+            return;
+        }
+        if(outTup.o2.indexOf("Traceback (most recent call last):") != -1){
+            Throwable e = new RuntimeException("PyLint ERROR: \n"+outTup.o2);
+            Log.log(e);
+            return;
+        }
+        while(tokenizer.hasMoreTokens()){
+            String tok = tokenizer.nextToken();
             
-            //System.out.println(output);
-            if(output.indexOf("Traceback (most recent call last):") != -1){
-                Throwable e = new RuntimeException("PyLint ERROR: \n"+output);
-                Log.log(e);
-                return;
-            }
-            if(outTup.o2.indexOf("Traceback (most recent call last):") != -1){
-                Throwable e = new RuntimeException("PyLint ERROR: \n"+outTup.o2);
-                Log.log(e);
-                return;
-            }
-            while(tokenizer.hasMoreTokens()){
-                String tok = tokenizer.nextToken();
+            try {
+                boolean found=false;
+                int priority = 0;
                 
-                try {
-                    boolean found=false;
-                    int priority = 0;
+                //W0611:  3: Unused import finalize
+                //F0001:  0: Unable to load module test.test2 (list index out of range)
+                //C0321: 25:fdfd: More than one statement on a single line
+                int indexOfDoublePoints = tok.indexOf(":");
+                if(indexOfDoublePoints != -1){
                     
-                    //W0611:  3: Unused import finalize
-                    //F0001:  0: Unable to load module test.test2 (list index out of range)
-                    //C0321: 25:fdfd: More than one statement on a single line
-                    int indexOfDoublePoints = tok.indexOf(":");
-                    if(indexOfDoublePoints != -1){
-                        
-                        if(tok.startsWith("C")&& useC){
-                            found=true;
-                            //priority = IMarker.SEVERITY_WARNING;
-                            priority = cSeverity;
-                        }
-                        else if(tok.startsWith("R")  && useR ){
-                            found=true;
-                            //priority = IMarker.SEVERITY_WARNING;
-                            priority = rSeverity;
-                        }
-                        else if(tok.startsWith("W")  && useW ){
-                            found=true;
-                            //priority = IMarker.SEVERITY_WARNING;
-                            priority = wSeverity;
-                        }
-                        else if(tok.startsWith("E") && useE ){
-                            found=true;
-                            //priority = IMarker.SEVERITY_ERROR;
-                            priority = eSeverity;
-                        }
-                        else if(tok.startsWith("F") && useF ){
-                            found=true;
-                            //priority = IMarker.SEVERITY_ERROR;
-                            priority = fSeverity;
-                        }else{
-                            continue;
-                        }
-                        
+                    if(tok.startsWith("C")&& useC){
+                        found=true;
+                        //priority = IMarker.SEVERITY_WARNING;
+                        priority = cSeverity;
+                    }
+                    else if(tok.startsWith("R")  && useR ){
+                        found=true;
+                        //priority = IMarker.SEVERITY_WARNING;
+                        priority = rSeverity;
+                    }
+                    else if(tok.startsWith("W")  && useW ){
+                        found=true;
+                        //priority = IMarker.SEVERITY_WARNING;
+                        priority = wSeverity;
+                    }
+                    else if(tok.startsWith("E") && useE ){
+                        found=true;
+                        //priority = IMarker.SEVERITY_ERROR;
+                        priority = eSeverity;
+                    }
+                    else if(tok.startsWith("F") && useF ){
+                        found=true;
+                        //priority = IMarker.SEVERITY_ERROR;
+                        priority = fSeverity;
                     }else{
                         continue;
                     }
                     
-                    try {
-                        if(found){
-                            String id = tok.substring(0, tok.indexOf(":")).trim();
-                            
-                            int i = tok.indexOf(":");
-                            if(i == -1)
-                                continue;
-                            
-                            tok = tok.substring(i+1);
+                }else{
+                    continue;
+                }
+                
+                try {
+                    if(found){
+                        String id = tok.substring(0, tok.indexOf(":")).trim();
+                        
+                        int i = tok.indexOf(":");
+                        if(i == -1)
+                            continue;
+                        
+                        tok = tok.substring(i+1);
 
-                            i = tok.indexOf(":");
-                            if(i == -1)
+                        i = tok.indexOf(":");
+                        if(i == -1)
+                            continue;
+                        
+                        final String substring = tok.substring(0, i).trim();
+                        //On PyLint 0.24 it started giving line,col (and not only the line).
+                        int line = Integer.parseInt(StringUtils.split(substring, ',').get(0) );
+                        
+                        IRegion region = null;
+                        try {
+                            region = document.getLineInformation(line - 1);
+                        } catch (Exception e) {
+                            region = document.getLineInformation(line);
+                        }
+                        String lineContents = document.get(region.getOffset(), region.getLength());
+                        
+                        int pos = -1;
+                        if( ( pos = lineContents.indexOf("IGNORE:") ) != -1){
+                            String lintW = lineContents.substring(pos+"IGNORE:".length());
+                            if (lintW.startsWith(id)){
                                 continue;
-                            
-                            final String substring = tok.substring(0, i).trim();
-                            //On PyLint 0.24 it started giving line,col (and not only the line).
-                            int line = Integer.parseInt(StringUtils.split(substring, ',').get(0) );
-                            
-                            IRegion region = null;
-                            try {
-                                region = document.getLineInformation(line - 1);
-                            } catch (Exception e) {
-                                region = document.getLineInformation(line);
                             }
-                            String lineContents = document.get(region.getOffset(), region.getLength());
-                            
-                            int pos = -1;
-                            if( ( pos = lineContents.indexOf("IGNORE:") ) != -1){
-                                String lintW = lineContents.substring(pos+"IGNORE:".length());
-                                if (lintW.startsWith(id)){
-                                    continue;
-                                }
-                            }
-                            
-                            i = tok.indexOf(":");
-                            if(i == -1)
-                                continue;
-
-                            tok = tok.substring(i+1);
-                            addToMarkers(tok, priority, id, line-1);
                         }
-                    } catch (RuntimeException e2) {
-                        Log.log(e2);
+                        
+                        i = tok.indexOf(":");
+                        if(i == -1)
+                            continue;
+
+                        tok = tok.substring(i+1);
+                        markers.add(new Object[]{tok, priority, id, line-1});
                     }
-                } catch (Exception e1) {
-                    Log.log(e1);
+                } catch (RuntimeException e2) {
+                    Log.log(e2);
                 }
+            } catch (Exception e1) {
+                Log.log(e1);
             }
         }
+    }
+    
+    /**
+     * @return the marker infos for the markers gotten in {@link #addMarkers(Tuple, IDocument, List)}.
+     */
+    public static ArrayList<MarkerInfo> createMarkerInfos(IDocument document, List<Object[]> markers) {
+        ArrayList<MarkerInfo> lst = new ArrayList<PydevMarkerUtils.MarkerInfo>();
 
-
+        for (Iterator<Object[]> iter = markers.iterator(); iter.hasNext();) {
+            Object[] el = iter.next();
+            
+            String tok   = (String) el[0];
+            int priority = ((Integer)el[1]).intValue();
+            String id    = (String) el[2];
+            int line     = ((Integer)el[3]).intValue();
+            
+            lst.add(new PydevMarkerUtils.MarkerInfo(document, "ID:" + id + " " + tok,
+                    PYLINT_PROBLEM_MARKER, priority, false, false, line, 0, line, 0, null));
+        }
+        return lst;
     }
     
     public void visitChangedResource(IResource resource, IDocument document, IProgressMonitor monitor) {
@@ -370,12 +396,35 @@ public class PyLintVisitor extends PyDevBuilderVisitor {
             IFile file = (IFile) resource;
             IPath location = file.getRawLocation();
             if(location != null){
-                PyLintThread thread = new PyLintThread(resource, document, location);
-                thread.start();
+                if(filesToLint != null){
+                    //full build: pylint is run in batch for all the files in visitingEnded.
+                    filesToLint.add(new PyLintBatch.FileToLint(resource, document, location));
+                }else{
+                    PyLintThread thread = new PyLintThread(resource, document, location);
+                    thread.start();
+                }
             }
         }
     }
     
+    @Override
+    public void visitingWillStart(IProgressMonitor monitor, boolean isFullBuild, IPythonNature nature) {
+        if(isFullBuild && USE_BATCH_ON_FULL_BUILD && PyLintPrefPage.usePyLint()){
+            filesToLint = new ArrayList<PyLintBatch.FileToLint>();
+        }else{
+            filesToLint = null;
+        }
+    }
+    
+    @Override
+    public void visitingEnded(IProgressMonitor monitor) {
+        List<PyLintBatch.FileToLint> files = filesToLint;
+        filesToLint = null;
+        if(files != null && files.size() > 0){
+            new PyLintBatch(files).start();
+        }
+    }
+    
     public static void write(String cmdLineToExe, IOConsoleOutputStream out, Object ... args) {
         try {
             if(out != null){
@@ -54,6 +54,7 @@ import org.python.pydev.core.structure.FastStringBuffer;
 import org.python.pydev.core.uiutils.AsynchronousProgressMonitorDialog;
 import org.python.pydev.editor.codecompletion.revisited.PythonPathHelper;
 import org.python.pydev.editor.codecompletion.shell.AbstractShell;
+import org.python.pydev.editor.codecompletion.shell.ShellPool;
 import org.python.pydev.plugin.PydevPlugin;
 import org.python.pydev.plugin.nature.PythonNature;
 import org.python.pydev.plugin.nature.PythonNatureListenersManager;
@@ -635,6 +636,7 @@ public abstract class AbstractInterpreterManager implements IInterpreterManager
             //And in jython, changing the classpath also needs to restore it.
             for(IInterpreterInfo interpreter:interpreterInfos){
                 AbstractShell.stopServerShell(interpreter, AbstractShell.COMPLETION_SHELL);
+                ShellPool.stopBackgroundShells(interpreter);
             }
         } finally {
             AbstractShell.restartAllShells();
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Indexes the module names by the (lower case) parts of their names, so that the modules with some part starting
+ * with a given string are found without checking all the modules (i.e.: 'os.path' is found by 'o', 'os', 'pa', ...).
+ *
+ * The trie has a node for each char of the parts and each node has the modules which have a part ending at it, so,
+ * a lookup walks the prefix and then collects the modules below the node found.
+ *
+ * Not synchronized (the modules manager guards it with the modulesKeysLock).
+ *
+ * @author Fabio
+ */
+final class ModuleNamesTrie {
+
+    private static final char[] EMPTY_CHARS = new char[0];
+    private static final Node[] EMPTY_NODES = new Node[0];
+
+    private static final class Node{
+
+        /**
+         * The chars of the children (sorted) and the related nodes.
+         */
+        private char[] chars = EMPTY_CHARS;
+        private Node[] children = EMPTY_NODES;
+        private int childrenCount;
+
+        /**
+         * The names of the modules which have a part equal to the path to this node (null if none).
+         */
+        private Set<String> modules;
+
+        private int indexOf(char c) {
+            int low = 0;
+            int high = childrenCount - 1;
+            while(low <= high){
+                int mid = (low + high) >>> 1;
+                char midChar = chars[mid];
+                if(midChar < c){
+                    low = mid + 1;
+                }else if(midChar > c){
+                    high = mid - 1;
+                }else{
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private Node getChild(char c) {
+            int i = indexOf(c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node getOrCreateChild(char c) {
+            int i = indexOf(c);
+            if(i >= 0){
+                return children[i];
+            }
+            i = -(i + 1);
+            if(childrenCount == chars.length){
+                int newLength = Math.max(2, childrenCount * 2);
+                char[] newChars = new char[newLength];
+                Node[] newChildren = new Node[newLength];
+                System.arraycopy(chars, 0, newChars, 0, childrenCount);
+                System.arraycopy(children, 0, newChildren, 0, childrenCount);
+                chars = newChars;
+                children = newChildren;
+            }
+            System.arraycopy(chars, i, chars, i + 1, childrenCount - i);
+            System.arraycopy(children, i, children, i + 1, childrenCount - i);
+            Node node = new Node();
+            chars[i] = c;
+            children[i] = node;
+            childrenCount++;
+            return node;
+        }
+
+        private void removeChild(char c) {
+            int i = indexOf(c);
+            if(i >= 0){
+                childrenCount--;
+                System.arraycopy(chars, i + 1, chars, i, childrenCount - i);
+                System.arraycopy(children, i + 1, children, i, childrenCount - i);
+                children[childrenCount] = null;
+            }
+        }
+
+        private boolean isEmpty() {
+            return childrenCount == 0 && modules == null;
+        }
+
+        private void collect(Collection<String> ret) {
+            if(modules != null){
+                ret.addAll(modules);
+            }
+            for(int i=0;i<childrenCount;i++){
+                children[i].collect(ret);
+            }
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * All the module names in the trie.
+     */
+    private final Set<String> names = new HashSet<String>();
+
+
+    /**
+     * @return the distinct (non-empty) lower case parts of the module name.
+     */
+    private static Set<String> getParts(String moduleName) {
+        Set<String> ret = new HashSet<String>();
+        String lower = moduleName.toLowerCase();
+        int start = 0;
+        int length = lower.length();
+        for(int i=0;i<=length;i++){
+            if(i == length || lower.charAt(i) == '.'){
+                if(i > start){
+                    ret.add(lower.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return ret;
+    }
+
+    public void add(String moduleName) {
+        if(!names.add(moduleName)){
+            return;
+        }
+        for(String part:getParts(moduleName)){
+            Node node = root;
+            int length = part.length();
+            for(int i=0;i<length;i++){
+                node = node.getOrCreateChild(part.charAt(i));
+            }
+            if(node.modules == null){
+                node.modules = new HashSet<String>(2);
+            }
+            node.modules.add(moduleName);
+        }
+    }
+
+    public void remove(String moduleName) {
+        if(!names.remove(moduleName)){
+            return;
+        }
+        for(String part:getParts(moduleName)){
+            remove(root, part, 0, moduleName);
+        }
+    }
+
+    /**
+     * Removes the module from the node for the part (and the nodes which became empty).
+     *
+     * @return whether the given node became empty.
+     */
+    private static boolean remove(Node node, String part, int i, String moduleName) {
+        if(i == part.length()){
+            if(node.modules != null){
+                node.modules.remove(moduleName);
+                if(node.modules.size() == 0){
+                    node.modules = null;
+                }
+            }
+        }else{
+            char c = part.charAt(i);
+            Node child = node.getChild(c);
+            if(child != null && remove(child, part, i + 1, moduleName)){
+                node.removeChild(c);
+            }
+        }
+        return node.isEmpty();
+    }
+
+    public void clear() {
+        names.clear();
+        root.chars = EMPTY_CHARS;
+        root.children = EMPTY_NODES;
+        root.childrenCount = 0;
+        root.modules = null;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Adds to ret the names of the modules which have some part starting with the given string (which must be
+     * in lower case). If it's empty, all the modules are added.
+     */
+    public void getModulesWithPartStartingWith(String startingWithLowerCase, Set<String> ret) {
+        if(startingWithLowerCase.length() == 0){
+            ret.addAll(names);
+            return;
+        }
+        Node node = root;
+        int length = startingWithLowerCase.length();
+        for(int i=0;i<length && node != null;i++){
+            node = node.getChild(startingWithLowerCase.charAt(i));
+        }
+        if(node != null){
+            node.collect(ret);
+        }
+    }
+}
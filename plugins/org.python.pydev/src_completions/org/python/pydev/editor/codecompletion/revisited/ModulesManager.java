@@ -15,6 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -153,6 +154,18 @@ public abstract class ModulesManager implements IModulesManager {
     protected final ModulesKeyTreeMap<ModulesKey, ModulesKey> modulesKeys = new ModulesKeyTreeMap<ModulesKey, ModulesKey>();
     protected final Object modulesKeysLock = new Object();
 
+    /**
+     * Indexes the names in the modulesKeys by their parts (for getAllModuleNames). Must be kept in sync with the
+     * modulesKeys (guarded by the modulesKeysLock too).
+     */
+    protected final ModuleNamesTrie moduleNames = new ModuleNamesTrie();
+
+    /**
+     * A copy of the modulesKeys that is returned in getAllDirectModulesStartingWith("") (it's created when requested
+     * and cleared when the modulesKeys change). Guarded by the modulesKeysLock.
+     */
+    private SortedMap<ModulesKey, ModulesKey> modulesKeysSnapshot;
+
     protected static final ModulesManagerCache cache = new ModulesManagerCache();
 
     /**
@@ -312,6 +325,7 @@ public abstract class ModulesManager implements IModulesManager {
             if(key != null){
                 //restore with empty modules.
                 modulesManager.modulesKeys.put(key, key);
+                modulesManager.moduleNames.add(key.name);
                 if (key.file != null) {
                     modulesManager.files.add(key.file);
                 }
@@ -365,11 +379,7 @@ public abstract class ModulesManager implements IModulesManager {
 
         ModulesKeyTreeMap<ModulesKey, ModulesKey> keys = buildKeysFromModulesFound(monitor, modulesFound);
 
-        synchronized (modulesKeysLock) {
-            //assign to instance variable
-            this.modulesKeys.clear();
-            this.modulesKeys.putAll(keys);
-        }
+        setModulesKeys(keys);
 
     }
     
@@ -491,6 +501,8 @@ public abstract class ModulesManager implements IModulesManager {
                 System.out.println("Removing module:" + key + " - " + this.getClass());
             }
             this.modulesKeys.remove(key);
+            this.moduleNames.remove(key.name);
+            this.modulesKeysSnapshot = null;
             ModulesManager.cache.remove(key, this);
         }
     }
@@ -530,10 +542,28 @@ public abstract class ModulesManager implements IModulesManager {
         }
         synchronized (modulesKeysLock) {
             this.modulesKeys.put(key, key);
+            this.moduleNames.add(key.name);
+            this.modulesKeysSnapshot = null;
             ModulesManager.cache.add(key, n, this);
         }
     }
 
+    /**
+     * Replaces all the keys in this manager with the given keys.
+     */
+    protected void setModulesKeys(ModulesKeyTreeMap<ModulesKey, ModulesKey> keys) {
+        synchronized (modulesKeysLock) {
+            //assign to instance variable
+            this.modulesKeys.clear();
+            this.modulesKeys.putAll(keys);
+            this.modulesKeysSnapshot = null;
+            this.moduleNames.clear();
+            for(ModulesKey key:keys.keySet()){
+                this.moduleNames.add(key.name);
+            }
+        }
+    }
+
     /**
      * @return a set of all module keys
      * 
@@ -542,11 +572,7 @@ public abstract class ModulesManager implements IModulesManager {
     public Set<String> getAllModuleNames(boolean addDependencies, String partStartingWithLowerCase) {
         Set<String> s = new HashSet<String>();
         synchronized (modulesKeysLock) {
-            for (ModulesKey key : this.modulesKeys.keySet()) {
-                if(key.hasPartStartingWith(partStartingWithLowerCase)){
-                    s.add(key.name);
-                }
-            }
+            this.moduleNames.getModulesWithPartStartingWith(partStartingWithLowerCase, s);
         }
         return s;
     }
@@ -555,8 +581,13 @@ public abstract class ModulesManager implements IModulesManager {
         if (strStartingWith.length() == 0) {
             synchronized (modulesKeysLock) {
                 //we don't want it to be backed up by the same set (because it may be changed, so, we may get
-                //a java.util.ConcurrentModificationException on places that use it)
-                return new ModulesKeyTreeMap<ModulesKey, ModulesKey>(modulesKeys);
+                //a java.util.ConcurrentModificationException on places that use it), but the copy is only
+                //done again after the keys change.
+                if(modulesKeysSnapshot == null){
+                    modulesKeysSnapshot = Collections.unmodifiableSortedMap(
+                            new ModulesKeyTreeMap<ModulesKey, ModulesKey>(modulesKeys));
+                }
+                return modulesKeysSnapshot;
             }
         }
         ModulesKey startingWith = new ModulesKey(strStartingWith, null);
@@ -801,7 +832,9 @@ public abstract class ModulesManager implements IModulesManager {
         if(n instanceof SourceModule && "django.db.models.base".equals(n.getName())){
             SourceModule sourceModule = (SourceModule) n;
             SimpleNode ast = sourceModule.getAst();
-            for(SimpleNode node:((Module)ast).body){
+            stmtType[] body = ((Module)ast).body;
+            for(int j=0;j<body.length;j++){
+                SimpleNode node = body[j];
                 if(node instanceof ClassDef && "Model".equals(NodeUtils.getRepresentationString(node))){
                     Object[][] metaclassAttrs = new Object[][]{
                             {"objects", NodeUtils.makeAttribute("django.db.models.manager.Manager()")},
@@ -829,12 +862,24 @@ public abstract class ModulesManager implements IModulesManager {
                         i+= 1;
                     }
                     
+                    //The ast may be shared with other clients (through the AstCache), so, it may not be changed:
+                    //create a new module with a new class (sharing what wasn't changed).
+                    ClassDef newClassDef = new ClassDef(classDef.name, classDef.bases, newBody, classDef.decs, 
+                            classDef.keywords, classDef.starargs, classDef.kwargs);
+                    newClassDef.beginLine = classDef.beginLine;
+                    newClassDef.beginColumn = classDef.beginColumn;
+                    newClassDef.specialsBefore = classDef.specialsBefore;
+                    newClassDef.specialsAfter = classDef.specialsAfter;
                     
+                    stmtType[] newModuleBody = body.clone();
+                    newModuleBody[j] = newClassDef;
+                    Module newModule = new Module(newModuleBody);
+                    newModule.beginLine = ast.beginLine;
+                    newModule.beginColumn = ast.beginColumn;
+                    newModule.specialsBefore = ast.specialsBefore;
+                    newModule.specialsAfter = ast.specialsAfter;
                     
-                    
-                    
-                    
-                    classDef.body = newBody;
+                    n = new SourceModule(sourceModule.getName(), sourceModule.getFile(), newModule, sourceModule.parseError);
                     break;
                 }
             }
@@ -872,6 +917,13 @@ public abstract class ModulesManager implements IModulesManager {
         ModulesManager.cache.clear();
     }
 
+    /**
+     * @return the statistics (hits/misses/evictions) of the cache with the modules of all the managers.
+     */
+    public static String getCacheStats() {
+        return ModulesManager.cache.getStats();
+    }
+
     /** 
      * @see org.python.pydev.core.IProjectModulesManager#isInPythonPath(org.eclipse.core.resources.IResource, org.eclipse.core.resources.IProject)
      */
@@ -6,71 +6,111 @@
  */
 package org.python.pydev.editor.codecompletion.revisited;
 
+import java.io.File;
+
 import org.python.pydev.core.ModulesKey;
 import org.python.pydev.core.Tuple;
-import org.python.pydev.core.cache.LRUCache;
+import org.python.pydev.core.cache.SegmentedLRUCache;
 import org.python.pydev.editor.codecompletion.revisited.modules.AbstractModule;
+import org.python.pydev.editor.codecompletion.revisited.modules.EmptyModule;
+import org.python.pydev.editor.codecompletion.revisited.modules.SourceModule;
 
 /**
- * This is a 'global' cache implementation, that can have at most n objects in
- * the memory at any time.
+ * This is a 'global' cache implementation, that can have at most a given (estimated) weight of modules in the
+ * memory at any time (for all the managers).
+ *
+ * The cache is split in stripes (so, different threads don't usually wait for each other) and new modules are only
+ * kept if they're accessed again, so, a pass through all the modules (i.e.: in a build) doesn't remove the modules
+ * that are frequently used.
  */
 final class ModulesManagerCache  {
+
     /**
-     * Defines the maximum amount of modules that can be in the memory at any time (for all the managers)
+     * Defines the maximum weight of the modules that can be in the memory at any time (for all the managers).
+     *
+     * The weight is the estimated memory (in KB) of the module.
      */
-    private static final int MAX_NUMBER_OF_MODULES = 400;
+    private static final long MAX_WEIGHT = 96 * 1024;
+
+    private static final int STRIPES = 16;
+
+    /**
+     * The AST of a source module takes (roughly) this times the size of its file.
+     */
+    private static final int SOURCE_MODULE_MEMORY_FACTOR = 10;
+
+    /**
+     * Estimates the memory used by a module (in KB).
+     */
+    private static final SegmentedLRUCache.Weigher<AbstractModule> weigher = new SegmentedLRUCache.Weigher<AbstractModule>(){
+
+        public int getWeight(AbstractModule module) {
+            if(module instanceof EmptyModule){
+                return 1;
+            }
+            if(module instanceof SourceModule){
+                File file = ((SourceModule) module).getFile();
+                if(file != null){
+                    return 4 + (int) Math.min(Integer.MAX_VALUE / 2, file.length() * SOURCE_MODULE_MEMORY_FACTOR / 1024);
+                }
+            }
+            //compiled module (its tokens are gotten from the shell) or source module without a file
+            return 32;
+        }
+    };
 
     /**
-     * The access to the cache is synchronized
+     * The cache is thread-safe (no synchronization is needed to access it).
      */
-    private LRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule> internalCache;
-    private final Object lock = new Object();
-    
+    private final SegmentedLRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule> internalCache;
+
     ModulesManagerCache() {
-        internalCache = new LRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule>(MAX_NUMBER_OF_MODULES);
+        internalCache = new SegmentedLRUCache<Tuple<ModulesKey, ModulesManager>, AbstractModule>(
+                MAX_WEIGHT, STRIPES, weigher);
     }
-    
+
     /**
      * Overridden so that if we do not find the key, we have the chance to create it.
      */
     public AbstractModule getObj(ModulesKey key, ModulesManager modulesManager) {
+        Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
+        AbstractModule obj = internalCache.getObj(keyTuple);
+        if(obj != null){
+            return obj;
+        }
+
+        //the keys are only changed with the modulesKeysLock held (and the cache too)
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-            
-            synchronized (lock) {
-                AbstractModule obj = internalCache.getObj(keyTuple);
-                if(obj == null && modulesManager.modulesKeys.containsKey(key)){
-                    key = modulesManager.modulesKeys.get(key); //get the 'real' key
-                    obj = AbstractModule.createEmptyModule(key);
-                    internalCache.add(keyTuple, obj);
-                }
-                return obj;
+            obj = internalCache.peek(keyTuple); //may have been added while we waited for the lock
+            if(obj == null && modulesManager.modulesKeys.containsKey(key)){
+                key = modulesManager.modulesKeys.get(key); //get the 'real' key
+                obj = AbstractModule.createEmptyModule(key);
+                internalCache.add(keyTuple, obj);
             }
+            return obj;
         }
     }
 
     public void remove(ModulesKey key, ModulesManager modulesManager) {
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-            synchronized (lock) {
-                internalCache.remove(keyTuple);
-            }
+            internalCache.remove(new Tuple<ModulesKey, ModulesManager>(key, modulesManager));
         }
     }
 
     public void add(ModulesKey key, AbstractModule n, ModulesManager modulesManager) {
         synchronized (modulesManager.modulesKeysLock) {
-            Tuple<ModulesKey, ModulesManager> keyTuple = new Tuple<ModulesKey, ModulesManager>(key, modulesManager);
-            synchronized (lock) {
-                internalCache.add(keyTuple, n);
-            }
+            internalCache.add(new Tuple<ModulesKey, ModulesManager>(key, modulesManager), n);
         }
     }
 
     public void clear() {
-        synchronized (lock) {
-            internalCache.clear();
-        }
+        internalCache.clear();
+    }
+
+    /**
+     * @return a string with the hits/misses/evictions of the cache.
+     */
+    public String getStats() {
+        return internalCache.getStats();
     }
-}
\ No newline at end of file
+}
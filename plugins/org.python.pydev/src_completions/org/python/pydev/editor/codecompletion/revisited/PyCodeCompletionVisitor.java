@@ -43,6 +43,15 @@ public class PyCodeCompletionVisitor extends PyDevBuilderVisitor {
         return true;
     }
     
+    /**
+     * The modules manager may be updated from many threads (it's synchronized), so, in a parallel full build, 
+     * modules may be rebuilt concurrently.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+    
     /**
      * The code completion visitor is responsible for checking the changed resources in order to
      * update the code completion cache for the project. 
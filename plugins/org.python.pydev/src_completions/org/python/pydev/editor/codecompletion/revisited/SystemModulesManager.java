@@ -243,8 +243,9 @@ public final class SystemModulesManager extends ModulesManagerWithBuild implemen
 							return IGrammarVersionProvider.GRAMMAR_PYTHON_VERSION_3_0; // Always Python 3.0 here
 						}
 					};
-					Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(
-							new PyParser.ParserInfo(doc, provider, name, predefinedModule));
+					PyParser.ParserInfo info = new PyParser.ParserInfo(doc, provider, name, predefinedModule);
+					info.useAstCache = true;
+					Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
 					if(obj.o2 != null){
 						if(lastModified == null){
 							lastModified = predefinedModule.lastModified();
@@ -398,10 +399,7 @@ public final class SystemModulesManager extends ModulesManagerWithBuild implemen
      * @param keysFound
      */
     public void updateKeysAndSave(ModulesKeyTreeMap<ModulesKey, ModulesKey> keysFound) {
-        synchronized (modulesKeysLock) {
-            modulesKeys.clear();
-            modulesKeys.putAll(keysFound);
-        }
+        setModulesKeys(keysFound);
         this.save();
     }
 
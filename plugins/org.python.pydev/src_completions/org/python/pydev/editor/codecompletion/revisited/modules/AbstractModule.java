@@ -262,18 +262,15 @@ public abstract class AbstractModule implements IModule {
             String name, File f, IDocument doc, IGrammarVersionProvider nature, boolean checkForPath) throws MisconfigurationException {
         //for doc, we are only interested in python files.
         
-        if(f != null){
-            if(!checkForPath || PythonPathHelper.isValidSourceFile(f.getName())){
-                Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(
-                        new PyParser.ParserInfo(doc, nature, name, f));
-                return new SourceModule(name, f, obj.o1, obj.o2);
-            }
-        } else {
-            Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(
-                    new PyParser.ParserInfo(doc, nature, name, f));
-            return new SourceModule(name, f, obj.o1, obj.o2);
+        if(f != null && checkForPath && !PythonPathHelper.isValidSourceFile(f.getName())){
+            return null;
         }
-        return null;
+        //the same contents may be parsed by the builders and the modules manager (so, share the ast: note that
+        //the ast in a SourceModule is not changed after it's created).
+        PyParser.ParserInfo info = new PyParser.ParserInfo(doc, nature, name, f);
+        info.useAstCache = true;
+        Tuple<SimpleNode, Throwable> obj = PyParser.reparseDocument(info);
+        return new SourceModule(name, f, obj.o1, obj.o2);
     }
     
     /**
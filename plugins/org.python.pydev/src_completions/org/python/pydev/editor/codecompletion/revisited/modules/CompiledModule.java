@@ -28,6 +28,7 @@ import org.python.pydev.core.FullRepIterable;
 import org.python.pydev.core.ICodeCompletionASTManager;
 import org.python.pydev.core.ICompletionCache;
 import org.python.pydev.core.ICompletionState;
+import org.python.pydev.core.IInterpreterInfo;
 import org.python.pydev.core.IModule;
 import org.python.pydev.core.IModulesManager;
 import org.python.pydev.core.IPythonNature;
@@ -39,6 +40,8 @@ import org.python.pydev.core.log.Log;
 import org.python.pydev.editor.codecompletion.revisited.CompletionStateFactory;
 import org.python.pydev.editor.codecompletion.revisited.visitors.Definition;
 import org.python.pydev.editor.codecompletion.shell.AbstractShell;
+import org.python.pydev.editor.codecompletion.shell.ShellPool;
+import org.python.pydev.plugin.PydevPlugin;
 
 /**
  * @author Fabio Zadrozny
@@ -50,8 +53,23 @@ public class CompiledModule extends AbstractModule{
 
     public static final boolean TRACE_COMPILED_MODULES = false; 
     
+    /**
+     * Whether the completions gotten from the shell should be kept in the disk (per interpreter).
+     */
+    public static boolean PERSIST_COMPILED_MODULES_TOKENS = true; 
+    
     private Map<String, Map<String, IToken> > cache = new HashMap<String, Map<String, IToken>>();
     
+    /**
+     * The caches in the disk for each interpreter (executable).
+     */
+    private static final Map<String, CompiledModuleTokensCache> tokensCaches = new HashMap<String, CompiledModuleTokensCache>();
+    
+    /**
+     * The cache in the disk for the interpreter of this module (may be null).
+     */
+    private CompiledModuleTokensCache tokensCache;
+    
     private static final Definition[] EMPTY_DEFINITION = new Definition[0];
 
     private static final Map<String, String> BUILTIN_REPLACEMENTS = new HashMap<String, String>();
@@ -172,82 +190,130 @@ public class CompiledModule extends AbstractModule{
 
     }
 
+    /**
+     * @return the cache in the disk for the interpreter of the given nature or null if it's not available.
+     */
+    private static CompiledModuleTokensCache getTokensCache(IPythonNature nature) {
+        if(!PERSIST_COMPILED_MODULES_TOKENS || nature == null){
+            return null;
+        }
+        try {
+            IInterpreterInfo info = nature.getProjectInterpreter();
+            String executable = info.getExecutableOrJar();
+            String stamp = CompiledModuleTokensCache.createStamp(executable, info.getPythonPath());
+            synchronized (tokensCaches) {
+                CompiledModuleTokensCache tokensCache = tokensCaches.get(executable);
+                if(tokensCache == null || !tokensCache.getStamp().equals(stamp)){
+                    File dir = PydevPlugin.getWorkspaceMetadataFile(info.getExeAsFileSystemValidPath());
+                    tokensCache = new CompiledModuleTokensCache(new File(dir, "v1_compiled_modules_tokens"), stamp);
+                    tokensCaches.put(executable, tokensCache);
+                }
+                return tokensCache;
+            }
+        } catch (Exception e) {
+            Log.log(e);
+            return null;
+        }
+    }
+    
+    /**
+     * @return the completions for the given token from the cache in the disk or from the shell (in which case they're
+     * added to the cache).
+     */
+    private Tuple<String, List<String[]>> getImportCompletions(String token, IPythonNature nature, 
+            IModulesManager manager) throws Exception {
+        if(tokensCache != null){
+            Tuple<String, List<String[]>> completions = tokensCache.get(token);
+            if(completions != null){
+                return completions;
+            }
+        }
+        Tuple<String, List<String[]>> completions = ShellPool.getImportCompletions(nature, token, 
+                manager.getCompletePythonPath(nature.getProjectInterpreter(), 
+                        nature.getRelatedInterpreterManager())); //default
+        //don't keep errors (or modules not found): ask the shell again in the next time
+        if(tokensCache != null && completions.o2.size() > 0){
+            try {
+                tokensCache.put(token, completions.o1, completions.o2);
+            } catch (IOException e) {
+                Log.log(e);
+            }
+        }
+        return completions;
+    }
+
     private void setTokens(String name, IModulesManager manager) throws IOException, Exception, CoreException {
         if(TRACE_COMPILED_MODULES){
             Log.log(IStatus.INFO, ("Compiled modules: getting info for:"+name), null);
         }
         final IPythonNature nature = manager.getNature();
-        AbstractShell shell = AbstractShell.getServerShell(nature, AbstractShell.COMPLETION_SHELL);
-        synchronized(shell){
-            Tuple<String, List<String[]>> completions = shell.getImportCompletions(name, 
-                    manager.getCompletePythonPath(nature.getProjectInterpreter(), 
-                            nature.getRelatedInterpreterManager())); //default
-            
-            if(TRACE_COMPILED_MODULES){
-                Log.log(IStatus.INFO, ("Compiled modules: "+name+" file: "+completions.o1+" found: "+completions.o2.size()+" completions."), null);
+        tokensCache = getTokensCache(nature);
+        Tuple<String, List<String[]>> completions = getImportCompletions(name, nature, manager);
+        
+        if(TRACE_COMPILED_MODULES){
+            Log.log(IStatus.INFO, ("Compiled modules: "+name+" file: "+completions.o1+" found: "+completions.o2.size()+" completions."), null);
+        }
+        String fPath = completions.o1;
+        if(fPath != null){
+            if(!fPath.equals("None")){
+                this.file = new File(fPath);
             }
-            String fPath = completions.o1;
-            if(fPath != null){
-                if(!fPath.equals("None")){
-                    this.file = new File(fPath);
-                }
-    
-                String f = fPath;
-                if(f.toLowerCase().endsWith(".pyc")){
-                    f = f.substring(0, f.length()-1); //remove the c from pyc
-                    File f2 = new File(f);
-                    if(f2.exists()){
-                        this.file = f2;
-                    }
+
+            String f = fPath;
+            if(f.toLowerCase().endsWith(".pyc")){
+                f = f.substring(0, f.length()-1); //remove the c from pyc
+                File f2 = new File(f);
+                if(f2.exists()){
+                    this.file = f2;
                 }
             }
-            ArrayList<IToken> array = new ArrayList<IToken>();
-            
-            for (String[] element : completions.o2) {
-                //let's make this less error-prone.
-                try {
-                    String o1 = element[0]; //this one is really, really needed
-                    String o2 = "";
-                    String o3 = "";
-                    
-                    if(element.length > 0){
-                        o2 = element[1];
-                    }
-                    
-                    if(element.length > 0){
-                        o3 = element[2];
-                    }
-                    
-                    IToken t;
-                    if(element.length > 0){
-                        t = new CompiledToken(o1, o2, o3, name, Integer.parseInt(element[3]));
-                    }else{
-                        t = new CompiledToken(o1, o2, o3, name, IToken.TYPE_BUILTIN);
-                    }
-                    
-                    array.add(t);
-                } catch (Exception e) {
-                    String received = "";
-                    for (int i = 0; i < element.length; i++) {
-                        received += element[i];
-                        received += "  ";
-                    }
-                    
-                    Log.log(IStatus.ERROR, ("Error getting completions for compiled module "+name+" received = '"+received+"'"), e);
+        }
+        ArrayList<IToken> array = new ArrayList<IToken>();
+        
+        for (String[] element : completions.o2) {
+            //let's make this less error-prone.
+            try {
+                String o1 = element[0]; //this one is really, really needed
+                String o2 = "";
+                String o3 = "";
+                
+                if(element.length > 0){
+                    o2 = element[1];
                 }
+                
+                if(element.length > 0){
+                    o3 = element[2];
+                }
+                
+                IToken t;
+                if(element.length > 0){
+                    t = new CompiledToken(o1, o2, o3, name, Integer.parseInt(element[3]));
+                }else{
+                    t = new CompiledToken(o1, o2, o3, name, IToken.TYPE_BUILTIN);
+                }
+                
+                array.add(t);
+            } catch (Exception e) {
+                String received = "";
+                for (int i = 0; i < element.length; i++) {
+                    received += element[i];
+                    received += "  ";
+                }
+                
+                Log.log(IStatus.ERROR, ("Error getting completions for compiled module "+name+" received = '"+received+"'"), e);
             }
-            
-            //as we will use it for code completion on sources that map to modules, the __file__ should also
-            //be added...
-            if(array.size() > 0 && (name.equals("__builtin__") || name.equals("builtins"))){
-                array.add(new CompiledToken("__file__","","",name,IToken.TYPE_BUILTIN));
-                array.add(new CompiledToken("__name__","","",name,IToken.TYPE_BUILTIN));
-                array.add(new CompiledToken("__builtins__","","",name,IToken.TYPE_BUILTIN));
-                array.add(new CompiledToken("__dict__","","",name,IToken.TYPE_BUILTIN));
-            }
-            
-            addTokens(array);
         }
+        
+        //as we will use it for code completion on sources that map to modules, the __file__ should also
+        //be added...
+        if(array.size() > 0 && (name.equals("__builtin__") || name.equals("builtins"))){
+            array.add(new CompiledToken("__file__","","",name,IToken.TYPE_BUILTIN));
+            array.add(new CompiledToken("__name__","","",name,IToken.TYPE_BUILTIN));
+            array.add(new CompiledToken("__builtins__","","",name,IToken.TYPE_BUILTIN));
+            array.add(new CompiledToken("__dict__","","",name,IToken.TYPE_BUILTIN));
+        }
+        
+        addTokens(array);
     }
 
     /**
@@ -311,7 +377,10 @@ public class CompiledModule extends AbstractModule{
         	return getGlobalTokens();
         }
         
-		Map<String, IToken> v = cache.get(activationToken);
+        Map<String, IToken> v;
+        synchronized (cache) {
+            v = cache.get(activationToken);
+        }
         if(v != null){
             Collection<IToken> values = v.values();
             return values.toArray(new IToken[values.size()]);
@@ -323,42 +392,35 @@ public class CompiledModule extends AbstractModule{
             try {
                 final IPythonNature nature = manager.getNature();
                 
-                final AbstractShell shell;
-                try {
-                    shell = AbstractShell.getServerShell(nature, AbstractShell.COMPLETION_SHELL);
-                } catch (Exception e) {
-                    throw new RuntimeException("Unable to create shell for CompiledModule: "+this.name, e);
+                String act = name+'.'+activationToken;
+                String tokenToCompletion = act;
+                if(isPythonBuiltin){
+                    String replacement = BUILTIN_REPLACEMENTS.get(activationToken);
+                    if(replacement != null){
+                        tokenToCompletion = name+'.'+replacement;
+                    }
                 }
-                synchronized(shell){
-                    String act = name+'.'+activationToken;
-                    String tokenToCompletion = act;
-                    if(isPythonBuiltin){
-                        String replacement = BUILTIN_REPLACEMENTS.get(activationToken);
-                        if(replacement != null){
-                            tokenToCompletion = name+'.'+replacement;
-                        }
+                
+                List<String[]> completions = getImportCompletions(tokenToCompletion, nature, 
+                        manager.getModulesManager()).o2;
+                
+                ArrayList<IToken> array = new ArrayList<IToken>();
+                
+                for (Iterator<String[]> iter = completions.iterator(); iter.hasNext();) {
+                    String[] element = iter.next(); 
+                    if(element.length >= 4){//it might be a server error
+                        IToken t = new CompiledToken(element[0], element[1], element[2], act, Integer.parseInt(element[3]));
+                        array.add(t);
                     }
                     
-                    List<String[]> completions = shell.getImportCompletions(tokenToCompletion, 
-                            manager.getModulesManager().getCompletePythonPath(
-                                    nature.getProjectInterpreter(), 
-                                    nature.getRelatedInterpreterManager())).o2;
-                    
-                    ArrayList<IToken> array = new ArrayList<IToken>();
-                    
-                    for (Iterator<String[]> iter = completions.iterator(); iter.hasNext();) {
-                        String[] element = iter.next(); 
-                        if(element.length >= 4){//it might be a server error
-                            IToken t = new CompiledToken(element[0], element[1], element[2], act, Integer.parseInt(element[3]));
-                            array.add(t);
-                        }
-                        
-                    }
-                    toks = (CompiledToken[]) array.toArray(new CompiledToken[0]);
-                    HashMap<String, IToken> map = new HashMap<String, IToken>();
-                    for (IToken token : toks) {
-                        map.put(token.getRepresentation(), token);
-                    }
+                }
+                toks = (CompiledToken[]) array.toArray(new CompiledToken[0]);
+                HashMap<String, IToken> map = new HashMap<String, IToken>();
+                for (IToken token : toks) {
+                    map.put(token.getRepresentation(), token);
+                }
+                synchronized (cache) {
+                    //not guarded by the shell lock anymore (the completions may come from the disk)
                     cache.put(activationToken, map);
                 }
             } catch (Exception e) {
@@ -399,6 +461,12 @@ public class CompiledModule extends AbstractModule{
 
     }
 
+    private void addDefinitionsFound(String token, Definition[] definitions) {
+        synchronized (definitionsFoundCache) {
+            this.definitionsFoundCache.add(token, definitions);
+        }
+    }
+
     /**
      * @param findInfo 
      * @see org.python.pydev.editor.codecompletion.revisited.modules.AbstractModule#findDefinition(java.lang.String, int, int)
@@ -409,7 +477,10 @@ public class CompiledModule extends AbstractModule{
         if(TRACE_COMPILED_MODULES){
             System.out.println("CompiledModule.findDefinition:"+token);
         }
-        Definition[] found = this.definitionsFoundCache.getObj(token);
+        Definition[] found;
+        synchronized (definitionsFoundCache) {
+            found = this.definitionsFoundCache.getObj(token);
+        }
         if(found != null){
             if(TRACE_COMPILED_MODULES){
                 System.out.println("CompiledModule.findDefinition: found in cache.");
@@ -418,73 +489,70 @@ public class CompiledModule extends AbstractModule{
         }
         
         
-        AbstractShell shell = AbstractShell.getServerShell(nature, AbstractShell.COMPLETION_SHELL);
-        synchronized(shell){
-            Tuple<String[],int[]> def = shell.getLineCol(this.name, token, 
-                    nature.getAstManager().getModulesManager().getCompletePythonPath(
-                            nature.getProjectInterpreter(), 
-                            nature.getRelatedInterpreterManager())); //default
-            if(def == null){
-                if(TRACE_COMPILED_MODULES){
-                    System.out.println("CompiledModule.findDefinition:"+token+" = empty");
-                }
-                this.definitionsFoundCache.add(token, EMPTY_DEFINITION);
-                return EMPTY_DEFINITION;
-            }
-            String fPath = def.o1[0];
-            if(fPath.equals("None")){
-                if(TRACE_COMPILED_MODULES){
-                    System.out.println("CompiledModule.findDefinition:"+token+" = None");
-                }
-                Definition[] definition = new Definition[]{new Definition(def.o2[0], def.o2[1], token, null, null, this)};
-                this.definitionsFoundCache.add(token, definition);
-                return definition;
-            }
-            File f = new File(fPath);
-            String foundModName = nature.resolveModule(f);
-            String foundAs = def.o1[1];
-            
-            IModule mod;
-            if(foundModName == null){
-                //this can happen in a case where we have a definition that's found from a compiled file which actually
-                //maps to a file that's outside of the pythonpath known by Pydev.
-                String n = FullRepIterable.getFirstPart(f.getName());
-                mod = AbstractModule.createModule(n, f, nature, true);
-            }else{
-                mod = nature.getAstManager().getModule(foundModName, nature, true);
+        Tuple<String[],int[]> def = ShellPool.getLineCol(nature, this.name, token, 
+                nature.getAstManager().getModulesManager().getCompletePythonPath(
+                        nature.getProjectInterpreter(), 
+                        nature.getRelatedInterpreterManager())); //default
+        if(def == null){
+            if(TRACE_COMPILED_MODULES){
+                System.out.println("CompiledModule.findDefinition:"+token+" = empty");
             }
-            
+            addDefinitionsFound(token, EMPTY_DEFINITION);
+            return EMPTY_DEFINITION;
+        }
+        String fPath = def.o1[0];
+        if(fPath.equals("None")){
             if(TRACE_COMPILED_MODULES){
-                System.out.println("CompiledModule.findDefinition: found at:"+mod.getName());
+                System.out.println("CompiledModule.findDefinition:"+token+" = None");
             }
-            int foundLine = def.o2[0];
-            if(foundLine == 0 && foundAs != null && foundAs.length() > 0 && mod != null &&
-                    state.canStillCheckFindSourceFromCompiled(mod, foundAs)){
-                //TODO: The nature (and so the grammar to be used) must be defined by the file we'll parse
-                //(so, we need to know the system modules manager that actually created it to know the actual nature)
-                IModule sourceMod = AbstractModule.createModuleFromDoc(mod.getName(), f, new Document(REF.getFileContents(f)), nature, true);
-                if(sourceMod instanceof SourceModule){
-                    Definition[] definitions = (Definition[]) sourceMod.findDefinition(state.getCopyWithActTok(foundAs), -1, -1, nature);
-                    if(definitions.length > 0){
-                        this.definitionsFoundCache.add(token, definitions);
-                        return definitions;
-                    }
+            Definition[] definition = new Definition[]{new Definition(def.o2[0], def.o2[1], token, null, null, this)};
+            addDefinitionsFound(token, definition);
+            return definition;
+        }
+        File f = new File(fPath);
+        String foundModName = nature.resolveModule(f);
+        String foundAs = def.o1[1];
+        
+        IModule mod;
+        if(foundModName == null){
+            //this can happen in a case where we have a definition that's found from a compiled file which actually
+            //maps to a file that's outside of the pythonpath known by Pydev.
+            String n = FullRepIterable.getFirstPart(f.getName());
+            mod = AbstractModule.createModule(n, f, nature, true);
+        }else{
+            mod = nature.getAstManager().getModule(foundModName, nature, true);
+        }
+        
+        if(TRACE_COMPILED_MODULES){
+            System.out.println("CompiledModule.findDefinition: found at:"+mod.getName());
+        }
+        int foundLine = def.o2[0];
+        if(foundLine == 0 && foundAs != null && foundAs.length() > 0 && mod != null &&
+                state.canStillCheckFindSourceFromCompiled(mod, foundAs)){
+            //TODO: The nature (and so the grammar to be used) must be defined by the file we'll parse
+            //(so, we need to know the system modules manager that actually created it to know the actual nature)
+            IModule sourceMod = AbstractModule.createModuleFromDoc(mod.getName(), f, new Document(REF.getFileContents(f)), nature, true);
+            if(sourceMod instanceof SourceModule){
+                Definition[] definitions = (Definition[]) sourceMod.findDefinition(state.getCopyWithActTok(foundAs), -1, -1, nature);
+                if(definitions.length > 0){
+                    addDefinitionsFound(token, definitions);
+                    return definitions;
                 }
             }
-            if(mod == null){
-                mod = this;
-            }
-            int foundCol = def.o2[1];
-            if(foundCol < 0){
-                foundCol = 0;
-            }
-            if(TRACE_COMPILED_MODULES){
-                System.out.println("CompiledModule.findDefinition: found compiled at:"+mod.getName());
-            }
-            Definition[] definitions = new Definition[]{new Definition(foundLine+1, foundCol+1, token, null, null, mod)};
-            this.definitionsFoundCache.add(token, definitions);
-            return definitions;
         }
+        if(mod == null){
+            mod = this;
+        }
+        int foundCol = def.o2[1];
+        if(foundCol < 0){
+            foundCol = 0;
+        }
+        if(TRACE_COMPILED_MODULES){
+            System.out.println("CompiledModule.findDefinition: found compiled at:"+mod.getName());
+        }
+        Definition[] definitions = new Definition[]{new Definition(foundLine+1, foundCol+1, token, null, null, mod)};
+        addDefinitionsFound(token, definitions);
+        return definitions;
     }
 
     
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited.modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.pydev.core.Tuple;
+
+/**
+ * Keeps in the disk the completions that the shell gave for the compiled modules of an interpreter (so that they
+ * don't have to be asked again after a restart).
+ *
+ * The key is what was asked to the shell (i.e.: 'os' or 'os.path') and the value is the file of the module and the
+ * completions (as received from the shell).
+ *
+ * The file starts with a stamp (created from the interpreter executable and the modification time of the folders
+ * in its pythonpath): if the stamp doesn't match the current one, the contents are discarded. New entries are
+ * appended to the file.
+ *
+ * @author Fabio
+ */
+public final class CompiledModuleTokensCache {
+
+    private static final int MAGIC = 0x50594354; //PYCT
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final String stamp;
+
+    /**
+     * Only loaded when first needed.
+     */
+    private Map<String, Tuple<String, List<String[]>>> entries;
+
+    /**
+     * Whether the file has the header for the current stamp (otherwise, it must be recreated on the next write).
+     */
+    private boolean validFile;
+
+    public CompiledModuleTokensCache(File file, String stamp) {
+        this.file = file;
+        this.stamp = stamp;
+    }
+
+    public String getStamp() {
+        return stamp;
+    }
+
+    /**
+     * @return a stamp that changes when the interpreter or something in its pythonpath changes (i.e.: something
+     * is installed in the site-packages).
+     */
+    public static String createStamp(String executable, List<String> pythonpath) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(executable).append('|').append(new File(executable).lastModified());
+        for(String path:pythonpath){
+            buf.append('|').append(path).append('|').append(new File(path).lastModified());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the file and the completions for the given key or null if it's not in the cache.
+     */
+    public synchronized Tuple<String, List<String[]>> get(String key) {
+        load();
+        return entries.get(key);
+    }
+
+    /**
+     * Adds the completions for the key (and writes them to the disk).
+     */
+    public synchronized void put(String key, String moduleFile, List<String[]> completions) throws IOException {
+        load();
+        entries.put(key, new Tuple<String, List<String[]>>(moduleFile, completions));
+
+        if(!validFile){
+            File parent = file.getParentFile();
+            if(parent != null && !parent.exists()){
+                parent.mkdirs();
+            }
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, validFile)));
+        try {
+            if(!validFile){
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, stamp);
+                validFile = true;
+            }
+            writeString(out, key);
+            writeString(out, moduleFile);
+            out.writeInt(completions.size());
+            for(String[] completion:completions){
+                out.writeInt(completion.length);
+                for(String s:completion){
+                    writeString(out, s);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    /**
+     * Reads the entries in the file (if it was written for the current stamp).
+     */
+    private void load() {
+        if(entries != null){
+            return;
+        }
+        entries = new HashMap<String, Tuple<String, List<String[]>>>();
+        if(!file.exists()){
+            return;
+        }
+        long validLength = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if(in.readInt() != MAGIC || in.readInt() != VERSION || !stamp.equals(readString(in))){
+                    return;
+                }
+                validFile = true;
+                validLength = 8 + 4 + utf8Length(stamp);
+                while(true){
+                    long recordLength = 0;
+                    String key = readString(in);
+                    recordLength += 4 + utf8Length(key);
+                    String moduleFile = readString(in);
+                    recordLength += 4 + utf8Length(moduleFile);
+                    int size = in.readInt();
+                    recordLength += 4;
+                    List<String[]> completions = new ArrayList<String[]>(size);
+                    for(int i=0;i<size;i++){
+                        String[] completion = new String[in.readInt()];
+                        recordLength += 4;
+                        for(int j=0;j<completion.length;j++){
+                            completion[j] = readString(in);
+                            recordLength += 4 + utf8Length(completion[j]);
+                        }
+                        completions.add(completion);
+                    }
+                    entries.put(key, new Tuple<String, List<String[]>>(moduleFile, completions));
+                    validLength += recordLength;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (EOFException e) {
+            //that's the expected end (all the records were read or the last one was only partially written)
+        } catch (IOException e) {
+            validFile = false;
+        }
+        
+        if(validFile && file.length() > validLength){
+            //partially written (i.e.: crashed while writing): discard the last record before appending to it
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(validLength);
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                validFile = false;
+            }
+        }
+    }
+
+    private static int utf8Length(String s) throws IOException {
+        return s == null ? 0 : s.getBytes("UTF-8").length;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if(s == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length == -1){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -48,8 +48,9 @@ import org.python.pydev.runners.ThreadStreamReader;
  * This is the shell that 'talks' to the python / jython process (it is intended to be subclassed so that
  * we know how to deal with each). 
  * 
- * Its methods are synched to prevent concurrent access.
- * 
+ * Its methods are synched to prevent concurrent access (clients that may run in background threads should go
+ * through the ShellPool, which gives them other shells so that they don't block the COMPLETION_SHELL).
+ *
  * @author fabioz
  *
  */
@@ -61,7 +62,13 @@ public abstract class AbstractShell {
     protected static final int DEFAULT_SLEEP_BETWEEN_ATTEMPTS = 1000; //1sec, so we can make the number of attempts be shown as elapsed in secs
     protected static final int DEBUG_SHELL = -1;
     
-    private final String TYPE_UNKNOWN_STR = ""+IToken.TYPE_UNKNOWN;
+    private static final String TYPE_UNKNOWN_STR = ""+IToken.TYPE_UNKNOWN;
+    
+    /**
+     * Whether the binary protocol should be requested to the server (if the server doesn't support it, the
+     * text protocol is used).
+     */
+    public static boolean USE_BINARY_PROTOCOL = true;
     
     /**
      * Determines if we are already in a method that starts the shell
@@ -86,6 +93,16 @@ public abstract class AbstractShell {
      * Lock to know if there is someone already using this shell for some operation
      */
     private boolean isInOperation = false;
+    
+    /**
+     * Used to talk with the server if the binary protocol was accepted (null when using the text protocol).
+     */
+    private ShellBinaryProtocol binaryProtocol;
+    
+    /**
+     * Set if the server didn't accept the binary protocol (so that it's not requested again).
+     */
+    private boolean binaryProtocolUnsupported = false;
 
     private static void dbg(String string, int priority) {
         if(priority <= DEBUG_SHELL){
@@ -253,11 +270,14 @@ public abstract class AbstractShell {
     }
 
 
-    public synchronized static AbstractShell getServerShell(IPythonNature nature, int id) throws IOException, JDTNotAvailableException, CoreException, MisconfigurationException, PythonNatureWithoutProjectException{
+    public static AbstractShell getServerShell(IPythonNature nature, int id) throws IOException, JDTNotAvailableException, CoreException, MisconfigurationException, PythonNatureWithoutProjectException{
         return getServerShell(nature.getProjectInterpreter(), nature.getInterpreterType(), id);
     }
     
     /**
+     * The shell is registered before being started and is started holding only its own lock (so, a shell that
+     * takes long to start doesn't prevent other shells from being gotten).
+     * 
      * @param interpreter the interpreter that should create the shell
      * 
      * @param relatedTo identifies to which kind of interpreter the shell should be related.
@@ -274,7 +294,7 @@ public abstract class AbstractShell {
      * @throws IOException
      * @throws MisconfigurationException 
      */
-    private synchronized static AbstractShell getServerShell(IInterpreterInfo interpreter, int relatedTo, int id) throws IOException, JDTNotAvailableException, CoreException, MisconfigurationException {
+    private static AbstractShell getServerShell(IInterpreterInfo interpreter, int relatedTo, int id) throws IOException, JDTNotAvailableException, CoreException, MisconfigurationException {
         AbstractShell pythonShell = null;
         synchronized(shells){
             if(DebugSettings.DEBUG_CODE_COMPLETION){
@@ -314,23 +334,45 @@ public abstract class AbstractShell {
                 }else{
                     throw new RuntimeException("unknown related id");
                 }
-                if(DebugSettings.DEBUG_CODE_COMPLETION){
-                    Log.toLogFile("pythonShell.startIt()", AbstractShell.class);
-                    Log.addLogLevel();
-                }
-                pythonShell.startIt(interpreter, AbstractShell.DEFAULT_SLEEP_BETWEEN_ATTEMPTS); //first start it
-                if(DebugSettings.DEBUG_CODE_COMPLETION){
-                    Log.remLogLevel();
-                    Log.toLogFile("Finished pythonShell.startIt()", AbstractShell.class);
-                }
-                
-                //then make it accessible
+                //make it accessible (others getting it will wait in its lock while it's started)
                 typeToShell.put(new Integer(id), pythonShell);
             }
             
         }
+        
+        //start it out of the shells lock (startIt is synchronized in the shell and does nothing if it's
+        //already started)
+        if(DebugSettings.DEBUG_CODE_COMPLETION){
+            Log.toLogFile("pythonShell.startIt()", AbstractShell.class);
+            Log.addLogLevel();
+        }
+        boolean started = false;
+        try {
+            pythonShell.startIt(interpreter, AbstractShell.DEFAULT_SLEEP_BETWEEN_ATTEMPTS);
+            started = true;
+        } finally {
+            if(DebugSettings.DEBUG_CODE_COMPLETION){
+                Log.remLogLevel();
+                Log.toLogFile("Finished pythonShell.startIt()", AbstractShell.class);
+            }
+            if(!started){
+                unregisterShell(interpreter, id, pythonShell);
+            }
+        }
         return pythonShell;
     }
+    
+    /**
+     * Removes a shell that could not be started (if it's still the one registered with the given id).
+     */
+    private static void unregisterShell(IInterpreterInfo interpreter, int id, AbstractShell pythonShell) {
+        synchronized(shells){
+            Map<Integer, AbstractShell> typeToShell = getTypeToShellFromId(interpreter);
+            if(typeToShell.get(new Integer(id)) == pythonShell){
+                typeToShell.remove(new Integer(id));
+            }
+        }
+    }
 
     /**
      * Python server process.
@@ -558,6 +600,33 @@ public abstract class AbstractShell {
         
         //if it got here, everything went ok (otherwise we would have gotten an exception).
         isConnected = true;
+        
+        requestBinaryProtocol(interpreter, milisSleep);
+    }
+
+    /**
+     * Asks the server to use the binary protocol (in the text protocol). If it's not accepted, the shell is 
+     * restarted to keep on with the text protocol (as the server may have sent something we don't expect).
+     */
+    private void requestBinaryProtocol(IInterpreterInfo interpreter, int milisSleep) throws IOException, 
+            JDTNotAvailableException, CoreException, MisconfigurationException {
+        binaryProtocol = null;
+        if(!USE_BINARY_PROTOCOL || binaryProtocolUnsupported){
+            return;
+        }
+        try {
+            this.write(ShellBinaryProtocol.MSG_BINARY_PROTOCOL);
+            if(this.read().startsWith("@@MSG_OK")){
+                binaryProtocol = new ShellBinaryProtocol(socketToRead.getInputStream());
+                return;
+            }
+        } catch (Exception e) {
+            //not supported (below)
+        }
+        dbg("Binary protocol not accepted by the shell: using the text protocol.", 1);
+        binaryProtocolUnsupported = true;
+        endIt();
+        startIt(interpreter, milisSleep);
     }
 
 
@@ -808,6 +877,7 @@ public abstract class AbstractShell {
      * connections correctly (intended for shutdowns)
      */
     public synchronized void shutdown() {
+        binaryProtocol = null;
         socketToRead = null;
         socketToWrite = null;
         serverSocket = null;
@@ -831,6 +901,7 @@ public abstract class AbstractShell {
 
         //set that we are still not connected
         isConnected = false;
+        binaryProtocol = null;
         
         if (process!= null){
             process.destroy();
@@ -901,6 +972,9 @@ public abstract class AbstractShell {
 
     protected synchronized Tuple<String, List<String[]>> getTheCompletions(String str) throws CoreException {
         try {
+            if(binaryProtocol != null){
+                return getTheCompletionsBinary(str);
+            }
             this.write(str);
     
             return getCompletions();
@@ -919,6 +993,38 @@ public abstract class AbstractShell {
         }
     }
 
+    /**
+     * Sends the request and reads the response in the binary protocol.
+     */
+    private Tuple<String, List<String[]>> getTheCompletionsBinary(String str) throws IOException {
+        if(finishedForGood){
+            throw new RuntimeException("Shells are already finished for good, so, it is an invalid state to try to write to it.");
+        }
+        OutputStream outputStream = this.socketToWrite.getOutputStream();
+        outputStream.write(ShellBinaryProtocol.createRequest(str));
+        outputStream.flush();
+        
+        while(true){
+            byte type = binaryProtocol.readFrame();
+            switch(type){
+                case ShellBinaryProtocol.FRAME_PROGRESS:
+                    String msg = binaryProtocol.getProgressMessage();
+                    communicateWork(msg.trim().length() > 0 ? "Processing: " + msg : "Processing...", null);
+                    break;
+                    
+                case ShellBinaryProtocol.FRAME_COMPLETIONS:
+                    return binaryProtocol.getCompletions(TYPE_UNKNOWN_STR);
+                    
+                case ShellBinaryProtocol.FRAME_OK:
+                case ShellBinaryProtocol.FRAME_INVALID_REQUEST:
+                    return getInvalidCompletion();
+                    
+                default:
+                    throw new IOException("Unexpected frame from the shell: " + type);
+            }
+        }
+    }
+
     /**
      * @throws CoreException
      * 
@@ -960,8 +1066,15 @@ public abstract class AbstractShell {
      * @throws IOException
      */
     protected synchronized Tuple<String, List<String[]>> getCompletions() throws IOException {
+        return parseCompletions(this.read());
+    }
+
+    /**
+     * @param read the message received in the text protocol.
+     * @return the module file and the completions in the message.
+     */
+    static Tuple<String, List<String[]>> parseCompletions(String read) throws IOException {
         ArrayList<String[]> list = new ArrayList<String[]>();
-        String read = this.read();
 		String string = read.replaceAll("\\(","").replaceAll("\\)","");
         StringTokenizer tokenizer = new StringTokenizer(string, ",");
         
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.python.pydev.core.Tuple;
+
+/**
+ * The binary protocol to talk with the pycompletionserver.py (used after the server answers the
+ * MSG_BINARY_PROTOCOL request with an ok in the text protocol).
+ *
+ * The requests are the same messages of the text protocol, sent as an int with the length followed by the message
+ * in utf-8.
+ *
+ * The responses are frames with a byte for the type, an int with the length and the payload. The payload of the
+ * completions is the module file, the number of completions and 4 strings for each completion (token, description,
+ * args and type), where each string is an int with the length (-1 for None) and its bytes in utf-8.
+ *
+ * @author Fabio
+ */
+final class ShellBinaryProtocol {
+
+    static final String MSG_BINARY_PROTOCOL = "@@BINARY_PROTOCOL_END@@";
+
+    static final byte FRAME_PROGRESS = 1;
+    static final byte FRAME_COMPLETIONS = 2;
+    static final byte FRAME_OK = 3;
+    static final byte FRAME_INVALID_REQUEST = 4;
+
+    private static final String ENCODING_UTF_8 = "UTF-8";
+
+    private final ReadableByteChannel in;
+
+    private final ByteBuffer header = ByteBuffer.allocate(5);
+
+    /**
+     * The payload of the last frame read (grows as needed).
+     */
+    private ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+
+    ShellBinaryProtocol(InputStream in) {
+        this.in = Channels.newChannel(in);
+    }
+
+    /**
+     * @return the bytes to be sent for the given request.
+     */
+    static byte[] createRequest(String msg) throws UnsupportedEncodingException {
+        byte[] bytes = msg.getBytes(ENCODING_UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + bytes.length);
+        buf.putInt(bytes.length);
+        buf.put(bytes);
+        return buf.array();
+    }
+
+    /**
+     * Blocks until the next frame is read.
+     *
+     * @return the type of the frame read (its payload may be gotten with the other methods).
+     */
+    byte readFrame() throws IOException {
+        header.clear();
+        readFully(header);
+        header.flip();
+        byte type = header.get();
+        int length = header.getInt();
+        if(length < 0){
+            throw new IOException("Invalid frame length: " + length);
+        }
+        if(payload.capacity() < length){
+            payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+        }
+        payload.clear();
+        payload.limit(length);
+        readFully(payload);
+        payload.flip();
+        return type;
+    }
+
+    private void readFully(ByteBuffer buf) throws IOException {
+        while(buf.hasRemaining()){
+            if(in.read(buf) < 0){
+                throw new EOFException("Connection closed while reading from the shell.");
+            }
+        }
+    }
+
+    /**
+     * @return the message of a progress frame.
+     */
+    String getProgressMessage() throws IOException {
+        return new String(payload.array(), 0, payload.limit(), ENCODING_UTF_8);
+    }
+
+    /**
+     * @param typeUnknown the type to be used if it was not sent.
+     * @return the module file and the completions in a completions frame (as in the text protocol, the completions
+     * whose token is 'ERROR:' are skipped).
+     */
+    Tuple<String, List<String[]>> getCompletions(String typeUnknown) throws IOException {
+        String file = readString();
+        int size = payload.getInt();
+        List<String[]> list = new ArrayList<String[]>(size);
+        for(int i=0;i<size;i++){
+            String token = readString();
+            String description = readString();
+            String args = readString();
+            String type = readString();
+            if(token == null || token.equals("ERROR:")){
+                continue;
+            }
+            list.add(new String[]{token, description != null ? description : "", args != null ? args : "",
+                    type != null ? type : typeUnknown});
+        }
+        return new Tuple<String, List<String[]>>(file, list);
+    }
+
+    private String readString() throws IOException {
+        int length = payload.getInt();
+        if(length < 0){
+            return null;
+        }
+        int position = payload.position();
+        payload.position(position + length);
+        return new String(payload.array(), position, length, ENCODING_UTF_8);
+    }
+}
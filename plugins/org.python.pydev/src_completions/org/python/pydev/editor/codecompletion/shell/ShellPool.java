@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.python.pydev.core.IInterpreterInfo;
+import org.python.pydev.core.IPythonNature;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.core.log.Log;
+import org.python.pydev.logging.DebugSettings;
+
+/**
+ * Dispatches the requests to the shells of an interpreter.
+ *
+ * The requests done in the interactive lane (i.e.: code-completion requested by the user) always go to the
+ * COMPLETION_SHELL, which is reserved for them. The requests done from threads marked as background threads
+ * (i.e.: the builders) go to a pool of other shells (so, the user doesn't have to wait for the builder to finish
+ * asking about compiled modules to get a completion).
+ *
+ * The background requests wait in a (fair) queue for a free shell of the pool and each shell handles a single
+ * request at a time.
+ *
+ * @author Fabio
+ */
+public final class ShellPool {
+
+    /**
+     * The number of shells used for the background requests of an interpreter (read when the pool for the
+     * interpreter is created). If 0, the background requests also go to the COMPLETION_SHELL.
+     */
+    public static int BACKGROUND_SHELLS = 2;
+
+    /**
+     * The id of the first shell in the pool (the others are the following ids).
+     *
+     * @see AbstractShell#COMPLETION_SHELL
+     * @see AbstractShell#OTHERS_SHELL
+     */
+    public static final int FIRST_BACKGROUND_SHELL = 100;
+
+    /**
+     * A request to be done in some shell.
+     */
+    private static interface IShellRequest<T> {
+        T run(AbstractShell shell) throws Exception;
+    }
+
+    /**
+     * The number of requests and the time they took in some lane.
+     */
+    private static final class LaneStats {
+
+        private long requests;
+        private long totalWaitNanos;
+        private long totalNanos;
+        private long maxNanos;
+
+        private synchronized void add(long waitNanos, long nanos) {
+            requests++;
+            totalWaitNanos += waitNanos;
+            totalNanos += nanos;
+            if(nanos > maxNanos){
+                maxNanos = nanos;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            long avg = requests == 0 ? 0 : totalNanos / requests / 1000;
+            long avgWait = requests == 0 ? 0 : totalWaitNanos / requests / 1000;
+            return "requests: " + requests + " avg: " + avg + " us (waiting: " + avgWait + " us) max: " +
+                    (maxNanos / 1000) + " us";
+        }
+    }
+
+    private static final LaneStats interactiveStats = new LaneStats();
+    private static final LaneStats backgroundStats = new LaneStats();
+
+    /**
+     * Used to identify each request in the logs.
+     */
+    private static final AtomicLong requestIds = new AtomicLong();
+
+    /**
+     * Whether the requests from the current thread should go to the background lane.
+     */
+    private static final ThreadLocal<Boolean> backgroundThread = new ThreadLocal<Boolean>();
+
+    /**
+     * The pools for each interpreter (executable).
+     */
+    private static final Map<String, ShellPool> pools = new HashMap<String, ShellPool>();
+
+    /**
+     * The ids of the shells of this pool which are not being used.
+     */
+    private final ArrayBlockingQueue<Integer> freeShells;
+
+    private final int size;
+
+    private ShellPool(int size) {
+        this.size = size;
+        freeShells = new ArrayBlockingQueue<Integer>(size, true);
+        for(int i=0;i<size;i++){
+            freeShells.add(FIRST_BACKGROUND_SHELL + i);
+        }
+    }
+
+    private static ShellPool getPool(IInterpreterInfo interpreter) {
+        synchronized (pools) {
+            ShellPool pool = pools.get(interpreter.getExecutableOrJar());
+            if(pool == null){
+                pool = new ShellPool(BACKGROUND_SHELLS);
+                pools.put(interpreter.getExecutableOrJar(), pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Marks (or unmarks) the current thread as a thread whose requests should go to the background lane.
+     * 
+     * The value returned must be restored in a finally (so, a thread that was already marked -- i.e.: the builder
+     * running an analysis inline -- keeps its mark):
+     * 
+     * boolean previous = ShellPool.setBackgroundThread(true);
+     * try{
+     *     ...
+     * }finally{
+     *     ShellPool.setBackgroundThread(previous);
+     * }
+     * 
+     * @return whether the thread was marked as a background thread before this call.
+     */
+    public static boolean setBackgroundThread(boolean background) {
+        boolean previous = isBackgroundThread();
+        if(background){
+            backgroundThread.set(Boolean.TRUE);
+        }else{
+            backgroundThread.remove();
+        }
+        return previous;
+    }
+
+    public static boolean isBackgroundThread() {
+        return backgroundThread.get() != null;
+    }
+
+    /**
+     * @return the number of shells in the pool for the background requests of the given interpreter.
+     */
+    public static int getPoolSize(IInterpreterInfo interpreter) {
+        return getPool(interpreter).size;
+    }
+
+    /**
+     * @return a description of the number of requests and their latency in each lane.
+     */
+    public static String getStats() {
+        return "Interactive: " + interactiveStats + "\nBackground: " + backgroundStats;
+    }
+
+    /**
+     * Stops the shells of the pool of the given interpreter (they're restarted when needed).
+     */
+    public static void stopBackgroundShells(IInterpreterInfo interpreter) {
+        ShellPool pool;
+        synchronized (pools) {
+            pool = pools.get(interpreter.getExecutableOrJar());
+        }
+        if(pool != null){
+            for(int i=0;i<pool.size;i++){
+                AbstractShell.stopServerShell(interpreter, FIRST_BACKGROUND_SHELL + i);
+            }
+        }
+    }
+
+    /**
+     * @see AbstractShell#getImportCompletions(String, List)
+     */
+    public static Tuple<String, List<String[]>> getImportCompletions(IPythonNature nature, final String token,
+            final List<String> pythonpath) throws Exception {
+        return execute(nature, token, new IShellRequest<Tuple<String, List<String[]>>>() {
+            public Tuple<String, List<String[]>> run(AbstractShell shell) throws Exception {
+                return shell.getImportCompletions(token, pythonpath);
+            }
+        });
+    }
+
+    /**
+     * @see AbstractShell#getLineCol(String, String, List)
+     */
+    public static Tuple<String[], int[]> getLineCol(IPythonNature nature, final String moduleName,
+            final String token, final List<String> pythonpath) throws Exception {
+        return execute(nature, moduleName + "." + token, new IShellRequest<Tuple<String[], int[]>>() {
+            public Tuple<String[], int[]> run(AbstractShell shell) throws Exception {
+                return shell.getLineCol(moduleName, token, pythonpath);
+            }
+        });
+    }
+
+    private static <T> T execute(IPythonNature nature, String desc, IShellRequest<T> request) throws Exception {
+        long requestId = requestIds.incrementAndGet();
+        long initial = System.nanoTime();
+        boolean background = BACKGROUND_SHELLS > 0 && isBackgroundThread();
+
+        ShellPool pool = null;
+        Integer shellId = AbstractShell.COMPLETION_SHELL;
+        if(background){
+            pool = getPool(nature.getProjectInterpreter());
+            shellId = pool.freeShells.take();
+        }
+        try {
+            AbstractShell shell = AbstractShell.getServerShell(nature, shellId);
+            synchronized (shell) {
+                long started = System.nanoTime();
+                try {
+                    return request.run(shell);
+                } finally {
+                    long finished = System.nanoTime();
+                    (background ? backgroundStats : interactiveStats).add(started - initial, finished - initial);
+                    if(DebugSettings.DEBUG_CODE_COMPLETION){
+                        Log.toLogFile("Shell request: " + requestId + " (" + desc + ") shell: " + shellId +
+                                " waited: " + ((started - initial) / 1000000) + " ms took: " +
+                                ((finished - started) / 1000000) + " ms", ShellPool.class);
+                    }
+                }
+            }
+        } finally {
+            if(pool != null){
+                pool.freeShells.add(shellId);
+            }
+        }
+    }
+}
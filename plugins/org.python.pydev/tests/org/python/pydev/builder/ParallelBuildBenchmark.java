@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.eclipse.jface.text.Document;
+import org.python.pydev.core.IGrammarVersionProvider;
+import org.python.pydev.core.Tuple;
+import org.python.pydev.parser.PyParser;
+import org.python.pydev.parser.jython.SimpleNode;
+
+/**
+ * Checks how a full build scales with the number of threads: the files are parsed in the workers of a ParallelBuild
+ * (as in PyDevBuilder.buildResourcesInParallel) and consumed in the thread that started the build.
+ *
+ * Run main() to see the numbers for 2000 files from 1 thread up to the number of cores.
+ */
+public class ParallelBuildBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            ParallelBuildBenchmark test = new ParallelBuildBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.files = 2000;
+            test.testScaling();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int files = 100;
+
+    private static String createContents(int i) {
+        StringBuffer buf = new StringBuffer();
+        buf.append("import os\nimport sys\n\n");
+        for(int j=0;j<30;j++){
+            buf.append("class Class" + j + "(object):\n");
+            buf.append("    '''Docstring for " + i + "'''\n");
+            buf.append("    def method(self, a, b=None, *args, **kwargs):\n");
+            buf.append("        for x in range(a):\n");
+            buf.append("            if x % 2 == 0:\n");
+            buf.append("                yield [y * 2 for y in args if y]\n");
+            buf.append("        return dict(a=a, b=b)\n\n");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the number of files consumed.
+     */
+    private int build(final List<String> contents, int threads) {
+        final int[] consumed = new int[]{0};
+        ParallelBuild<Object, SimpleNode> build = new ParallelBuild<Object, SimpleNode>(contents.size(), threads, threads * 4){
+
+            @Override
+            protected Object createWorkerState() {
+                return null;
+            }
+
+            @Override
+            protected SimpleNode prepare(Object state, int index) throws Exception {
+                Tuple<SimpleNode, Throwable> r = PyParser.reparseDocument(new PyParser.ParserInfo(
+                        new Document(contents.get(index)), IGrammarVersionProvider.LATEST_GRAMMAR_VERSION));
+                if(r.o2 != null){
+                    throw new RuntimeException(r.o2);
+                }
+                return r.o1;
+            }
+
+            @Override
+            protected void consume(SimpleNode prepared) throws Exception {
+                consumed[0]++;
+            }
+
+            @Override
+            protected boolean isCanceled() {
+                return false;
+            }
+        };
+        build.build();
+        return consumed[0];
+    }
+
+    public void testScaling() throws Exception {
+        List<String> contents = new ArrayList<String>();
+        for(int i=0;i<files;i++){
+            contents.add(createContents(i));
+        }
+        build(contents, 1); //warm up
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        long singleThread = -1;
+        for(int threads=1;threads<=cores;threads*=2){
+            long initial = System.nanoTime();
+            assertEquals(files, build(contents, threads));
+            long time = (System.nanoTime() - initial) / 1000000;
+            if(threads == 1){
+                singleThread = time;
+            }
+            if(printTimes){
+                System.out.println("Files: " + files + " threads: " + threads + " (cores: " + cores + "): " + time +
+                        " ms (speedup: " + (time > 0 ? (singleThread / (double) time) : 0) + ")");
+            }
+        }
+    }
+
+    public void testCancel() throws Exception {
+        final int[] prepared = new int[]{0};
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+        ParallelBuild<Object, Integer> build = new ParallelBuild<Object, Integer>(1000, 4, 2){
+
+            @Override
+            protected Object createWorkerState() {
+                return null;
+            }
+
+            @Override
+            protected Integer prepare(Object state, int index) throws Exception {
+                synchronized (prepared) {
+                    prepared[0]++;
+                }
+                return index;
+            }
+
+            @Override
+            protected void consume(Integer i) throws Exception {
+                if(i >= 10){
+                    canceled.set(true);
+                }
+            }
+
+            @Override
+            protected boolean isCanceled() {
+                return canceled.get();
+            }
+        };
+        build.build();
+        assertTrue(canceled.get());
+        assertTrue("Prepared: " + prepared[0], prepared[0] < 1000);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.builder.pylint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.REF;
+import org.python.pydev.core.TestDependent;
+import org.python.pydev.core.Tuple;
+
+/**
+ * Compares running pylint with a new process for each file (as it's done on a delta build) with running it
+ * for all the files in a few processes with pydev_pylint_batch.py (as it's done on a full build).
+ *
+ * A fake pylint is used (its import takes some time to simulate the time to import pylint and its dependencies),
+ * so, pylint doesn't need to be installed.
+ *
+ * Run main() to see the numbers for a project with 200 files.
+ */
+public class PyLintBatchBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            PyLintBatchBenchmark test = new PyLintBatchBenchmark();
+            test.printTimes = true;
+            test.files = 200;
+            test.setUp();
+            test.testBatch();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int files = 10;
+
+    private File baseDir;
+    private File lintPy;
+    private List<File> toLint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        baseDir = File.createTempFile("pylint_batch", "");
+        baseDir.delete();
+        baseDir.mkdirs();
+
+        File pylintDir = new File(baseDir, "pylint");
+        pylintDir.mkdirs();
+        REF.writeStrToFile("", new File(pylintDir, "__init__.py"));
+        lintPy = new File(pylintDir, "lint.py");
+        REF.writeStrToFile("" +
+                "import os\n" +
+                "import sys\n" +
+                "import time\n" +
+                "time.sleep(0.2) #simulate the pylint import\n" +
+                "\n" +
+                "def Run(args):\n" +
+                "    f = args[-1]\n" +
+                "    assert os.path.dirname(f) == os.getcwd(), 'Expected to run from the dir of the file'\n" +
+                "    sys.stdout.write('W0611:  1: Unused import os (%s)\\n' % (os.path.basename(f),))\n" +
+                "    sys.stdout.write('C0301:  2: Line too long (%s)\\n' % (' '.join(args[:-1]),))\n" +
+                "    sys.exit(2)\n" +
+                "\n" +
+                "if __name__ == '__main__':\n" +
+                "    Run(sys.argv[1:])\n" +
+                "", lintPy);
+
+        File srcDir = new File(baseDir, "src");
+        srcDir.mkdirs();
+        toLint = new ArrayList<File>();
+        for(int i=0;i<files;i++){
+            File f = new File(srcDir, "mod" + i + ".py");
+            REF.writeStrToFile("import os\n", f);
+            toLint.add(f.getCanonicalFile());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        REF.deleteDirectoryTree(baseDir);
+        super.tearDown();
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[1024];
+        int n;
+        while((n = in.read(b)) != -1){
+            out.write(b, 0, n);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return the stdout of running the fake pylint in a new process for each file.
+     */
+    private List<String> runOneProcessPerFile() throws Exception {
+        List<String> ret = new ArrayList<String>();
+        for(File f:toLint){
+            ProcessBuilder builder = new ProcessBuilder(TestDependent.PYTHON_EXE, "-u", lintPy.getAbsolutePath(),
+                    "--include-ids=y", f.getAbsolutePath());
+            builder.directory(f.getParentFile());
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            ret.add(read(process.getInputStream()));
+            process.waitFor();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the stdout of running the fake pylint for all the files in a single process.
+     */
+    private List<String> runBatch() throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(TestDependent.PYTHON_EXE, "-u",
+                TestDependent.TEST_PYDEV_PLUGIN_LOC + "PySrc/" + PyLintBatchProcess.SCRIPT,
+                lintPy.getAbsolutePath(), "--include-ids=y");
+        builder.redirectErrorStream(true);
+        PyLintBatchProcess process = new PyLintBatchProcess(builder.start());
+        try {
+            List<String> ret = new ArrayList<String>();
+            for(File f:toLint){
+                Tuple<String, String> outTup = process.lint(f.getAbsolutePath());
+                assertEquals("", outTup.o2.trim());
+                ret.add(outTup.o1);
+            }
+            return ret;
+        } finally {
+            process.finish();
+        }
+    }
+
+    public void testBatch() throws Exception {
+        long initial = System.nanoTime();
+        List<String> oneProcessPerFile = runOneProcessPerFile();
+        long oneProcessPerFileTime = (System.nanoTime() - initial) / 1000000;
+
+        initial = System.nanoTime();
+        List<String> batch = runBatch();
+        long batchTime = (System.nanoTime() - initial) / 1000000;
+
+        assertEquals(files, oneProcessPerFile.size());
+        assertEquals(files, batch.size());
+        for(int i=0;i<files;i++){
+            String expected = oneProcessPerFile.get(i).replace("\r", "").trim();
+            assertTrue(expected, expected.startsWith("W0611:  1: Unused import os (mod" + i + ".py)"));
+            assertEquals(expected, batch.get(i).trim());
+        }
+
+        if(printTimes){
+            System.out.println("Files: " + files);
+            System.out.println("One process per file: " + oneProcessPerFileTime + " ms");
+            System.out.println("Batch (single process): " + batchTime + " ms");
+        }
+    }
+}
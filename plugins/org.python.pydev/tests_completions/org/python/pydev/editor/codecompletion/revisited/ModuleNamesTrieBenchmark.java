@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.ModulesKey;
+
+/**
+ * Compares the time to get the modules with a part starting with some string (as done in the imports completion)
+ * checking each module with hasPartStartingWith and with the ModuleNamesTrie.
+ *
+ * Run main() to see the numbers for an interpreter with 100k modules (the test only uses a small number of modules).
+ */
+public class ModuleNamesTrieBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            ModuleNamesTrieBenchmark test = new ModuleNamesTrieBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.modules = 100000;
+            test.testQueries();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int modules = 2000;
+
+    private static final String[] QUERIES = new String[]{"o", "os", "pat", "xml", "mini", "tk", "mod1", "mod123",
+            "abc", "test_"};
+
+    public void testQueries() throws Exception {
+        List<String> names = ModuleNamesTrieTest.createNames(modules);
+        ModulesKeyTreeMap<ModulesKey, ModulesKey> keys = new ModulesKeyTreeMap<ModulesKey, ModulesKey>();
+        ModuleNamesTrie trie = new ModuleNamesTrie();
+
+        long initial = System.nanoTime();
+        for(String name:names){
+            trie.add(name);
+        }
+        long buildTime = (System.nanoTime() - initial) / 1000000;
+        for(String name:names){
+            ModulesKey key = new ModulesKey(name, null);
+            keys.put(key, key);
+        }
+
+        int iterations = 10;
+        long found1 = 0;
+        initial = System.nanoTime();
+        for(int i=0;i<iterations;i++){
+            for(String q:QUERIES){
+                Set<String> s = new HashSet<String>();
+                for(ModulesKey key:keys.keySet()){
+                    if(key.hasPartStartingWith(q)){
+                        s.add(key.name);
+                    }
+                }
+                found1 += s.size();
+            }
+        }
+        long scanTime = (System.nanoTime() - initial) / 1000000;
+
+        long found2 = 0;
+        initial = System.nanoTime();
+        for(int i=0;i<iterations;i++){
+            for(String q:QUERIES){
+                Set<String> s = new HashSet<String>();
+                trie.getModulesWithPartStartingWith(q, s);
+                found2 += s.size();
+            }
+        }
+        long trieTime = (System.nanoTime() - initial) / 1000000;
+
+        assertEquals(found1, found2);
+        if(printTimes){
+            System.out.println("Modules: "+modules+" Queries: "+(iterations*QUERIES.length));
+            System.out.println("hasPartStartingWith in all the keys (ms): "+scanTime);
+            System.out.println("Trie (ms): "+trieTime+" (built in "+buildTime+" ms)");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.ModulesKey;
+
+/**
+ * Checks that the ModuleNamesTrie gives the same results as checking each module with hasPartStartingWith.
+ *
+ * @author Fabio
+ */
+public class ModuleNamesTrieTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ModuleNamesTrieTest.class);
+    }
+
+    /**
+     * Generates names as the ones found in an interpreter (with some parts repeated in many modules).
+     */
+    static List<String> createNames(int count) {
+        String[] parts = new String[]{"os", "path", "xml", "dom", "Mini", "__init__", "test", "test_os", "Tkinter",
+                "email", "mime", "_multibytecodec", "a", "ab", "abc"};
+        Random random = new Random(count);
+        List<String> ret = new ArrayList<String>();
+        for(int i=0;i<count;i++){
+            StringBuffer buf = new StringBuffer();
+            int depth = 1 + random.nextInt(4);
+            for(int j=0;j<depth;j++){
+                if(j > 0){
+                    buf.append('.');
+                }
+                buf.append(parts[random.nextInt(parts.length)]);
+            }
+            buf.append('.').append("mod").append(i);
+            ret.add(buf.toString());
+        }
+        return ret;
+    }
+
+    private static Set<String> bruteForce(Iterable<String> names, String startingWithLowerCase) {
+        Set<String> ret = new HashSet<String>();
+        for(String name:names){
+            if(new ModulesKey(name, null).hasPartStartingWith(startingWithLowerCase)){
+                ret.add(name);
+            }
+        }
+        return ret;
+    }
+
+    private static Set<String> query(ModuleNamesTrie trie, String startingWithLowerCase) {
+        Set<String> ret = new HashSet<String>();
+        trie.getModulesWithPartStartingWith(startingWithLowerCase, ret);
+        return ret;
+    }
+
+    private static final String[] QUERIES = new String[]{"", "o", "os", "os_", "pa", "path", "xm", "mini", "__",
+            "__init__", "test_", "tk", "mod1", "mod12", "a", "abc", "abcd", "zzz", "os.path"};
+
+    public void testSameAsHasPartStartingWith() throws Exception {
+        List<String> names = createNames(2000);
+        ModuleNamesTrie trie = new ModuleNamesTrie();
+        for(String name:names){
+            trie.add(name);
+        }
+        trie.add(names.get(0)); //adding again does nothing
+        assertEquals(names.size(), trie.size());
+        for(String q:QUERIES){
+            assertEquals(q, bruteForce(names, q), query(trie, q));
+        }
+
+        //remove half of them
+        Set<String> remaining = new HashSet<String>();
+        for(int i=0;i<names.size();i++){
+            if(i % 2 == 0){
+                trie.remove(names.get(i));
+            }else{
+                remaining.add(names.get(i));
+            }
+        }
+        trie.remove("not.there");
+        assertEquals(remaining.size(), trie.size());
+        for(String q:QUERIES){
+            assertEquals(q, bruteForce(remaining, q), query(trie, q));
+        }
+
+        trie.clear();
+        assertEquals(0, query(trie, "").size());
+        assertEquals(0, query(trie, "o").size());
+    }
+
+    public void testSameNameParts() throws Exception {
+        ModuleNamesTrie trie = new ModuleNamesTrie();
+        trie.add("Os.os.OS");
+        trie.add("os");
+        assertEquals(2, query(trie, "os").size());
+        trie.remove("Os.os.OS");
+        assertEquals(1, query(trie, "o").size());
+        trie.remove("os");
+        assertEquals(0, query(trie, "o").size());
+    }
+}
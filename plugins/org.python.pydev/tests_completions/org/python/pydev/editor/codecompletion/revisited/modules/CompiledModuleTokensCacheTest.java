@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.revisited.modules;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.Tuple;
+
+public class CompiledModuleTokensCacheTest extends TestCase {
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(CompiledModuleTokensCacheTest.class);
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("compiled_modules_tokens", ".cache");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    private static List<String[]> createCompletions(String prefix) {
+        List<String[]> ret = new ArrayList<String[]>();
+        ret.add(new String[]{prefix+"getcwd", "getcwd() -> path\n\u00e1", "()", "2"});
+        ret.add(new String[]{prefix+"sep", "", "", "4"});
+        ret.add(new String[]{prefix+"weird", null}); //server errors are kept as they came
+        return ret;
+    }
+
+    private static void checkSame(List<String[]> expected, List<String[]> found) {
+        assertEquals(expected.size(), found.size());
+        for(int i=0;i<expected.size();i++){
+            assertTrue(Arrays.equals(expected.get(i), found.get(i)));
+        }
+    }
+
+    public void testRestore() throws Exception {
+        CompiledModuleTokensCache cache = new CompiledModuleTokensCache(file, "stamp1");
+        assertNull(cache.get("os"));
+        cache.put("os", "/usr/lib/python/os.pyc", createCompletions(""));
+        cache.put("os.path", null, createCompletions("p_"));
+        cache.put("os", "/usr/lib/python/os.py", createCompletions("new_")); //the last one is used
+
+        CompiledModuleTokensCache restored = new CompiledModuleTokensCache(file, "stamp1");
+        assertEquals(2, restored.size());
+        Tuple<String, List<String[]>> os = restored.get("os");
+        assertEquals("/usr/lib/python/os.py", os.o1);
+        checkSame(createCompletions("new_"), os.o2);
+        Tuple<String, List<String[]>> path = restored.get("os.path");
+        assertNull(path.o1);
+        checkSame(createCompletions("p_"), path.o2);
+    }
+
+    public void testStampChanged() throws Exception {
+        CompiledModuleTokensCache cache = new CompiledModuleTokensCache(file, "stamp1");
+        cache.put("os", null, createCompletions(""));
+
+        CompiledModuleTokensCache other = new CompiledModuleTokensCache(file, "stamp2");
+        assertNull(other.get("os"));
+        other.put("sys", null, createCompletions("s"));
+
+        CompiledModuleTokensCache restored = new CompiledModuleTokensCache(file, "stamp2");
+        assertEquals(1, restored.size());
+        assertNotNull(restored.get("sys"));
+        assertEquals(0, new CompiledModuleTokensCache(file, "stamp1").size());
+    }
+
+    public void testPartiallyWritten() throws Exception {
+        CompiledModuleTokensCache cache = new CompiledModuleTokensCache(file, "stamp1");
+        cache.put("os", null, createCompletions(""));
+        long length = file.length();
+        cache.put("sys", null, createCompletions("s"));
+
+        //as if it crashed while writing the last entry
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 5);
+        raf.close();
+
+        CompiledModuleTokensCache restored = new CompiledModuleTokensCache(file, "stamp1");
+        assertEquals(1, restored.size());
+        assertNull(restored.get("sys"));
+        assertEquals(length, file.length());
+
+        restored.put("sys", null, createCompletions("s"));
+        assertEquals(2, new CompiledModuleTokensCache(file, "stamp1").size());
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.python.pydev.editor.codecompletion.revisited.CodeCompletionTestsBase;
+
+/**
+ * Checks that the requests from background threads go to the shells of the pool while the interactive requests
+ * go to the completion shell.
+ *
+ * These tests should run, however the directory where the tests are run must be correct.
+ *
+ * @author Fabio
+ */
+public class ShellPoolTest extends CodeCompletionTestsBase{
+
+    private PythonShell completionShell;
+    private List<PythonShell> backgroundShells = new ArrayList<PythonShell>();
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(ShellPoolTest.class);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        restorePythonPathWithSitePackages(false);
+        completionShell = PythonShellTest.startShell();
+        AbstractShell.putServerShell(nature, AbstractShell.COMPLETION_SHELL, completionShell);
+        int size = ShellPool.getPoolSize(nature.getProjectInterpreter());
+        for(int i=0;i<size;i++){
+            PythonShell shell = PythonShellTest.startShell();
+            backgroundShells.add(shell);
+            AbstractShell.putServerShell(nature, ShellPool.FIRST_BACKGROUND_SHELL+i, shell);
+        }
+    }
+
+    public void tearDown() throws Exception {
+        super.tearDown();
+        AbstractShell.putServerShell(nature, AbstractShell.COMPLETION_SHELL, null);
+        completionShell.endIt();
+        for(int i=0;i<backgroundShells.size();i++){
+            AbstractShell.putServerShell(nature, ShellPool.FIRST_BACKGROUND_SHELL+i, null);
+            backgroundShells.get(i).endIt();
+        }
+    }
+
+    private List<String> getPythonpath() throws Exception {
+        return nature.getAstManager().getModulesManager().getCompletePythonPath(nature.getProjectInterpreter(),
+                nature.getRelatedInterpreterManager());
+    }
+
+    public void testBackgroundAndInteractive() throws Exception {
+        final List<String> pythonpath = getPythonpath();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final String[] modules = new String[]{"math", "sys", "os", "time", "string", "struct"};
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int i=0;i<4;i++){
+            Thread thread = new Thread(){
+                public void run() {
+                    boolean previousBackground = ShellPool.setBackgroundThread(true);
+                    try{
+                        for(String module:modules){
+                            if(ShellPool.getImportCompletions(nature, module, pythonpath).o2.size() == 0){
+                                errors.add(new AssertionError("No completions for: "+module));
+                            }
+                        }
+                    }catch(Throwable e){
+                        errors.add(e);
+                    }finally{
+                        ShellPool.setBackgroundThread(previousBackground);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        assertFalse(ShellPool.isBackgroundThread());
+        for(String module:modules){
+            assertTrue(ShellPool.getImportCompletions(nature, module, pythonpath).o2.size() > 0);
+        }
+        assertNotNull(ShellPool.getLineCol(nature, "os", "path", pythonpath));
+
+        for(Thread thread:threads){
+            thread.join();
+        }
+        assertEquals(errors.toString(), 0, errors.size());
+
+        String stats = ShellPool.getStats();
+        assertTrue(stats, stats.indexOf("Interactive: requests: ") != -1);
+        assertTrue(stats, stats.indexOf("Background: requests: ") != -1);
+    }
+
+    public void testBackgroundMarkRestored() throws Exception {
+        boolean previous = ShellPool.setBackgroundThread(true);
+        assertFalse(previous);
+        try{
+            //i.e.: an analysis run inline in the builder thread
+            boolean inner = ShellPool.setBackgroundThread(true);
+            assertTrue(inner);
+            ShellPool.setBackgroundThread(inner);
+            assertTrue(ShellPool.isBackgroundThread());
+        }finally{
+            ShellPool.setBackgroundThread(previous);
+        }
+        assertFalse(ShellPool.isBackgroundThread());
+    }
+}
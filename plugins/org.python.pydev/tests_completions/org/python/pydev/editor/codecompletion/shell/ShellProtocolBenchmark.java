@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license.txt included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package org.python.pydev.editor.codecompletion.shell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.python.pydev.core.Tuple;
+
+/**
+ * Compares the time to read and parse the completions of a big module (such as numpy or wx) sent by the
+ * pycompletionserver.py in the text protocol and in the binary protocol (the messages are created as the server
+ * would create them, so, no shell is needed).
+ *
+ * Run main() to see the numbers for a module with 50k tokens (the test only uses a small number of tokens).
+ */
+public class ShellProtocolBenchmark extends TestCase {
+
+    public static void main(String[] args) {
+        try {
+            ShellProtocolBenchmark test = new ShellProtocolBenchmark();
+            test.setUp();
+            test.printTimes = true;
+            test.tokens = 50000;
+            test.testBigModule();
+            test.tearDown();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean printTimes = false;
+    private int tokens = 1000;
+
+    private List<String[]> createCompletions() {
+        List<String[]> ret = new ArrayList<String[]>();
+        for(int i=0;i<tokens;i++){
+            ret.add(new String[]{"token_" + i,
+                    "token_" + i + "(a, b=None, *args) -> ndarray\n\nReturns a new array with the given shape " +
+                    "(and fills it with the values from 'a'), ignoring 'b' if it's None.",
+                    "(a, b=None, *args)", "" + (i % 4 + 1)});
+        }
+        return ret;
+    }
+
+    /**
+     * @return the message as created by Processor.formatCompletionMessage
+     */
+    private static byte[] createTextMessage(String file, List<String[]> completions) throws Exception {
+        StringBuffer buf = new StringBuffer("@@COMPLETIONS(");
+        buf.append(file);
+        for(String[] completion:completions){
+            buf.append(",(");
+            for(int i=0;i<completion.length;i++){
+                if(i > 0){
+                    buf.append(',');
+                }
+                buf.append(URLEncoder.encode(completion[i], "UTF-8"));
+            }
+            buf.append(')');
+        }
+        buf.append(")END@@");
+        return buf.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * @return the message as created by Processor.formatCompletionMessageBinary (with a progress frame before it).
+     */
+    private static byte[] createBinaryMessage(String file, List<String[]> completions) throws Exception {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        writeString(out, file);
+        out.writeInt(completions.size());
+        for(String[] completion:completions){
+            for(String s:completion){
+                writeString(out, s);
+            }
+        }
+        out.flush();
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream framesOut = new DataOutputStream(frames);
+        framesOut.writeByte(ShellBinaryProtocol.FRAME_PROGRESS);
+        framesOut.writeInt(0);
+        framesOut.writeByte(ShellBinaryProtocol.FRAME_COMPLETIONS);
+        framesOut.writeInt(payload.size());
+        payload.writeTo(framesOut);
+        framesOut.flush();
+        return frames.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws Exception {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the message in chunks as AbstractShell.read() does (without the sleeps between the reads).
+     *
+     * @return the completions and the number of reads done.
+     */
+    private static Tuple<Tuple<String, List<String[]>>, Integer> readText(InputStream in) throws Exception {
+        StringBuffer str = new StringBuffer();
+        int reads = 0;
+        while(true){
+            byte[] b = new byte[AbstractShell.BUFFER_SIZE];
+            in.read(b);
+            reads++;
+            String s = new String(b);
+            s = s.replaceAll((char) 0 + "", "");
+            str.append(s);
+            if(str.indexOf("END@@") != -1){
+                break;
+            }
+        }
+        String ret = str.toString().replaceFirst("@@COMPLETIONS", "");
+        ret = ret.substring(0, ret.indexOf("END@@"));
+        return new Tuple<Tuple<String, List<String[]>>, Integer>(AbstractShell.parseCompletions(ret), reads);
+    }
+
+    private static Tuple<String, List<String[]>> readBinary(InputStream in) throws Exception {
+        ShellBinaryProtocol protocol = new ShellBinaryProtocol(in);
+        while(protocol.readFrame() != ShellBinaryProtocol.FRAME_COMPLETIONS){
+            //skip the progress
+        }
+        return protocol.getCompletions("0");
+    }
+
+    public void testBigModule() throws Exception {
+        List<String[]> completions = createCompletions();
+        String file = "/usr/lib/python2.6/site-packages/numpy/__init__.pyc";
+        byte[] text = createTextMessage(file, completions);
+        byte[] binary = createBinaryMessage(file, completions);
+
+        long initial = System.nanoTime();
+        Tuple<Tuple<String, List<String[]>>, Integer> fromText = readText(new ByteArrayInputStream(text));
+        long textTime = (System.nanoTime() - initial) / 1000000;
+
+        initial = System.nanoTime();
+        Tuple<String, List<String[]>> fromBinary = readBinary(new ByteArrayInputStream(binary));
+        long binaryTime = (System.nanoTime() - initial) / 1000000;
+
+        assertEquals(file, fromText.o1.o1);
+        assertEquals(file, fromBinary.o1);
+        assertEquals(tokens, fromText.o1.o2.size());
+        assertEquals(tokens, fromBinary.o2.size());
+        for(int i=0;i<tokens;i++){
+            String[] expected = completions.get(i);
+            String[] t = fromText.o1.o2.get(i);
+            String[] b = fromBinary.o2.get(i);
+            for(int j=0;j<expected.length;j++){
+                assertEquals(expected[j], t[j]);
+                assertEquals(expected[j], b[j]);
+            }
+        }
+
+        if(printTimes){
+            System.out.println("Tokens: " + tokens);
+            System.out.println("Text protocol: " + text.length + " bytes, " + textTime + " ms (+" +
+                    (fromText.o2 * 10) + " ms in the sleeps between the " + fromText.o2 + " reads)");
+            System.out.println("Binary protocol: " + binary.length + " bytes, " + binaryTime + " ms");
+        }
+    }
+}